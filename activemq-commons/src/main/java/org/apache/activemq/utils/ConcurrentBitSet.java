@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of non negative ints kept as bits, growing as bits are set.
+ * <p/>
+ * Setting and testing a bit don't lock, only adding a segment of {@link #BITS_PER_SEGMENT} bits does.
+ */
+public final class ConcurrentBitSet
+{
+   public static final int BITS_PER_SEGMENT = 4096;
+
+   private static final int WORDS_PER_SEGMENT = BITS_PER_SEGMENT / Long.SIZE;
+
+   private static final AtomicLongArray[] NO_SEGMENTS = new AtomicLongArray[0];
+
+   /**
+    * Replaced as a whole when a segment is added, the segments themselves are shared by the copies
+    */
+   private volatile AtomicLongArray[] segments = NO_SEGMENTS;
+
+   /**
+    * @return true if the bit wasn't set before
+    */
+   public boolean set(final int index)
+   {
+      if (index < 0)
+      {
+         throw new IllegalArgumentException("index < 0: " + index);
+      }
+
+      AtomicLongArray segment = getSegment(index / BITS_PER_SEGMENT, true);
+
+      int word = (index % BITS_PER_SEGMENT) / Long.SIZE;
+
+      long mask = 1L << (index % Long.SIZE);
+
+      while (true)
+      {
+         long bits = segment.get(word);
+
+         if ((bits & mask) != 0)
+         {
+            return false;
+         }
+
+         if (segment.compareAndSet(word, bits, bits | mask))
+         {
+            return true;
+         }
+      }
+   }
+
+   public boolean get(final int index)
+   {
+      if (index < 0)
+      {
+         return false;
+      }
+
+      AtomicLongArray segment = getSegment(index / BITS_PER_SEGMENT, false);
+
+      return segment != null && (segment.get((index % BITS_PER_SEGMENT) / Long.SIZE) & (1L << (index % Long.SIZE))) != 0;
+   }
+
+   public synchronized void clear()
+   {
+      segments = NO_SEGMENTS;
+   }
+
+   private AtomicLongArray getSegment(final int segmentIndex, final boolean create)
+   {
+      AtomicLongArray[] current = segments;
+
+      if (segmentIndex < current.length && current[segmentIndex] != null)
+      {
+         return current[segmentIndex];
+      }
+
+      if (!create)
+      {
+         return null;
+      }
+
+      synchronized (this)
+      {
+         current = segments;
+
+         if (segmentIndex < current.length && current[segmentIndex] != null)
+         {
+            return current[segmentIndex];
+         }
+
+         AtomicLongArray[] grown = Arrays.copyOf(current, Math.max(current.length, segmentIndex + 1));
+
+         grown[segmentIndex] = new AtomicLongArray(WORDS_PER_SEGMENT);
+
+         segments = grown;
+
+         return grown[segmentIndex];
+      }
+   }
+}
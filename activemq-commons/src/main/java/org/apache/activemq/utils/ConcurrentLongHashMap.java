@@ -0,0 +1,493 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent map keyed by primitive longs.
+ * <p/>
+ * Keys and values are kept in open addressing arrays (linear probing), split in sections that are
+ * locked independently by the writers. Reads don't lock, they're validated against the removals
+ * that ran while they probed and only take the lock when they keep racing with them. Compared to a ConcurrentHashMap&lt;Long, V&gt; there is no boxed key and
+ * no node per entry, which matters for maps holding millions of entries such as the journal
+ * records.
+ * <p/>
+ * Null values are not supported.
+ */
+public class ConcurrentLongHashMap<V>
+{
+   private static final int DEFAULT_EXPECTED_ITEMS = 256;
+
+   private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+   private static final float FILL_FACTOR = 0.66f;
+
+   public interface EntryProcessor<V>
+   {
+      void accept(long key, V value);
+   }
+
+   private final Section<V>[] sections;
+
+   private final int sectionShift;
+
+   public ConcurrentLongHashMap()
+   {
+      this(DEFAULT_EXPECTED_ITEMS, DEFAULT_CONCURRENCY_LEVEL);
+   }
+
+   public ConcurrentLongHashMap(final int expectedItems)
+   {
+      this(expectedItems, DEFAULT_CONCURRENCY_LEVEL);
+   }
+
+   @SuppressWarnings("unchecked")
+   public ConcurrentLongHashMap(final int expectedItems, final int concurrencyLevel)
+   {
+      if (expectedItems <= 0 || concurrencyLevel <= 0)
+      {
+         throw new IllegalArgumentException("expectedItems and concurrencyLevel must be positive");
+      }
+
+      int numSections = roundUpPowerOfTwo(concurrencyLevel);
+
+      this.sectionShift = 64 - Integer.numberOfTrailingZeros(numSections);
+
+      this.sections = new Section[numSections];
+
+      int perSection = Math.max(2, expectedItems / numSections);
+
+      for (int i = 0; i < numSections; i++)
+      {
+         sections[i] = new Section<V>(perSection);
+      }
+   }
+
+   public int size()
+   {
+      int size = 0;
+      for (Section<V> s : sections)
+      {
+         size += s.size();
+      }
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      for (Section<V> s : sections)
+      {
+         if (s.size() != 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public V get(final long key)
+   {
+      long h = hash(key);
+      return sectionFor(h).get(key, (int) h);
+   }
+
+   public boolean containsKey(final long key)
+   {
+      return get(key) != null;
+   }
+
+   public V put(final long key, final V value)
+   {
+      checkValue(value);
+      long h = hash(key);
+      return sectionFor(h).put(key, value, (int) h, false);
+   }
+
+   public V putIfAbsent(final long key, final V value)
+   {
+      checkValue(value);
+      long h = hash(key);
+      return sectionFor(h).put(key, value, (int) h, true);
+   }
+
+   public V remove(final long key)
+   {
+      long h = hash(key);
+      return sectionFor(h).remove(key, (int) h);
+   }
+
+   public void clear()
+   {
+      for (Section<V> s : sections)
+      {
+         s.clear();
+      }
+   }
+
+   /**
+    * Calls the processor for every entry, one section at a time. The processor must not modify
+    * this map.
+    */
+   public void forEach(final EntryProcessor<V> processor)
+   {
+      for (Section<V> s : sections)
+      {
+         s.forEach(processor);
+      }
+   }
+
+   /**
+    * @return a snapshot of the keys
+    */
+   public long[] keys()
+   {
+      final long[] keys = new long[size()];
+
+      final int[] position = new int[1];
+
+      final List<Long> overflow = new ArrayList<Long>(0);
+
+      forEach(new EntryProcessor<V>()
+      {
+         public void accept(final long key, final V value)
+         {
+            // the map could have grown since we sized the array
+            if (position[0] < keys.length)
+            {
+               keys[position[0]++] = key;
+            }
+            else
+            {
+               overflow.add(key);
+            }
+         }
+      });
+
+      if (position[0] == keys.length && overflow.isEmpty())
+      {
+         return keys;
+      }
+
+      long[] result = Arrays.copyOf(keys, position[0] + overflow.size());
+      for (int i = 0; i < overflow.size(); i++)
+      {
+         result[position[0] + i] = overflow.get(i);
+      }
+      return result;
+   }
+
+   /**
+    * @return a snapshot of the values
+    */
+   public List<V> values()
+   {
+      final List<V> values = new ArrayList<V>(size());
+
+      forEach(new EntryProcessor<V>()
+      {
+         public void accept(final long key, final V value)
+         {
+            values.add(value);
+         }
+      });
+
+      return values;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ConcurrentLongHashMap(size=" + size() + ")";
+   }
+
+   private Section<V> sectionFor(final long hash)
+   {
+      return sections.length == 1 ? sections[0] : sections[(int) (hash >>> sectionShift)];
+   }
+
+   private static void checkValue(final Object value)
+   {
+      if (value == null)
+      {
+         throw new NullPointerException("Null values are not supported");
+      }
+   }
+
+   private static long hash(final long key)
+   {
+      // Fibonacci hashing spreads sequential ids, the high bits choose the section and the low bits the bucket
+      long h = key * 0x9E3779B97F4A7C15L;
+      return h ^ (h >>> 32);
+   }
+
+   private static int roundUpPowerOfTwo(final int value)
+   {
+      int result = Integer.highestOneBit(value);
+      return result < value ? result << 1 : result;
+   }
+
+   private static final class Section<V>
+   {
+      // the optimistic reads give up and take the lock after this many changed stamps
+      private static final int OPTIMISTIC_READS = 2;
+
+      /**
+       * The keys and values, replaced as a whole on a rehash so the readers never see a mix of two tables
+       */
+      private volatile Table<V> table;
+
+      /**
+       * Incremented before and after entries are moved or emptied (odd while it happens). A read that sees the same
+       * even stamp before and after probing didn't race with any of those. Adding and replacing a value don't need
+       * it, as the key is set before the value is published.
+       */
+      private volatile int stamp;
+
+      private volatile int size;
+
+      private int resizeThreshold;
+
+      Section(final int expectedItems)
+      {
+         allocate(roundUpPowerOfTwo((int) (expectedItems / FILL_FACTOR) + 1));
+      }
+
+      int size()
+      {
+         return size;
+      }
+
+      V get(final long key, final int hash)
+      {
+         for (int i = 0; i < OPTIMISTIC_READS; i++)
+         {
+            int before = stamp;
+
+            if ((before & 1) == 0)
+            {
+               V value = probe(table, key, hash);
+
+               if (stamp == before)
+               {
+                  return value;
+               }
+            }
+         }
+
+         synchronized (this)
+         {
+            return probe(table, key, hash);
+         }
+      }
+
+      synchronized V put(final long key, final V value, final int hash, final boolean onlyIfAbsent)
+      {
+         Table<V> current = table;
+         int mask = current.capacity() - 1;
+         int bucket = hash & mask;
+
+         while (true)
+         {
+            V existing = current.values.get(bucket);
+            if (existing == null)
+            {
+               current.keys.set(bucket, key);
+               current.values.set(bucket, value);
+
+               if (++size > resizeThreshold)
+               {
+                  rehash(current.capacity() << 1);
+               }
+               return null;
+            }
+            if (current.keys.get(bucket) == key)
+            {
+               if (!onlyIfAbsent)
+               {
+                  current.values.set(bucket, value);
+               }
+               return existing;
+            }
+            bucket = (bucket + 1) & mask;
+         }
+      }
+
+      synchronized V remove(final long key, final int hash)
+      {
+         Table<V> current = table;
+         int mask = current.capacity() - 1;
+         int bucket = hash & mask;
+
+         while (true)
+         {
+            V existing = current.values.get(bucket);
+            if (existing == null)
+            {
+               return null;
+            }
+            if (current.keys.get(bucket) == key)
+            {
+               stamp++;
+               try
+               {
+                  current.values.set(bucket, null);
+                  size--;
+                  shiftBack(current, bucket, mask);
+               }
+               finally
+               {
+                  stamp++;
+               }
+               return existing;
+            }
+            bucket = (bucket + 1) & mask;
+         }
+      }
+
+      synchronized void clear()
+      {
+         allocate(table.capacity());
+         size = 0;
+      }
+
+      synchronized void forEach(final EntryProcessor<V> processor)
+      {
+         Table<V> current = table;
+         for (int i = 0; i < current.capacity(); i++)
+         {
+            V value = current.values.get(i);
+            if (value != null)
+            {
+               processor.accept(current.keys.get(i), value);
+            }
+         }
+      }
+
+      private static <V> V probe(final Table<V> table, final long key, final int hash)
+      {
+         int mask = table.capacity() - 1;
+         int bucket = hash & mask;
+
+         while (true)
+         {
+            V value = table.values.get(bucket);
+            if (value == null)
+            {
+               return null;
+            }
+            if (table.keys.get(bucket) == key)
+            {
+               return value;
+            }
+            bucket = (bucket + 1) & mask;
+         }
+      }
+
+      /**
+       * Moves back the entries following a removed one, so no probe sequence is broken by the
+       * hole (no tombstones are needed).
+       */
+      private static <V> void shiftBack(final Table<V> table, int hole, final int mask)
+      {
+         int bucket = hole;
+
+         while (true)
+         {
+            bucket = (bucket + 1) & mask;
+
+            V value = table.values.get(bucket);
+
+            if (value == null)
+            {
+               return;
+            }
+
+            long key = table.keys.get(bucket);
+
+            int ideal = (int) hash(key) & mask;
+
+            // the entry stays if its ideal bucket lies cyclically in (hole, bucket]
+            boolean stays = hole <= bucket ? hole < ideal && ideal <= bucket : hole < ideal || ideal <= bucket;
+
+            if (!stays)
+            {
+               table.keys.set(hole, key);
+               table.values.set(hole, value);
+               table.values.set(bucket, null);
+               hole = bucket;
+            }
+         }
+      }
+
+      private void rehash(final int newCapacity)
+      {
+         Table<V> oldTable = table;
+         Table<V> newTable = new Table<V>(newCapacity);
+
+         int mask = newCapacity - 1;
+
+         for (int i = 0; i < oldTable.capacity(); i++)
+         {
+            V value = oldTable.values.get(i);
+            if (value != null)
+            {
+               long key = oldTable.keys.get(i);
+               int bucket = (int) hash(key) & mask;
+               while (newTable.values.get(bucket) != null)
+               {
+                  bucket = (bucket + 1) & mask;
+               }
+               newTable.keys.set(bucket, key);
+               newTable.values.set(bucket, value);
+            }
+         }
+
+         table = newTable;
+         resizeThreshold = (int) (newCapacity * FILL_FACTOR);
+      }
+
+      private void allocate(final int capacity)
+      {
+         table = new Table<V>(capacity);
+         resizeThreshold = (int) (capacity * FILL_FACTOR);
+      }
+   }
+
+   private static final class Table<V>
+   {
+      final AtomicLongArray keys;
+
+      // a null value marks an empty bucket
+      final AtomicReferenceArray<V> values;
+
+      Table(final int capacity)
+      {
+         keys = new AtomicLongArray(capacity);
+         values = new AtomicReferenceArray<V>(capacity);
+      }
+
+      int capacity()
+      {
+         return values.length();
+      }
+   }
+}
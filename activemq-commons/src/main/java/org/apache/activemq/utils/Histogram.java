@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non negative long values, such as latencies in nanoseconds or sizes in
+ * bytes.
+ * <p/>
+ * Values are counted in logarithmic buckets: every power of two is split in 8 linear sub-buckets,
+ * so a percentile is reported with at most 12.5% of error over the whole long range in a fixed
+ * array of counters. Recording a value is a few bit operations and atomic increments, with no lock
+ * and no allocation.
+ */
+public final class Histogram
+{
+   private static final int SUB_BUCKET_BITS = 3;
+
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+   // values below SUB_BUCKETS are counted exactly, then one group of sub-buckets per power of two
+   private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+   private final AtomicLong count = new AtomicLong();
+
+   private final AtomicLong total = new AtomicLong();
+
+   private final AtomicLong max = new AtomicLong();
+
+   public void record(long value)
+   {
+      if (value < 0)
+      {
+         value = 0;
+      }
+
+      counts.incrementAndGet(bucketOf(value));
+      count.incrementAndGet();
+      total.addAndGet(value);
+
+      long currentMax;
+      while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value))
+      {
+      }
+   }
+
+   public long getCount()
+   {
+      return count.get();
+   }
+
+   public long getMax()
+   {
+      return max.get();
+   }
+
+   public double getMean()
+   {
+      long samples = count.get();
+      return samples == 0 ? 0 : (double) total.get() / samples;
+   }
+
+   /**
+    * @param percentile between 0 and 100
+    * @return the highest value of the bucket holding the given percentile, never above the
+    * recorded maximum, or 0 if nothing was recorded
+    */
+   public long getPercentile(final double percentile)
+   {
+      if (percentile < 0 || percentile > 100)
+      {
+         throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+      }
+
+      long samples = 0;
+
+      for (int i = 0; i < BUCKETS; i++)
+      {
+         samples += counts.get(i);
+      }
+
+      if (samples == 0)
+      {
+         return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+
+      long seen = 0;
+
+      for (int i = 0; i < BUCKETS; i++)
+      {
+         seen += counts.get(i);
+
+         if (seen >= rank)
+         {
+            return Math.min(highestValueOf(i), max.get());
+         }
+      }
+
+      return max.get();
+   }
+
+   /**
+    * Forgets all the recorded values. Values recorded concurrently may be partially kept.
+    */
+   public void reset()
+   {
+      for (int i = 0; i < BUCKETS; i++)
+      {
+         counts.set(i, 0);
+      }
+
+      count.set(0);
+      total.set(0);
+      max.set(0);
+   }
+
+   private static int bucketOf(final long value)
+   {
+      if (value < SUB_BUCKETS)
+      {
+         return (int) value;
+      }
+
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+      int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+   }
+
+   private static long highestValueOf(final int bucket)
+   {
+      if (bucket < SUB_BUCKETS)
+      {
+         return bucket;
+      }
+
+      int shift = bucket / SUB_BUCKETS - 1;
+
+      long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+      return lowest + (1L << shift) - 1;
+   }
+}
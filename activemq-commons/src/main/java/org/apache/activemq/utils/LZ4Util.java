@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.utils;
+
+/**
+ * A pure Java block compressor writing the LZ4 block format.
+ * <p/>
+ * The compressor is the fast single pass of LZ4: a hash table of the last positions of every 4
+ * bytes sequence finds the matches, with no search for a better one. It favours speed over ratio,
+ * which suits the text payloads of messages. The size of the uncompressed data isn't part of the
+ * block, the callers have to keep it to decompress.
+ */
+public final class LZ4Util
+{
+   private static final int MIN_MATCH = 4;
+
+   private static final int HASH_LOG = 12;
+
+   private static final int MAX_DISTANCE = 65535;
+
+   // the format requires the last 5 bytes to be literals and the last match to start 12 bytes before the end
+   private static final int LAST_LITERALS = 5;
+
+   private static final int MF_LIMIT = 12;
+
+   // the search for matches is accelerated after this many misses in a row, for data not compressing well
+   private static final int SKIP_TRIGGER = 6;
+
+   private static final int RUN_MASK = 0x0F;
+
+   private LZ4Util()
+   {
+      // Utility class
+   }
+
+   /**
+    * @return the maximum size of a compressed block for the given length of data
+    */
+   public static int maxCompressedLength(final int length)
+   {
+      return length + length / 255 + 16;
+   }
+
+   /**
+    * Compresses a block of data.
+    *
+    * @param dest must have room for {@link #maxCompressedLength(int)} bytes from destOff
+    * @return the size of the compressed block
+    */
+   public static int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dest, final int destOff)
+   {
+      final int srcEnd = srcOff + srcLen;
+
+      int dOff = destOff;
+
+      int anchor = srcOff;
+
+      if (srcLen > MF_LIMIT)
+      {
+         final int mfLimit = srcEnd - MF_LIMIT;
+
+         final int matchLimit = srcEnd - LAST_LITERALS;
+
+         // positions relative to srcOff, the initial zeros are just candidates verified as any other
+         final int[] hashTable = new int[1 << HASH_LOG];
+
+         int sOff = srcOff + 1;
+
+         int misses = 1 << SKIP_TRIGGER;
+
+         while (sOff < mfLimit)
+         {
+            int sequence = readInt(src, sOff);
+
+            int h = hash(sequence);
+
+            int ref = srcOff + hashTable[h];
+
+            hashTable[h] = sOff - srcOff;
+
+            if (sOff - ref > MAX_DISTANCE || readInt(src, ref) != sequence)
+            {
+               sOff += misses++ >>> SKIP_TRIGGER;
+               continue;
+            }
+
+            misses = 1 << SKIP_TRIGGER;
+
+            // the match may start before the position where it was found
+            while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1])
+            {
+               sOff--;
+               ref--;
+            }
+
+            int matchLen = MIN_MATCH;
+
+            while (sOff + matchLen < matchLimit && src[sOff + matchLen] == src[ref + matchLen])
+            {
+               matchLen++;
+            }
+
+            int token = dOff;
+
+            dOff = writeLiterals(src, anchor, sOff - anchor, dest, dOff);
+
+            dest[dOff++] = (byte) (sOff - ref);
+            dest[dOff++] = (byte) ((sOff - ref) >>> 8);
+
+            int extraMatch = matchLen - MIN_MATCH;
+
+            if (extraMatch >= RUN_MASK)
+            {
+               dest[token] |= RUN_MASK;
+               dOff = writeLength(dest, dOff, extraMatch - RUN_MASK);
+            }
+            else
+            {
+               dest[token] |= extraMatch;
+            }
+
+            sOff += matchLen;
+
+            anchor = sOff;
+
+            if (sOff < mfLimit)
+            {
+               hashTable[hash(readInt(src, sOff - 2))] = sOff - 2 - srcOff;
+            }
+         }
+      }
+
+      dOff = writeLiterals(src, anchor, srcEnd - anchor, dest, dOff);
+
+      return dOff - destOff;
+   }
+
+   /**
+    * Decompresses a block written by {@link #compress(byte[], int, int, byte[], int)}.
+    *
+    * @param destLen the size of the data before compression
+    * @throws IllegalArgumentException if the block is damaged or doesn't decompress to destLen bytes
+    */
+   public static void decompress(final byte[] src, final int srcOff, final int srcLen, final byte[] dest, final int destOff, final int destLen)
+   {
+      final int srcEnd = srcOff + srcLen;
+
+      final int destEnd = destOff + destLen;
+
+      int sOff = srcOff;
+
+      int dOff = destOff;
+
+      while (true)
+      {
+         if (sOff >= srcEnd)
+         {
+            throw malformed(sOff - srcOff);
+         }
+
+         int token = src[sOff++] & 0xFF;
+
+         int literals = token >>> 4;
+
+         if (literals == RUN_MASK)
+         {
+            int b;
+            do
+            {
+               if (sOff >= srcEnd)
+               {
+                  throw malformed(sOff - srcOff);
+               }
+               b = src[sOff++] & 0xFF;
+               literals += b;
+            }
+            while (b == 255);
+         }
+
+         if (literals < 0 || literals > srcEnd - sOff || literals > destEnd - dOff)
+         {
+            throw malformed(sOff - srcOff);
+         }
+
+         System.arraycopy(src, sOff, dest, dOff, literals);
+
+         sOff += literals;
+
+         dOff += literals;
+
+         if (sOff == srcEnd)
+         {
+            // the last sequence has no match
+            break;
+         }
+
+         if (srcEnd - sOff < 2)
+         {
+            throw malformed(sOff - srcOff);
+         }
+
+         int offset = (src[sOff++] & 0xFF) | (src[sOff++] & 0xFF) << 8;
+
+         int match = dOff - offset;
+
+         if (offset == 0 || match < destOff)
+         {
+            throw malformed(sOff - srcOff);
+         }
+
+         int matchLen = token & RUN_MASK;
+
+         if (matchLen == RUN_MASK)
+         {
+            int b;
+            do
+            {
+               if (sOff >= srcEnd)
+               {
+                  throw malformed(sOff - srcOff);
+               }
+               b = src[sOff++] & 0xFF;
+               matchLen += b;
+            }
+            while (b == 255);
+         }
+
+         matchLen += MIN_MATCH;
+
+         if (matchLen < 0 || matchLen > destEnd - dOff)
+         {
+            throw malformed(sOff - srcOff);
+         }
+
+         if (offset >= matchLen)
+         {
+            System.arraycopy(dest, match, dest, dOff, matchLen);
+            dOff += matchLen;
+         }
+         else
+         {
+            // overlapping copy, repeating the last offset bytes
+            for (int i = 0; i < matchLen; i++)
+            {
+               dest[dOff++] = dest[match + i];
+            }
+         }
+      }
+
+      if (dOff != destEnd)
+      {
+         throw new IllegalArgumentException("Compressed block decompressed to " + (dOff - destOff) +
+                                               " bytes instead of " + destLen);
+      }
+   }
+
+   private static int writeLiterals(final byte[] src, final int srcOff, final int length, final byte[] dest, int dOff)
+   {
+      int token = dOff++;
+
+      if (length >= RUN_MASK)
+      {
+         dest[token] = (byte) (RUN_MASK << 4);
+         dOff = writeLength(dest, dOff, length - RUN_MASK);
+      }
+      else
+      {
+         dest[token] = (byte) (length << 4);
+      }
+
+      System.arraycopy(src, srcOff, dest, dOff, length);
+
+      return dOff + length;
+   }
+
+   private static int writeLength(final byte[] dest, int dOff, int length)
+   {
+      while (length >= 255)
+      {
+         dest[dOff++] = (byte) 255;
+         length -= 255;
+      }
+
+      dest[dOff++] = (byte) length;
+
+      return dOff;
+   }
+
+   private static int readInt(final byte[] buffer, final int offset)
+   {
+      return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8 |
+         (buffer[offset + 2] & 0xFF) << 16 | (buffer[offset + 3] & 0xFF) << 24;
+   }
+
+   private static int hash(final int sequence)
+   {
+      return (sequence * -1640531535) >>> (32 - HASH_LOG);
+   }
+
+   private static IllegalArgumentException malformed(final int position)
+   {
+      return new IllegalArgumentException("Malformed compressed block at position " + position);
+   }
+}
@@ -264,6 +264,30 @@ public final class ActiveMQDefaultConfiguration
    // The minimal number of data files before we can start compacting
    private static int DEFAULT_JOURNAL_COMPACT_MIN_FILES = 10;
 
+   // the number of slots of the ring feeding the journal writer thread, 0 means appends are written by the caller
+   private static int DEFAULT_JOURNAL_APPEND_RING_SIZE = 0;
+
+   // the number of threads reading the journal files and decoding the records at startup
+   private static int DEFAULT_JOURNAL_LOAD_PARALLELISM = 1;
+
+   // whether the journal buffer timeout follows the measured sync time
+   private static boolean DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE = false;
+
+   // the lowest journal buffer timeout (in nanoseconds) when it is adaptive
+   private static int DEFAULT_JOURNAL_BUFFER_TIMEOUT_MIN = 50000;
+
+   // the highest journal buffer timeout (in nanoseconds) when it is adaptive
+   private static int DEFAULT_JOURNAL_BUFFER_TIMEOUT_MAX = 10000000;
+
+   // whether the message journal writes its records with variable length IDs and sizes
+   private static boolean DEFAULT_JOURNAL_PACKED_RECORDS = false;
+
+   // the number of files the message journal fills between two checkpoints, 0 disables checkpoints
+   private static int DEFAULT_JOURNAL_CHECKPOINT_FILES = 0;
+
+   // the most bytes kept by the idle direct buffers of the NIO files, 0 disables the pool
+   private static long DEFAULT_IO_BUFFER_POOL_SIZE = 32 * 1024 * 1024;
+
    // XXX Only meant to be used by project developers
    private static int DEFAULT_JOURNAL_PERF_BLAST_PAGES = -1;
 
@@ -750,6 +774,70 @@ public final class ActiveMQDefaultConfiguration
       return DEFAULT_JOURNAL_COMPACT_MIN_FILES;
    }
 
+   /**
+    * the number of slots of the ring feeding the journal writer thread, 0 means appends are written by the caller
+    */
+   public static int getDefaultJournalAppendRingSize()
+   {
+      return DEFAULT_JOURNAL_APPEND_RING_SIZE;
+   }
+
+   /**
+    * the number of threads reading the journal files and decoding the records at startup
+    */
+   public static int getDefaultJournalLoadParallelism()
+   {
+      return DEFAULT_JOURNAL_LOAD_PARALLELISM;
+   }
+
+   /**
+    * whether the journal buffer timeout follows the measured sync time
+    */
+   public static boolean isDefaultJournalBufferTimeoutAdaptive()
+   {
+      return DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE;
+   }
+
+   /**
+    * the lowest journal buffer timeout (in nanoseconds) when it is adaptive
+    */
+   public static int getDefaultJournalBufferTimeoutMin()
+   {
+      return DEFAULT_JOURNAL_BUFFER_TIMEOUT_MIN;
+   }
+
+   /**
+    * the highest journal buffer timeout (in nanoseconds) when it is adaptive
+    */
+   public static int getDefaultJournalBufferTimeoutMax()
+   {
+      return DEFAULT_JOURNAL_BUFFER_TIMEOUT_MAX;
+   }
+
+   /**
+    * whether the message journal writes its records with variable length IDs and sizes
+    */
+   public static boolean isDefaultJournalPackedRecords()
+   {
+      return DEFAULT_JOURNAL_PACKED_RECORDS;
+   }
+
+   /**
+    * the number of files the message journal fills between two checkpoints, 0 disables checkpoints
+    */
+   public static int getDefaultJournalCheckpointFiles()
+   {
+      return DEFAULT_JOURNAL_CHECKPOINT_FILES;
+   }
+
+   /**
+    * the most bytes kept by the idle direct buffers of the NIO files, 0 disables the pool
+    */
+   public static long getDefaultIOBufferPoolSize()
+   {
+      return DEFAULT_IO_BUFFER_POOL_SIZE;
+   }
+
    /**
     * XXX Only meant to be used by project developers
     */
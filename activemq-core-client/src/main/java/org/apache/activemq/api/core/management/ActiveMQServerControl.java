@@ -127,6 +127,12 @@ public interface ActiveMQServerControl
     */
    int getJournalBufferTimeout();
 
+   /**
+    * Returns the timeout (in nanoseconds) currently used to flush the message journal buffer.
+    * It differs from the configured timeout when the timeout is adaptive.
+    */
+   int getJournalCurrentBufferTimeout();
+
    /**
     * do any clients failover on a server shutdown
     */
@@ -148,6 +154,51 @@ public interface ActiveMQServerControl
     */
    int getJournalCompactPercentage();
 
+   /**
+    * Returns the number of compactions completed on the message journal.
+    */
+   long getJournalCompactCount();
+
+   /**
+    * Returns for how long (in nanoseconds) appends on the message journal were blocked by the last compaction.
+    */
+   long getJournalLastCompactPauseTime();
+
+   /**
+    * Returns the longest time (in nanoseconds) appends on the message journal were blocked by a single compaction.
+    */
+   long getJournalMaxCompactPauseTime();
+
+   /**
+    * Returns the number of files of the message journal that can be reclaimed and were not reclaimed yet.
+    */
+   int getJournalReclaimableFiles();
+
+   /**
+    * Returns the latencies measured on the message journal as a JSON object with the time appends take
+    * to complete, the time and size of the buffer flushes and the time syncs take, each with its
+    * count, mean, maximum and percentiles. Times are in nanoseconds and sizes in bytes.
+    */
+   String getJournalLatenciesAsJSON() throws Exception;
+
+   /**
+    * Resets the latencies measured on the message journal.
+    */
+   @Operation(desc = "Reset the latencies measured on the message journal", impact = MBeanOperationInfo.ACTION)
+   void resetJournalLatencies() throws Exception;
+
+   /**
+    * Returns the number of direct buffers the NIO files took from the buffer pool instead of
+    * allocating them. 0 when the pool is disabled.
+    */
+   long getIOBufferPoolHits();
+
+   /**
+    * Returns the number of direct buffers the NIO files had to allocate, as the buffer pool had
+    * none of their size. 0 when the pool is disabled.
+    */
+   long getIOBufferPoolMisses();
+
    /**
     * Returns whether this server is using persistence and store data.
     */
@@ -72,6 +72,21 @@ public interface AddressControl
     */
    long getNumberOfBytesPerPage() throws Exception;
 
+   /**
+    * Returns the number of times a page was found in the page cache of this address.
+    */
+   long getPageCacheHits() throws Exception;
+
+   /**
+    * Returns the number of times a page had to be read as it wasn't in the page cache of this address.
+    */
+   long getPageCacheMisses() throws Exception;
+
+   /**
+    * Returns the number of pages evicted from the page cache of this address.
+    */
+   long getPageCacheEvictions() throws Exception;
+
    /**
     * Returns the names of all bindings (both queues and diverts) bound to this address
     */
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.utils.ConcurrentBitSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentBitSetTest extends Assert
+{
+   @Test
+   public void testSet() throws Exception
+   {
+      ConcurrentBitSet bits = new ConcurrentBitSet();
+
+      Assert.assertFalse(bits.get(10));
+      Assert.assertTrue(bits.set(10));
+      Assert.assertFalse(bits.set(10));
+      Assert.assertTrue(bits.get(10));
+      Assert.assertFalse(bits.get(9));
+      Assert.assertFalse(bits.get(11));
+      Assert.assertFalse(bits.get(-1));
+   }
+
+   @Test
+   public void testGrow() throws Exception
+   {
+      ConcurrentBitSet bits = new ConcurrentBitSet();
+
+      int far = ConcurrentBitSet.BITS_PER_SEGMENT * 5 + 63;
+
+      Assert.assertTrue(bits.set(far));
+      Assert.assertTrue(bits.set(0));
+      Assert.assertTrue(bits.get(far));
+      Assert.assertTrue(bits.get(0));
+      Assert.assertFalse(bits.get(far - 1));
+      Assert.assertFalse(bits.get(ConcurrentBitSet.BITS_PER_SEGMENT * 20));
+   }
+
+   @Test
+   public void testClear() throws Exception
+   {
+      ConcurrentBitSet bits = new ConcurrentBitSet();
+
+      bits.set(1);
+      bits.set(ConcurrentBitSet.BITS_PER_SEGMENT);
+      bits.clear();
+
+      Assert.assertFalse(bits.get(1));
+      Assert.assertFalse(bits.get(ConcurrentBitSet.BITS_PER_SEGMENT));
+   }
+
+   @Test
+   public void testConcurrentSet() throws Exception
+   {
+      final ConcurrentBitSet bits = new ConcurrentBitSet();
+
+      final int numberOfBits = ConcurrentBitSet.BITS_PER_SEGMENT * 4;
+
+      final AtomicInteger setBits = new AtomicInteger(0);
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Thread[] threads = new Thread[4];
+
+      for (int i = 0; i < threads.length; i++)
+      {
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+
+               // every thread sets every bit, only one of them sees it unset
+               for (int bit = numberOfBits - 1; bit >= 0; bit--)
+               {
+                  if (bits.set(bit))
+                  {
+                     setBits.incrementAndGet();
+                  }
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      start.countDown();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      Assert.assertEquals(numberOfBits, setBits.get());
+
+      for (int bit = 0; bit < numberOfBits; bit++)
+      {
+         Assert.assertTrue(bits.get(bit));
+      }
+   }
+}
@@ -18,10 +18,13 @@ package org.apache.activemq.core.asyncio.impl;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.FileLock;
+import java.util.Arrays;
 import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
@@ -59,6 +62,16 @@ public class AsynchronousFileImpl implements AsynchronousFile
     */
    private static final int EXPECTED_NATIVE_VERSION = 52;
 
+   /**
+    * The most writes sent on a single io_submit
+    */
+   private static final int MAX_WRITE_BATCH = 128;
+
+   /**
+    * Cleared when the native library was built before writeBatch, the writes are then submitted one by one
+    */
+   private static volatile boolean writeBatchSupported = true;
+
    /**
     * Used to determine the next writing sequence
     */
@@ -205,6 +218,30 @@ public class AsynchronousFileImpl implements AsynchronousFile
 
    private final Executor pollerExecutor;
 
+   /**
+    * The writes waiting for the writeExecutor, submitted together by {@link #submitQueuedWrites()}
+    */
+   private final ConcurrentLinkedQueue<QueuedWrite> queuedWrites = new ConcurrentLinkedQueue<QueuedWrite>();
+
+   private final AtomicBoolean submitScheduled = new AtomicBoolean(false);
+
+   private final Runnable submitTask = new Runnable()
+   {
+      public void run()
+      {
+         submitQueuedWrites();
+      }
+   };
+
+   // Only used from the writeExecutor
+   private long[] batchPositions;
+
+   private long[] batchSizes;
+
+   private ByteBuffer[] batchBuffers;
+
+   private AIOCallback[] batchCallbacks;
+
    // AsynchronousFile implementation ---------------------------------------------------
 
    /**
@@ -237,6 +274,15 @@ public class AsynchronousFileImpl implements AsynchronousFile
          this.maxIO = maxIOArgument;
          maxIOSemaphore = new Semaphore(this.maxIO);
 
+         if (writeExecutor != null && batchPositions == null)
+         {
+            int batchSize = Math.min(maxIO, AsynchronousFileImpl.MAX_WRITE_BATCH);
+            batchPositions = new long[batchSize];
+            batchSizes = new long[batchSize];
+            batchBuffers = new ByteBuffer[batchSize];
+            batchCallbacks = new AIOCallback[batchSize];
+         }
+
          this.fileName = fileName1;
 
          try
@@ -351,49 +397,19 @@ public class AsynchronousFileImpl implements AsynchronousFile
       {
          maxIOSemaphore.acquireUninterruptibly();
 
-         writeExecutor.execute(new Runnable()
+         queuedWrites.offer(new QueuedWrite(position, size, directByteBuffer, aioCallback));
+
+         // the writes queued while the executor is busy go on the same io_submit
+         if (submitScheduled.compareAndSet(false, true))
          {
-            public void run()
-            {
-               long sequence = nextWritingSequence.getAndIncrement();
-
-               try
-               {
-                  Native.write(AsynchronousFileImpl.this, handler, sequence, position, size, directByteBuffer, aioCallback);
-               }
-               catch (ActiveMQException e)
-               {
-                  callbackError(aioCallback, sequence, directByteBuffer, e.getType().getCode(), e.getMessage());
-               }
-               catch (RuntimeException e)
-               {
-                  callbackError(aioCallback,
-                                sequence,
-                                directByteBuffer,
-                                ActiveMQExceptionType.INTERNAL_ERROR.getCode(),
-                                e.getMessage());
-               }
-            }
-         });
+            writeExecutor.execute(submitTask);
+         }
       }
       else
       {
          maxIOSemaphore.acquireUninterruptibly();
 
-         long sequence = nextWritingSequence.getAndIncrement();
-
-         try
-         {
-            Native.write(this, handler, sequence, position, size, directByteBuffer, aioCallback);
-         }
-         catch (ActiveMQException e)
-         {
-            callbackError(aioCallback, sequence, directByteBuffer, e.getType().getCode(), e.getMessage());
-         }
-         catch (RuntimeException e)
-         {
-            callbackError(aioCallback, sequence, directByteBuffer, ActiveMQExceptionType.INTERNAL_ERROR.getCode(), e.getMessage());
-         }
+         submitWrite(nextWritingSequence.getAndIncrement(), position, size, directByteBuffer, aioCallback);
       }
 
    }
@@ -502,47 +518,189 @@ public class AsynchronousFileImpl implements AsynchronousFile
 
    // Private ---------------------------------------------------------------------------
 
-   private void callbackDone(final AIOCallback callback, final long sequence, final ByteBuffer buffer)
+   /**
+    * Called on the writeExecutor, sends the queued writes in batches of up to {@link #MAX_WRITE_BATCH}
+    */
+   private void submitQueuedWrites()
    {
-      maxIOSemaphore.release();
+      // cleared before polling, so a write queued after the last poll schedules a new task
+      submitScheduled.set(false);
 
-      pendingWrites.countDown();
+      int count = 0;
 
-      callbackLock.lock();
+      QueuedWrite write;
 
-      try
+      while ((write = queuedWrites.poll()) != null)
       {
+         batchPositions[count] = write.position;
+         batchSizes[count] = write.size;
+         batchBuffers[count] = write.buffer;
+         batchCallbacks[count] = write.callback;
 
-         if (sequence == -1)
+         if (++count == batchPositions.length)
          {
-            callback.done();
+            submitBatch(count);
+            count = 0;
          }
-         else
+      }
+
+      if (count > 0)
+      {
+         submitBatch(count);
+      }
+   }
+
+   private void submitBatch(final int count)
+   {
+      long firstSequence = nextWritingSequence.getAndAdd(count);
+
+      try
+      {
+         if (AsynchronousFileImpl.writeBatchSupported)
          {
-            if (sequence == nextReadSequence)
+            try
             {
-               nextReadSequence++;
-               callback.done();
-               flushCallbacks();
+               Native.writeBatch(this, handler, firstSequence, batchPositions, batchSizes, batchBuffers, batchCallbacks, count);
+               return;
             }
-            else
+            catch (UnsatisfiedLinkError e)
             {
-               pendingCallbacks.add(new CallbackHolder(sequence, callback));
+               ActiveMQJournalLogger.LOGGER.debug("The native library can't submit writes in batches: " + e.getMessage());
+               AsynchronousFileImpl.writeBatchSupported = false;
             }
          }
 
-         // The buffer is not sent on callback for read operations
-         if (bufferCallback != null && buffer != null)
+         for (int i = 0; i < count; i++)
+         {
+            submitWrite(firstSequence + i, batchPositions[i], batchSizes[i], batchBuffers[i], batchCallbacks[i]);
+         }
+      }
+      catch (ActiveMQException e)
+      {
+         for (int i = 0; i < count; i++)
          {
-            bufferCallback.bufferDone(buffer);
+            callbackError(batchCallbacks[i], firstSequence + i, batchBuffers[i], e.getType().getCode(), e.getMessage());
+         }
+      }
+      catch (RuntimeException e)
+      {
+         for (int i = 0; i < count; i++)
+         {
+            callbackError(batchCallbacks[i],
+                          firstSequence + i,
+                          batchBuffers[i],
+                          ActiveMQExceptionType.INTERNAL_ERROR.getCode(),
+                          e.getMessage());
          }
       }
       finally
+      {
+         Arrays.fill(batchBuffers, 0, count, null);
+         Arrays.fill(batchCallbacks, 0, count, null);
+      }
+   }
+
+   private void submitWrite(final long sequence,
+                            final long position,
+                            final long size,
+                            final ByteBuffer directByteBuffer,
+                            final AIOCallback aioCallback)
+   {
+      try
+      {
+         Native.write(this, handler, sequence, position, size, directByteBuffer, aioCallback);
+      }
+      catch (ActiveMQException e)
+      {
+         callbackError(aioCallback, sequence, directByteBuffer, e.getType().getCode(), e.getMessage());
+      }
+      catch (RuntimeException e)
+      {
+         callbackError(aioCallback, sequence, directByteBuffer, ActiveMQExceptionType.INTERNAL_ERROR.getCode(), e.getMessage());
+      }
+   }
+
+   /**
+    * Called by the JNI layer with the completions reaped by one io_getevents, the arrays are reused by the native layer.
+    */
+   private void callbacksDone(final AIOCallback[] callbacks, final long[] sequences, final ByteBuffer[] buffers, final int count)
+   {
+      maxIOSemaphore.release(count);
+
+      pendingWrites.countDown(count);
+
+      callbackLock.lock();
+
+      try
+      {
+         for (int i = 0; i < count; i++)
+         {
+            AIOCallback callback = callbacks[i];
+            ByteBuffer buffer = buffers[i];
+
+            callbacks[i] = null;
+            buffers[i] = null;
+
+            done(callback, sequences[i], buffer);
+         }
+      }
+      finally
+      {
+         callbackLock.unlock();
+      }
+   }
+
+   /**
+    * Called by native libraries built before the completions were delivered in batches
+    */
+   private void callbackDone(final AIOCallback callback, final long sequence, final ByteBuffer buffer)
+   {
+      maxIOSemaphore.release();
+
+      pendingWrites.countDown();
+
+      callbackLock.lock();
+
+      try
+      {
+         done(callback, sequence, buffer);
+      }
+      finally
       {
          callbackLock.unlock();
       }
    }
 
+   /**
+    * Called holding the callbackLock
+    */
+   private void done(final AIOCallback callback, final long sequence, final ByteBuffer buffer)
+   {
+      if (sequence == -1)
+      {
+         callback.done();
+      }
+      else
+      {
+         if (sequence == nextReadSequence)
+         {
+            nextReadSequence++;
+            callback.done();
+            flushCallbacks();
+         }
+         else
+         {
+            pendingCallbacks.add(new CallbackHolder(sequence, callback));
+         }
+      }
+
+      // The buffer is not sent on callback for read operations
+      if (bufferCallback != null && buffer != null)
+      {
+         bufferCallback.bufferDone(buffer);
+      }
+   }
+
    private void flushCallbacks()
    {
       while (!pendingCallbacks.isEmpty() && pendingCallbacks.peek().sequence == nextReadSequence)
@@ -796,6 +954,25 @@ public class AsynchronousFileImpl implements AsynchronousFile
       }
    }
 
+   private static final class QueuedWrite
+   {
+      final long position;
+
+      final long size;
+
+      final ByteBuffer buffer;
+
+      final AIOCallback callback;
+
+      QueuedWrite(final long position, final long size, final ByteBuffer buffer, final AIOCallback callback)
+      {
+         this.position = position;
+         this.size = size;
+         this.buffer = buffer;
+         this.callback = callback;
+      }
+   }
+
    private class PollerRunnable implements Runnable
    {
       PollerRunnable()
@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct buffers for the NIO files: the journal, the page files and the large messages.
+ * <p/>
+ * Buffers are pooled by size class, four classes per power of two from 512 bytes, so a buffer is
+ * at most 25% larger than requested. Each class keeps its idle buffers on a lock free queue, and
+ * the pool keeps at most maxPooledBytes of idle buffers: the buffers released beyond that, and
+ * the ones larger than maxPooledBytes, are left to the GC.
+ * <p/>
+ * A buffer taken from the pool is like a new one: at position 0, limited to the requested size
+ * and zero filled.
+ */
+public final class ByteBufferPool
+{
+   private static final int MIN_CLASS_BITS = 9;
+
+   private static final int MIN_CLASS_SIZE = 1 << MIN_CLASS_BITS;
+
+   private static final int SUB_CLASS_BITS = 2;
+
+   private static final int SUB_CLASSES = 1 << SUB_CLASS_BITS;
+
+   private static final byte[] ZEROS = new byte[4096];
+
+   private final long maxPooledBytes;
+
+   private final int maxBufferSize;
+
+   private final ConcurrentLinkedQueue<ByteBuffer>[] classes;
+
+   private final AtomicLong pooledBytes = new AtomicLong();
+
+   private final AtomicLong hits = new AtomicLong();
+
+   private final AtomicLong misses = new AtomicLong();
+
+   /**
+    * @param maxPooledBytes the most bytes kept by the idle buffers of the pool
+    */
+   @SuppressWarnings("unchecked")
+   public ByteBufferPool(final long maxPooledBytes)
+   {
+      if (maxPooledBytes <= 0)
+      {
+         throw new IllegalArgumentException("maxPooledBytes must be > 0");
+      }
+
+      this.maxPooledBytes = maxPooledBytes;
+
+      int largestClass = classIndex((int) Math.min(maxPooledBytes, 1 << 30));
+
+      // the largest class may be a little above maxPooledBytes, its buffers are never pooled
+      while (classSize(largestClass) > maxPooledBytes && largestClass > 0)
+      {
+         largestClass--;
+      }
+
+      this.maxBufferSize = classSize(largestClass);
+
+      classes = new ConcurrentLinkedQueue[largestClass + 1];
+
+      for (int i = 0; i < classes.length; i++)
+      {
+         classes[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+      }
+   }
+
+   /**
+    * @return a direct buffer of at least size bytes, limited to size
+    */
+   public ByteBuffer borrow(final int size)
+   {
+      if (size > maxBufferSize)
+      {
+         misses.incrementAndGet();
+         return ByteBuffer.allocateDirect(size);
+      }
+
+      int index = classIndex(size);
+
+      ByteBuffer buffer = classes[index].poll();
+
+      if (buffer == null)
+      {
+         misses.incrementAndGet();
+
+         buffer = ByteBuffer.allocateDirect(classSize(index));
+      }
+      else
+      {
+         hits.incrementAndGet();
+
+         pooledBytes.addAndGet(-buffer.capacity());
+
+         zero(buffer, size);
+      }
+
+      buffer.clear();
+
+      buffer.limit(size);
+
+      buffer.order(ByteOrder.BIG_ENDIAN);
+
+      return buffer;
+   }
+
+   /**
+    * Gives a buffer borrowed from the pool back, it must not be used after this. Heap buffers and
+    * buffers of a size the pool doesn't hand out are ignored.
+    */
+   public void release(final ByteBuffer buffer)
+   {
+      if (buffer == null || !buffer.isDirect() || buffer.capacity() > maxBufferSize)
+      {
+         return;
+      }
+
+      int index = classIndex(buffer.capacity());
+
+      if (classSize(index) != buffer.capacity())
+      {
+         return;
+      }
+
+      if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes)
+      {
+         pooledBytes.addAndGet(-buffer.capacity());
+         return;
+      }
+
+      classes[index].offer(buffer);
+   }
+
+   /**
+    * @return how many buffers were taken from the pool
+    */
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   /**
+    * @return how many buffers had to be allocated, as the pool had none of their size
+    */
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /**
+    * @return the bytes held by the idle buffers of the pool
+    */
+   public long getPooledBytes()
+   {
+      return pooledBytes.get();
+   }
+
+   public long getMaxPooledBytes()
+   {
+      return maxPooledBytes;
+   }
+
+   /**
+    * Drops the idle buffers
+    */
+   public void clear()
+   {
+      for (ConcurrentLinkedQueue<ByteBuffer> queue : classes)
+      {
+         ByteBuffer buffer;
+
+         while ((buffer = queue.poll()) != null)
+         {
+            pooledBytes.addAndGet(-buffer.capacity());
+         }
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ByteBufferPool(maxPooledBytes=" + maxPooledBytes +
+         ", pooledBytes=" +
+         pooledBytes.get() +
+         ", hits=" +
+         hits.get() +
+         ", misses=" +
+         misses.get() +
+         ")";
+   }
+
+   private static int classIndex(final int size)
+   {
+      if (size <= MIN_CLASS_SIZE)
+      {
+         return 0;
+      }
+
+      // 2^bits < size <= 2^(bits + 1), split in SUB_CLASSES steps
+      int bits = 31 - Integer.numberOfLeadingZeros(size - 1);
+
+      int stepBits = bits - SUB_CLASS_BITS;
+
+      int step = ((size - (1 << bits)) + (1 << stepBits) - 1) >> stepBits;
+
+      return (bits - MIN_CLASS_BITS) * SUB_CLASSES + step;
+   }
+
+   private static int classSize(final int index)
+   {
+      if (index == 0)
+      {
+         return MIN_CLASS_SIZE;
+      }
+
+      int bits = (index - 1) / SUB_CLASSES + MIN_CLASS_BITS;
+
+      int step = (index - 1) % SUB_CLASSES + 1;
+
+      return (1 << bits) + (step << (bits - SUB_CLASS_BITS));
+   }
+
+   private static void zero(final ByteBuffer buffer, final int size)
+   {
+      buffer.clear();
+
+      while (buffer.position() < size)
+      {
+         buffer.put(ZEROS, 0, Math.min(ZEROS.length, size - buffer.position()));
+      }
+   }
+}
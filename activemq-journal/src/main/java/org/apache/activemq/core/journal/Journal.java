@@ -204,6 +204,26 @@ public interface Journal extends ActiveMQComponent
 
    int getFileSize();
 
+   /**
+    * Returns the number of compactions completed since the journal was created.
+    */
+   long getCompactCount();
+
+   /**
+    * Returns for how long (in nanoseconds) appends were blocked by the last compaction.
+    */
+   long getLastCompactPauseTime();
+
+   /**
+    * Returns the longest time (in nanoseconds) appends were blocked by a single compaction.
+    */
+   long getMaxCompactPauseTime();
+
+   /**
+    * Returns the number of data files that can be reclaimed and were not reclaimed yet.
+    */
+   int getReclaimableFilesCount();
+
    /**
     * This method will start compact using the compactorExecutor and block up to timeout seconds
     * @param timeout the timeout in seconds or block forever if <= 0
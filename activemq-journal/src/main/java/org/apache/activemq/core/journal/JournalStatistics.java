@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal;
+
+import org.apache.activemq.utils.Histogram;
+
+/**
+ * The latencies and sizes measured by a journal and its files, shared by all the journals writing
+ * to the same disk.
+ * <p/>
+ * Times are in nanoseconds and sizes in bytes.
+ */
+public final class JournalStatistics
+{
+   private final Histogram appendTimes = new Histogram();
+
+   private final Histogram flushTimes = new Histogram();
+
+   private final Histogram flushSizes = new Histogram();
+
+   private final Histogram syncTimes = new Histogram();
+
+   /**
+    * From the moment a record is appended until its callback is called, that is until it's on disk
+    * when the append is synced.
+    */
+   public Histogram getAppendTimes()
+   {
+      return appendTimes;
+   }
+
+   /**
+    * How long the TimedBuffer takes to hand a buffer to the file, including the sync when there is
+    * one pending on NIO.
+    */
+   public Histogram getFlushTimes()
+   {
+      return flushTimes;
+   }
+
+   public Histogram getFlushSizes()
+   {
+      return flushSizes;
+   }
+
+   /**
+    * How long a sync takes on NIO, and how long a write takes to complete on AIO where there is no
+    * separate sync.
+    */
+   public Histogram getSyncTimes()
+   {
+      return syncTimes;
+   }
+
+   public void reset()
+   {
+      appendTimes.reset();
+      flushTimes.reset();
+      flushSizes.reset();
+      syncTimes.reset();
+   }
+}
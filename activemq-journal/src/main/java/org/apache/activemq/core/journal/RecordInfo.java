@@ -46,6 +46,16 @@ public class RecordInfo
 
    public boolean isUpdate;
 
+   /**
+    * The size of the record on its journal file, set when the record is read from the journal
+    */
+   public int encodeSize;
+
+   /**
+    * The position of the record data on its journal file, set when the record is read from the journal
+    */
+   public int dataPosition;
+
    public byte getUserRecordType()
    {
       return userRecordType;
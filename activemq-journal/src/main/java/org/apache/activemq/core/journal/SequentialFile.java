@@ -122,6 +122,20 @@ public interface SequentialFile
 
    void setTimedBuffer(TimedBuffer buffer);
 
+   /**
+    * @return a handle on the last write held by the buffer of this file, or -1 if there is none
+    * @see TimedBuffer#getLastWrite()
+    */
+   long getLastBufferedWrite();
+
+   /**
+    * Removes writes still held by the buffer of this file, as if they were never done.
+    *
+    * @return false, and nothing is changed, if the file isn't buffered or any of the writes was flushed already
+    * @see TimedBuffer#cancel(long[], int, boolean, IOAsyncTask)
+    */
+   boolean cancelBufferedWrites(long[] writes, int count, boolean sync, IOAsyncTask callback);
+
    /**
     * Returns a native File of the file underlying this sequential file.
     */
@@ -85,4 +85,9 @@ public interface SequentialFileFactory
    void createDirs() throws Exception;
 
    void flush();
+
+   /**
+    * @return the timeout currently used to flush the buffer, in nanoseconds, or 0 if there is no buffer
+    */
+   int getBufferTimeout();
 }
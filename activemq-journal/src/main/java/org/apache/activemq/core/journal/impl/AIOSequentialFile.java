@@ -29,6 +29,7 @@ import org.apache.activemq.core.asyncio.impl.AsynchronousFileImpl;
 import org.apache.activemq.core.journal.IOAsyncTask;
 import org.apache.activemq.core.journal.SequentialFile;
 import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.utils.Histogram;
 
 public class AIOSequentialFile extends AbstractSequentialFile implements IOExceptionListener
 {
@@ -278,7 +279,8 @@ public class AIOSequentialFile extends AbstractSequentialFile implements IOExcep
 
    /**
     *
-    * @param sync Not used on AIO
+    * @param sync Not used on AIO, where a write is on disk once completed. The time it takes to
+    *             complete is what is recorded as the sync time.
     *  */
    public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
    {
@@ -286,7 +288,13 @@ public class AIOSequentialFile extends AbstractSequentialFile implements IOExcep
 
       final long positionToWrite = position.getAndAdd(bytesToWrite);
 
-      aioFile.write(positionToWrite, bytesToWrite, bytes, callback);
+      Histogram syncTimes = getSyncTimes();
+
+      aioFile.write(positionToWrite,
+                    bytesToWrite,
+                    bytes,
+                    syncTimes == null || callback == null ? callback
+                       : new LatencyRecordingCallback(callback, syncTimes));
    }
 
    public void writeInternal(final ByteBuffer bytes) throws ActiveMQException
@@ -19,7 +19,6 @@ package org.apache.activemq.core.journal.impl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.activemq.api.core.ActiveMQBuffer;
 import org.apache.activemq.api.core.ActiveMQBuffers;
@@ -29,7 +28,7 @@ import org.apache.activemq.core.journal.SequentialFileFactory;
 import org.apache.activemq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.apache.activemq.core.journal.impl.dataformat.JournalAddRecord;
 import org.apache.activemq.core.journal.impl.dataformat.JournalInternalRecord;
-import org.apache.activemq.utils.ConcurrentHashSet;
+import org.apache.activemq.utils.ConcurrentLongHashMap;
 
 /**
  *
@@ -57,7 +56,11 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    private ActiveMQBuffer writingChannel;
 
-   private final Set<Long> recordsSnapshot = new ConcurrentHashSet<Long>();
+   // The journal's records when the task started, only read from here on
+   private final ConcurrentLongHashMap<?> recordsSnapshot;
+
+   // Records that have to be considered part of the snapshot after the task started
+   private final ConcurrentLongHashMap<Boolean> addedToSnapshot = new ConcurrentLongHashMap<Boolean>();
 
    protected final List<JournalFile> newDataFiles = new ArrayList<JournalFile>();
 
@@ -68,7 +71,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    protected AbstractJournalUpdateTask(final SequentialFileFactory fileFactory,
                                        final JournalImpl journal,
                                        final JournalFilesRepository filesRepository,
-                                       final Set<Long> recordsSnapshot,
+                                       final ConcurrentLongHashMap<?> recordsSnapshot,
                                        final long nextOrderingID)
    {
       super();
@@ -76,7 +79,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
       this.filesRepository = filesRepository;
       this.fileFactory = fileFactory;
       this.nextOrderingID = nextOrderingID;
-      this.recordsSnapshot.addAll(recordsSnapshot);
+      this.recordsSnapshot = recordsSnapshot;
    }
 
    // Public --------------------------------------------------------
@@ -192,7 +195,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    public boolean lookupRecord(final long id)
    {
-      return recordsSnapshot.contains(id);
+      return recordsSnapshot.containsKey(id) || addedToSnapshot.containsKey(id);
    }
 
    // Package protected ---------------------------------------------
@@ -216,14 +219,14 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
       sequentialFile.open(1, false);
 
-      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, JournalImpl.FORMAT_VERSION);
+      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, journal.getFormatVersion());
 
-      JournalImpl.writeHeader(writingChannel, journal.getUserVersion(), currentFile.getFileID());
+      JournalImpl.writeHeader(writingChannel, currentFile.getJournalVersion(), journal.getUserVersion(), currentFile.getFileID());
    }
 
    protected void addToRecordsSnaptshot(final long id)
    {
-      recordsSnapshot.add(id);
+      addedToSnapshot.put(id, Boolean.TRUE);
    }
 
    /**
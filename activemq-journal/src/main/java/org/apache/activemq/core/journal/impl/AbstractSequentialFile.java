@@ -31,10 +31,12 @@ import org.apache.activemq.api.core.ActiveMQException;
 import org.apache.activemq.api.core.ActiveMQIOErrorException;
 import org.apache.activemq.core.journal.EncodingSupport;
 import org.apache.activemq.core.journal.IOAsyncTask;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.journal.SequentialFile;
 import org.apache.activemq.core.journal.SequentialFileFactory;
 import org.apache.activemq.journal.ActiveMQJournalBundle;
 import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.Histogram;
 
 public abstract class AbstractSequentialFile implements SequentialFile
 {
@@ -217,6 +219,21 @@ public abstract class AbstractSequentialFile implements SequentialFile
       }
    }
 
+   /**
+    * @return where the syncs of this file are recorded, null if the factory doesn't record them
+    */
+   protected final Histogram getSyncTimes()
+   {
+      if (factory instanceof AbstractSequentialFileFactory)
+      {
+         JournalStatistics statistics = ((AbstractSequentialFileFactory) factory).getStatistics();
+
+         return statistics == null ? null : statistics.getSyncTimes();
+      }
+
+      return null;
+   }
+
    public void setTimedBuffer(final TimedBuffer buffer)
    {
       if (timedBuffer != null)
@@ -233,6 +250,16 @@ public abstract class AbstractSequentialFile implements SequentialFile
 
    }
 
+   public long getLastBufferedWrite()
+   {
+      return timedBuffer == null ? -1 : timedBuffer.getLastWrite();
+   }
+
+   public boolean cancelBufferedWrites(final long[] writes, final int count, final boolean sync, final IOAsyncTask callback)
+   {
+      return timedBuffer != null && timedBuffer.cancel(writes, count, sync, callback);
+   }
+
    public void write(final ActiveMQBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException
    {
       if (timedBuffer != null)
@@ -245,7 +272,7 @@ public abstract class AbstractSequentialFile implements SequentialFile
          ByteBuffer buffer = factory.newBuffer(bytes.capacity());
          buffer.put(bytes.toByteBuffer().array());
          buffer.rewind();
-         writeDirect(buffer, sync, callback);
+         writeReleasingBuffer(buffer, sync, callback);
       }
    }
 
@@ -283,7 +310,7 @@ public abstract class AbstractSequentialFile implements SequentialFile
          ActiveMQBuffer outBuffer = ActiveMQBuffers.wrappedBuffer(buffer);
          bytes.encode(outBuffer);
          buffer.rewind();
-         writeDirect(buffer, sync, callback);
+         writeReleasingBuffer(buffer, sync, callback);
       }
    }
 
@@ -358,6 +385,15 @@ public abstract class AbstractSequentialFile implements SequentialFile
       return buffer;
    }
 
+   /**
+    * Writes a buffer taken from {@link SequentialFileFactory#newBuffer(int)} that nobody else uses,
+    * so the file may give it back to the factory once it is written.
+    */
+   protected void writeReleasingBuffer(final ByteBuffer buffer, final boolean sync, final IOAsyncTask callback)
+   {
+      writeDirect(buffer, sync, callback);
+   }
+
    protected class LocalBufferObserver implements TimedBufferObserver
    {
       public void flushBuffer(final ByteBuffer buffer, final boolean requestedSync, final List<IOAsyncTask> callbacks)
@@ -370,7 +406,7 @@ public abstract class AbstractSequentialFile implements SequentialFile
          }
          else
          {
-            writeDirect(buffer, requestedSync, new DelegateCallback(callbacks));
+            writeReleasingBuffer(buffer, requestedSync, new DelegateCallback(callbacks));
          }
       }
 
@@ -30,6 +30,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.activemq.api.core.ActiveMQInterruptedException;
 import org.apache.activemq.core.journal.IOCriticalErrorListener;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.journal.SequentialFile;
 import org.apache.activemq.core.journal.SequentialFileFactory;
 import org.apache.activemq.journal.ActiveMQJournalLogger;
@@ -54,6 +55,8 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
 
    private final IOCriticalErrorListener critialErrorListener;
 
+   private volatile JournalStatistics statistics;
+
    /**
     * Asynchronous writes need to be done at another executor.
     * This needs to be done at NIO, or else we would have the callers thread blocking for the return.
@@ -155,6 +158,41 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
       }
    }
 
+   public int getBufferTimeout()
+   {
+      return timedBuffer == null ? 0 : timedBuffer.getTimeout();
+   }
+
+   /**
+    * Lets the buffer timeout adapt to the measured sync time, see {@link TimedBuffer#setAdaptiveTimeout(int, int)}.
+    */
+   public void setAdaptiveBufferTimeout(final int minTimeout, final int maxTimeout)
+   {
+      if (timedBuffer != null)
+      {
+         timedBuffer.setAdaptiveTimeout(minTimeout, maxTimeout);
+      }
+   }
+
+   /**
+    * Records the flushes of the buffer and the syncs of the files created by this factory, null
+    * to disable it.
+    */
+   public void setStatistics(final JournalStatistics statistics)
+   {
+      this.statistics = statistics;
+
+      if (timedBuffer != null)
+      {
+         timedBuffer.setStatistics(statistics);
+      }
+   }
+
+   public JournalStatistics getStatistics()
+   {
+      return statistics;
+   }
+
    public void deactivateBuffer()
    {
       if (timedBuffer != null)
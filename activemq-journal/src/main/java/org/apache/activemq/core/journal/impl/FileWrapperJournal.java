@@ -327,6 +327,30 @@ public final class FileWrapperJournal extends JournalBase
       throw new UnsupportedOperationException();
    }
 
+   @Override
+   public long getCompactCount()
+   {
+      return 0;
+   }
+
+   @Override
+   public long getLastCompactPauseTime()
+   {
+      return 0;
+   }
+
+   @Override
+   public long getMaxCompactPauseTime()
+   {
+      return 0;
+   }
+
+   @Override
+   public int getReclaimableFilesCount()
+   {
+      return 0;
+   }
+
    @Override
    public void replicationSyncPreserveOldFiles()
    {
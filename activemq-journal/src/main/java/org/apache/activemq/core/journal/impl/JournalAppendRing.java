@@ -0,0 +1,319 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.activemq.journal.ActiveMQJournalLogger;
+
+/**
+ * A bounded multi-producer ring of pending journal appends, drained by a single writer thread.
+ * <p/>
+ * Producers claim a slot with a CAS on the tail sequence and publish their task by advancing the
+ * slot sequence, so they never wait on each other's monitors. Only the writer thread runs the
+ * tasks, which makes it the only thread touching file positions, the TimedBuffer and the
+ * record bookkeeping. When the ring is full producers back off until the writer frees a slot.
+ */
+final class JournalAppendRing
+{
+   /**
+    * Upper bound of tasks run under a single acquisition of the append lock, so stop and
+    * forceMoveNextFile are not starved under a constant stream of appends.
+    */
+   private static final int MAX_BATCH = 1024;
+
+   private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+   private final Runnable[] tasks;
+
+   /**
+    * For a slot at index i, sequence == position means the slot is free for the producer claiming
+    * position, and sequence == position + 1 means the task for position has been published.
+    */
+   private final AtomicLongArray sequences;
+
+   private final int mask;
+
+   private final Lock appendLock;
+
+   private final AtomicLong tail = new AtomicLong();
+
+   // only written by the writer thread
+   private long head;
+
+   private volatile long processed;
+
+   private volatile boolean writerParked;
+
+   private volatile boolean running;
+
+   private volatile Thread writer;
+
+   /**
+    * @param size       the number of slots, rounded up to the next power of two
+    * @param appendLock held by the writer thread while it is running a batch of tasks
+    */
+   JournalAppendRing(final int size, final Lock appendLock)
+   {
+      if (size <= 0)
+      {
+         throw new IllegalArgumentException("Invalid append ring size " + size);
+      }
+
+      int capacity = Integer.highestOneBit(size);
+      if (capacity < size)
+      {
+         capacity <<= 1;
+      }
+
+      this.tasks = new Runnable[capacity];
+      this.sequences = new AtomicLongArray(capacity);
+      this.mask = capacity - 1;
+      this.appendLock = appendLock;
+
+      for (int i = 0; i < capacity; i++)
+      {
+         sequences.set(i, i);
+      }
+   }
+
+   public int getCapacity()
+   {
+      return tasks.length;
+   }
+
+   public synchronized void start()
+   {
+      if (running)
+      {
+         return;
+      }
+
+      running = true;
+
+      writer = new Thread("JournalImpl::AppendWriter")
+      {
+         @Override
+         public void run()
+         {
+            writerLoop();
+         }
+      };
+      writer.setDaemon(true);
+      writer.start();
+   }
+
+   /**
+    * Runs every task already published and stops the writer thread.
+    */
+   public synchronized void stop() throws InterruptedException
+   {
+      if (!running)
+      {
+         return;
+      }
+
+      running = false;
+
+      LockSupport.unpark(writer);
+
+      writer.join();
+
+      writer = null;
+   }
+
+   /**
+    * Publishes a task for the writer thread, waiting for a free slot if the ring is full.
+    */
+   public void publish(final Runnable task)
+   {
+      int spins = 0;
+
+      while (!offer(task))
+      {
+         if (!running)
+         {
+            throw new IllegalStateException("Journal append writer is not running");
+         }
+
+         wakeUpWriter();
+
+         if (++spins < 100)
+         {
+            Thread.yield();
+         }
+         else
+         {
+            LockSupport.parkNanos(1000);
+         }
+      }
+
+      if (writerParked)
+      {
+         wakeUpWriter();
+      }
+   }
+
+   /**
+    * Waits until the writer has run every task published before this call.
+    * <p/>
+    * This must not be called from the writer thread, nor while holding the append lock.
+    */
+   public void flush()
+   {
+      final long target = tail.get();
+
+      while (processed < target)
+      {
+         if (!running && writer == null)
+         {
+            return;
+         }
+
+         wakeUpWriter();
+
+         LockSupport.parkNanos(1000);
+      }
+   }
+
+   private boolean offer(final Runnable task)
+   {
+      long position = tail.get();
+
+      while (true)
+      {
+         int index = (int) (position & mask);
+
+         long difference = sequences.get(index) - position;
+
+         if (difference == 0)
+         {
+            if (tail.compareAndSet(position, position + 1))
+            {
+               tasks[index] = task;
+               sequences.set(index, position + 1);
+               return true;
+            }
+            position = tail.get();
+         }
+         else if (difference < 0)
+         {
+            // the writer hasn't released this slot yet
+            return false;
+         }
+         else
+         {
+            position = tail.get();
+         }
+      }
+   }
+
+   private void wakeUpWriter()
+   {
+      Thread thread = writer;
+      if (thread != null)
+      {
+         LockSupport.unpark(thread);
+      }
+   }
+
+   private boolean isEmpty()
+   {
+      return sequences.get((int) (head & mask)) != head + 1;
+   }
+
+   private void writerLoop()
+   {
+      while (true)
+      {
+         if (drain() == 0)
+         {
+            if (!running)
+            {
+               // producers are gone by now (the journal holds its write lock while stopping),
+               // but run anything published before the flag was seen
+               if (isEmpty())
+               {
+                  return;
+               }
+               continue;
+            }
+
+            writerParked = true;
+            try
+            {
+               if (isEmpty() && running)
+               {
+                  LockSupport.parkNanos(this, PARK_NANOS);
+               }
+            }
+            finally
+            {
+               writerParked = false;
+            }
+         }
+      }
+   }
+
+   private int drain()
+   {
+      if (isEmpty())
+      {
+         return 0;
+      }
+
+      int count = 0;
+
+      appendLock.lock();
+      try
+      {
+         while (count < MAX_BATCH && !isEmpty())
+         {
+            int index = (int) (head & mask);
+
+            Runnable task = tasks[index];
+            tasks[index] = null;
+
+            // release the slot for the producer that will wrap around onto it
+            sequences.set(index, head + tasks.length);
+
+            head++;
+            count++;
+
+            try
+            {
+               task.run();
+            }
+            catch (Throwable e)
+            {
+               ActiveMQJournalLogger.LOGGER.errorAppendingRecord(e);
+            }
+         }
+      }
+      finally
+      {
+         appendLock.unlock();
+         processed = head;
+      }
+
+      return count;
+   }
+}
@@ -0,0 +1,1183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.api.core.Pair;
+import org.apache.activemq.core.journal.LoaderCallback;
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.utils.ConcurrentLongHashMap;
+import org.apache.activemq.utils.DataConstants;
+
+/**
+ * The state of a journal after its files up to {@link #getLastFileID()}, so a load only has to replay the files
+ * written after them.
+ * <p/>
+ * A checkpoint doesn't hold the data of the records, only where it is on the files it covers. It holds the reclaim
+ * counters of the files, the live records in the order a load hands them to its {@link LoaderCallback}, the files
+ * counting each live record and the records of the transactions still open.
+ * <p/>
+ * A checkpoint is built by restoring the previous one and replaying the files closed since then. Files reclaimed
+ * after a checkpoint was taken are simply left out when it is restored, just as a load from the files would never
+ * see them. Compacting rewrites the files a checkpoint covers, so it deletes the checkpoint.
+ */
+final class JournalCheckpoint
+{
+   private static final int VERSION = 1;
+
+   /**
+    * Appended to the journal file prefix to name the checkpoint file
+    */
+   static final String EXTENSION = ".checkpoint";
+
+   private static final byte PREPARE = 0;
+
+   private static final byte ADD = 1;
+
+   private static final byte DELETE = 2;
+
+   private final long lastFileID;
+
+   private long maxID;
+
+   private final Map<Long, FileState> files = new LinkedHashMap<Long, FileState>();
+
+   private final List<LiveRecord> liveRecords = new ArrayList<LiveRecord>();
+
+   private final List<RecordEntry> records = new ArrayList<RecordEntry>();
+
+   private final List<TransactionEntry> transactions = new ArrayList<TransactionEntry>();
+
+   private JournalCheckpoint(final long lastFileID)
+   {
+      this.lastFileID = lastFileID;
+   }
+
+   /**
+    * @return the ID of the last file the checkpoint covers
+    */
+   long getLastFileID()
+   {
+      return lastFileID;
+   }
+
+   long getMaxID()
+   {
+      return maxID;
+   }
+
+   /**
+    * A checkpoint can only be used if every file it should cover is one it knows of, the files it knows of may
+    * have been reclaimed since.
+    */
+   boolean covers(final Collection<JournalFile> journalFiles)
+   {
+      for (JournalFile file : journalFiles)
+      {
+         if (file.getFileID() <= lastFileID && !files.containsKey(file.getFileID()))
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   boolean hasData(final JournalFile file)
+   {
+      FileState state = files.get(file.getFileID());
+
+      return state != null && state.hasData;
+   }
+
+   int getLastDataPos(final JournalFile file)
+   {
+      return files.get(file.getFileID()).lastDataPos;
+   }
+
+   /**
+    * Restores the counters of the files and the live records, then hands the live records to the loader and the
+    * records of the open transactions to the replay, as the replay of the files would.
+    * @param journalFiles the files the checkpoint covers that are still there, by ID
+    */
+   void restore(final SequentialFileFactory fileFactory,
+                final Map<Long, JournalFileImpl> journalFiles,
+                final ConcurrentLongHashMap<JournalRecord> journalRecords,
+                final JournalReplay replay,
+                final LoaderCallback loadManager) throws Exception
+   {
+      List<RecordEntry> entries = restoreRecords(journalFiles, journalRecords);
+
+      byte[][] data = readData(fileFactory, journalFiles, entries);
+
+      for (int i = 0; i < entries.size(); i++)
+      {
+         RecordInfo info = entries.get(i).toRecordInfo(data[i]);
+
+         if (info.isUpdate)
+         {
+            loadManager.updateRecord(info);
+         }
+         else
+         {
+            loadManager.addRecord(info);
+         }
+      }
+
+      replay.checkID(maxID);
+
+      replayTransactions(fileFactory, journalFiles, new CallbackFactory()
+      {
+         public JournalReaderCallback newFileCallback(final JournalFile file)
+         {
+            return replay.newFileCallback(file, new AtomicBoolean());
+         }
+      });
+   }
+
+   /**
+    * Builds the checkpoint of the given files, by restoring the previous checkpoint if it still applies and
+    * replaying the files written after it.
+    * @param dataFiles the data files, in order, none of them may change while the checkpoint is built
+    * @param lastCheckpoint the previous checkpoint, or null
+    */
+   static JournalCheckpoint build(final SequentialFileFactory fileFactory,
+                                  final List<JournalFile> dataFiles,
+                                  final JournalCheckpoint lastCheckpoint) throws Exception
+   {
+      final JournalCheckpoint previous = lastCheckpoint != null && lastCheckpoint.covers(dataFiles) ? lastCheckpoint : null;
+
+      final Builder builder = new Builder(dataFiles.get(dataFiles.size() - 1).getFileID());
+
+      final Map<Long, JournalFileImpl> covered = new HashMap<Long, JournalFileImpl>();
+
+      for (JournalFile file : dataFiles)
+      {
+         JournalFileImpl fileCopy = new JournalFileImpl(file.getFile(), file.getFileID(), file.getJournalVersion());
+
+         builder.files.put(file.getFileID(), fileCopy);
+
+         if (previous != null && file.getFileID() <= previous.lastFileID)
+         {
+            covered.put(file.getFileID(), fileCopy);
+         }
+      }
+
+      if (previous != null)
+      {
+         builder.restore(fileFactory, previous, covered);
+      }
+
+      for (JournalFile file : dataFiles)
+      {
+         if (previous == null || file.getFileID() > previous.lastFileID)
+         {
+            builder.replayFile(fileFactory, file);
+         }
+      }
+
+      return builder.toCheckpoint();
+   }
+
+   /**
+    * @return the checkpoint, or null if there is none or it can't be read
+    */
+   static JournalCheckpoint read(final SequentialFileFactory fileFactory, final String fileName) throws Exception
+   {
+      SequentialFile file = fileFactory.createSequentialFile(fileName, 1);
+
+      if (!file.exists())
+      {
+         return null;
+      }
+
+      file.open(1, false);
+
+      ByteBuffer buffer = null;
+
+      try
+      {
+         final int size = (int) file.size();
+
+         if (size < DataConstants.SIZE_INT + DataConstants.SIZE_LONG)
+         {
+            return null;
+         }
+
+         buffer = fileFactory.newBuffer(size);
+
+         if (file.read(buffer) != size)
+         {
+            return null;
+         }
+
+         buffer.rewind();
+
+         int length = buffer.getInt();
+
+         if (length < 0 || length > size - DataConstants.SIZE_INT - DataConstants.SIZE_LONG)
+         {
+            return null;
+         }
+
+         byte[] body = new byte[length];
+
+         buffer.get(body);
+
+         CRC32 crc = new CRC32();
+
+         crc.update(body);
+
+         if (crc.getValue() != buffer.getLong())
+         {
+            return null;
+         }
+
+         return decode(ActiveMQBuffers.wrappedBuffer(body));
+      }
+      finally
+      {
+         file.close();
+
+         if (buffer != null)
+         {
+            fileFactory.releaseBuffer(buffer);
+         }
+      }
+   }
+
+   /**
+    * Writes the checkpoint on a temporary file renamed over the previous one once it is synced.
+    */
+   void write(final SequentialFileFactory fileFactory, final String fileName) throws Exception
+   {
+      ActiveMQBuffer body = ActiveMQBuffers.dynamicBuffer(1024);
+
+      encode(body);
+
+      byte[] bytes = new byte[body.writerIndex()];
+
+      body.getBytes(0, bytes);
+
+      CRC32 crc = new CRC32();
+
+      crc.update(bytes);
+
+      ByteBuffer buffer = fileFactory.newBuffer(DataConstants.SIZE_INT + bytes.length + DataConstants.SIZE_LONG);
+
+      buffer.putInt(bytes.length);
+
+      buffer.put(bytes);
+
+      buffer.putLong(crc.getValue());
+
+      buffer.rewind();
+
+      SequentialFile tmpFile = fileFactory.createSequentialFile(fileName + ".tmp", 1);
+
+      tmpFile.delete();
+
+      tmpFile.open(1, false);
+
+      try
+      {
+         tmpFile.writeDirect(buffer, true);
+      }
+      finally
+      {
+         tmpFile.close();
+      }
+
+      delete(fileFactory, fileName);
+
+      tmpFile.renameTo(fileName);
+   }
+
+   static void delete(final SequentialFileFactory fileFactory, final String fileName) throws Exception
+   {
+      SequentialFile file = fileFactory.createSequentialFile(fileName, 1);
+
+      if (file.exists())
+      {
+         file.delete();
+      }
+   }
+
+   /**
+    * Restores the counters of the files and the live records.
+    * @return the entries of the live records on the files still there, in load order
+    */
+   private List<RecordEntry> restoreRecords(final Map<Long, JournalFileImpl> journalFiles,
+                                            final ConcurrentLongHashMap<JournalRecord> journalRecords)
+   {
+      for (FileState state : files.values())
+      {
+         JournalFileImpl file = journalFiles.get(state.fileID);
+
+         if (file == null)
+         {
+            continue;
+         }
+
+         file.restoreCounters(state.posCount, state.liveSize);
+
+         for (int i = 0; i < state.negFileIDs.length; i++)
+         {
+            JournalFileImpl target = journalFiles.get(state.negFileIDs[i]);
+
+            // the negatives towards reclaimed files are not needed anymore
+            if (target != null)
+            {
+               file.restoreNegCount(target, state.negCounts[i]);
+            }
+         }
+      }
+
+      for (LiveRecord live : liveRecords)
+      {
+         JournalFileImpl addFile = journalFiles.get(live.addFileID);
+
+         if (addFile == null)
+         {
+            // The record was deleted and its file reclaimed after the checkpoint was taken. The replay of the files
+            // wouldn't know the record, nor count its updates
+            for (int i = 0; i < live.updateFileIDs.length; i++)
+            {
+               JournalFileImpl updateFile = journalFiles.get(live.updateFileIDs[i]);
+
+               if (updateFile != null)
+               {
+                  updateFile.decPosCount();
+                  updateFile.decSize(live.updateSizes[i]);
+               }
+            }
+
+            continue;
+         }
+
+         JournalRecord record = JournalRecord.restore(addFile, live.size);
+
+         for (int i = 0; i < live.updateFileIDs.length; i++)
+         {
+            JournalFileImpl updateFile = journalFiles.get(live.updateFileIDs[i]);
+
+            if (updateFile != null)
+            {
+               record.restoreUpdateFile(updateFile, live.updateSizes[i]);
+            }
+         }
+
+         journalRecords.put(live.id, record);
+      }
+
+      List<RecordEntry> entries = new ArrayList<RecordEntry>(records.size());
+
+      for (RecordEntry entry : records)
+      {
+         if (journalFiles.containsKey(entry.fileID))
+         {
+            entries.add(entry);
+         }
+      }
+
+      return entries;
+   }
+
+   /**
+    * Feeds the records of the open transactions, with their data, to the callbacks of their files.
+    */
+   private void replayTransactions(final SequentialFileFactory fileFactory,
+                                   final Map<Long, JournalFileImpl> journalFiles,
+                                   final CallbackFactory callbacks) throws Exception
+   {
+      List<TransactionEntry> entries = new ArrayList<TransactionEntry>();
+
+      List<RecordEntry> recordEntries = new ArrayList<RecordEntry>();
+
+      for (TransactionEntry entry : transactions)
+      {
+         if (journalFiles.containsKey(entry.fileID))
+         {
+            entries.add(entry);
+
+            if (entry.record != null)
+            {
+               recordEntries.add(entry.record);
+            }
+         }
+      }
+
+      byte[][] data = readData(fileFactory, journalFiles, recordEntries);
+
+      JournalFile lastFile = null;
+
+      JournalReaderCallback callback = null;
+
+      int recordIndex = 0;
+
+      for (TransactionEntry entry : entries)
+      {
+         JournalFile file = journalFiles.get(entry.fileID);
+
+         if (file != lastFile)
+         {
+            lastFile = file;
+            callback = callbacks.newFileCallback(file);
+         }
+
+         switch (entry.kind)
+         {
+            case ADD:
+            {
+               RecordInfo info = entry.record.toRecordInfo(data[recordIndex++]);
+
+               if (info.isUpdate)
+               {
+                  callback.onReadUpdateRecordTX(entry.transactionID, info);
+               }
+               else
+               {
+                  callback.onReadAddRecordTX(entry.transactionID, info);
+               }
+               break;
+            }
+            case DELETE:
+            {
+               callback.onReadDeleteRecordTX(entry.transactionID, entry.record.toRecordInfo(data[recordIndex++]));
+               break;
+            }
+            default:
+            {
+               callback.onReadPrepareRecord(entry.transactionID, entry.extraData, entry.numberOfRecords);
+            }
+         }
+      }
+   }
+
+   /**
+    * Reads the data of the entries. Every file is read once, from the first to the last byte needed.
+    */
+   private static byte[][] readData(final SequentialFileFactory fileFactory,
+                                    final Map<Long, JournalFileImpl> journalFiles,
+                                    final List<RecordEntry> entries) throws Exception
+   {
+      byte[][] data = new byte[entries.size()][];
+
+      Map<Long, List<Integer>> entriesByFile = new LinkedHashMap<Long, List<Integer>>();
+
+      for (int i = 0; i < entries.size(); i++)
+      {
+         RecordEntry entry = entries.get(i);
+
+         if (entry.dataLength == 0)
+         {
+            data[i] = new byte[0];
+            continue;
+         }
+
+         List<Integer> fileEntries = entriesByFile.get(entry.fileID);
+
+         if (fileEntries == null)
+         {
+            fileEntries = new ArrayList<Integer>();
+            entriesByFile.put(entry.fileID, fileEntries);
+         }
+
+         fileEntries.add(i);
+      }
+
+      for (Map.Entry<Long, List<Integer>> fileEntries : entriesByFile.entrySet())
+      {
+         SequentialFile file = journalFiles.get(fileEntries.getKey()).getFile();
+
+         int start = Integer.MAX_VALUE;
+
+         int end = 0;
+
+         for (int i : fileEntries.getValue())
+         {
+            start = Math.min(start, entries.get(i).dataPosition);
+            end = Math.max(end, entries.get(i).dataPosition + entries.get(i).dataLength);
+         }
+
+         file.open(1, false);
+
+         ByteBuffer buffer = null;
+
+         try
+         {
+            start -= start % file.getAlignment();
+
+            int length = (int) Math.min(fileFactory.calculateBlockSize(end - start), file.size() - start);
+
+            buffer = fileFactory.newBuffer(length);
+
+            buffer.limit(length);
+
+            file.position(start);
+
+            if (file.read(buffer) != length)
+            {
+               throw new IllegalStateException("Invalid read! The system couldn't read " + file.getFileName());
+            }
+
+            for (int i : fileEntries.getValue())
+            {
+               RecordEntry entry = entries.get(i);
+
+               data[i] = new byte[entry.dataLength];
+
+               buffer.position(entry.dataPosition - start);
+
+               buffer.get(data[i]);
+            }
+         }
+         finally
+         {
+            file.close();
+
+            if (buffer != null)
+            {
+               fileFactory.releaseBuffer(buffer);
+            }
+         }
+      }
+
+      return data;
+   }
+
+   private void encode(final ActiveMQBuffer buffer)
+   {
+      buffer.writeInt(VERSION);
+      buffer.writeLong(lastFileID);
+      buffer.writeLong(maxID);
+
+      buffer.writeInt(files.size());
+
+      for (FileState state : files.values())
+      {
+         buffer.writeLong(state.fileID);
+         buffer.writeBoolean(state.hasData);
+         buffer.writeInt(state.lastDataPos);
+         buffer.writeInt(state.posCount);
+         buffer.writeInt(state.liveSize);
+         buffer.writeInt(state.negFileIDs.length);
+
+         for (int i = 0; i < state.negFileIDs.length; i++)
+         {
+            buffer.writeLong(state.negFileIDs[i]);
+            buffer.writeInt(state.negCounts[i]);
+         }
+      }
+
+      buffer.writeInt(liveRecords.size());
+
+      for (LiveRecord live : liveRecords)
+      {
+         buffer.writeLong(live.id);
+         buffer.writeLong(live.addFileID);
+         buffer.writeInt(live.size);
+         buffer.writeInt(live.updateFileIDs.length);
+
+         for (int i = 0; i < live.updateFileIDs.length; i++)
+         {
+            buffer.writeLong(live.updateFileIDs[i]);
+            buffer.writeInt(live.updateSizes[i]);
+         }
+      }
+
+      buffer.writeInt(records.size());
+
+      for (RecordEntry entry : records)
+      {
+         entry.encode(buffer);
+      }
+
+      buffer.writeInt(transactions.size());
+
+      for (TransactionEntry entry : transactions)
+      {
+         buffer.writeByte(entry.kind);
+         buffer.writeLong(entry.transactionID);
+         buffer.writeLong(entry.fileID);
+
+         if (entry.kind == PREPARE)
+         {
+            buffer.writeInt(entry.numberOfRecords);
+            buffer.writeInt(entry.extraData.length);
+            buffer.writeBytes(entry.extraData);
+         }
+         else
+         {
+            entry.record.encode(buffer);
+         }
+      }
+   }
+
+   private static JournalCheckpoint decode(final ActiveMQBuffer buffer)
+   {
+      if (buffer.readInt() != VERSION)
+      {
+         return null;
+      }
+
+      JournalCheckpoint checkpoint = new JournalCheckpoint(buffer.readLong());
+
+      checkpoint.maxID = buffer.readLong();
+
+      int numberOfFiles = buffer.readInt();
+
+      for (int i = 0; i < numberOfFiles; i++)
+      {
+         FileState state = new FileState(buffer.readLong(), buffer.readBoolean(), buffer.readInt(), buffer.readInt(),
+                                         buffer.readInt(), buffer.readInt());
+
+         for (int j = 0; j < state.negFileIDs.length; j++)
+         {
+            state.negFileIDs[j] = buffer.readLong();
+            state.negCounts[j] = buffer.readInt();
+         }
+
+         checkpoint.files.put(state.fileID, state);
+      }
+
+      int numberOfLiveRecords = buffer.readInt();
+
+      for (int i = 0; i < numberOfLiveRecords; i++)
+      {
+         LiveRecord live = new LiveRecord(buffer.readLong(), buffer.readLong(), buffer.readInt(), buffer.readInt());
+
+         for (int j = 0; j < live.updateFileIDs.length; j++)
+         {
+            live.updateFileIDs[j] = buffer.readLong();
+            live.updateSizes[j] = buffer.readInt();
+         }
+
+         checkpoint.liveRecords.add(live);
+      }
+
+      int numberOfRecords = buffer.readInt();
+
+      for (int i = 0; i < numberOfRecords; i++)
+      {
+         checkpoint.records.add(RecordEntry.decode(buffer));
+      }
+
+      int numberOfTransactionEntries = buffer.readInt();
+
+      for (int i = 0; i < numberOfTransactionEntries; i++)
+      {
+         TransactionEntry entry = new TransactionEntry(buffer.readByte(), buffer.readLong(), buffer.readLong());
+
+         if (entry.kind == PREPARE)
+         {
+            entry.numberOfRecords = buffer.readInt();
+            entry.extraData = new byte[buffer.readInt()];
+            buffer.readBytes(entry.extraData);
+         }
+         else
+         {
+            entry.record = RecordEntry.decode(buffer);
+         }
+
+         checkpoint.transactions.add(entry);
+      }
+
+      return checkpoint;
+   }
+
+   private interface CallbackFactory
+   {
+      JournalReaderCallback newFileCallback(JournalFile file);
+   }
+
+   /**
+    * Replays the files into a state of its own, keeping where every live record and open transaction record is.
+    */
+   private static final class Builder implements JournalRecordProvider, LoaderCallback
+   {
+      private final long lastFileID;
+
+      private final Map<Long, JournalFileImpl> files = new LinkedHashMap<Long, JournalFileImpl>();
+
+      private final Map<Long, Boolean> hasData = new HashMap<Long, Boolean>();
+
+      private final Map<Long, Integer> lastDataPos = new HashMap<Long, Integer>();
+
+      private final ConcurrentLongHashMap<JournalRecord> journalRecords = new ConcurrentLongHashMap<JournalRecord>();
+
+      private final ConcurrentLongHashMap<JournalTransaction> journalTransactions = new ConcurrentLongHashMap<JournalTransaction>();
+
+      private final JournalReplay replay = new JournalReplay(this, journalTransactions, this);
+
+      // where the records handed to the loader were read
+      private final Map<RecordInfo, RecordEntry> locations = new IdentityHashMap<RecordInfo, RecordEntry>();
+
+      // the records handed to the loader and not deleted, by record ID
+      private final Map<Long, List<RecordEntry>> liveEntries = new HashMap<Long, List<RecordEntry>>();
+
+      private long sequence;
+
+      // the records of the open transactions, in the order they were read
+      private final Map<Long, List<TransactionEntry>> openTransactions = new LinkedHashMap<Long, List<TransactionEntry>>();
+
+      private Builder(final long lastFileID)
+      {
+         this.lastFileID = lastFileID;
+      }
+
+      void restore(final SequentialFileFactory fileFactory,
+                   final JournalCheckpoint previous,
+                   final Map<Long, JournalFileImpl> covered) throws Exception
+      {
+         for (RecordEntry entry : previous.restoreRecords(covered, journalRecords))
+         {
+            addLiveEntry(entry);
+         }
+
+         replay.checkID(previous.maxID);
+
+         for (Map.Entry<Long, JournalFileImpl> file : covered.entrySet())
+         {
+            FileState state = previous.files.get(file.getKey());
+
+            hasData.put(file.getKey(), state.hasData);
+
+            lastDataPos.put(file.getKey(), state.lastDataPos);
+         }
+
+         previous.replayTransactions(fileFactory, covered, new CallbackFactory()
+         {
+            public JournalReaderCallback newFileCallback(final JournalFile file)
+            {
+               return fileCallback(file, new AtomicBoolean());
+            }
+         });
+      }
+
+      void replayFile(final SequentialFileFactory fileFactory, final JournalFile file) throws Exception
+      {
+         JournalFile fileCopy = files.get(file.getFileID());
+
+         AtomicBoolean fileHasData = new AtomicBoolean();
+
+         int fileLastDataPos = JournalImpl.readJournalFile(fileFactory, fileCopy, fileCallback(fileCopy, fileHasData));
+
+         hasData.put(file.getFileID(), fileHasData.get());
+
+         lastDataPos.put(file.getFileID(), fileLastDataPos);
+      }
+
+      JournalCheckpoint toCheckpoint()
+      {
+         JournalCheckpoint checkpoint = new JournalCheckpoint(lastFileID);
+
+         checkpoint.maxID = replay.getMaxID();
+
+         for (List<TransactionEntry> entries : openTransactions.values())
+         {
+            checkpoint.transactions.addAll(entries);
+         }
+
+         // The open transactions are read again when the checkpoint is restored, their counts are taken out
+         for (JournalTransaction transaction : journalTransactions.values())
+         {
+            transaction.forget();
+         }
+
+         for (JournalFileImpl file : files.values())
+         {
+            FileState state = new FileState(file.getFileID(), hasData.get(file.getFileID()),
+                                            lastDataPos.get(file.getFileID()), file.getPosCount(),
+                                            file.getLiveSize(), file.getNegCounts().size());
+
+            int i = 0;
+
+            for (Map.Entry<JournalFile, AtomicInteger> negCount : file.getNegCounts().entrySet())
+            {
+               state.negFileIDs[i] = negCount.getKey().getFileID();
+               state.negCounts[i] = negCount.getValue().get();
+               i++;
+            }
+
+            checkpoint.files.put(file.getFileID(), state);
+         }
+
+         for (long id : journalRecords.keys())
+         {
+            JournalRecord record = journalRecords.get(id);
+
+            List<Pair<JournalFile, Integer>> updates = record.getUpdateFiles();
+
+            LiveRecord live = new LiveRecord(id, record.getAddFile().getFileID(), record.getSize(),
+                                             updates == null ? 0 : updates.size());
+
+            for (int i = 0; i < live.updateFileIDs.length; i++)
+            {
+               live.updateFileIDs[i] = updates.get(i).getA().getFileID();
+               live.updateSizes[i] = updates.get(i).getB();
+            }
+
+            checkpoint.liveRecords.add(live);
+         }
+
+         for (List<RecordEntry> entries : liveEntries.values())
+         {
+            checkpoint.records.addAll(entries);
+         }
+
+         Collections.sort(checkpoint.records, new Comparator<RecordEntry>()
+         {
+            public int compare(final RecordEntry entry1, final RecordEntry entry2)
+            {
+               return entry1.sequence < entry2.sequence ? -1 : entry1.sequence == entry2.sequence ? 0 : 1;
+            }
+         });
+
+         return checkpoint;
+      }
+
+      /**
+       * The replay callback of a file, noting where the records are before they are applied.
+       */
+      private JournalReaderCallback fileCallback(final JournalFile file, final AtomicBoolean fileHasData)
+      {
+         final JournalReaderCallback delegate = replay.newFileCallback(file, fileHasData);
+
+         return new JournalReaderCallback()
+         {
+            public void onReadAddRecord(final RecordInfo info) throws Exception
+            {
+               locations.put(info, new RecordEntry(info, file.getFileID()));
+               delegate.onReadAddRecord(info);
+            }
+
+            public void onReadUpdateRecord(final RecordInfo info) throws Exception
+            {
+               locations.put(info, new RecordEntry(info, file.getFileID()));
+               delegate.onReadUpdateRecord(info);
+            }
+
+            public void onReadDeleteRecord(final long recordID) throws Exception
+            {
+               delegate.onReadDeleteRecord(recordID);
+            }
+
+            public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+            {
+               addTransactionRecord(ADD, transactionID, info);
+               delegate.onReadAddRecordTX(transactionID, info);
+            }
+
+            public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+            {
+               addTransactionRecord(ADD, transactionID, info);
+               delegate.onReadUpdateRecordTX(transactionID, info);
+            }
+
+            public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+            {
+               addTransactionRecord(DELETE, transactionID, info);
+               delegate.onReadDeleteRecordTX(transactionID, info);
+            }
+
+            public void onReadPrepareRecord(final long transactionID,
+                                            final byte[] extraData,
+                                            final int numberOfRecords) throws Exception
+            {
+               TransactionEntry entry = new TransactionEntry(PREPARE, transactionID, file.getFileID());
+               entry.numberOfRecords = numberOfRecords;
+               entry.extraData = extraData;
+               getOpenTransaction(transactionID).add(entry);
+
+               delegate.onReadPrepareRecord(transactionID, extraData, numberOfRecords);
+            }
+
+            public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+            {
+               openTransactions.remove(transactionID);
+               delegate.onReadCommitRecord(transactionID, numberOfRecords);
+            }
+
+            public void onReadRollbackRecord(final long transactionID) throws Exception
+            {
+               openTransactions.remove(transactionID);
+               delegate.onReadRollbackRecord(transactionID);
+            }
+
+            public void markAsDataFile(final JournalFile file)
+            {
+               delegate.markAsDataFile(file);
+            }
+
+            private void addTransactionRecord(final byte kind, final long transactionID, final RecordInfo info)
+            {
+               RecordEntry record = new RecordEntry(info, file.getFileID());
+
+               TransactionEntry entry = new TransactionEntry(kind, transactionID, file.getFileID());
+               entry.record = record;
+               getOpenTransaction(transactionID).add(entry);
+
+               locations.put(info, record);
+            }
+         };
+      }
+
+      private List<TransactionEntry> getOpenTransaction(final long transactionID)
+      {
+         List<TransactionEntry> entries = openTransactions.get(transactionID);
+
+         if (entries == null)
+         {
+            entries = new ArrayList<TransactionEntry>();
+            openTransactions.put(transactionID, entries);
+         }
+
+         return entries;
+      }
+
+      private void addLiveEntry(final RecordEntry entry)
+      {
+         List<RecordEntry> entries = liveEntries.get(entry.id);
+
+         if (entries == null)
+         {
+            entries = new ArrayList<RecordEntry>(1);
+            liveEntries.put(entry.id, entries);
+         }
+
+         entry.sequence = sequence++;
+
+         entries.add(entry);
+      }
+
+      // JournalRecordProvider implementation
+
+      public JournalCompactor getCompactor()
+      {
+         return null;
+      }
+
+      public ConcurrentLongHashMap<JournalRecord> getRecords()
+      {
+         return journalRecords;
+      }
+
+      // LoaderCallback implementation, what the replay hands to the loader
+
+      public void addRecord(final RecordInfo info)
+      {
+         addLiveEntry(locations.remove(info));
+      }
+
+      public void updateRecord(final RecordInfo info)
+      {
+         addLiveEntry(locations.remove(info));
+      }
+
+      public void deleteRecord(final long id)
+      {
+         liveEntries.remove(id);
+      }
+
+      public void addPreparedTransaction(final PreparedTransactionInfo preparedTransaction)
+      {
+      }
+
+      public void failedTransaction(final long transactionID,
+                                    final List<RecordInfo> records,
+                                    final List<RecordInfo> recordsToDelete)
+      {
+      }
+   }
+
+   private static final class FileState
+   {
+      final long fileID;
+
+      final boolean hasData;
+
+      final int lastDataPos;
+
+      final int posCount;
+
+      final int liveSize;
+
+      final long[] negFileIDs;
+
+      final int[] negCounts;
+
+      FileState(final long fileID,
+                final boolean hasData,
+                final int lastDataPos,
+                final int posCount,
+                final int liveSize,
+                final int numberOfNegCounts)
+      {
+         this.fileID = fileID;
+         this.hasData = hasData;
+         this.lastDataPos = lastDataPos;
+         this.posCount = posCount;
+         this.liveSize = liveSize;
+         negFileIDs = new long[numberOfNegCounts];
+         negCounts = new int[numberOfNegCounts];
+      }
+   }
+
+   /**
+    * The files counting a live record, as its {@link JournalRecord}
+    */
+   private static final class LiveRecord
+   {
+      final long id;
+
+      final long addFileID;
+
+      final int size;
+
+      final long[] updateFileIDs;
+
+      final int[] updateSizes;
+
+      LiveRecord(final long id, final long addFileID, final int size, final int numberOfUpdates)
+      {
+         this.id = id;
+         this.addFileID = addFileID;
+         this.size = size;
+         updateFileIDs = new long[numberOfUpdates];
+         updateSizes = new int[numberOfUpdates];
+      }
+   }
+
+   /**
+    * A record as it is handed to the loader, with where its data is
+    */
+   private static final class RecordEntry
+   {
+      final long id;
+
+      final byte userRecordType;
+
+      final boolean isUpdate;
+
+      final short compactCount;
+
+      final long fileID;
+
+      final int dataPosition;
+
+      final int dataLength;
+
+      final int encodeSize;
+
+      long sequence;
+
+      RecordEntry(final RecordInfo info, final long fileID)
+      {
+         this(info.id, info.userRecordType, info.isUpdate, info.compactCount, fileID, info.dataPosition,
+              info.data.length, info.encodeSize);
+      }
+
+      RecordEntry(final long id,
+                  final byte userRecordType,
+                  final boolean isUpdate,
+                  final short compactCount,
+                  final long fileID,
+                  final int dataPosition,
+                  final int dataLength,
+                  final int encodeSize)
+      {
+         this.id = id;
+         this.userRecordType = userRecordType;
+         this.isUpdate = isUpdate;
+         this.compactCount = compactCount;
+         this.fileID = fileID;
+         this.dataPosition = dataPosition;
+         this.dataLength = dataLength;
+         this.encodeSize = encodeSize;
+      }
+
+      RecordInfo toRecordInfo(final byte[] data)
+      {
+         RecordInfo info = new RecordInfo(id, userRecordType, data, isUpdate, compactCount);
+         info.encodeSize = encodeSize;
+         info.dataPosition = dataPosition;
+         return info;
+      }
+
+      void encode(final ActiveMQBuffer buffer)
+      {
+         buffer.writeLong(id);
+         buffer.writeByte(userRecordType);
+         buffer.writeBoolean(isUpdate);
+         buffer.writeShort(compactCount);
+         buffer.writeLong(fileID);
+         buffer.writeInt(dataPosition);
+         buffer.writeInt(dataLength);
+         buffer.writeInt(encodeSize);
+      }
+
+      static RecordEntry decode(final ActiveMQBuffer buffer)
+      {
+         return new RecordEntry(buffer.readLong(), buffer.readByte(), buffer.readBoolean(), buffer.readShort(),
+                                buffer.readLong(), buffer.readInt(), buffer.readInt(), buffer.readInt());
+      }
+   }
+
+   /**
+    * A record of a transaction still open
+    */
+   private static final class TransactionEntry
+   {
+      final byte kind;
+
+      final long transactionID;
+
+      final long fileID;
+
+      RecordEntry record;
+
+      int numberOfRecords;
+
+      byte[] extraData;
+
+      TransactionEntry(final byte kind, final long transactionID, final long fileID)
+      {
+         this.kind = kind;
+         this.transactionID = transactionID;
+         this.fileID = fileID;
+      }
+   }
+}
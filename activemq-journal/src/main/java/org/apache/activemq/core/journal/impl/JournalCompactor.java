@@ -17,12 +17,8 @@
 package org.apache.activemq.core.journal.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.activemq.api.core.ActiveMQBuffer;
 import org.apache.activemq.api.core.ActiveMQBuffers;
@@ -39,6 +35,7 @@ import org.apache.activemq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.apache.activemq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.apache.activemq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.ConcurrentLongHashMap;
 
 public class JournalCompactor extends AbstractJournalUpdateTask implements JournalRecordProvider
 {
@@ -48,11 +45,11 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    private static final short COMPACT_SPLIT_LINE = 2;
 
    // Snapshot of transactions that were pending when the compactor started
-   private final Map<Long, PendingTransaction> pendingTransactions = new ConcurrentHashMap<Long, PendingTransaction>();
+   private final ConcurrentLongHashMap<PendingTransaction> pendingTransactions = new ConcurrentLongHashMap<PendingTransaction>();
 
-   private final Map<Long, JournalRecord> newRecords = new HashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> newRecords = new ConcurrentLongHashMap<JournalRecord>();
 
-   private final Map<Long, JournalTransaction> newTransactions = new HashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> newTransactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    /** Commands that happened during compacting
     *  We can't process any counts during compacting, as we won't know in what files the records are taking place, so
@@ -126,12 +123,12 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       return newDataFiles;
    }
 
-   public Map<Long, JournalRecord> getNewRecords()
+   public ConcurrentLongHashMap<JournalRecord> getNewRecords()
    {
       return newRecords;
    }
 
-   public Map<Long, JournalTransaction> getNewTransactions()
+   public ConcurrentLongHashMap<JournalTransaction> getNewTransactions()
    {
       return newTransactions;
    }
@@ -139,7 +136,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    public JournalCompactor(final SequentialFileFactory fileFactory,
                            final JournalImpl journal,
                            final JournalFilesRepository filesRepository,
-                           final Set<Long> recordsSnapshot,
+                           final ConcurrentLongHashMap<?> recordsSnapshot,
                            final long firstFileID)
    {
       super(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID);
@@ -299,6 +296,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                 info.getUserRecordType(),
                                                                 new ByteArrayEncoding(info.data));
          addRecord.setCompactCount((short)(info.compactCount + 1));
+         addRecord.setPacked(journal.isPackedRecords());
 
          checkSize(addRecord.getEncodeSize(), info.compactCount);
 
@@ -321,6 +319,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                new ByteArrayEncoding(info.data));
 
          record.setCompactCount((short)(info.compactCount + 1));
+         record.setPacked(journal.isPackedRecords());
 
          checkSize(record.getEncodeSize(), info.compactCount);
 
@@ -375,6 +374,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                   info.id,
                                                                   new ByteArrayEncoding(info.data));
 
+         record.setPacked(journal.isPackedRecords());
+
          checkSize(record.getEncodeSize());
 
          writeEncoder(record);
@@ -444,6 +445,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                    new ByteArrayEncoding(info.data));
 
          updateRecord.setCompactCount((short)(info.compactCount + 1));
+         updateRecord.setPacked(journal.isPackedRecords());
 
          checkSize(updateRecord.getEncodeSize(), info.compactCount);
 
@@ -475,6 +477,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                        new ByteArrayEncoding(info.data));
 
          updateRecordTX.setCompactCount((short)(info.compactCount + 1));
+         updateRecordTX.setPacked(journal.isPackedRecords());
 
          checkSize(updateRecordTX.getEncodeSize(), info.compactCount);
 
@@ -628,7 +631,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    }
 
    @Override
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return newRecords;
    }
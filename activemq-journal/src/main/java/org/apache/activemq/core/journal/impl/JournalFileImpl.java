@@ -16,6 +16,7 @@
  */
 package org.apache.activemq.core.journal.impl;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -45,6 +46,9 @@ public class JournalFileImpl implements JournalFile
 
    private final Map<JournalFile, AtomicInteger> negCounts = new ConcurrentHashMap<JournalFile, AtomicInteger>();
 
+   // Set once the file is closed, a transaction committed later can still add negatives to it
+   private volatile Reclaimer reclaimer;
+
    public JournalFileImpl(final SequentialFile file, final long fileID, final int version)
    {
       this.file = file;
@@ -79,7 +83,19 @@ public class JournalFileImpl implements JournalFile
       {
          totalNegativeToOthers.incrementAndGet();
       }
-      getOrCreateNegCount(file).incrementAndGet();
+
+      Reclaimer tracker;
+
+      synchronized (negCounts)
+      {
+         getOrCreateNegCount(file).incrementAndGet();
+         tracker = reclaimer;
+      }
+
+      if (tracker != null)
+      {
+         tracker.negativeAdded(this, file);
+      }
    }
 
    public int getNegCount(final JournalFile file)
@@ -109,6 +125,64 @@ public class JournalFileImpl implements JournalFile
    public void decPosCount()
    {
       posCount.decrementAndGet();
+
+      Reclaimer tracker = reclaimer;
+
+      if (tracker != null)
+      {
+         tracker.positiveRemoved(this);
+      }
+   }
+
+   /**
+    * Sets the counters of a file restored from a checkpoint, before any record is applied to it.
+    */
+   void restoreCounters(final int posCount, final int liveSize)
+   {
+      this.posCount.set(posCount);
+      liveBytes.set(liveSize);
+   }
+
+   /**
+    * Adds the negatives a file restored from a checkpoint has towards another file.
+    */
+   void restoreNegCount(final JournalFile file, final int count)
+   {
+      if (file != this)
+      {
+         totalNegativeToOthers.addAndGet(count);
+      }
+      getOrCreateNegCount(file).addAndGet(count);
+   }
+
+   /**
+    * @return the negatives this file has towards each file
+    */
+   Map<JournalFile, AtomicInteger> getNegCounts()
+   {
+      return negCounts;
+   }
+
+   /**
+    * Reports the negatives added from now on to the reclaimer.
+    *
+    * @return the negatives this file has towards each file so far
+    */
+   Map<JournalFile, Integer> track(final Reclaimer tracker)
+   {
+      synchronized (negCounts)
+      {
+         reclaimer = tracker;
+
+         Map<JournalFile, Integer> counts = new HashMap<JournalFile, Integer>();
+
+         for (Entry<JournalFile, AtomicInteger> entry : negCounts.entrySet())
+         {
+            counts.put(entry.getKey(), entry.getValue().intValue());
+         }
+
+         return counts;
+      }
    }
 
    public long getOffset()
@@ -458,11 +458,11 @@ public class JournalFilesRepository
       return freeFiles;
    }
 
-   public JournalFile getFreeFile()
+   public JournalFile getFreeFile() throws Exception
    {
       JournalFile file = freeFiles.remove();
       freeFilesCount.getAndDecrement();
-      return file;
+      return checkFormatVersion(file);
    }
 
    // Opened files operations =======================================
@@ -556,6 +556,8 @@ public class JournalFilesRepository
       if (nextFile != null)
       {
          freeFilesCount.getAndDecrement();
+
+         nextFile = checkFormatVersion(nextFile);
       }
 
       if (nextFile == null)
@@ -670,7 +672,7 @@ public class JournalFilesRepository
       {
          sequentialFile.fill(0, fileSize, JournalImpl.FILL_CHARACTER);
 
-         JournalImpl.initFileHeader(fileFactory, sequentialFile, userVersion, fileID);
+         JournalImpl.initFileHeader(fileFactory, sequentialFile, journal.getFormatVersion(), userVersion, fileID);
       }
 
       long position = sequentialFile.position();
@@ -697,7 +699,7 @@ public class JournalFilesRepository
          sequentialFile.position(position);
       }
 
-      return new JournalFileImpl(sequentialFile, fileID, JournalImpl.FORMAT_VERSION);
+      return new JournalFileImpl(sequentialFile, fileID, journal.getFormatVersion());
    }
 
    /**
@@ -740,6 +742,19 @@ public class JournalFilesRepository
       }
    }
 
+   /**
+    * A free file initialized while packed records were set differently gets the header of the current setting.
+    */
+   private JournalFile checkFormatVersion(final JournalFile file) throws Exception
+   {
+      if (file.getJournalVersion() == journal.getFormatVersion())
+      {
+         return file;
+      }
+
+      return reinitializeFile(file);
+   }
+
    // Discard the old JournalFile and set it with a new ID
    private JournalFile reinitializeFile(final JournalFile file) throws Exception
    {
@@ -749,9 +764,11 @@ public class JournalFilesRepository
 
       sf.open(1, false);
 
-      int position = JournalImpl.initFileHeader(fileFactory, sf, userVersion, newFileID);
+      int formatVersion = journal.getFormatVersion();
+
+      int position = JournalImpl.initFileHeader(fileFactory, sf, formatVersion, userVersion, newFileID);
 
-      JournalFile jf = new JournalFileImpl(sf, newFileID, JournalImpl.FORMAT_VERSION);
+      JournalFile jf = new JournalFileImpl(sf, newFileID, formatVersion);
 
       sf.position(position);
 
@@ -19,18 +19,16 @@ package org.apache.activemq.core.journal.impl;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -38,18 +36,19 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.api.core.ActiveMQBuffer;
 import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.api.core.ActiveMQExceptionType;
 import org.apache.activemq.api.core.Pair;
 import org.apache.activemq.core.journal.EncodingSupport;
 import org.apache.activemq.core.journal.IOAsyncTask;
 import org.apache.activemq.core.journal.IOCompletion;
 import org.apache.activemq.core.journal.JournalLoadInformation;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.journal.LoaderCallback;
 import org.apache.activemq.core.journal.PreparedTransactionInfo;
 import org.apache.activemq.core.journal.RecordInfo;
@@ -66,9 +65,11 @@ import org.apache.activemq.core.journal.impl.dataformat.JournalDeleteRecord;
 import org.apache.activemq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.apache.activemq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.apache.activemq.core.journal.impl.dataformat.JournalRollbackRecordTX;
+import org.apache.activemq.core.journal.impl.dataformat.VariableLengthEncoding;
 import org.apache.activemq.journal.ActiveMQJournalBundle;
 import org.apache.activemq.journal.ActiveMQJournalLogger;
 import org.apache.activemq.utils.ConcurrentHashSet;
+import org.apache.activemq.utils.ConcurrentLongHashMap;
 import org.apache.activemq.utils.DataConstants;
 
 /**
@@ -83,7 +84,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    public static final int FORMAT_VERSION = 2;
 
-   private static final int[] COMPATIBLE_VERSIONS = new int[]{1};
+   // Version 3 files may hold packed records, they are only written with packed records enabled so that
+   // the journal stays readable by older versions otherwise
+   public static final int PACKED_FORMAT_VERSION = 3;
+
+   private static final int[] COMPATIBLE_VERSIONS = new int[]{1, JournalImpl.PACKED_FORMAT_VERSION};
 
    // Static --------------------------------------------------------
    private static final boolean trace = ActiveMQJournalLogger.LOGGER.isTraceEnabled();
@@ -158,6 +163,25 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    public static final byte ROLLBACK_RECORD = 19;
 
+   // Packed forms of the add, update and delete records: same layout, but the transaction ID, the
+   // record ID and the record size are written with a variable length
+
+   public static final int SIZE_PACKED_RECORD = JournalImpl.BASIC_SIZE + DataConstants.SIZE_BYTE /* + IDs, size and record.length */;
+
+   public static final byte ADD_RECORD_PACKED = 21;
+
+   public static final byte UPDATE_RECORD_PACKED = 22;
+
+   public static final byte ADD_RECORD_TX_PACKED = 23;
+
+   public static final byte UPDATE_RECORD_TX_PACKED = 24;
+
+   public static final byte DELETE_RECORD_TX_PACKED = 25;
+
+   public static final byte DELETE_RECORD_PACKED = 26;
+
+   private static final byte PACKED_RECORD_OFFSET = JournalImpl.ADD_RECORD_PACKED - JournalImpl.ADD_RECORD;
+
    protected static final byte FILL_CHARACTER = (byte) 'J';
 
    // Attributes ----------------------------------------------------
@@ -176,17 +200,25 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    private final JournalFilesRepository filesRepository;
 
-   // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+   // Compacting replaces this structure: the live map becomes the compactor's snapshot, and the compacted records
+   // become the live map once compacting is done
+   private volatile ConcurrentLongHashMap<JournalRecord> records = new ConcurrentLongHashMap<JournalRecord>();
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalTransaction> transactions = new ConcurrentHashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> transactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    // This will be set only while the JournalCompactor is being executed
    private volatile JournalCompactor compactor;
 
    private final AtomicBoolean compactorRunning = new AtomicBoolean();
 
+   // Statistics of the time appends were blocked by compacting, only written by compact()
+   private volatile long compactCount;
+
+   private volatile long lastCompactPauseTime;
+
+   private volatile long maxCompactPauseTime;
+
    private ExecutorService filesExecutor = null;
 
    private ExecutorService compactorExecutor = null;
@@ -214,6 +246,33 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    private final Reclaimer reclaimer = new Reclaimer();
 
+   // 0 means appends are done by the calling thread under lockAppend
+   private int appendRingSize = 0;
+
+   // When set, appends are published here and written by a single writer thread
+   private volatile JournalAppendRing appendRing;
+
+   // number of threads reading and validating files during load, 1 reads them on the loading thread
+   private int loadParallelism = 1;
+
+   private volatile boolean packedRecords;
+
+   // a checkpoint is written every time this number of files is filled, 0 disables checkpoints
+   private volatile int checkpointFiles;
+
+   // files filled since the last checkpoint was scheduled, only changed when moving to the next file
+   private int filesSinceCheckpoint;
+
+   private volatile JournalStatistics statistics;
+
+   // The non transactional writes of the records added since the last flush of the buffer, by record ID.
+   // A record deleted before the buffer is flushed is removed from the buffer instead of being written.
+   // Only used under lockAppend
+   private final Map<Long, BufferedWrites> bufferedRecords = new HashMap<Long, BufferedWrites>();
+
+   // The buffer flush these writes belong to
+   private int bufferedGeneration = -1;
+
    // Constructors --------------------------------------------------
 
    public JournalImpl(final int fileSize,
@@ -285,6 +344,98 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return "JournalImpl(state=" + state + ", currentFile=[" + currentFile + "], hash=" + super.toString() + ")";
    }
 
+   /**
+    * Sets the number of slots of the ring where appends are published for the journal writer
+    * thread, or 0 to have every caller write its own records under the append lock.
+    * <p/>
+    * The ring is only used if the file factory supports callbacks, and it takes effect the next
+    * time the journal is started.
+    */
+   public void setAppendRingSize(final int appendRingSize)
+   {
+      if (appendRingSize < 0)
+      {
+         throw new IllegalArgumentException("Invalid append ring size " + appendRingSize);
+      }
+      this.appendRingSize = appendRingSize;
+   }
+
+   public int getAppendRingSize()
+   {
+      return appendRingSize;
+   }
+
+   /**
+    * Sets the number of threads used to read and validate the journal files while loading. The
+    * records are still reconciled on the loading thread, in file order.
+    */
+   public void setLoadParallelism(final int loadParallelism)
+   {
+      if (loadParallelism < 1)
+      {
+         throw new IllegalArgumentException("Invalid load parallelism " + loadParallelism);
+      }
+      this.loadParallelism = loadParallelism;
+   }
+
+   public int getLoadParallelism()
+   {
+      return loadParallelism;
+   }
+
+   /**
+    * Writes the add, update and delete records in their packed form, with variable length IDs and
+    * sizes. Both forms are always readable, whatever this setting was when the files were written.
+    */
+   public void setPackedRecords(final boolean packedRecords)
+   {
+      this.packedRecords = packedRecords;
+   }
+
+   public boolean isPackedRecords()
+   {
+      return packedRecords;
+   }
+
+   /**
+    * The version of the files written by this journal.
+    */
+   int getFormatVersion()
+   {
+      return packedRecords ? JournalImpl.PACKED_FORMAT_VERSION : JournalImpl.FORMAT_VERSION;
+   }
+
+   /**
+    * Writes a checkpoint of the journal in the background every time this number of files is filled,
+    * 0 disables checkpoints. A load starts from the checkpoint and only replays the files written after it.
+    */
+   public void setCheckpointFiles(final int checkpointFiles)
+   {
+      if (checkpointFiles < 0)
+      {
+         throw new IllegalArgumentException("Invalid checkpoint files " + checkpointFiles);
+      }
+      this.checkpointFiles = checkpointFiles;
+   }
+
+   public int getCheckpointFiles()
+   {
+      return checkpointFiles;
+   }
+
+   /**
+    * Records the time every append with a callback takes to complete, null to disable it.
+    */
+   public void setStatistics(final JournalStatistics statistics)
+   {
+      this.statistics = statistics;
+   }
+
+   public JournalStatistics getStatistics()
+   {
+      return statistics;
+   }
+
    public void runDirectJournalBlast() throws Exception
    {
       final int numIts = 100000000;
@@ -346,7 +497,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       latch.await();
    }
 
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return records;
    }
@@ -361,6 +512,30 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return compactor;
    }
 
+   @Override
+   public long getCompactCount()
+   {
+      return compactCount;
+   }
+
+   @Override
+   public long getLastCompactPauseTime()
+   {
+      return lastCompactPauseTime;
+   }
+
+   @Override
+   public long getMaxCompactPauseTime()
+   {
+      return maxCompactPauseTime;
+   }
+
+   @Override
+   public int getReclaimableFilesCount()
+   {
+      return reclaimer.getReclaimableCount();
+   }
+
    /**
     * this method is used internally only however tools may use it to maintenance.
     * It won't be part of the interface as the tools should be specific to the implementation
@@ -431,7 +606,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             byte recordType = wholeFileBuffer.get();
 
-            if (recordType < JournalImpl.ADD_RECORD || recordType > JournalImpl.ROLLBACK_RECORD)
+            final boolean packed = JournalImpl.isPackedRecord(recordType);
+
+            if (packed)
+            {
+               recordType -= JournalImpl.PACKED_RECORD_OFFSET;
+            }
+            else if (recordType < JournalImpl.ADD_RECORD || recordType > JournalImpl.ROLLBACK_RECORD)
             {
                // I - We scan for any valid record on the file. If a hole
                // happened on the middle of the file we keep looking until all
@@ -462,7 +643,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             short compactCount = 0;
 
-            if (file.getJournalVersion() >= 2)
+            if (packed || file.getJournalVersion() >= 2)
             {
                if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_BYTE))
                {
@@ -479,14 +660,28 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             if (JournalImpl.isTransaction(recordType))
             {
-               if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_LONG))
+               if (packed)
                {
-                  wholeFileBuffer.position(pos + 1);
-                  reader.markAsDataFile(file);
-                  continue;
+                  if (VariableLengthEncoding.length(wholeFileBuffer, journalFileSize) < 0)
+                  {
+                     wholeFileBuffer.position(pos + 1);
+                     reader.markAsDataFile(file);
+                     continue;
+                  }
+
+                  transactionID = VariableLengthEncoding.read(wholeFileBuffer);
                }
+               else
+               {
+                  if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_LONG))
+                  {
+                     wholeFileBuffer.position(pos + 1);
+                     reader.markAsDataFile(file);
+                     continue;
+                  }
 
-               transactionID = wholeFileBuffer.getLong();
+                  transactionID = wholeFileBuffer.getLong();
+               }
             }
 
             long recordID = 0;
@@ -494,14 +689,28 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             // If prepare or commit
             if (!JournalImpl.isCompleteTransaction(recordType))
             {
-               if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_LONG))
+               if (packed)
                {
-                  wholeFileBuffer.position(pos + 1);
-                  reader.markAsDataFile(file);
-                  continue;
+                  if (VariableLengthEncoding.length(wholeFileBuffer, journalFileSize) < 0)
+                  {
+                     wholeFileBuffer.position(pos + 1);
+                     reader.markAsDataFile(file);
+                     continue;
+                  }
+
+                  recordID = VariableLengthEncoding.read(wholeFileBuffer);
                }
+               else
+               {
+                  if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_LONG))
+                  {
+                     wholeFileBuffer.position(pos + 1);
+                     reader.markAsDataFile(file);
+                     continue;
+                  }
 
-               recordID = wholeFileBuffer.getLong();
+                  recordID = wholeFileBuffer.getLong();
+               }
             }
 
             // We use the size of the record to validate the health of the
@@ -518,16 +727,41 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             byte[] record = null;
 
+            int dataPosition = 0;
+
             if (JournalImpl.isContainsBody(recordType))
             {
-               if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_INT))
+               if (packed)
                {
-                  wholeFileBuffer.position(pos + 1);
-                  reader.markAsDataFile(file);
-                  continue;
+                  if (VariableLengthEncoding.length(wholeFileBuffer, journalFileSize) < 0)
+                  {
+                     wholeFileBuffer.position(pos + 1);
+                     reader.markAsDataFile(file);
+                     continue;
+                  }
+
+                  long readSize = VariableLengthEncoding.read(wholeFileBuffer);
+
+                  if (readSize < 0 || readSize > journalFileSize)
+                  {
+                     wholeFileBuffer.position(pos + 1);
+                     reader.markAsDataFile(file);
+                     continue;
+                  }
+
+                  variableSize = (int) readSize;
                }
+               else
+               {
+                  if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_INT))
+                  {
+                     wholeFileBuffer.position(pos + 1);
+                     reader.markAsDataFile(file);
+                     continue;
+                  }
 
-               variableSize = wholeFileBuffer.getInt();
+                  variableSize = wholeFileBuffer.getInt();
+               }
 
                if (recordType != JournalImpl.DELETE_RECORD_TX)
                {
@@ -548,6 +782,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
                record = new byte[variableSize];
 
+               dataPosition = wholeFileBuffer.position();
+
                wholeFileBuffer.get(record);
             }
 
@@ -578,7 +814,17 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                variableSize = 0;
             }
 
-            int recordSize = JournalImpl.getRecordSize(recordType, file.getJournalVersion());
+            int recordSize;
+
+            if (packed)
+            {
+               // the fixed part is what was read so far plus the checkSize
+               recordSize = wholeFileBuffer.position() - pos - variableSize + DataConstants.SIZE_INT;
+            }
+            else
+            {
+               recordSize = JournalImpl.getRecordSize(recordType, file.getJournalVersion());
+            }
 
             // VI - this is completing V, We will validate the size at the end
             // of the record,
@@ -648,17 +894,26 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             // At this point everything is checked. So we relax and just load
             // the data now.
 
+            // the size of the record on the file, packed or not
+            final int encodeSize = recordSize + variableSize;
+
             switch (recordType)
             {
                case ADD_RECORD:
                {
-                  reader.onReadAddRecord(new RecordInfo(recordID, userRecordType, record, false, compactCount));
+                  RecordInfo info = new RecordInfo(recordID, userRecordType, record, false, compactCount);
+                  info.encodeSize = encodeSize;
+                  info.dataPosition = dataPosition;
+                  reader.onReadAddRecord(info);
                   break;
                }
 
                case UPDATE_RECORD:
                {
-                  reader.onReadUpdateRecord(new RecordInfo(recordID, userRecordType, record, true, compactCount));
+                  RecordInfo info = new RecordInfo(recordID, userRecordType, record, true, compactCount);
+                  info.encodeSize = encodeSize;
+                  info.dataPosition = dataPosition;
+                  reader.onReadUpdateRecord(info);
                   break;
                }
 
@@ -670,31 +925,27 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
                case ADD_RECORD_TX:
                {
-                  reader.onReadAddRecordTX(transactionID, new RecordInfo(recordID,
-                                                                         userRecordType,
-                                                                         record,
-                                                                         false,
-                                                                         compactCount));
+                  RecordInfo info = new RecordInfo(recordID, userRecordType, record, false, compactCount);
+                  info.encodeSize = encodeSize;
+                  info.dataPosition = dataPosition;
+                  reader.onReadAddRecordTX(transactionID, info);
                   break;
                }
 
                case UPDATE_RECORD_TX:
                {
-                  reader.onReadUpdateRecordTX(transactionID, new RecordInfo(recordID,
-                                                                            userRecordType,
-                                                                            record,
-                                                                            true,
-                                                                            compactCount));
+                  RecordInfo info = new RecordInfo(recordID, userRecordType, record, true, compactCount);
+                  info.encodeSize = encodeSize;
+                  info.dataPosition = dataPosition;
+                  reader.onReadUpdateRecordTX(transactionID, info);
                   break;
                }
 
                case DELETE_RECORD_TX:
                {
-                  reader.onReadDeleteRecordTX(transactionID, new RecordInfo(recordID,
-                                                                            (byte) 0,
-                                                                            record,
-                                                                            true,
-                                                                            compactCount));
+                  RecordInfo info = new RecordInfo(recordID, (byte) 0, record, true, compactCount);
+                  info.dataPosition = dataPosition;
+                  reader.onReadDeleteRecordTX(transactionID, info);
                   break;
                }
 
@@ -780,20 +1031,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord addRecord = new JournalAddRecord(true, id, recordType, record);
 
-      try
+      appendTask(new JournalAppendTask(callback, true)
       {
-         JournalInternalRecord addRecord = new JournalAddRecord(true, id, recordType, record);
-
-         if (callback != null)
+         @Override
+         void append() throws Exception
          {
-            callback.storeLineUp();
-         }
+            storeLineUp();
 
-         lockAppend.lock();
-         try
-         {
             JournalFile usedFile = appendRecord(addRecord, false, sync, null, callback);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -806,16 +1052,10 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             }
 
             records.put(id, new JournalRecord(usedFile, addRecord.getEncodeSize()));
+
+            trackBufferedWrite(id, true);
          }
-         finally
-         {
-            lockAppend.unlock();
-         }
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, sync);
    }
 
    @Override
@@ -827,30 +1067,25 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord updateRecord = new JournalAddRecord(false, id, recordType, record);
 
-      try
+      appendTask(new JournalAppendTask(callback, true)
       {
-         JournalRecord jrnRecord = records.get(id);
-
-         if (jrnRecord == null)
+         @Override
+         void append() throws Exception
          {
-            if (!(compactor != null && compactor.lookupRecord(id)))
+            JournalRecord jrnRecord = records.get(id);
+
+            if (jrnRecord == null)
             {
-               throw new IllegalStateException("Cannot find add info " + id);
+               if (!(compactor != null && compactor.lookupRecord(id)))
+               {
+                  throw new IllegalStateException("Cannot find add info " + id);
+               }
             }
-         }
 
-         JournalInternalRecord updateRecord = new JournalAddRecord(false, id, recordType, record);
+            storeLineUp();
 
-         if (callback != null)
-         {
-            callback.storeLineUp();
-         }
-
-         lockAppend.lock();
-         try
-         {
             JournalFile usedFile = appendRecord(updateRecord, false, sync, null, callback);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -871,17 +1106,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             else
             {
                jrnRecord.addUpdateFile(usedFile, updateRecord.getEncodeSize());
+
+               trackBufferedWrite(id, false);
             }
          }
-         finally
-         {
-            lockAppend.unlock();
-         }
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, sync);
    }
 
 
@@ -890,39 +1119,47 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
-      try
+      appendTask(new JournalAppendTask(callback, true)
       {
-
-         JournalRecord record = null;
-
-         if (compactor == null)
+         @Override
+         void append() throws Exception
          {
-            record = records.remove(id);
+            JournalRecord record = null;
 
-            if (record == null)
+            if (compactor == null)
             {
-               throw new IllegalStateException("Cannot find add info " + id);
+               record = records.remove(id);
+
+               if (record == null)
+               {
+                  throw new IllegalStateException("Cannot find add info " + id);
+               }
             }
-         }
-         else
-         {
-            if (!records.containsKey(id) && !compactor.lookupRecord(id))
+            else
             {
-               throw new IllegalStateException("Cannot find add info " + id + " on compactor or current records");
+               if (!records.containsKey(id) && !compactor.lookupRecord(id))
+               {
+                  throw new IllegalStateException("Cannot find add info " + id + " on compactor or current records");
+               }
             }
-         }
 
-         JournalInternalRecord deleteRecord = new JournalDeleteRecord(id);
+            storeLineUp();
 
-         if (callback != null)
-         {
-            callback.storeLineUp();
-         }
+            if (record != null && cancelBufferedRecord(id, sync, callback))
+            {
+               if (JournalImpl.TRACE_RECORDS)
+               {
+                  JournalImpl.traceRecord("appendDeleteRecord::id=" + id + ", cancelled on buffer of " + currentFile);
+               }
+
+               // neither the add nor the delete reach the file
+               record.delete(currentFile);
+
+               return;
+            }
+
+            JournalInternalRecord deleteRecord = new JournalDeleteRecord(id);
 
-         lockAppend.lock();
-         try
-         {
             JournalFile usedFile = appendRecord(deleteRecord, false, sync, null, callback);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -940,17 +1177,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             {
                record.delete(usedFile);
             }
-
-         }
-         finally
-         {
-            lockAppend.unlock();
          }
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, sync);
    }
 
    @Override
@@ -961,17 +1189,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord addRecord = new JournalAddRecordTX(true, txID, id, recordType, record);
 
-      try
+      appendTask(new JournalAppendTask(null, false)
       {
-         JournalInternalRecord addRecord = new JournalAddRecordTX(true, txID, id, recordType, record);
-
-         JournalTransaction tx = getTransactionInfo(txID);
-
-         lockAppend.lock();
-         try
+         @Override
+         void append() throws Exception
          {
+            JournalTransaction tx = getTransactionInfo(txID);
+
             JournalFile usedFile = appendRecord(addRecord, false, false, tx, null);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -987,15 +1213,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             tx.addPositive(usedFile, id, addRecord.getEncodeSize());
          }
-         finally
-         {
-            lockAppend.unlock();
-         }
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, false);
    }
 
    private void checkJournalIsLoaded()
@@ -1019,17 +1237,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord updateRecordTX = new JournalAddRecordTX(false, txID, id, recordType, record);
 
-      try
+      appendTask(new JournalAppendTask(null, false)
       {
-         JournalInternalRecord updateRecordTX = new JournalAddRecordTX(false, txID, id, recordType, record);
+         @Override
+         void append() throws Exception
+         {
+            JournalTransaction tx = getTransactionInfo(txID);
 
-         JournalTransaction tx = getTransactionInfo(txID);
+            // the transaction refers to the record, it has to stay on the file
+            bufferedRecords.remove(id);
 
-         lockAppend.lock();
-         try
-         {
             JournalFile usedFile = appendRecord(updateRecordTX, false, false, tx, null);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -1045,15 +1264,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             tx.addPositive(usedFile, id, updateRecordTX.getEncodeSize());
          }
-         finally
-         {
-            lockAppend.unlock();
-         }
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, false);
    }
 
 
@@ -1062,17 +1273,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord deleteRecordTX = new JournalDeleteRecordTX(txID, id, record);
 
-      try
+      appendTask(new JournalAppendTask(null, false)
       {
-         JournalInternalRecord deleteRecordTX = new JournalDeleteRecordTX(txID, id, record);
+         @Override
+         void append() throws Exception
+         {
+            JournalTransaction tx = getTransactionInfo(txID);
 
-         JournalTransaction tx = getTransactionInfo(txID);
+            // the transaction refers to the record, it has to stay on the file
+            bufferedRecords.remove(id);
 
-         lockAppend.lock();
-         try
-         {
             JournalFile usedFile = appendRecord(deleteRecordTX, false, false, tx, null);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -1086,15 +1298,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             tx.addNegative(usedFile, id);
          }
-         finally
-         {
-            lockAppend.unlock();
-         }
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, false);
    }
 
    /**
@@ -1118,23 +1322,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord prepareRecord =
+         new JournalCompleteRecordTX(TX_RECORD_TYPE.PREPARE, txID, transactionData);
 
-      try
+      appendTask(new JournalAppendTask(callback, true)
       {
-         JournalTransaction tx = getTransactionInfo(txID);
-
-         JournalInternalRecord prepareRecord =
-            new JournalCompleteRecordTX(TX_RECORD_TYPE.PREPARE, txID, transactionData);
-
-         if (callback != null)
+         @Override
+         void append() throws Exception
          {
-            callback.storeLineUp();
-         }
+            JournalTransaction tx = getTransactionInfo(txID);
+
+            storeLineUp();
 
-         lockAppend.lock();
-         try
-         {
             JournalFile usedFile = appendRecord(prepareRecord, true, sync, tx, callback);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -1144,16 +1343,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             tx.prepare(usedFile);
          }
-         finally
-         {
-            lockAppend.unlock();
-         }
-
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, sync);
    }
 
    @Override
@@ -1171,27 +1361,22 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord commitRecord = new JournalCompleteRecordTX(TX_RECORD_TYPE.COMMIT, txID, null);
 
-      try
+      appendTask(new JournalAppendTask(callback, lineUpContext)
       {
-         JournalTransaction tx = transactions.remove(txID);
-
-         if (tx == null)
+         @Override
+         void append() throws Exception
          {
-            throw new IllegalStateException("Cannot find tx with id " + txID);
-         }
+            JournalTransaction tx = transactions.remove(txID);
 
-         JournalInternalRecord commitRecord = new JournalCompleteRecordTX(TX_RECORD_TYPE.COMMIT, txID, null);
+            if (tx == null)
+            {
+               throw new IllegalStateException("Cannot find tx with id " + txID);
+            }
 
-         if (callback != null && lineUpContext)
-         {
-            callback.storeLineUp();
-         }
+            storeLineUp();
 
-         lockAppend.lock();
-         try
-         {
             JournalFile usedFile = appendRecord(commitRecord, true, sync, tx, callback);
 
             if (JournalImpl.TRACE_RECORDS)
@@ -1201,16 +1386,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             tx.commit(usedFile);
          }
-         finally
-         {
-            lockAppend.unlock();
-         }
-
-      }
-      finally
-      {
-         journalLock.readLock().unlock();
-      }
+      }, sync);
    }
 
    @Override
@@ -1218,38 +1394,70 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      final JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(txID);
+
+      appendTask(new JournalAppendTask(callback, true)
+      {
+         @Override
+         void append() throws Exception
+         {
+            JournalTransaction tx = transactions.remove(txID);
+
+            if (tx == null)
+            {
+               throw new IllegalStateException("Cannot find tx with id " + txID);
+            }
+
+            storeLineUp();
 
-      JournalTransaction tx = null;
+            JournalFile usedFile = appendRecord(rollbackRecord, false, sync, tx, callback);
+
+            tx.rollback(usedFile);
+         }
+      }, sync);
+   }
+
+   /**
+    * Runs the task under the append lock, or hands it to the writer thread when the append ring
+    * is enabled.
+    * <p/>
+    * A sync append without a callback has nothing the writer could complete, so it is still run
+    * inline, after the writer has caught up with what was already published.
+    */
+   private void appendTask(final JournalAppendTask task, final boolean sync) throws Exception
+   {
+      journalLock.readLock().lock();
 
       try
       {
-         tx = transactions.remove(txID);
+         JournalAppendRing ring = appendRing;
 
-         if (tx == null)
+         if (ring != null && (!sync || task.callback != null))
          {
-            throw new IllegalStateException("Cannot find tx with id " + txID);
+            // the context has to be lined up in the caller's order, not when the writer gets to it
+            if (task.lineUp)
+            {
+               task.callback.storeLineUp();
+            }
+            task.queued = true;
+            ring.publish(task);
+            return;
          }
 
-         JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(txID);
-
-         if (callback != null)
+         if (ring != null)
          {
-            callback.storeLineUp();
+            ring.flush();
          }
 
          lockAppend.lock();
          try
          {
-            JournalFile usedFile = appendRecord(rollbackRecord, false, sync, tx, callback);
-
-            tx.rollback(usedFile);
+            task.append();
          }
          finally
          {
             lockAppend.unlock();
          }
-
       }
       finally
       {
@@ -1257,6 +1465,20 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
    }
 
+   /**
+    * Waits for the appends already handed to the writer thread, so that whoever holds the
+    * journal write lock sees the records and files as the producers left them.
+    */
+   private void flushAppendRing()
+   {
+      JournalAppendRing ring = appendRing;
+
+      if (ring != null)
+      {
+         ring.flush();
+      }
+   }
+
    // XXX make it protected?
    public int getAlignment() throws Exception
    {
@@ -1466,14 +1688,22 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
          boolean previousReclaimValue = isAutoReclaim();
 
+         // time the appends were blocked by this compacting, measured from the moment we ask for the write lock
+         long pauseTime = 0;
+
          try
          {
             ActiveMQJournalLogger.LOGGER.debug("Starting compacting operation on journal");
 
             onCompactStart();
 
+            // the checkpoint is of the files about to be replaced
+            deleteCheckpoint();
+
             // We need to guarantee that the journal is frozen for this short time
             // We don't freeze the journal as we compact, only for the short time where we replace records
+            // Nothing proportional to the number of records can be done here, appends are blocked
+            long pauseStart = System.nanoTime();
             journalLock.writeLock().lock();
             try
             {
@@ -1482,6 +1712,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                   return;
                }
 
+               flushAppendRing();
+
                onCompactLockingTheJournal();
 
                setAutoReclaim(false);
@@ -1495,31 +1727,35 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
                filesRepository.clearDataFiles();
 
+               reclaimer.invalidate();
+
                if (dataFilesToProcess.size() == 0)
                {
                   trace("Finishing compacting, nothing to process");
                   return;
                }
 
+               // The current map becomes the snapshot of the records to be compacted, no one else will touch it.
+               // We will calculate the new records during compacting, what will take the position the records will take
+               // after compacting
                compactor = new JournalCompactor(fileFactory,
                                                 this,
                                                 filesRepository,
-                                                records.keySet(),
+                                                records,
                                                 dataFilesToProcess.get(0).getFileID());
 
-               for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
+               records = new ConcurrentLongHashMap<JournalRecord>();
+
+               for (JournalTransaction tx : transactions.values())
                {
-                  compactor.addPendingTransaction(entry.getKey(), entry.getValue().getPositiveArray());
-                  entry.getValue().setCompacting();
+                  compactor.addPendingTransaction(tx.getId(), tx.getPositiveArray());
+                  tx.setCompacting();
                }
-
-               // We will calculate the new records during compacting, what will take the position the records will take
-               // after compacting
-               records.clear();
             }
             finally
             {
                journalLock.writeLock().unlock();
+               pauseTime += System.nanoTime() - pauseStart;
             }
 
             Collections.sort(dataFilesToProcess, new JournalFileComparator());
@@ -1555,9 +1791,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             SequentialFile controlFile = createControlFile(dataFilesToProcess, compactor.getNewDataFiles(), null);
 
+            pauseStart = System.nanoTime();
             journalLock.writeLock().lock();
             try
             {
+               flushAppendRing();
+
                // Need to clear the compactor here, or the replay commands will send commands back (infinite loop)
                compactor = null;
 
@@ -1565,11 +1804,19 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
                newDatafiles = localCompactor.getNewDataFiles();
 
-               // Restore newRecords created during compacting
-               for (Map.Entry<Long, JournalRecord> newRecordEntry : localCompactor.getNewRecords().entrySet())
+               // The compacted records become the live map. Only the records added while compacting are copied,
+               // they are usually far fewer than the compacted ones and they can't have the same ids
+               final ConcurrentLongHashMap<JournalRecord> compactedRecords = localCompactor.getNewRecords();
+
+               records.forEach(new ConcurrentLongHashMap.EntryProcessor<JournalRecord>()
                {
-                  records.put(newRecordEntry.getKey(), newRecordEntry.getValue());
-               }
+                  public void accept(final long id, final JournalRecord record)
+                  {
+                     compactedRecords.put(id, record);
+                  }
+               });
+
+               records = compactedRecords;
 
                // Restore compacted dataFiles
                for (int i = newDatafiles.size() - 1; i >= 0; i--)
@@ -1620,7 +1867,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             finally
             {
                journalLock.writeLock().unlock();
+               pauseTime += System.nanoTime() - pauseStart;
+            }
+
+            lastCompactPauseTime = pauseTime;
+            if (pauseTime > maxCompactPauseTime)
+            {
+               maxCompactPauseTime = pauseTime;
             }
+            compactCount++;
 
             // At this point the journal is unlocked. We keep renaming files while the journal is already operational
             renameFiles(dataFilesToProcess, newDatafiles);
@@ -1721,288 +1976,112 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       filesRepository.clear();
 
-      transactions.clear();
-      currentFile = null;
-
-      final Map<Long, TransactionHolder> loadTransactions = new LinkedHashMap<Long, TransactionHolder>();
-
-      final List<JournalFile> orderedFiles = orderFiles();
-
-      filesRepository.calculateNextfileID(orderedFiles);
-
-      int lastDataPos = JournalImpl.SIZE_HEADER;
-
-      // AtomicLong is used only as a reference, not as an Atomic value
-      final AtomicLong maxID = new AtomicLong(-1);
-
-      for (final JournalFile file : orderedFiles)
-      {
-         JournalImpl.trace("Loading file " + file.getFile().getFileName());
-
-         final AtomicBoolean hasData = new AtomicBoolean(false);
-
-         int resultLastPost = JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallback()
-         {
-
-            private void checkID(final long id)
-            {
-               if (id > maxID.longValue())
-               {
-                  maxID.set(id);
-               }
-            }
-
-            public void onReadAddRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
-
-               hasData.set(true);
-
-               loadManager.addRecord(info);
-
-               records.put(info.id, new JournalRecord(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1));
-            }
-
-            public void onReadUpdateRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
-
-               hasData.set(true);
-
-               loadManager.updateRecord(info);
-
-               JournalRecord posFiles = records.get(info.id);
-
-               if (posFiles != null)
-               {
-                  // It's legal for this to be null. The file(s) with the may
-                  // have been deleted
-                  // just leaving some updates in this file
-
-                  posFiles.addUpdateFile(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
-                  // count
-               }
-            }
-
-            public void onReadDeleteRecord(final long recordID) throws Exception
-            {
-               hasData.set(true);
-
-               loadManager.deleteRecord(recordID);
-
-               JournalRecord posFiles = records.remove(recordID);
-
-               if (posFiles != null)
-               {
-                  posFiles.delete(file);
-               }
-            }
-
-            public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               onReadAddRecordTX(transactionID, info);
-            }
-
-            public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-
-               checkID(info.id);
-
-               hasData.set(true);
-
-               TransactionHolder tx = loadTransactions.get(transactionID);
-
-               if (tx == null)
-               {
-                  tx = new TransactionHolder(transactionID);
-
-                  loadTransactions.put(transactionID, tx);
-               }
-
-               tx.recordInfos.add(info);
-
-               JournalTransaction tnp = transactions.get(transactionID);
-
-               if (tnp == null)
-               {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
-
-                  transactions.put(transactionID, tnp);
-               }
-
-               tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
-               // count
-            }
-
-            public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               hasData.set(true);
-
-               TransactionHolder tx = loadTransactions.get(transactionID);
-
-               if (tx == null)
-               {
-                  tx = new TransactionHolder(transactionID);
-
-                  loadTransactions.put(transactionID, tx);
-               }
-
-               tx.recordsToDelete.add(info);
-
-               JournalTransaction tnp = transactions.get(transactionID);
-
-               if (tnp == null)
-               {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
-
-                  transactions.put(transactionID, tnp);
-               }
-
-               tnp.addNegative(file, info.id);
-
-            }
-
-            public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
-            {
-               hasData.set(true);
-
-               TransactionHolder tx = loadTransactions.get(transactionID);
-
-               if (tx == null)
-               {
-                  // The user could choose to prepare empty transactions
-                  tx = new TransactionHolder(transactionID);
-
-                  loadTransactions.put(transactionID, tx);
-               }
-
-               tx.prepared = true;
-
-               tx.extraData = extraData;
-
-               JournalTransaction journalTransaction = transactions.get(transactionID);
-
-               if (journalTransaction == null)
-               {
-                  journalTransaction = new JournalTransaction(transactionID, JournalImpl.this);
-
-                  transactions.put(transactionID, journalTransaction);
-               }
-
-               boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
-
-               if (healthy)
-               {
-                  journalTransaction.prepare(file);
-               }
-               else
-               {
-                  ActiveMQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
-                  tx.invalid = true;
-               }
-            }
-
-            public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
-            {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
+      reclaimer.invalidate();
 
-               // The commit could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but not the
-               // commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               // If we can't find it, we assume the TX was reclaimed and we
-               // ignore this
-               if (tx != null)
-               {
-                  JournalTransaction journalTransaction = transactions.remove(transactionID);
+      transactions.clear();
+      currentFile = null;
 
-                  if (journalTransaction == null)
-                  {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
-                  }
+      filesSinceCheckpoint = 0;
 
-                  boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
+      final JournalReplay replay = new JournalReplay(this, transactions, loadManager);
 
-                  if (healthy)
-                  {
-                     for (RecordInfo txRecord : tx.recordInfos)
-                     {
-                        if (txRecord.isUpdate)
-                        {
-                           loadManager.updateRecord(txRecord);
-                        }
-                        else
-                        {
-                           loadManager.addRecord(txRecord);
-                        }
-                     }
-
-                     for (RecordInfo deleteValue : tx.recordsToDelete)
-                     {
-                        loadManager.deleteRecord(deleteValue.id);
-                     }
-
-                     journalTransaction.commit(file);
-                  }
-                  else
-                  {
-                     ActiveMQJournalLogger.LOGGER.txMissingElements(transactionID);
+      final List<JournalFile> orderedFiles = orderFiles();
 
-                     journalTransaction.forget();
-                  }
+      filesRepository.calculateNextfileID(orderedFiles);
 
-                  hasData.set(true);
-               }
+      int lastDataPos = JournalImpl.SIZE_HEADER;
 
-            }
+      final JournalCheckpoint checkpoint = checkpointFiles > 0 && changeData && replicationSync == null
+         ? readCheckpoint(orderedFiles) : null;
 
-            public void onReadRollbackRecord(final long transactionID) throws Exception
-            {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
+      // the files written after the checkpoint, all of them without a checkpoint
+      List<JournalFile> filesToReplay = orderedFiles;
 
-               // The rollback could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but the commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               if (tx != null)
-               {
-                  JournalTransaction tnp = transactions.remove(transactionID);
+      if (checkpoint != null)
+      {
+         ActiveMQJournalLogger.LOGGER.debug("Loading " + this + " from its checkpoint up to file " +
+                                               checkpoint.getLastFileID());
 
-                  if (tnp == null)
-                  {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
-                  }
+         Map<Long, JournalFileImpl> coveredFiles = new HashMap<Long, JournalFileImpl>();
 
-                  // There is no need to validate summaries/holes on
-                  // Rollbacks.. We will ignore the data anyway.
-                  tnp.rollback(file);
+         filesToReplay = new ArrayList<JournalFile>();
 
-                  hasData.set(true);
-               }
+         for (JournalFile file : orderedFiles)
+         {
+            if (file.getFileID() <= checkpoint.getLastFileID())
+            {
+               coveredFiles.put(file.getFileID(), (JournalFileImpl) file);
             }
-
-            public void markAsDataFile(final JournalFile file)
+            else
             {
-               hasData.set(true);
+               filesToReplay.add(file);
             }
+         }
 
-         });
+         checkpoint.restore(fileFactory, coveredFiles, records, replay, loadManager);
 
-         if (hasData.get())
+         for (JournalFile file : orderedFiles)
          {
-            lastDataPos = resultLastPost;
-            filesRepository.addDataFileOnBottom(file);
+            if (file.getFileID() > checkpoint.getLastFileID())
+            {
+               break;
+            }
+
+            if (checkpoint.hasData(file))
+            {
+               lastDataPos = checkpoint.getLastDataPos(file);
+               filesRepository.addDataFileOnBottom(file);
+            }
+            else
+            {
+               filesRepository.addFreeFile(file, false, false);
+            }
          }
-         else
+      }
+      else if (changeData)
+      {
+         deleteCheckpoint();
+      }
+
+      // files are read and checked ahead on a pool, but their records are still applied here in order
+      final ParallelJournalFileReader parallelReader = loadParallelism > 1 && filesToReplay.size() > 1
+         ? new ParallelJournalFileReader(fileFactory, filesToReplay, loadParallelism) : null;
+
+      try
+      {
+         for (final JournalFile file : filesToReplay)
          {
-            if (changeData)
+            JournalImpl.trace("Loading file " + file.getFile().getFileName());
+
+            final AtomicBoolean hasData = new AtomicBoolean(false);
+
+            final JournalReaderCallback loadCallback = replay.newFileCallback(file, hasData);
+
+            int resultLastPost = parallelReader != null ? parallelReader.readJournalFile(file, loadCallback)
+               : JournalImpl.readJournalFile(fileFactory, file, loadCallback);
+
+            if (hasData.get())
             {
-               // Empty dataFiles with no data
-               filesRepository.addFreeFile(file, false, false);
+               lastDataPos = resultLastPost;
+               filesRepository.addDataFileOnBottom(file);
+            }
+            else
+            {
+               if (changeData)
+               {
+                  // Empty dataFiles with no data
+                  filesRepository.addFreeFile(file, false, false);
+               }
             }
          }
       }
+      finally
+      {
+         if (parallelReader != null)
+         {
+            parallelReader.stop();
+         }
+      }
 
       if (replicationSync == JournalState.SYNCING)
       {
@@ -2013,9 +2092,17 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       setUpCurrentFile(lastDataPos);
 
+      // Appends go on the last data file, a checkpoint covering it would miss them
+      if (checkpoint != null && currentFile.getFileID() <= checkpoint.getLastFileID())
+      {
+         deleteCheckpoint();
+      }
+
       setJournalState(JournalState.LOADED);
 
-      for (TransactionHolder transaction : loadTransactions.values())
+      long maxID = replay.getMaxID();
+
+      for (JournalReplay.TransactionHolder transaction : replay.loadTransactions.values())
       {
          if ((!transaction.prepared || transaction.invalid) && replicationSync != JournalState.SYNCING_UP_TO_DATE)
          {
@@ -2035,9 +2122,9 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          {
             for (RecordInfo info : transaction.recordInfos)
             {
-               if (info.id > maxID.get())
+               if (info.id > maxID)
                {
-                  maxID.set(info.id);
+                  maxID = info.id;
                }
             }
 
@@ -2051,9 +2138,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
       }
 
+      // from here on the reclaimer keeps its counters as the files are closed
+      reclaimer.scan(getDataFiles());
+
       checkReclaimStatus();
 
-      return new JournalLoadInformation(records.size(), maxID.longValue());
+      return new JournalLoadInformation(records.size(), maxID);
    }
 
    /**
@@ -2079,22 +2169,23 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
       try
       {
-         reclaimer.scan(getDataFiles());
+         // the counters are only scanned again after a compacting or if the data files changed under them
+         if (!reclaimer.isTracking(filesRepository.getDataFilesCount()))
+         {
+            reclaimer.scan(getDataFiles());
+         }
 
-         for (JournalFile file : filesRepository.getDataFiles())
+         for (JournalFile file : reclaimer.pollReclaimable())
          {
-            if (file.isCanReclaim())
+            // File can be reclaimed or deleted
+            if (JournalImpl.trace)
             {
-               // File can be reclaimed or deleted
-               if (JournalImpl.trace)
-               {
-                  JournalImpl.trace("Reclaiming file " + file);
-               }
+               JournalImpl.trace("Reclaiming file " + file);
+            }
 
-               filesRepository.removeDataFile(file);
+            filesRepository.removeDataFile(file);
 
-               filesRepository.addFreeFile(file, false);
-            }
+            filesRepository.addFreeFile(file, false);
          }
       }
       finally
@@ -2241,6 +2332,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     */
    public void debugWait() throws InterruptedException
    {
+      if (!lockAppend.isHeldByCurrentThread())
+      {
+         flushAppendRing();
+      }
+
       fileFactory.flush();
 
       for (JournalTransaction tx : transactions.values())
@@ -2329,6 +2425,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       journalLock.readLock().lock();
       try
       {
+         flushAppendRing();
+
          lockAppend.lock();
          try
          {
@@ -2388,6 +2486,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       fileFactory.start();
 
+      if (appendRingSize > 0 && fileFactory.isSupportsCallbacks())
+      {
+         appendRing = new JournalAppendRing(appendRingSize, lockAppend);
+         appendRing.start();
+      }
+
       setJournalState(JournalState.STARTED);
    }
 
@@ -2402,6 +2506,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       journalLock.writeLock().lock();
       try
       {
+         if (appendRing != null)
+         {
+            // the writer runs whatever was published before we got the lock
+            appendRing.stop();
+            appendRing = null;
+         }
+
          lockAppend.lock();
 
          try
@@ -2589,14 +2700,6 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     * @param numberOfRecords
     * @return
     */
-   private boolean checkTransactionHealth(final JournalFile currentFile,
-                                          final JournalTransaction journalTransaction,
-                                          final List<JournalFile> orderedFiles,
-                                          final int numberOfRecords)
-   {
-      return journalTransaction.getCounter(currentFile) == numberOfRecords;
-   }
-
    private static boolean isTransaction(final byte recordType)
    {
       return recordType == JournalImpl.ADD_RECORD_TX || recordType == JournalImpl.UPDATE_RECORD_TX ||
@@ -2610,6 +2713,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          recordType == JournalImpl.ROLLBACK_RECORD;
    }
 
+   private static boolean isPackedRecord(final byte recordType)
+   {
+      return recordType >= JournalImpl.ADD_RECORD_PACKED && recordType <= JournalImpl.DELETE_RECORD_PACKED;
+   }
+
    private static boolean isContainsBody(final byte recordType)
    {
       return recordType >= JournalImpl.ADD_RECORD && recordType <= JournalImpl.DELETE_RECORD_TX;
@@ -2720,6 +2828,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                                     final SequentialFile sequentialFile,
                                     final int userVersion,
                                     final long fileID) throws Exception
+   {
+      return initFileHeader(fileFactory, sequentialFile, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   public static int initFileHeader(final SequentialFileFactory fileFactory,
+                                    final SequentialFile sequentialFile,
+                                    final int formatVersion,
+                                    final int userVersion,
+                                    final long fileID) throws Exception
    {
       // We don't need to release buffers while writing.
       ByteBuffer bb = fileFactory.newBuffer(JournalImpl.SIZE_HEADER);
@@ -2728,7 +2845,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalImpl.writeHeader(buffer, userVersion, fileID);
+         JournalImpl.writeHeader(buffer, formatVersion, userVersion, fileID);
 
          bb.rewind();
 
@@ -2753,7 +2870,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     */
    public static void writeHeader(final ActiveMQBuffer buffer, final int userVersion, final long fileID)
    {
-      buffer.writeInt(JournalImpl.FORMAT_VERSION);
+      writeHeader(buffer, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   public static void writeHeader(final ActiveMQBuffer buffer,
+                                  final int formatVersion,
+                                  final int userVersion,
+                                  final long fileID)
+   {
+      buffer.writeInt(formatVersion);
 
       buffer.writeInt(userVersion);
 
@@ -2775,6 +2900,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       final IOAsyncTask callback;
 
+      encoder.setPacked(packedRecords);
+
       final int size = encoder.getEncodeSize();
 
       switchFileIfNecessary(size);
@@ -2814,9 +2941,14 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // Adding fileID
       encoder.setFileID(currentFile.getRecordID());
 
+      JournalStatistics localStatistics = statistics;
+
       if (callback != null)
       {
-         currentFile.getFile().write(encoder, sync, callback);
+         currentFile.getFile().write(encoder,
+                                     sync,
+                                     localStatistics == null ? callback
+                                        : new LatencyRecordingCallback(callback, localStatistics.getAppendTimes()));
       }
       else
       {
@@ -2826,6 +2958,64 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return currentFile;
    }
 
+   /**
+    * Keeps the write just done for the record while it is held by the buffer.
+    */
+   private void trackBufferedWrite(final long id, final boolean add)
+   {
+      long write = currentFile.getFile().getLastBufferedWrite();
+
+      int generation = (int) (write >>> 32);
+
+      if (write == -1 || generation != bufferedGeneration)
+      {
+         // the buffer was flushed, what was kept is on the file now
+         bufferedRecords.clear();
+
+         if (write == -1)
+         {
+            return;
+         }
+
+         bufferedGeneration = generation;
+      }
+
+      if (add)
+      {
+         bufferedRecords.put(id, new BufferedWrites(write));
+      }
+      else
+      {
+         BufferedWrites writes = bufferedRecords.get(id);
+
+         if (writes != null)
+         {
+            writes.add(write);
+         }
+      }
+   }
+
+   /**
+    * Removes the writes of a record from the buffer, if none of them was flushed yet.
+    */
+   private boolean cancelBufferedRecord(final long id, final boolean sync, final IOAsyncTask callback)
+   {
+      BufferedWrites writes = bufferedRecords.remove(id);
+
+      if (writes == null || compactor != null)
+      {
+         return false;
+      }
+
+      if (sync && callback == null)
+      {
+         // without a callback a sync delete has to block on a write of its own
+         return false;
+      }
+
+      return currentFile.getFile().cancelBufferedWrites(writes.writes, writes.count, sync, callback);
+   }
+
    @Override
    void scheduleReclaim()
    {
@@ -2930,6 +3120,129 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return;
    }
 
+   private String getCheckpointFileName()
+   {
+      return filesRepository.getFilePrefix() + JournalCheckpoint.EXTENSION;
+   }
+
+   /**
+    * @return the checkpoint to load from, null if there is none or it can't be used with these files
+    */
+   private JournalCheckpoint readCheckpoint(final List<JournalFile> orderedFiles) throws Exception
+   {
+      final String fileName = getCheckpointFileName();
+
+      if (!fileFactory.createSequentialFile(fileName, 1).exists())
+      {
+         return null;
+      }
+
+      JournalCheckpoint checkpoint = null;
+
+      try
+      {
+         checkpoint = JournalCheckpoint.read(fileFactory, fileName);
+      }
+      catch (Exception e)
+      {
+         ActiveMQJournalLogger.LOGGER.debug("Error reading checkpoint " + fileName, e);
+      }
+
+      if (checkpoint == null || !checkpoint.covers(orderedFiles))
+      {
+         ActiveMQJournalLogger.LOGGER.ignoringCheckpoint(fileName);
+
+         return null;
+      }
+
+      return checkpoint;
+   }
+
+   private void deleteCheckpoint() throws Exception
+   {
+      JournalCheckpoint.delete(fileFactory, getCheckpointFileName());
+   }
+
+   private void scheduleCheckpoint()
+   {
+      if (state != JournalState.LOADED)
+      {
+         return;
+      }
+
+      // The compactor executor also reclaims and compacts, so the data files can't change while the checkpoint is built
+      compactorExecutor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               writeCheckpoint();
+            }
+            catch (Throwable e)
+            {
+               ActiveMQJournalLogger.LOGGER.errorWritingCheckpoint(e, getCheckpointFileName());
+            }
+         }
+      });
+   }
+
+   /**
+    * Writes the checkpoint of the current data files, from the previous checkpoint and the files filled since.
+    * Only called on the compactor executor.
+    */
+   private void writeCheckpoint() throws Exception
+   {
+      // compacting and the synchronization of a backup change the files as a whole, they wait for the checkpoint
+      compactorLock.readLock().lock();
+      try
+      {
+         if (state != JournalState.LOADED)
+         {
+            return;
+         }
+
+         List<JournalFile> dataFiles = new ArrayList<JournalFile>(Arrays.asList(getDataFiles()));
+
+         if (dataFiles.isEmpty())
+         {
+            return;
+         }
+
+         Collections.sort(dataFiles, new JournalFileComparator());
+
+         final String fileName = getCheckpointFileName();
+
+         JournalCheckpoint previous = null;
+
+         try
+         {
+            previous = JournalCheckpoint.read(fileFactory, fileName);
+         }
+         catch (Exception e)
+         {
+            ActiveMQJournalLogger.LOGGER.debug("Error reading checkpoint " + fileName, e);
+         }
+
+         if (previous != null && previous.getLastFileID() >= dataFiles.get(dataFiles.size() - 1).getFileID())
+         {
+            return;
+         }
+
+         long start = System.currentTimeMillis();
+
+         JournalCheckpoint.build(fileFactory, dataFiles, previous).write(fileFactory, fileName);
+
+         ActiveMQJournalLogger.LOGGER.debug("Checkpoint of " + this + " up to file " +
+                                               dataFiles.get(dataFiles.size() - 1).getFileID() + " written in " +
+                                               (System.currentTimeMillis() - start) + " ms");
+      }
+      finally
+      {
+         compactorLock.readLock().unlock();
+      }
+   }
+
    /**
     * @throws Exception
     */
@@ -2969,25 +3282,74 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    // ---------------------------------------------------------------------------
 
    // Used on Load
-   private static final class TransactionHolder
+   /**
+    * The body of an append, run by the caller under the append lock or by the writer thread of the
+    * {@link JournalAppendRing}. In the latter case a failure can no longer be thrown to the caller,
+    * so it is reported to the callback instead.
+    */
+   private abstract static class JournalAppendTask implements Runnable
    {
-      public TransactionHolder(final long id)
+      final IOCompletion callback;
+
+      final boolean lineUp;
+
+      // Set once handed to the ring, the caller has lined up the callback already
+      boolean queued;
+
+      JournalAppendTask(final IOCompletion callback, final boolean lineUp)
+      {
+         this.callback = callback;
+         this.lineUp = lineUp && callback != null;
+      }
+
+      abstract void append() throws Exception;
+
+      final void storeLineUp()
       {
-         transactionID = id;
+         if (lineUp && !queued)
+         {
+            callback.storeLineUp();
+         }
       }
 
-      public final long transactionID;
+      public final void run()
+      {
+         try
+         {
+            append();
+         }
+         catch (Throwable e)
+         {
+            ActiveMQJournalLogger.LOGGER.errorAppendingRecord(e);
 
-      public final List<RecordInfo> recordInfos = new ArrayList<RecordInfo>();
+            if (callback != null)
+            {
+               callback.onError(ActiveMQExceptionType.IO_ERROR.getCode(), e.getMessage());
+            }
+         }
+      }
+   }
 
-      public final List<RecordInfo> recordsToDelete = new ArrayList<RecordInfo>();
+   private static final class BufferedWrites
+   {
+      long[] writes = new long[4];
 
-      public boolean prepared;
+      int count;
 
-      public boolean invalid;
+      BufferedWrites(final long add)
+      {
+         writes[count++] = add;
+      }
 
-      public byte[] extraData;
+      void add(final long update)
+      {
+         if (count == writes.length)
+         {
+            writes = Arrays.copyOf(writes, count * 2);
+         }
 
+         writes[count++] = update;
+      }
    }
 
    private static final class JournalFileComparator implements Comparator<JournalFile>, Serializable
@@ -3058,6 +3420,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       compactorLock.writeLock().lock();
       journalLock.writeLock().lock();
+      flushAppendRing();
    }
 
    public final void synchronizationUnlock()
@@ -3087,6 +3450,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       synchronizationLock();
       try
       {
+         deleteCheckpoint();
+
          Map<Long, JournalFile> map = new HashMap<Long, JournalFile>();
          long maxID = -1;
          for (long id : fileIds)
@@ -3123,6 +3488,14 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // The current file is the last one that has data
 
       currentFile = filesRepository.pollLastDataFile();
+
+      if (currentFile != null && packedRecords && currentFile.getJournalVersion() < JournalImpl.PACKED_FORMAT_VERSION)
+      {
+         // packed records only go to files an older version refuses to read
+         filesRepository.addDataFileOnBottom(currentFile);
+         currentFile = null;
+      }
+
       if (currentFile != null)
       {
          if (!currentFile.getFile().isOpen())
@@ -3211,6 +3584,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       filesRepository.closeFile(currentFile);
 
+      reclaimer.fileClosed(currentFile);
+
       currentFile = filesRepository.openFile();
 
       if (scheduleReclaim)
@@ -3218,6 +3593,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          scheduleReclaim();
       }
 
+      if (checkpointFiles > 0 && ++filesSinceCheckpoint >= checkpointFiles)
+      {
+         filesSinceCheckpoint = 0;
+
+         scheduleCheckpoint();
+      }
+
       if (trace)
       {
          ActiveMQJournalLogger.LOGGER.trace("Moving next file " + currentFile);
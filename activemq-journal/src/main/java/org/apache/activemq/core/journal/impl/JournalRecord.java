@@ -36,17 +36,45 @@ public class JournalRecord
    private List<Pair<JournalFile, Integer>> updateFiles;
 
    public JournalRecord(final JournalFile addFile, final int size)
+   {
+      this(addFile, size, true);
+   }
+
+   private JournalRecord(final JournalFile addFile, final int size, final boolean count)
    {
       this.addFile = addFile;
 
       this.size = size;
 
-      addFile.incPosCount();
+      if (count)
+      {
+         addFile.incPosCount();
+
+         addFile.addSize(size);
+      }
+   }
 
-      addFile.addSize(size);
+   /**
+    * Recreates a record whose files already count it, as they do when restored from a checkpoint.
+    */
+   static JournalRecord restore(final JournalFile addFile, final int size)
+   {
+      return new JournalRecord(addFile, size, false);
    }
 
    void addUpdateFile(final JournalFile updateFile, final int size)
+   {
+      restoreUpdateFile(updateFile, size);
+
+      updateFile.incPosCount();
+
+      updateFile.addSize(size);
+   }
+
+   /**
+    * Adds an update the file already counts.
+    */
+   void restoreUpdateFile(final JournalFile updateFile, final int size)
    {
       if (updateFiles == null)
       {
@@ -54,10 +82,24 @@ public class JournalRecord
       }
 
       updateFiles.add(new Pair<JournalFile, Integer>(updateFile, size));
+   }
 
-      updateFile.incPosCount();
+   JournalFile getAddFile()
+   {
+      return addFile;
+   }
 
-      updateFile.addSize(size);
+   int getSize()
+   {
+      return size;
+   }
+
+   /**
+    * @return the files and sizes of the updates, null if there are none
+    */
+   List<Pair<JournalFile, Integer>> getUpdateFiles()
+   {
+      return updateFiles;
    }
 
    void delete(final JournalFile file)
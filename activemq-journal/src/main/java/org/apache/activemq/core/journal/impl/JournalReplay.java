@@ -0,0 +1,331 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.activemq.core.journal.LoaderCallback;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.ConcurrentLongHashMap;
+
+/**
+ * Applies the records read from the journal files, in file order, to the records and transactions of a journal
+ * and to a {@link LoaderCallback}.
+ * <p/>
+ * This is the core of {@link JournalImpl#load(LoaderCallback)}, it is also used to build the journal checkpoints.
+ */
+final class JournalReplay
+{
+   private final JournalRecordProvider provider;
+
+   private final ConcurrentLongHashMap<JournalTransaction> transactions;
+
+   private final LoaderCallback loadManager;
+
+   // the transactions still open, in the order they were first seen
+   final Map<Long, TransactionHolder> loadTransactions = new LinkedHashMap<Long, TransactionHolder>();
+
+   private long maxID = -1;
+
+   JournalReplay(final JournalRecordProvider provider,
+                 final ConcurrentLongHashMap<JournalTransaction> transactions,
+                 final LoaderCallback loadManager)
+   {
+      this.provider = provider;
+      this.transactions = transactions;
+      this.loadManager = loadManager;
+   }
+
+   long getMaxID()
+   {
+      return maxID;
+   }
+
+   void checkID(final long id)
+   {
+      if (id > maxID)
+      {
+         maxID = id;
+      }
+   }
+
+   /**
+    * @param hasData set when the file is found to hold any data
+    * @return the callback applying the records of one file
+    */
+   JournalReaderCallback newFileCallback(final JournalFile file, final AtomicBoolean hasData)
+   {
+      return new JournalReaderCallback()
+      {
+         public void onReadAddRecord(final RecordInfo info) throws Exception
+         {
+            checkID(info.id);
+
+            hasData.set(true);
+
+            loadManager.addRecord(info);
+
+            provider.getRecords().put(info.id, new JournalRecord(file, info.encodeSize));
+         }
+
+         public void onReadUpdateRecord(final RecordInfo info) throws Exception
+         {
+            checkID(info.id);
+
+            hasData.set(true);
+
+            loadManager.updateRecord(info);
+
+            JournalRecord posFiles = provider.getRecords().get(info.id);
+
+            if (posFiles != null)
+            {
+               // It's legal for this to be null. The file(s) with the may
+               // have been deleted
+               // just leaving some updates in this file
+
+               posFiles.addUpdateFile(file, info.encodeSize);
+            }
+         }
+
+         public void onReadDeleteRecord(final long recordID) throws Exception
+         {
+            hasData.set(true);
+
+            loadManager.deleteRecord(recordID);
+
+            JournalRecord posFiles = provider.getRecords().remove(recordID);
+
+            if (posFiles != null)
+            {
+               posFiles.delete(file);
+            }
+         }
+
+         public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+         {
+            onReadAddRecordTX(transactionID, info);
+         }
+
+         public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+         {
+
+            checkID(info.id);
+
+            hasData.set(true);
+
+            TransactionHolder tx = loadTransactions.get(transactionID);
+
+            if (tx == null)
+            {
+               tx = new TransactionHolder(transactionID);
+
+               loadTransactions.put(transactionID, tx);
+            }
+
+            tx.recordInfos.add(info);
+
+            getTransaction(transactionID).addPositive(file, info.id, info.encodeSize);
+         }
+
+         public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+         {
+            hasData.set(true);
+
+            TransactionHolder tx = loadTransactions.get(transactionID);
+
+            if (tx == null)
+            {
+               tx = new TransactionHolder(transactionID);
+
+               loadTransactions.put(transactionID, tx);
+            }
+
+            tx.recordsToDelete.add(info);
+
+            getTransaction(transactionID).addNegative(file, info.id);
+
+         }
+
+         public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
+         {
+            hasData.set(true);
+
+            TransactionHolder tx = loadTransactions.get(transactionID);
+
+            if (tx == null)
+            {
+               // The user could choose to prepare empty transactions
+               tx = new TransactionHolder(transactionID);
+
+               loadTransactions.put(transactionID, tx);
+            }
+
+            tx.prepared = true;
+
+            tx.extraData = extraData;
+
+            JournalTransaction journalTransaction = getTransaction(transactionID);
+
+            boolean healthy = checkTransactionHealth(file, journalTransaction, numberOfRecords);
+
+            if (healthy)
+            {
+               journalTransaction.prepare(file);
+            }
+            else
+            {
+               ActiveMQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
+               tx.invalid = true;
+            }
+         }
+
+         public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+         {
+            TransactionHolder tx = loadTransactions.remove(transactionID);
+
+            // The commit could be alone on its own journal-file and the
+            // whole transaction body was reclaimed but not the
+            // commit-record
+            // So it is completely legal to not find a transaction at this
+            // point
+            // If we can't find it, we assume the TX was reclaimed and we
+            // ignore this
+            if (tx != null)
+            {
+               JournalTransaction journalTransaction = transactions.remove(transactionID);
+
+               if (journalTransaction == null)
+               {
+                  throw new IllegalStateException("Cannot find tx " + transactionID);
+               }
+
+               boolean healthy = checkTransactionHealth(file, journalTransaction, numberOfRecords);
+
+               if (healthy)
+               {
+                  for (RecordInfo txRecord : tx.recordInfos)
+                  {
+                     if (txRecord.isUpdate)
+                     {
+                        loadManager.updateRecord(txRecord);
+                     }
+                     else
+                     {
+                        loadManager.addRecord(txRecord);
+                     }
+                  }
+
+                  for (RecordInfo deleteValue : tx.recordsToDelete)
+                  {
+                     loadManager.deleteRecord(deleteValue.id);
+                  }
+
+                  journalTransaction.commit(file);
+               }
+               else
+               {
+                  ActiveMQJournalLogger.LOGGER.txMissingElements(transactionID);
+
+                  journalTransaction.forget();
+               }
+
+               hasData.set(true);
+            }
+
+         }
+
+         public void onReadRollbackRecord(final long transactionID) throws Exception
+         {
+            TransactionHolder tx = loadTransactions.remove(transactionID);
+
+            // The rollback could be alone on its own journal-file and the
+            // whole transaction body was reclaimed but the commit-record
+            // So it is completely legal to not find a transaction at this
+            // point
+            if (tx != null)
+            {
+               JournalTransaction tnp = transactions.remove(transactionID);
+
+               if (tnp == null)
+               {
+                  throw new IllegalStateException("Cannot find tx " + transactionID);
+               }
+
+               // There is no need to validate summaries/holes on
+               // Rollbacks.. We will ignore the data anyway.
+               tnp.rollback(file);
+
+               hasData.set(true);
+            }
+         }
+
+         public void markAsDataFile(final JournalFile file)
+         {
+            hasData.set(true);
+         }
+
+      };
+   }
+
+   private JournalTransaction getTransaction(final long transactionID)
+   {
+      JournalTransaction tx = transactions.get(transactionID);
+
+      if (tx == null)
+      {
+         tx = new JournalTransaction(transactionID, provider);
+
+         transactions.put(transactionID, tx);
+      }
+
+      return tx;
+   }
+
+   private static boolean checkTransactionHealth(final JournalFile currentFile,
+                                                 final JournalTransaction journalTransaction,
+                                                 final int numberOfRecords)
+   {
+      return journalTransaction.getCounter(currentFile) == numberOfRecords;
+   }
+
+   static final class TransactionHolder
+   {
+      public TransactionHolder(final long id)
+      {
+         transactionID = id;
+      }
+
+      public final long transactionID;
+
+      public final List<RecordInfo> recordInfos = new ArrayList<RecordInfo>();
+
+      public final List<RecordInfo> recordsToDelete = new ArrayList<RecordInfo>();
+
+      public boolean prepared;
+
+      public boolean invalid;
+
+      public byte[] extraData;
+
+   }
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import org.apache.activemq.core.journal.IOAsyncTask;
+import org.apache.activemq.utils.Histogram;
+
+/**
+ * Records the time from its creation until the delegate is done.
+ */
+final class LatencyRecordingCallback implements IOAsyncTask
+{
+   private final IOAsyncTask delegate;
+
+   private final Histogram histogram;
+
+   private final long start = System.nanoTime();
+
+   LatencyRecordingCallback(final IOAsyncTask delegate, final Histogram histogram)
+   {
+      this.delegate = delegate;
+      this.histogram = histogram;
+   }
+
+   public void done()
+   {
+      histogram.record(System.nanoTime() - start);
+
+      delegate.done();
+   }
+
+   public void onError(final int errorCode, final String errorMessage)
+   {
+      delegate.onError(errorCode, errorMessage);
+   }
+}
@@ -0,0 +1,574 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+import org.apache.activemq.api.core.ActiveMQException;
+import org.apache.activemq.api.core.ActiveMQExceptionType;
+import org.apache.activemq.api.core.ActiveMQIOErrorException;
+import org.apache.activemq.api.core.ActiveMQIllegalStateException;
+import org.apache.activemq.core.journal.IOAsyncTask;
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.journal.ActiveMQJournalBundle;
+import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.Histogram;
+
+/**
+ * A SequentialFile that maps the whole file with a {@link MappedByteBuffer}.
+ * <p/>
+ * Journal files are pre-allocated through {@link #fill(int, int, byte)}, so every record write is a memory copy into
+ * the mapping and a sync is a {@link MappedByteBuffer#force()}. When a TimedBuffer is active the buffer handed to it
+ * for flushing is a slice of the mapping itself, so the records are copied only once.
+ * <p/>
+ * Writes beyond the mapped region (files that were never pre-allocated such as control files) fall back to
+ * positional writes on the FileChannel.
+ */
+public final class MappedSequentialFile extends AbstractSequentialFile
+{
+   /**
+    * Unsafe.invokeCleaner is the only way to release a mapping since Java 9, null before that
+    */
+   private static final Object UNSAFE;
+
+   private static final Method INVOKE_CLEANER;
+
+   static
+   {
+      Object unsafe = null;
+      Method invokeCleaner = null;
+      try
+      {
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+         invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+         Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+         theUnsafe.setAccessible(true);
+         unsafe = theUnsafe.get(null);
+      }
+      catch (Throwable e)
+      {
+         invokeCleaner = null;
+      }
+      UNSAFE = unsafe;
+      INVOKE_CLEANER = invokeCleaner;
+   }
+
+   private FileChannel channel;
+
+   private RandomAccessFile rfile;
+
+   private volatile MappedByteBuffer mappedBuffer;
+
+   /**
+    * Guards the mapping and the channel between a {@link #sync()} and {@link #close()}, as forcing a released mapping
+    * would touch freed memory. {@link #sync()} can't use the file's own lock, see there.
+    */
+   private final Object mappingLock = new Object();
+
+   /**
+    * The last slice handed out by {@link #newBuffer(int, int)}, written in place by the TimedBuffer
+    */
+   private ByteBuffer pendingSlice;
+
+   private final int defaultMaxIO;
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final File file,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(file.getParent(), new File(file.getPath()), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position)
+   {
+      return position;
+   }
+
+   public synchronized boolean isOpen()
+   {
+      return channel != null;
+   }
+
+   public synchronized void open() throws IOException
+   {
+      open(defaultMaxIO, true);
+   }
+
+   public synchronized void open(final int maxIO, final boolean useExecutor) throws IOException
+   {
+      try
+      {
+         RandomAccessFile newFile = new RandomAccessFile(getFile(), "rw");
+
+         synchronized (mappingLock)
+         {
+            rfile = newFile;
+
+            channel = rfile.getChannel();
+         }
+
+         fileSize = channel.size();
+
+         // a fresh channel starts at 0, as it would on NIO
+         position.set(0);
+
+         map();
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+   }
+
+   public synchronized void fill(final int position, final int size, final byte fillCharacter) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.allocate(size);
+
+      for (int i = 0; i < size; i++)
+      {
+         bb.put(fillCharacter);
+      }
+
+      bb.flip();
+
+      try
+      {
+         channel.write(bb, position);
+         channel.force(false);
+
+         fileSize = channel.size();
+
+         // the file has its final size now, we can map all of it
+         map();
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+   }
+
+   public synchronized void waitForClose() throws InterruptedException
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws IOException, InterruptedException, ActiveMQException
+   {
+      // this will wait any pending sync on the writerExecutor
+      super.close();
+
+      synchronized (mappingLock)
+      {
+         unmap();
+
+         try
+         {
+            if (channel != null)
+            {
+               channel.close();
+            }
+
+            if (rfile != null)
+            {
+               rfile.close();
+            }
+         }
+         catch (IOException e)
+         {
+            factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+            throw e;
+         }
+         finally
+         {
+            channel = null;
+
+            rfile = null;
+         }
+      }
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws IOException,
+      ActiveMQIllegalStateException
+   {
+      try
+      {
+         if (channel == null)
+         {
+            throw new ActiveMQIllegalStateException("File " + this.getFileName() + " has a null channel");
+         }
+
+         final long readPosition = position.get();
+
+         final MappedByteBuffer mapping = mappedBuffer;
+
+         int bytesRead;
+
+         if (mapping != null && readPosition + bytes.remaining() <= mapping.capacity())
+         {
+            ByteBuffer source = mapping.duplicate();
+            source.position((int) readPosition);
+            source.limit((int) readPosition + bytes.remaining());
+            bytesRead = source.remaining();
+            bytes.put(source);
+         }
+         else
+         {
+            bytesRead = channel.read(bytes, readPosition);
+         }
+
+         if (bytesRead > 0)
+         {
+            position.addAndGet(bytesRead);
+         }
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+
+         bytes.flip();
+
+         return bytesRead;
+      }
+      catch (IOException e)
+      {
+         if (callback != null)
+         {
+            callback.onError(ActiveMQExceptionType.IO_ERROR.getCode(), e.getLocalizedMessage());
+         }
+
+         factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+
+         throw e;
+      }
+   }
+
+   /**
+    * Not synchronized on purpose, as this is called from the writerExecutor while {@link #close()} holds the lock
+    * waiting for the executor to be drained.
+    */
+   public void sync() throws IOException
+   {
+      Histogram syncTimes = getSyncTimes();
+
+      long start = syncTimes == null ? 0 : System.nanoTime();
+
+      try
+      {
+         synchronized (mappingLock)
+         {
+            final MappedByteBuffer mapping = mappedBuffer;
+
+            if (mapping != null)
+            {
+               mapping.force();
+            }
+
+            if (channel != null && channel.size() > (mapping == null ? 0 : mapping.capacity()))
+            {
+               // something was written beyond the mapping
+               channel.force(false);
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      if (syncTimes != null)
+      {
+         syncTimes.record(System.nanoTime() - start);
+      }
+   }
+
+   public long size() throws IOException
+   {
+      if (channel == null)
+      {
+         return getFile().length();
+      }
+
+      try
+      {
+         return channel.size();
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return "MappedSequentialFile " + getFile();
+   }
+
+   public SequentialFile cloneFile()
+   {
+      return new MappedSequentialFile(factory, getFile(), defaultMaxIO, writerExecutor);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (callback == null)
+      {
+         throw new NullPointerException("callback parameter need to be set");
+      }
+
+      try
+      {
+         internalWrite(bytes, sync, callback);
+      }
+      catch (Exception e)
+      {
+         callback.onError(ActiveMQExceptionType.GENERIC_EXCEPTION.getCode(), e.getMessage());
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      internalWrite(bytes, sync, null);
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws Exception
+   {
+      internalWrite(bytes, true, null);
+   }
+
+   /**
+    * Hands the TimedBuffer a slice of the mapping at the current position, so the flush writes directly into the
+    * file's pages. {@link #internalWrite(ByteBuffer, boolean, IOAsyncTask)} will recognize the slice and skip the copy.
+    */
+   @Override
+   protected synchronized ByteBuffer newBuffer(final int size, final int limit)
+   {
+      final MappedByteBuffer mapping = mappedBuffer;
+
+      final long writePosition = position.get();
+
+      if (mapping != null && writePosition + limit <= mapping.capacity())
+      {
+         ByteBuffer slice = mapping.duplicate();
+         slice.position((int) writePosition);
+         slice.limit((int) writePosition + limit);
+         pendingSlice = slice.slice();
+         return pendingSlice;
+      }
+
+      // For NIO, we don't need to allocate a buffer the entire size of the timed buffer, unlike AIO
+      return super.newBuffer(limit, limit);
+   }
+
+   private void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException, ActiveMQIOErrorException
+   {
+      synchronized (this)
+      {
+         if (!isOpen())
+         {
+            if (callback != null)
+            {
+               callback.onError(ActiveMQExceptionType.IO_ERROR.getCode(), "File not opened");
+            }
+            else
+            {
+               throw ActiveMQJournalBundle.BUNDLE.fileNotOpened();
+            }
+            return;
+         }
+
+         final int size = bytes.remaining();
+
+         final long writePosition = position.getAndAdd(size);
+
+         try
+         {
+            if (bytes == pendingSlice)
+            {
+               // the TimedBuffer already wrote on the mapping
+               pendingSlice = null;
+            }
+            else
+            {
+               final MappedByteBuffer mapping = mappedBuffer;
+
+               if (mapping != null && writePosition + size <= mapping.capacity())
+               {
+                  ByteBuffer target = mapping.duplicate();
+                  target.position((int) writePosition);
+                  target.put(bytes);
+               }
+               else
+               {
+                  while (bytes.hasRemaining())
+                  {
+                     channel.write(bytes, writePosition + (size - bytes.remaining()));
+                  }
+               }
+            }
+         }
+         catch (IOException e)
+         {
+            factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+            if (callback != null)
+            {
+               callback.onError(ActiveMQExceptionType.IO_ERROR.getCode(), e.getMessage());
+               return;
+            }
+            throw e;
+         }
+      }
+
+      if (writerExecutor == null || callback == null)
+      {
+         if (sync)
+         {
+            sync();
+         }
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+      }
+      else
+      {
+         // The data is already on the page cache, only the force and the completion go through the executor.
+         // Everything goes through the same single threaded executor so callbacks are still completed in order.
+         writerExecutor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  if (sync)
+                  {
+                     sync();
+                  }
+                  callback.done();
+               }
+               catch (Throwable e)
+               {
+                  ActiveMQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                  callback.onError(ActiveMQExceptionType.IO_ERROR.getCode(), e.getMessage());
+               }
+            }
+         });
+      }
+   }
+
+   private void map() throws IOException
+   {
+      unmap();
+
+      if (fileSize > 0 && fileSize <= Integer.MAX_VALUE)
+      {
+         MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+         synchronized (mappingLock)
+         {
+            mappedBuffer = mapping;
+         }
+      }
+   }
+
+   private void unmap()
+   {
+      synchronized (mappingLock)
+      {
+         final MappedByteBuffer mapping = mappedBuffer;
+
+         mappedBuffer = null;
+
+         pendingSlice = null;
+
+         if (mapping != null)
+         {
+            try
+            {
+               release(mapping);
+            }
+            catch (Throwable e)
+            {
+               ActiveMQJournalLogger.LOGGER.errorReleasingMapping(e, getFile().toString());
+            }
+         }
+      }
+   }
+
+   /**
+    * There is no public API to release a mapping, without this the file would stay mapped until the next GC.
+    */
+   private static void release(final MappedByteBuffer mapping) throws Exception
+   {
+      if (INVOKE_CLEANER != null)
+      {
+         INVOKE_CLEANER.invoke(UNSAFE, mapping);
+         return;
+      }
+
+      Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(mapping);
+      if (cleaner != null)
+      {
+         cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+   }
+}
@@ -34,6 +34,7 @@ import org.apache.activemq.core.journal.SequentialFile;
 import org.apache.activemq.core.journal.SequentialFileFactory;
 import org.apache.activemq.journal.ActiveMQJournalBundle;
 import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.Histogram;
 
 public final class NIOSequentialFile extends AbstractSequentialFile
 {
@@ -231,6 +232,10 @@ public final class NIOSequentialFile extends AbstractSequentialFile
    {
       if (channel != null)
       {
+         Histogram syncTimes = getSyncTimes();
+
+         long start = syncTimes == null ? 0 : System.nanoTime();
+
          try
          {
             channel.force(false);
@@ -240,6 +245,11 @@ public final class NIOSequentialFile extends AbstractSequentialFile
             factory.onIOError(new ActiveMQIOErrorException(e.getMessage(), e), e.getMessage(), this);
             throw e;
          }
+
+         if (syncTimes != null)
+         {
+            syncTimes.record(System.nanoTime() - start);
+         }
       }
    }
 
@@ -296,7 +306,7 @@ public final class NIOSequentialFile extends AbstractSequentialFile
 
       try
       {
-         internalWrite(bytes, sync, callback);
+         internalWrite(bytes, sync, callback, false);
       }
       catch (Exception e)
       {
@@ -306,12 +316,25 @@ public final class NIOSequentialFile extends AbstractSequentialFile
 
    public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
    {
-      internalWrite(bytes, sync, null);
+      internalWrite(bytes, sync, null, false);
    }
 
    public void writeInternal(final ByteBuffer bytes) throws Exception
    {
-      internalWrite(bytes, true, null);
+      internalWrite(bytes, true, null, false);
+   }
+
+   @Override
+   protected void writeReleasingBuffer(final ByteBuffer buffer, final boolean sync, final IOAsyncTask callback)
+   {
+      try
+      {
+         internalWrite(buffer, sync, callback, true);
+      }
+      catch (Exception e)
+      {
+         callback.onError(ActiveMQExceptionType.GENERIC_EXCEPTION.getCode(), e.getMessage());
+      }
    }
 
    @Override
@@ -324,7 +347,10 @@ public final class NIOSequentialFile extends AbstractSequentialFile
       return super.newBuffer(size, limit);
    }
 
-   private void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException, ActiveMQIOErrorException, InterruptedException
+   private void internalWrite(final ByteBuffer bytes,
+                              final boolean sync,
+                              final IOAsyncTask callback,
+                              final boolean releaseBuffer) throws IOException, ActiveMQIOErrorException, InterruptedException
    {
       if (!isOpen())
       {
@@ -346,7 +372,7 @@ public final class NIOSequentialFile extends AbstractSequentialFile
          // if maxIOSemaphore == null, that means we are not using executors and the writes are synchronous
          try
          {
-            doInternalWrite(bytes, sync, callback);
+            doInternalWrite(bytes, sync, callback, releaseBuffer);
          }
          catch (IOException e)
          {
@@ -366,7 +392,7 @@ public final class NIOSequentialFile extends AbstractSequentialFile
                {
                   try
                   {
-                     doInternalWrite(bytes, sync, callback);
+                     doInternalWrite(bytes, sync, callback, releaseBuffer);
                   }
                   catch (IOException e)
                   {
@@ -393,12 +419,26 @@ public final class NIOSequentialFile extends AbstractSequentialFile
     * @param bytes
     * @param sync
     * @param callback
+    * @param releaseBuffer gives the buffer back to the factory once written
     * @throws IOException
     * @throws Exception
     */
-   private void doInternalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException
+   private void doInternalWrite(final ByteBuffer bytes,
+                                final boolean sync,
+                                final IOAsyncTask callback,
+                                final boolean releaseBuffer) throws IOException
    {
-      channel.write(bytes);
+      try
+      {
+         channel.write(bytes);
+      }
+      finally
+      {
+         if (releaseBuffer)
+         {
+            factory.releaseBuffer(bytes);
+         }
+      }
 
       if (sync)
       {
@@ -19,11 +19,14 @@ package org.apache.activemq.core.journal.impl;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 
+import org.apache.activemq.core.journal.ByteBufferPool;
 import org.apache.activemq.core.journal.IOCriticalErrorListener;
 import org.apache.activemq.core.journal.SequentialFile;
 
 public class NIOSequentialFileFactory extends AbstractSequentialFileFactory
 {
+   private volatile ByteBufferPool bufferPool;
+
    public NIOSequentialFileFactory(final String journalDir)
    {
       this(journalDir, null);
@@ -91,9 +94,30 @@ public class NIOSequentialFileFactory extends AbstractSequentialFileFactory
       return timedBuffer != null;
    }
 
+   /**
+    * Sets the pool the buffers of this factory are taken from and given back to. Without a pool
+    * the buffers are heap buffers, and new direct buffers for {@link #allocateDirectBuffer(int)}.
+    */
+   public void setBufferPool(final ByteBufferPool bufferPool)
+   {
+      this.bufferPool = bufferPool;
+   }
+
+   public ByteBufferPool getBufferPool()
+   {
+      return bufferPool;
+   }
+
 
    public ByteBuffer allocateDirectBuffer(final int size)
    {
+      final ByteBufferPool pool = bufferPool;
+
+      if (pool != null)
+      {
+         return pool.borrow(size);
+      }
+
       // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
       ByteBuffer buffer2 = null;
       try
@@ -128,14 +152,34 @@ public class NIOSequentialFileFactory extends AbstractSequentialFileFactory
 
    public void releaseDirectBuffer(ByteBuffer buffer)
    {
-      // nothing we can do on this case. we can just have good faith on GC
+      releaseBuffer(buffer);
    }
 
    public ByteBuffer newBuffer(final int size)
    {
+      final ByteBufferPool pool = bufferPool;
+
+      if (pool != null)
+      {
+         return pool.borrow(size);
+      }
+
       return ByteBuffer.allocate(size);
    }
 
+   @Override
+   public void releaseBuffer(final ByteBuffer buffer)
+   {
+      final ByteBufferPool pool = bufferPool;
+
+      if (pool != null)
+      {
+         pool.release(buffer);
+      }
+
+      // without a pool there is nothing we can do, we can just have good faith on GC
+   }
+
    public void clearBuffer(final ByteBuffer buffer)
    {
       final int limit = buffer.limit();
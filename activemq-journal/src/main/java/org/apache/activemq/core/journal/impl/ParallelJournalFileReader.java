@@ -0,0 +1,276 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+
+/**
+ * Reads and validates journal files on a pool of threads ahead of the loader.
+ * <p/>
+ * Every file is parsed by {@link JournalImpl#readJournalFile(SequentialFileFactory, JournalFile, JournalReaderCallback)}
+ * into a list of events, which are then replayed on the loading thread in file order, so the
+ * loader sees exactly the same sequence of callbacks as with a sequential load. Only a window of
+ * files is read ahead, to bound the memory held by parsed records.
+ */
+final class ParallelJournalFileReader
+{
+   private final SequentialFileFactory fileFactory;
+
+   private final List<JournalFile> files;
+
+   private final int window;
+
+   private final List<Future<FileEvents>> futures;
+
+   private final ExecutorService executor;
+
+   private int nextToSubmit;
+
+   private int nextToRead;
+
+   ParallelJournalFileReader(final SequentialFileFactory fileFactory,
+                             final List<JournalFile> files,
+                             final int parallelism)
+   {
+      this.fileFactory = fileFactory;
+      this.files = files;
+      this.window = parallelism * 2;
+      this.futures = new ArrayList<Future<FileEvents>>(files.size());
+
+      final AtomicInteger threadCount = new AtomicInteger(0);
+
+      this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory()
+      {
+         public Thread newThread(final Runnable r)
+         {
+            Thread t = new Thread(r, "JournalImpl::LoadReader-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+
+      submitWindow();
+   }
+
+   /**
+    * Replays the events of the next file on the given reader. Files have to be requested in the
+    * order they were given to the constructor.
+    *
+    * @return the last data position of the file, as {@link JournalImpl#readJournalFile(SequentialFileFactory, JournalFile, JournalReaderCallback)}
+    */
+   int readJournalFile(final JournalFile file, final JournalReaderCallback reader) throws Exception
+   {
+      if (files.get(nextToRead) != file)
+      {
+         throw new IllegalStateException("Journal files must be read in order, expected " + files.get(nextToRead) +
+                                            " but got " + file);
+      }
+
+      Future<FileEvents> future = futures.get(nextToRead);
+
+      // let the GC take the events as soon as they are replayed
+      futures.set(nextToRead, null);
+
+      nextToRead++;
+
+      submitWindow();
+
+      FileEvents events;
+      try
+      {
+         events = future.get();
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception)
+         {
+            throw (Exception) cause;
+         }
+         throw new Exception(cause.getMessage(), cause);
+      }
+
+      return events.replay(reader);
+   }
+
+   void stop()
+   {
+      executor.shutdownNow();
+   }
+
+   private void submitWindow()
+   {
+      while (nextToSubmit < files.size() && nextToSubmit < nextToRead + window)
+      {
+         final JournalFile file = files.get(nextToSubmit++);
+
+         futures.add(executor.submit(new Callable<FileEvents>()
+         {
+            public FileEvents call() throws Exception
+            {
+               FileEvents events = new FileEvents();
+               events.lastDataPos = JournalImpl.readJournalFile(fileFactory, file, events);
+               return events;
+            }
+         }));
+      }
+   }
+
+   private static final class Event
+   {
+      final byte type;
+
+      final long id;
+
+      final RecordInfo info;
+
+      final byte[] extraData;
+
+      final int numberOfRecords;
+
+      Event(final byte type, final long id, final RecordInfo info, final byte[] extraData, final int numberOfRecords)
+      {
+         this.type = type;
+         this.id = id;
+         this.info = info;
+         this.extraData = extraData;
+         this.numberOfRecords = numberOfRecords;
+      }
+   }
+
+   /**
+    * Records the callbacks of a single file. A markAsDataFile has no record type, it is kept as type 0.
+    */
+   private static final class FileEvents implements JournalReaderCallback
+   {
+      private static final byte MARK_AS_DATA_FILE = 0;
+
+      private final List<Event> events = new ArrayList<Event>();
+
+      private JournalFile markedFile;
+
+      int lastDataPos;
+
+      public void onReadAddRecord(final RecordInfo info) throws Exception
+      {
+         events.add(new Event(JournalImpl.ADD_RECORD, 0, info, null, 0));
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info) throws Exception
+      {
+         events.add(new Event(JournalImpl.UPDATE_RECORD, 0, info, null, 0));
+      }
+
+      public void onReadDeleteRecord(final long recordID) throws Exception
+      {
+         events.add(new Event(JournalImpl.DELETE_RECORD, recordID, null, null, 0));
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         events.add(new Event(JournalImpl.ADD_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         events.add(new Event(JournalImpl.UPDATE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         events.add(new Event(JournalImpl.DELETE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
+      {
+         events.add(new Event(JournalImpl.PREPARE_RECORD, transactionID, null, extraData, numberOfRecords));
+      }
+
+      public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+      {
+         events.add(new Event(JournalImpl.COMMIT_RECORD, transactionID, null, null, numberOfRecords));
+      }
+
+      public void onReadRollbackRecord(final long transactionID) throws Exception
+      {
+         events.add(new Event(JournalImpl.ROLLBACK_RECORD, transactionID, null, null, 0));
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+         markedFile = file;
+         events.add(new Event(MARK_AS_DATA_FILE, 0, null, null, 0));
+      }
+
+      int replay(final JournalReaderCallback reader) throws Exception
+      {
+         for (Event event : events)
+         {
+            switch (event.type)
+            {
+               case JournalImpl.ADD_RECORD:
+                  reader.onReadAddRecord(event.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD:
+                  reader.onReadUpdateRecord(event.info);
+                  break;
+               case JournalImpl.DELETE_RECORD:
+                  reader.onReadDeleteRecord(event.id);
+                  break;
+               case JournalImpl.ADD_RECORD_TX:
+                  reader.onReadAddRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD_TX:
+                  reader.onReadUpdateRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.DELETE_RECORD_TX:
+                  reader.onReadDeleteRecordTX(event.id, event.info);
+                  break;
+               case JournalImpl.PREPARE_RECORD:
+                  reader.onReadPrepareRecord(event.id, event.extraData, event.numberOfRecords);
+                  break;
+               case JournalImpl.COMMIT_RECORD:
+                  reader.onReadCommitRecord(event.id, event.numberOfRecords);
+                  break;
+               case JournalImpl.ROLLBACK_RECORD:
+                  reader.onReadRollbackRecord(event.id);
+                  break;
+               case MARK_AS_DATA_FILE:
+                  reader.markAsDataFile(markedFile);
+                  break;
+               default:
+                  throw new IllegalStateException("Invalid event type " + event.type);
+            }
+         }
+
+         events.clear();
+
+         return lastDataPos;
+      }
+   }
+}
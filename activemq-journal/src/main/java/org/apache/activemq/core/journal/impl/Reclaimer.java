@@ -16,6 +16,12 @@
  */
 package org.apache.activemq.core.journal.impl;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.activemq.journal.ActiveMQJournalLogger;
 
@@ -33,6 +39,13 @@ import org.apache.activemq.journal.ActiveMQJournalLogger;
  *
  * <p>2) All pos that correspond to any neg in file Fn, must all live in any file Fm where 0 <= m <= n
  * which are also marked for deletion in the same pass of the algorithm.</p>
+ *
+ * <p>The criteria are kept as counters per file: the negatives received from the files after it and the
+ * files before it it has negatives into that can't be reclaimed yet. A data file doesn't get new records,
+ * so its counters change when a later file is closed, or when a transaction with deletes written in the
+ * file is committed after it was closed, and it becomes reclaimable as its counters allow it, without going
+ * through the other files again. {@link #scan(JournalFile[])} rebuilds the counters from scratch, as needed
+ * after loading or compacting.</p>
  */
 public class Reclaimer
 {
@@ -43,76 +56,273 @@ public class Reclaimer
       ActiveMQJournalLogger.LOGGER.trace(message);
    }
 
-   public void scan(final JournalFile[] files)
+   /**
+    * The data files being tracked, not yet reclaimed
+    */
+   private final Map<JournalFile, FileState> files = new HashMap<JournalFile, FileState>();
+
+   /**
+    * The tracked files that can be reclaimed, in the order they became reclaimable
+    */
+   private final List<JournalFile> reclaimable = new ArrayList<JournalFile>();
+
+   /**
+    * Cleared when the data files are changed other than by closing a file, until the next scan
+    */
+   private boolean tracking;
+
+   /**
+    * Rebuilds the counters of the files, in the order of the data files, and sets whether each can be reclaimed.
+    */
+   public synchronized void scan(final JournalFile[] dataFiles)
+   {
+      files.clear();
+      reclaimable.clear();
+
+      for (JournalFile file : dataFiles)
+      {
+         track(file);
+      }
+
+      tracking = true;
+   }
+
+   /**
+    * Adds a file just closed, after all the data files, updating the files it has negatives into.
+    */
+   public synchronized void fileClosed(final JournalFile file)
+   {
+      // a scan running as the file was added to the data files may have tracked it already
+      if (tracking && !files.containsKey(file))
+      {
+         track(file);
+      }
+   }
+
+   /**
+    * A negative added to a closed file, by a transaction with deletes written in it committed afterwards.
+    */
+   synchronized void negativeAdded(final JournalFile file, final JournalFile target)
+   {
+      FileState state = files.get(file);
+
+      if (state != null)
+      {
+         addNegatives(state, target, 1);
+
+         evaluate(state);
+      }
+   }
+
+   /**
+    * A positive removed from a closed file, which may make it reclaimable.
+    */
+   synchronized void positiveRemoved(final JournalFile file)
+   {
+      FileState state = files.get(file);
+
+      if (state != null)
+      {
+         evaluate(state);
+      }
+   }
+
+   /**
+    * The data files are being replaced, they will be scanned again.
+    */
+   public synchronized void invalidate()
+   {
+      tracking = false;
+      files.clear();
+      reclaimable.clear();
+   }
+
+   /**
+    * @return whether the counters are up to date with the data files
+    */
+   public synchronized boolean isTracking(final int dataFilesCount)
+   {
+      return tracking && files.size() == dataFilesCount;
+   }
+
+   /**
+    * @return the files that can be reclaimed, which are no longer tracked
+    */
+   public synchronized List<JournalFile> pollReclaimable()
    {
-      for (int i = 0; i < files.length; i++)
+      if (reclaimable.isEmpty())
       {
-         // First we evaluate criterion 1)
+         return Collections.emptyList();
+      }
 
-         JournalFile currentFile = files[i];
+      List<JournalFile> result = new ArrayList<JournalFile>(reclaimable);
 
-         int posCount = currentFile.getPosCount();
+      reclaimable.clear();
 
-         int totNeg = 0;
+      for (JournalFile file : result)
+      {
+         files.remove(file);
+      }
 
+      return result;
+   }
+
+   /**
+    * @return the number of files that can be reclaimed and were not yet
+    */
+   public synchronized int getReclaimableCount()
+   {
+      return reclaimable.size();
+   }
+
+   private void track(final JournalFile file)
+   {
+      FileState state = new FileState(file);
+
+      file.setCanReclaim(false);
+
+      if (file instanceof JournalFileImpl)
+      {
+         for (Map.Entry<JournalFile, Integer> entry : ((JournalFileImpl) file).track(this).entrySet())
+         {
+            addNegatives(state, entry.getKey(), entry.getValue());
+         }
+      }
+      else
+      {
+         addNegatives(state, file, file.getNegCount(file));
+
+         for (FileState previous : files.values())
+         {
+            addNegatives(state, previous.file, file.getNegCount(previous.file));
+         }
+      }
+
+      files.put(file, state);
+
+      evaluate(state);
+   }
+
+   /**
+    * Only the files tracked before the file count, the others are later data files or not data files at all.
+    */
+   private void addNegatives(final FileState state, final JournalFile target, final int count)
+   {
+      if (count == 0)
+      {
+         return;
+      }
+
+      if (target == state.file)
+      {
+         state.negatives += count;
+         return;
+      }
+
+      FileState targetState = files.get(target);
+
+      if (targetState == null)
+      {
+         return;
+      }
+
+      if (Reclaimer.trace)
+      {
+         Reclaimer.trace("Negative from " + state.file + " into " + target + " = " + count);
+      }
+
+      targetState.negatives += count;
+
+      evaluate(targetState);
+
+      if (!targetState.reclaimable)
+      {
+         state.pendingDependencies++;
+         targetState.addDependent(state);
+      }
+   }
+
+   private void evaluate(final FileState state)
+   {
+      if (!state.canReclaim())
+      {
+         return;
+      }
+
+      ArrayDeque<FileState> newlyReclaimable = new ArrayDeque<FileState>();
+
+      state.reclaimable = true;
+      newlyReclaimable.add(state);
+
+      FileState current;
+
+      while ((current = newlyReclaimable.poll()) != null)
+      {
          if (Reclaimer.trace)
          {
-            Reclaimer.trace("posCount on " + currentFile + " = " + posCount);
+            Reclaimer.trace(current.file + " can be reclaimed");
          }
 
-         for (int j = i; j < files.length; j++)
+         current.file.setCanReclaim(true);
+         reclaimable.add(current.file);
+
+         if (current.dependents != null)
          {
-            if (Reclaimer.trace)
+            for (FileState dependent : current.dependents)
             {
-               if (files[j].getNegCount(currentFile) != 0)
+               dependent.pendingDependencies--;
+
+               if (dependent.canReclaim())
                {
-                  Reclaimer.trace("Negative from " + files[j] +
-                                  " into " +
-                                  currentFile +
-                                  " = " +
-                                  files[j].getNegCount(currentFile));
+                  dependent.reclaimable = true;
+                  newlyReclaimable.add(dependent);
                }
             }
 
-            totNeg += files[j].getNegCount(currentFile);
+            current.dependents = null;
          }
+      }
+   }
 
-         currentFile.setCanReclaim(true);
+   private static final class FileState
+   {
+      final JournalFile file;
 
-         if (posCount <= totNeg)
-         {
-            // Now we evaluate criterion 2)
+      /**
+       * The negatives into this file from itself and the files after it (criterion 1)
+       */
+      int negatives;
 
-            for (int j = 0; j <= i; j++)
-            {
-               JournalFile file = files[j];
+      /**
+       * The files before this one it has negatives into that can't be reclaimed yet (criterion 2)
+       */
+      int pendingDependencies;
 
-               int negCount = currentFile.getNegCount(file);
+      /**
+       * The files after this one with negatives into it, while this can't be reclaimed
+       */
+      List<FileState> dependents;
 
-               if (negCount != 0)
-               {
-                  if (file.isCanReclaim())
-                  {
-                     // Ok
-                  }
-                  else
-                  {
-                     if (Reclaimer.trace)
-                     {
-                        Reclaimer.trace(currentFile + " Can't be reclaimed because " + file + " has negative values");
-                     }
-
-                     currentFile.setCanReclaim(false);
-
-                     break;
-                  }
-               }
-            }
-         }
-         else
+      boolean reclaimable;
+
+      FileState(final JournalFile file)
+      {
+         this.file = file;
+      }
+
+      boolean canReclaim()
+      {
+         return !reclaimable && pendingDependencies == 0 && file.getPosCount() <= negatives;
+      }
+
+      void addDependent(final FileState dependent)
+      {
+         if (dependents == null)
          {
-            currentFile.setCanReclaim(false);
+            dependents = new ArrayList<FileState>();
          }
+
+         dependents.add(dependent);
       }
    }
 }
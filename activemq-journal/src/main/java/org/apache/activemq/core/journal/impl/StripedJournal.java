@@ -0,0 +1,1260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.api.core.ActiveMQExceptionType;
+import org.apache.activemq.core.journal.EncodingSupport;
+import org.apache.activemq.core.journal.IOCompletion;
+import org.apache.activemq.core.journal.Journal;
+import org.apache.activemq.core.journal.JournalLoadInformation;
+import org.apache.activemq.core.journal.LoaderCallback;
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.core.journal.TransactionFailureCallback;
+import org.apache.activemq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.apache.activemq.journal.ActiveMQJournalBundle;
+import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.ConcurrentLongHashMap;
+
+/**
+ * A journal spreading its records over several independent journals (stripes), typically each
+ * one on its own device.
+ * <p/>
+ * Every operation on a record goes to the stripe chosen by the record ID, so adds, updates and
+ * deletes of a record always meet on the same stripe and each stripe keeps its own reclaiming
+ * and compacting. A transaction goes to the stripes of its records.
+ * <p/>
+ * A transaction touching more than one stripe is committed in two phases: it is prepared on
+ * every stripe, a commit decision record is synced on the first stripe, then the commit is
+ * written on every stripe and the decision is deleted. Each phase is started by the completion
+ * of the previous one, so a synced commit doesn't block its caller. A commit that isn't synced
+ * returns once the commits are written, as the caller may use the records of the transaction
+ * right away, and only the commit records are written without a sync. When loading, a
+ * transaction prepared on some stripes is committed if its decision is found and rolled back
+ * otherwise, unless it was prepared by the user on every stripe it touched.
+ * <p/>
+ * Transaction IDs must not be used as record IDs, as the decision record of a transaction uses
+ * its ID. Replication is not supported, a server doesn't start with a striped journal and an HA
+ * policy replicating it.
+ */
+public final class StripedJournal extends JournalBase
+{
+   /**
+    * User record type of the commit decisions kept on the first stripe.
+    */
+   public static final byte COMMIT_DECISION_RECORD = -1;
+
+   // Prepare records written by this class start with this marker, followed by the stripes mask and the kind
+   private static final int PREPARE_MAGIC = 0x53545250;
+
+   private static final byte USER_PREPARE = 0;
+
+   private static final byte COMMIT_PREPARE = 1;
+
+   private static final int PREPARE_HEADER_SIZE = 9;
+
+   private static final EncodingSupport EMPTY = new ByteArrayEncoding(new byte[0]);
+
+   private final Journal[] stripes;
+
+   private final ConcurrentLongHashMap<StripedTransaction> transactions = new ConcurrentLongHashMap<StripedTransaction>();
+
+   // Records found at load on a stripe that isn't theirs, e.g. after the number of stripes changed
+   private final ConcurrentLongHashMap<Integer> relocatedRecords = new ConcurrentLongHashMap<Integer>();
+
+   private volatile boolean hasRelocatedRecords;
+
+   // Runs the phases of the commits spanning several stripes, the IO callbacks must not append
+   private volatile ExecutorService commitExecutor;
+
+   public StripedJournal(final Journal... stripes)
+   {
+      super(stripes[0].getFileFactory().isSupportsCallbacks(), stripes[0].getFileSize());
+
+      if (stripes.length < 2 || stripes.length > 32)
+      {
+         throw new IllegalArgumentException("A striped journal needs between 2 and 32 stripes, got " + stripes.length);
+      }
+
+      this.stripes = stripes.clone();
+   }
+
+   public int getStripeCount()
+   {
+      return stripes.length;
+   }
+
+   public Journal getStripe(final int index)
+   {
+      return stripes[index];
+   }
+
+   // ActiveMQComponent implementation ------------------------------
+
+   @Override
+   public void start() throws Exception
+   {
+      commitExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+      {
+
+         public Thread newThread(final Runnable r)
+         {
+            return new Thread(r, "StripedJournal::CommitExecutor");
+         }
+      });
+
+      for (Journal stripe : stripes)
+      {
+         stripe.start();
+      }
+   }
+
+   @Override
+   public void stop() throws Exception
+   {
+      ExecutorService executor = commitExecutor;
+
+      if (executor != null)
+      {
+         executor.shutdown();
+
+         if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+         {
+            ActiveMQJournalLogger.LOGGER.couldNotStopJournalExecutor();
+         }
+      }
+
+      for (Journal stripe : stripes)
+      {
+         stripe.stop();
+      }
+   }
+
+   @Override
+   public boolean isStarted()
+   {
+      return stripes[0].isStarted();
+   }
+
+   // Non transactional appends -------------------------------------
+
+   @Override
+   public void appendAddRecord(final long id,
+                               final byte recordType,
+                               final EncodingSupport record,
+                               final boolean sync,
+                               final IOCompletion callback) throws Exception
+   {
+      stripes[stripeIndex(id)].appendAddRecord(id, recordType, record, sync, callback);
+   }
+
+   @Override
+   public void appendUpdateRecord(final long id,
+                                  final byte recordType,
+                                  final EncodingSupport record,
+                                  final boolean sync,
+                                  final IOCompletion callback) throws Exception
+   {
+      stripes[stripeIndex(id)].appendUpdateRecord(id, recordType, record, sync, callback);
+   }
+
+   @Override
+   public void appendDeleteRecord(final long id, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      stripes[stripeIndex(id)].appendDeleteRecord(id, sync, callback);
+
+      if (hasRelocatedRecords)
+      {
+         relocatedRecords.remove(id);
+      }
+   }
+
+   // Transactional appends -----------------------------------------
+
+   @Override
+   public void appendAddRecordTransactional(final long txID,
+                                            final long id,
+                                            final byte recordType,
+                                            final EncodingSupport record) throws Exception
+   {
+      int index = stripeIndex(id);
+      getTransaction(txID).addStripe(index);
+      stripes[index].appendAddRecordTransactional(txID, id, recordType, record);
+   }
+
+   @Override
+   public void appendUpdateRecordTransactional(final long txID,
+                                               final long id,
+                                               final byte recordType,
+                                               final EncodingSupport record) throws Exception
+   {
+      int index = stripeIndex(id);
+      getTransaction(txID).addStripe(index);
+      stripes[index].appendUpdateRecordTransactional(txID, id, recordType, record);
+   }
+
+   @Override
+   public void appendDeleteRecordTransactional(final long txID, final long id, final EncodingSupport record) throws Exception
+   {
+      int index = stripeIndex(id);
+      getTransaction(txID).addStripe(index);
+      stripes[index].appendDeleteRecordTransactional(txID, id, record);
+   }
+
+   @Override
+   public void appendPrepareRecord(final long txID,
+                                   final EncodingSupport transactionData,
+                                   final boolean sync,
+                                   final IOCompletion callback) throws Exception
+   {
+      StripedTransaction tx = getTransaction(txID);
+
+      if (tx.mask == 0)
+      {
+         // an empty transaction can still be prepared
+         tx.addStripe(stripeIndex(txID));
+      }
+
+      tx.prepared = true;
+
+      final EncodingSupport prepareData = new StripedPrepareEncoding(tx.mask, USER_PREPARE, transactionData);
+
+      appendOnStripes(tx.mask, callback, true, new StripeOperation()
+      {
+         @Override
+         void append(final Journal stripe, final IOCompletion completion) throws Exception
+         {
+            stripe.appendPrepareRecord(txID, prepareData, sync, completion);
+         }
+      });
+   }
+
+   @Override
+   public void appendCommitRecord(final long txID,
+                                  final boolean sync,
+                                  final IOCompletion callback,
+                                  final boolean lineUpContext) throws Exception
+   {
+      StripedTransaction tx = transactions.remove(txID);
+
+      if (tx == null)
+      {
+         // nothing was written for this transaction, let the stripe report it
+         stripes[stripeIndex(txID)].appendCommitRecord(txID, sync, callback, lineUpContext);
+      }
+      else if (Integer.bitCount(tx.mask) == 1)
+      {
+         stripes[Integer.numberOfTrailingZeros(tx.mask)].appendCommitRecord(txID, sync, callback, lineUpContext);
+      }
+      else
+      {
+         commitOnStripes(txID, tx, sync, callback, lineUpContext);
+      }
+   }
+
+   @Override
+   public void appendRollbackRecord(final long txID, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      StripedTransaction tx = transactions.remove(txID);
+
+      if (tx == null)
+      {
+         stripes[stripeIndex(txID)].appendRollbackRecord(txID, sync, callback);
+         return;
+      }
+
+      appendOnStripes(tx.mask, callback, true, new StripeOperation()
+      {
+         @Override
+         void append(final Journal stripe, final IOCompletion completion) throws Exception
+         {
+            stripe.appendRollbackRecord(txID, sync, completion);
+         }
+      });
+   }
+
+   @Override
+   public void lineUpContext(final IOCompletion callback)
+   {
+      stripes[0].lineUpContext(callback);
+   }
+
+   // Load ----------------------------------------------------------
+
+   @Override
+   public JournalLoadInformation load(final List<RecordInfo> committedRecords,
+                                      final List<PreparedTransactionInfo> preparedTransactions,
+                                      final TransactionFailureCallback transactionFailure) throws Exception
+   {
+      transactions.clear();
+      relocatedRecords.clear();
+
+      List<List<RecordInfo>> stripeRecords = new ArrayList<List<RecordInfo>>(stripes.length);
+      List<List<PreparedTransactionInfo>> stripeTransactions = new ArrayList<List<PreparedTransactionInfo>>(stripes.length);
+
+      int numberOfRecords = 0;
+      long maxID = -1;
+
+      for (Journal stripe : stripes)
+      {
+         List<RecordInfo> records = new ArrayList<RecordInfo>();
+         List<PreparedTransactionInfo> prepared = new ArrayList<PreparedTransactionInfo>();
+
+         JournalLoadInformation info = stripe.load(records, prepared, transactionFailure);
+
+         numberOfRecords += info.getNumberOfRecords();
+         maxID = Math.max(maxID, info.getMaxID());
+
+         stripeRecords.add(records);
+         stripeTransactions.add(prepared);
+      }
+
+      // The commit decisions are ours, they are not given back
+      Set<Long> decisions = new HashSet<Long>();
+      for (Iterator<RecordInfo> iter = stripeRecords.get(0).iterator(); iter.hasNext(); )
+      {
+         RecordInfo record = iter.next();
+         if (record.getUserRecordType() == COMMIT_DECISION_RECORD)
+         {
+            decisions.add(record.id);
+            iter.remove();
+            numberOfRecords--;
+         }
+      }
+
+      // txID -> mask of the stripes where the transaction was found prepared
+      Map<Long, Integer> preparedOn = new LinkedHashMap<Long, Integer>();
+
+      for (int i = 0; i < stripes.length; i++)
+      {
+         for (PreparedTransactionInfo tx : stripeTransactions.get(i))
+         {
+            Integer mask = preparedOn.get(tx.id);
+            preparedOn.put(tx.id, (mask == null ? 0 : mask) | (1 << i));
+         }
+      }
+
+      Map<Long, PreparedTransactionInfo> userPrepared = new LinkedHashMap<Long, PreparedTransactionInfo>();
+
+      List<SyncIOCompletion> recoveredCommits = new ArrayList<SyncIOCompletion>();
+
+      for (int i = 0; i < stripes.length; i++)
+      {
+         List<RecordInfo> records = stripeRecords.get(i);
+
+         for (PreparedTransactionInfo tx : stripeTransactions.get(i))
+         {
+            byte[] extraData = tx.extraData;
+
+            boolean ours = isStripedPrepare(extraData);
+
+            int mask = ours ? readMask(extraData) : 1 << i;
+
+            if (decisions.contains(tx.id))
+            {
+               // the decision was taken, finish the commit on this stripe
+               SyncIOCompletion completion = getSyncCallback(true);
+               stripes[i].appendCommitRecord(tx.id, true, completion, false);
+               if (completion != null)
+               {
+                  recoveredCommits.add(completion);
+               }
+               commitLoadedTransaction(records, tx);
+            }
+            else if ((ours && extraData[8] == COMMIT_PREPARE) || (preparedOn.get(tx.id) & mask) != mask)
+            {
+               ActiveMQJournalLogger.LOGGER.stripedTransactionRolledBack(tx.id);
+               stripes[i].appendRollbackRecord(tx.id, false);
+            }
+            else
+            {
+               PreparedTransactionInfo merged = userPrepared.get(tx.id);
+               if (merged == null)
+               {
+                  merged = new PreparedTransactionInfo(tx.id, ours ? Arrays.copyOfRange(extraData, PREPARE_HEADER_SIZE, extraData.length) : extraData);
+                  userPrepared.put(tx.id, merged);
+               }
+               merged.records.addAll(tx.records);
+               merged.recordsToDelete.addAll(tx.recordsToDelete);
+
+               StripedTransaction striped = getTransaction(tx.id);
+               striped.addStripe(i);
+               striped.prepared = true;
+
+               relocate(tx.records, i);
+            }
+         }
+
+         relocate(records, i);
+      }
+
+      mergeRecords(stripeRecords, committedRecords);
+
+      preparedTransactions.addAll(userPrepared.values());
+
+      // a decision can only go once the commits it finished are on disk
+      for (SyncIOCompletion completion : recoveredCommits)
+      {
+         completion.waitCompletion();
+      }
+
+      for (Long decision : decisions)
+      {
+         stripes[0].appendDeleteRecord(decision, false);
+      }
+
+      return new JournalLoadInformation(numberOfRecords, maxID);
+   }
+
+   /**
+    * Loads the stripes as {@link #load(List, List, TransactionFailureCallback)} does, giving the surviving records
+    * and the prepared transactions to the loader.
+    */
+   @Override
+   public JournalLoadInformation load(final LoaderCallback reloadManager) throws Exception
+   {
+      List<RecordInfo> records = new ArrayList<RecordInfo>();
+      List<PreparedTransactionInfo> prepared = new ArrayList<PreparedTransactionInfo>();
+
+      JournalLoadInformation info = load(records, prepared, reloadManager);
+
+      for (RecordInfo record : records)
+      {
+         if (record.isUpdate)
+         {
+            reloadManager.updateRecord(record);
+         }
+         else
+         {
+            reloadManager.addRecord(record);
+         }
+      }
+
+      for (PreparedTransactionInfo tx : prepared)
+      {
+         reloadManager.addPreparedTransaction(tx);
+      }
+
+      return info;
+   }
+
+   @Override
+   public JournalLoadInformation loadInternalOnly() throws Exception
+   {
+      int numberOfRecords = 0;
+      long maxID = -1;
+
+      for (Journal stripe : stripes)
+      {
+         JournalLoadInformation info = stripe.loadInternalOnly();
+         numberOfRecords += info.getNumberOfRecords();
+         maxID = Math.max(maxID, info.getMaxID());
+      }
+
+      return new JournalLoadInformation(numberOfRecords, maxID);
+   }
+
+   @Override
+   public JournalLoadInformation loadSyncOnly(final JournalState state) throws Exception
+   {
+      int numberOfRecords = 0;
+      long maxID = -1;
+
+      for (Journal stripe : stripes)
+      {
+         JournalLoadInformation info = stripe.loadSyncOnly(state);
+         numberOfRecords += info.getNumberOfRecords();
+         maxID = Math.max(maxID, info.getMaxID());
+      }
+
+      return new JournalLoadInformation(numberOfRecords, maxID);
+   }
+
+   // Other operations ----------------------------------------------
+
+   @Override
+   public int getAlignment() throws Exception
+   {
+      return stripes[0].getAlignment();
+   }
+
+   @Override
+   public int getNumberOfRecords()
+   {
+      int numberOfRecords = 0;
+      for (Journal stripe : stripes)
+      {
+         numberOfRecords += stripe.getNumberOfRecords();
+      }
+      return numberOfRecords;
+   }
+
+   @Override
+   public int getUserVersion()
+   {
+      return stripes[0].getUserVersion();
+   }
+
+   @Override
+   public void perfBlast(final int pages)
+   {
+      stripes[0].perfBlast(pages);
+   }
+
+   @Override
+   public void runDirectJournalBlast() throws Exception
+   {
+      stripes[0].runDirectJournalBlast();
+   }
+
+   @Override
+   public void forceMoveNextFile() throws Exception
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.forceMoveNextFile();
+      }
+   }
+
+   @Override
+   public void scheduleCompactAndBlock(final int timeout) throws Exception
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.scheduleCompactAndBlock(timeout);
+      }
+   }
+
+   @Override
+   public long getCompactCount()
+   {
+      long count = 0;
+      for (Journal stripe : stripes)
+      {
+         count += stripe.getCompactCount();
+      }
+      return count;
+   }
+
+   @Override
+   public long getLastCompactPauseTime()
+   {
+      long pause = 0;
+      for (Journal stripe : stripes)
+      {
+         pause = Math.max(pause, stripe.getLastCompactPauseTime());
+      }
+      return pause;
+   }
+
+   @Override
+   public long getMaxCompactPauseTime()
+   {
+      long pause = 0;
+      for (Journal stripe : stripes)
+      {
+         pause = Math.max(pause, stripe.getMaxCompactPauseTime());
+      }
+      return pause;
+   }
+
+   @Override
+   public int getReclaimableFilesCount()
+   {
+      int count = 0;
+      for (Journal stripe : stripes)
+      {
+         count += stripe.getReclaimableFilesCount();
+      }
+      return count;
+   }
+
+   @Override
+   public SequentialFileFactory getFileFactory()
+   {
+      return stripes[0].getFileFactory();
+   }
+
+   @Override
+   void scheduleReclaim()
+   {
+      // every stripe reclaims its own files
+   }
+
+   @Override
+   public String toString()
+   {
+      return "StripedJournal(stripes=" + Arrays.toString(stripes) + ")";
+   }
+
+   /**
+    * The files of the stripes share their IDs, so they can't be told apart on a backup. A server refuses to start
+    * with a striped journal and an HA policy replicating it, see ConfigurationUtils.validateJournalStripes.
+    */
+   @Override
+   public Map<Long, JournalFile> createFilesForBackupSync(final long[] fileIds) throws Exception
+   {
+      throw ActiveMQJournalBundle.BUNDLE.stripedJournalNotReplicable();
+   }
+
+   @Override
+   public void synchronizationLock()
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.synchronizationLock();
+      }
+   }
+
+   @Override
+   public void synchronizationUnlock()
+   {
+      for (int i = stripes.length - 1; i >= 0; i--)
+      {
+         stripes[i].synchronizationUnlock();
+      }
+   }
+
+   /**
+    * The data files of every stripe, the ones of the first stripe first.
+    */
+   @Override
+   public JournalFile[] getDataFiles()
+   {
+      List<JournalFile> files = new ArrayList<JournalFile>();
+      for (Journal stripe : stripes)
+      {
+         files.addAll(Arrays.asList(stripe.getDataFiles()));
+      }
+      return files.toArray(new JournalFile[files.size()]);
+   }
+
+   @Override
+   public void replicationSyncPreserveOldFiles()
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.replicationSyncPreserveOldFiles();
+      }
+   }
+
+   @Override
+   public void replicationSyncFinished()
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.replicationSyncFinished();
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private int stripeIndex(final long id)
+   {
+      if (hasRelocatedRecords)
+      {
+         Integer index = relocatedRecords.get(id);
+         if (index != null)
+         {
+            return index;
+         }
+      }
+      return (int) ((id & Long.MAX_VALUE) % stripes.length);
+   }
+
+   private StripedTransaction getTransaction(final long txID)
+   {
+      StripedTransaction tx = transactions.get(txID);
+
+      if (tx == null)
+      {
+         tx = new StripedTransaction();
+
+         StripedTransaction existing = transactions.putIfAbsent(txID, tx);
+
+         if (existing != null)
+         {
+            tx = existing;
+         }
+      }
+
+      return tx;
+   }
+
+   private void relocate(final List<RecordInfo> records, final int index)
+   {
+      for (RecordInfo record : records)
+      {
+         if (stripeIndex(record.id) != index)
+         {
+            relocatedRecords.put(record.id, index);
+            hasRelocatedRecords = true;
+         }
+      }
+   }
+
+   private void commitOnStripes(final long txID,
+                                final StripedTransaction tx,
+                                final boolean sync,
+                                final IOCompletion callback,
+                                final boolean lineUpContext) throws Exception
+   {
+      if (callback != null && lineUpContext)
+      {
+         callback.storeLineUp();
+      }
+
+      StripedCommit commit = new StripedCommit(txID, tx.mask, sync, callback);
+
+      if (tx.prepared)
+      {
+         commit.decide();
+      }
+      else
+      {
+         commit.prepare();
+      }
+
+      if (!sync || callback == null)
+      {
+         commit.awaitCommitting();
+      }
+   }
+
+   private void rollbackQuietly(final long txID, final int mask)
+   {
+      for (int i = 0; i < stripes.length; i++)
+      {
+         if ((mask & (1 << i)) != 0)
+         {
+            try
+            {
+               stripes[i].appendRollbackRecord(txID, false);
+            }
+            catch (Exception e)
+            {
+               ActiveMQJournalLogger.LOGGER.errorRollingBackStripedTransaction(e, txID);
+            }
+         }
+      }
+   }
+
+   /**
+    * Runs the operation on the stripes of the mask, completing the callback once they are all done.
+    */
+   private void appendOnStripes(final int mask,
+                                final IOCompletion callback,
+                                final boolean lineUp,
+                                final StripeOperation operation) throws Exception
+   {
+      int parts = Integer.bitCount(mask);
+
+      IOCompletion completion = callback == null || parts == 1 ? callback : new StripedCompletion(callback, parts, lineUp);
+
+      try
+      {
+         for (int i = 0; i < stripes.length; i++)
+         {
+            if ((mask & (1 << i)) != 0)
+            {
+               operation.append(stripes[i], completion);
+            }
+         }
+      }
+      catch (Exception e)
+      {
+         if (completion instanceof StripedCompletion)
+         {
+            completion.onError(ActiveMQExceptionType.IO_ERROR.getCode(), e.getMessage());
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * The records of a queue are spread over the stripes, but they are loaded in the order they are given back. The
+    * records of each stripe keep their order and are interleaved by ID, as the IDs grow in the order the records
+    * were sent.
+    */
+   private static void mergeRecords(final List<List<RecordInfo>> stripeRecords, final List<RecordInfo> committedRecords)
+   {
+      int[] positions = new int[stripeRecords.size()];
+
+      while (true)
+      {
+         int next = -1;
+         long nextID = 0;
+
+         for (int i = 0; i < positions.length; i++)
+         {
+            List<RecordInfo> records = stripeRecords.get(i);
+
+            if (positions[i] < records.size())
+            {
+               long id = records.get(positions[i]).id;
+
+               if (next < 0 || id < nextID)
+               {
+                  next = i;
+                  nextID = id;
+               }
+            }
+         }
+
+         if (next < 0)
+         {
+            return;
+         }
+
+         committedRecords.add(stripeRecords.get(next).get(positions[next]++));
+      }
+   }
+
+   private static void commitLoadedTransaction(final List<RecordInfo> records, final PreparedTransactionInfo tx)
+   {
+      if (!tx.recordsToDelete.isEmpty())
+      {
+         Set<Long> deleted = new HashSet<Long>();
+         for (RecordInfo record : tx.recordsToDelete)
+         {
+            deleted.add(record.id);
+         }
+
+         for (Iterator<RecordInfo> iter = records.iterator(); iter.hasNext(); )
+         {
+            if (deleted.contains(iter.next().id))
+            {
+               iter.remove();
+            }
+         }
+      }
+
+      records.addAll(tx.records);
+   }
+
+   private static boolean isStripedPrepare(final byte[] extraData)
+   {
+      return extraData != null && extraData.length >= PREPARE_HEADER_SIZE &&
+         ActiveMQBuffers.wrappedBuffer(extraData).readInt() == PREPARE_MAGIC;
+   }
+
+   private static int readMask(final byte[] extraData)
+   {
+      ActiveMQBuffer buffer = ActiveMQBuffers.wrappedBuffer(extraData);
+      buffer.readInt();
+      return buffer.readInt();
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private abstract static class StripeOperation
+   {
+      abstract void append(Journal stripe, IOCompletion completion) throws Exception;
+   }
+
+   private static final class StripedTransaction
+   {
+      // bit i is set when the transaction has records on stripe i
+      volatile int mask;
+
+      volatile boolean prepared;
+
+      synchronized void addStripe(final int index)
+      {
+         mask |= 1 << index;
+      }
+   }
+
+   /**
+    * Lines up the callback once and completes it once every part is done.
+    */
+   private static final class StripedCompletion implements IOCompletion
+   {
+      private final IOCompletion delegate;
+
+      private final AtomicInteger pending;
+
+      private final AtomicBoolean lineUp;
+
+      private final AtomicBoolean failed = new AtomicBoolean(false);
+
+      StripedCompletion(final IOCompletion delegate, final int parts, final boolean lineUp)
+      {
+         this.delegate = delegate;
+         this.pending = new AtomicInteger(parts);
+         this.lineUp = new AtomicBoolean(lineUp);
+      }
+
+      public void storeLineUp()
+      {
+         if (lineUp.compareAndSet(true, false))
+         {
+            delegate.storeLineUp();
+         }
+      }
+
+      public void done()
+      {
+         if (pending.decrementAndGet() == 0 && !failed.get())
+         {
+            delegate.done();
+         }
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         if (failed.compareAndSet(false, true))
+         {
+            delegate.onError(errorCode, errorMessage);
+         }
+      }
+   }
+
+   /**
+    * The phases of a commit spanning several stripes: the prepares, unless the user prepared the
+    * transaction, the decision, the commits and the removal of the decision. A phase is started
+    * on the commit executor once every write of the previous one is done. The callback is done
+    * once the commits are, the decision is deleted after it.
+    */
+   private final class StripedCommit
+   {
+      private final long txID;
+
+      private final int mask;
+
+      private final boolean sync;
+
+      private final IOCompletion callback;
+
+      // released once the commits were appended or the commit failed
+      private final CountDownLatch committing = new CountDownLatch(1);
+
+      private final AtomicBoolean failed = new AtomicBoolean(false);
+
+      private volatile int errorCode;
+
+      private volatile String errorMessage;
+
+      StripedCommit(final long txID, final int mask, final boolean sync, final IOCompletion callback)
+      {
+         this.txID = txID;
+         this.mask = mask;
+         this.sync = sync;
+         this.callback = callback;
+      }
+
+      void prepare() throws Exception
+      {
+         final EncodingSupport prepareData = new StripedPrepareEncoding(mask, COMMIT_PREPARE, null);
+
+         appendPhase(mask, new StripeOperation()
+         {
+            @Override
+            void append(final Journal stripe, final IOCompletion completion) throws Exception
+            {
+               stripe.appendPrepareRecord(txID, prepareData, true, completion);
+            }
+         }, new Phase(mask, true)
+         {
+            @Override
+            void completed()
+            {
+               execute(new Runnable()
+               {
+                  public void run()
+                  {
+                     try
+                     {
+                        decide();
+                     }
+                     catch (Exception e)
+                     {
+                        fail(ActiveMQExceptionType.IO_ERROR.getCode(), e.getMessage(), false);
+                     }
+                  }
+               });
+            }
+         });
+      }
+
+      void decide() throws Exception
+      {
+         // From here on the transaction is committed, a failure is resolved by the next load
+         appendPhase(1, new StripeOperation()
+         {
+            @Override
+            void append(final Journal stripe, final IOCompletion completion) throws Exception
+            {
+               stripe.appendAddRecord(txID, COMMIT_DECISION_RECORD, EMPTY, true, completion);
+            }
+         }, new Phase(1, false)
+         {
+            @Override
+            void completed()
+            {
+               execute(new Runnable()
+               {
+                  public void run()
+                  {
+                     try
+                     {
+                        commit();
+                     }
+                     catch (Exception e)
+                     {
+                        fail(ActiveMQExceptionType.IO_ERROR.getCode(), e.getMessage(), false);
+                     }
+                  }
+               });
+            }
+         });
+      }
+
+      void commit() throws Exception
+      {
+         appendPhase(mask, new StripeOperation()
+         {
+            @Override
+            void append(final Journal stripe, final IOCompletion completion) throws Exception
+            {
+               stripe.appendCommitRecord(txID, sync, completion, false);
+            }
+         }, new Phase(mask, false)
+         {
+            @Override
+            void completed()
+            {
+               if (callback != null)
+               {
+                  callback.done();
+               }
+
+               try
+               {
+                  commitExecutor.execute(new Runnable()
+                  {
+                     public void run()
+                     {
+                        deleteDecision();
+                     }
+                  });
+               }
+               catch (RejectedExecutionException e)
+               {
+                  // stopping, the next load deletes it
+               }
+            }
+         });
+
+         committing.countDown();
+      }
+
+      void deleteDecision()
+      {
+         try
+         {
+            stripes[0].appendDeleteRecord(txID, false, null);
+         }
+         catch (Exception e)
+         {
+            ActiveMQJournalLogger.LOGGER.errorDeletingCommitDecision(e, txID);
+         }
+      }
+
+      void awaitCommitting() throws Exception
+      {
+         committing.await();
+
+         if (failed.get())
+         {
+            throw ActiveMQExceptionType.createException(errorCode, errorMessage);
+         }
+      }
+
+      private void appendPhase(final int phaseMask, final StripeOperation operation, final Phase phase) throws Exception
+      {
+         try
+         {
+            for (int i = 0; i < stripes.length; i++)
+            {
+               if ((phaseMask & (1 << i)) != 0)
+               {
+                  operation.append(stripes[i], phase);
+               }
+            }
+         }
+         catch (Exception e)
+         {
+            if (phase.phaseFailed.compareAndSet(false, true))
+            {
+               fail(ActiveMQExceptionType.IO_ERROR.getCode(), e.getMessage(), phase.rollback);
+            }
+            throw e;
+         }
+      }
+
+      private void execute(final Runnable task)
+      {
+         try
+         {
+            commitExecutor.execute(task);
+         }
+         catch (RejectedExecutionException e)
+         {
+            fail(ActiveMQExceptionType.IO_ERROR.getCode(), "The journal is stopped", false);
+         }
+      }
+
+      private void fail(final int code, final String message, final boolean rollback)
+      {
+         if (!failed.compareAndSet(false, true))
+         {
+            return;
+         }
+
+         if (rollback)
+         {
+            rollbackQuietly(txID, mask);
+         }
+
+         errorCode = code;
+         errorMessage = message;
+
+         committing.countDown();
+
+         if (callback != null)
+         {
+            callback.onError(code, message);
+         }
+      }
+
+      /**
+       * Completes once every write of the phase is done. Called by the IO callbacks, so nothing
+       * is appended from here.
+       */
+      private abstract class Phase implements IOCompletion
+      {
+         private final AtomicInteger pending;
+
+         private final AtomicBoolean phaseFailed = new AtomicBoolean(false);
+
+         // the prepares are rolled back if they fail
+         private final boolean rollback;
+
+         Phase(final int phaseMask, final boolean rollback)
+         {
+            this.pending = new AtomicInteger(Integer.bitCount(phaseMask));
+            this.rollback = rollback;
+         }
+
+         abstract void completed();
+
+         public void storeLineUp()
+         {
+         }
+
+         public void done()
+         {
+            if (pending.decrementAndGet() == 0 && !phaseFailed.get())
+            {
+               completed();
+            }
+         }
+
+         public void onError(final int code, final String message)
+         {
+            if (phaseFailed.compareAndSet(false, true))
+            {
+               execute(new Runnable()
+               {
+                  public void run()
+                  {
+                     fail(code, message, rollback);
+                  }
+               });
+            }
+         }
+      }
+   }
+
+   /**
+    * Prepare data: a marker, the mask of the stripes of the transaction, the kind of prepare and
+    * then the user data, if any.
+    */
+   private static final class StripedPrepareEncoding implements EncodingSupport
+   {
+      private int mask;
+
+      private byte kind;
+
+      private final EncodingSupport data;
+
+      StripedPrepareEncoding(final int mask, final byte kind, final EncodingSupport data)
+      {
+         this.mask = mask;
+         this.kind = kind;
+         this.data = data;
+      }
+
+      public int getEncodeSize()
+      {
+         return PREPARE_HEADER_SIZE + (data == null ? 0 : data.getEncodeSize());
+      }
+
+      public void encode(final ActiveMQBuffer buffer)
+      {
+         buffer.writeInt(PREPARE_MAGIC);
+         buffer.writeInt(mask);
+         buffer.writeByte(kind);
+         if (data != null)
+         {
+            data.encode(buffer);
+         }
+      }
+
+      public void decode(final ActiveMQBuffer buffer)
+      {
+         buffer.readInt();
+         mask = buffer.readInt();
+         kind = buffer.readByte();
+         if (data != null)
+         {
+            data.decode(buffer);
+         }
+      }
+   }
+}
@@ -18,6 +18,7 @@ package org.apache.activemq.core.journal.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Timer;
@@ -30,6 +31,7 @@ import org.apache.activemq.api.core.ActiveMQBuffers;
 import org.apache.activemq.api.core.ActiveMQInterruptedException;
 import org.apache.activemq.core.journal.EncodingSupport;
 import org.apache.activemq.core.journal.IOAsyncTask;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.apache.activemq.journal.ActiveMQJournalLogger;
 
@@ -40,6 +42,9 @@ public class TimedBuffer
    // The number of tries on sleep before switching to spin
    public static final int MAX_CHECKS_ON_SLEEP = 20;
 
+   // Weight of a new sample on the adaptive timeout moving averages, as a shift (1/8)
+   private static final int AVERAGE_SHIFT = 3;
+
    // Attributes ----------------------------------------------------
 
    private TimedBufferObserver bufferObserver;
@@ -59,8 +64,34 @@ public class TimedBuffer
 
    private List<IOAsyncTask> callbacks;
 
+   // Incremented on every flush, tells the writes held by the buffer from the flushed ones
+   private int generation;
+
+   // offsets and sizes of the writes held by the buffer, in write order. A cancelled write has size 0
+   private int[] writeStarts = new int[16];
+
+   private int[] writeSizes = new int[16];
+
+   private int writeCount;
+
+   private long lastWrite = -1;
+
    private volatile int timeout;
 
+   // When adaptive, the timeout follows the measured sync time within these bounds
+   private volatile boolean adaptive;
+
+   private volatile int minTimeout;
+
+   private volatile int maxTimeout;
+
+   // moving averages, in nanoseconds, of the time a flush takes to be synced and of the time between sync requests
+   private volatile long averageSyncTime;
+
+   private volatile long averageSyncInterval;
+
+   private long lastSyncRequest;
+
    // used to measure sync requests. When a sync is requested, it shouldn't take more than timeout to happen
    private volatile boolean pendingSync = false;
 
@@ -85,6 +116,8 @@ public class TimedBuffer
 
    private TimerTask logRatesTimerTask;
 
+   private volatile JournalStatistics statistics;
+
    private boolean useSleep = true;
 
    // no need to be volatile as every access is synchronized
@@ -119,6 +152,59 @@ public class TimedBuffer
       this.timeout = timeout;
    }
 
+   /**
+    * Lets the timeout adapt to the storage: the time flushes take to be synced and the rate of
+    * sync requests are measured, and the timeout follows the sync time, within the given bounds,
+    * as long as more than one sync is requested during that time. Otherwise there is nothing to
+    * batch and the minimum timeout is used.
+    *
+    * @param minTimeout the lowest timeout, in nanoseconds
+    * @param maxTimeout the highest timeout, in nanoseconds
+    */
+   public synchronized void setAdaptiveTimeout(final int minTimeout, final int maxTimeout)
+   {
+      if (minTimeout <= 0 || maxTimeout < minTimeout)
+      {
+         throw new IllegalArgumentException("Invalid adaptive timeout bounds " + minTimeout + ", " + maxTimeout);
+      }
+
+      this.minTimeout = minTimeout;
+      this.maxTimeout = maxTimeout;
+
+      timeout = Math.max(minTimeout, Math.min(maxTimeout, timeout));
+
+      adaptive = true;
+   }
+
+   public boolean isAdaptiveTimeout()
+   {
+      return adaptive;
+   }
+
+   /**
+    * @return the timeout currently used, in nanoseconds
+    */
+   public int getTimeout()
+   {
+      return timeout;
+   }
+
+   /**
+    * Records the size of every flush and the time the observer takes with it, null to disable it.
+    */
+   public void setStatistics(final JournalStatistics statistics)
+   {
+      this.statistics = statistics;
+   }
+
+   /**
+    * @return the moving average of the time flushes took to be synced, in nanoseconds, 0 if the timeout isn't adaptive
+    */
+   public long getAverageSyncTime()
+   {
+      return averageSyncTime;
+   }
+
    // for Debug purposes
    public synchronized boolean isUseSleep()
    {
@@ -274,10 +360,107 @@ public class TimedBuffer
 
       delayFlush = false;
 
+      final int start = buffer.writerIndex();
+
       bytes.encode(buffer);
 
+      addWrite(start, buffer.writerIndex() - start);
+
       callbacks.add(callback);
 
+      if (sync)
+      {
+         if (adaptive)
+         {
+            long now = System.nanoTime();
+
+            if (lastSyncRequest != 0)
+            {
+               averageSyncInterval = movingAverage(averageSyncInterval, now - lastSyncRequest);
+            }
+
+            lastSyncRequest = now;
+         }
+
+         pendingSync = true;
+
+         startSpin();
+      }
+
+   }
+
+   /**
+    * @return a handle on the last write added to the buffer, for {@link #cancel(long[], int, boolean, IOAsyncTask)},
+    * or -1 if the buffer was flushed since
+    */
+   public synchronized long getLastWrite()
+   {
+      return lastWrite;
+   }
+
+   /**
+    * Removes writes still held by the buffer, as if they were never done. Their callbacks are kept
+    * and complete with the next flush, so does the given callback.
+    *
+    * @param writes handles from {@link #getLastWrite()}
+    * @return false, and nothing is changed, if any of the writes was flushed already
+    */
+   public synchronized boolean cancel(final long[] writes, final int count, final boolean sync, final IOAsyncTask callback)
+   {
+      if (!started)
+      {
+         throw new IllegalStateException("TimedBuffer is not started");
+      }
+
+      for (int i = 0; i < count; i++)
+      {
+         if (writes[i] == -1 || (int) (writes[i] >>> 32) != generation)
+         {
+            return false;
+         }
+      }
+
+      byte[] bytes = buffer.toByteBuffer().array();
+
+      for (int i = 0; i < count; i++)
+      {
+         int index = (int) writes[i];
+
+         int start = writeStarts[index];
+
+         int size = writeSizes[index];
+
+         if (size == 0)
+         {
+            continue;
+         }
+
+         int end = buffer.writerIndex();
+
+         System.arraycopy(bytes, start + size, bytes, start, end - start - size);
+
+         buffer.writerIndex(end - size);
+
+         writeSizes[index] = 0;
+
+         for (int j = index + 1; j < writeCount; j++)
+         {
+            writeStarts[j] -= size;
+         }
+      }
+
+      if (callback != null)
+      {
+         callbacks.add(callback);
+      }
+
+      if (buffer.writerIndex() == 0 && !callbacks.isEmpty())
+      {
+         // The callbacks still have to go through the file, in order with the previous writes.
+         // The reader skips zeros as holes, as it does with the padding of AIO
+         buffer.writeByte((byte) 0);
+      }
+
       if (sync)
       {
          pendingSync = true;
@@ -285,6 +468,7 @@ public class TimedBuffer
          startSpin();
       }
 
+      return true;
    }
 
    public void flush()
@@ -322,8 +506,24 @@ public class TimedBuffer
 
             bufferToFlush.put(buffer.toByteBuffer().array(), 0, pos);
 
+            if (adaptive && pendingSync)
+            {
+               // callbacks complete in order, the last one tells when the whole flush was synced
+               callbacks.add(new SyncTimeProbe(System.nanoTime()));
+            }
+
+            JournalStatistics localStatistics = statistics;
+
+            long flushStart = localStatistics == null ? 0 : System.nanoTime();
+
             bufferObserver.flushBuffer(bufferToFlush, pendingSync, callbacks);
 
+            if (localStatistics != null)
+            {
+               localStatistics.getFlushTimes().record(System.nanoTime() - flushStart);
+               localStatistics.getFlushSizes().record(pos);
+            }
+
             stopSpin();
 
             pendingSync = false;
@@ -335,6 +535,12 @@ public class TimedBuffer
 
             bufferLimit = 0;
 
+            generation++;
+
+            writeCount = 0;
+
+            lastWrite = -1;
+
             flushesDone.incrementAndGet();
          }
       }
@@ -346,8 +552,67 @@ public class TimedBuffer
 
    // Private -------------------------------------------------------
 
+   private void addWrite(final int start, final int size)
+   {
+      if (writeCount == writeStarts.length)
+      {
+         writeStarts = Arrays.copyOf(writeStarts, writeCount * 2);
+         writeSizes = Arrays.copyOf(writeSizes, writeCount * 2);
+      }
+
+      writeStarts[writeCount] = start;
+      writeSizes[writeCount] = size;
+
+      lastWrite = ((long) generation << 32) | writeCount;
+
+      writeCount++;
+   }
+
+   private static long movingAverage(final long average, final long sample)
+   {
+      return average == 0 ? sample : average + ((sample - average) >> AVERAGE_SHIFT);
+   }
+
+   private void syncDone(final long syncTime)
+   {
+      long syncAverage = movingAverage(averageSyncTime, syncTime);
+
+      averageSyncTime = syncAverage;
+
+      long interval = averageSyncInterval;
+
+      if (interval != 0 && interval < syncAverage)
+      {
+         // more than one sync is requested while the device syncs, waiting for them pays off
+         timeout = (int) Math.max(minTimeout, Math.min(maxTimeout, syncAverage));
+      }
+      else
+      {
+         timeout = minTimeout;
+      }
+   }
+
    // Inner classes -------------------------------------------------
 
+   private class SyncTimeProbe implements IOAsyncTask
+   {
+      private final long flushTime;
+
+      SyncTimeProbe(final long flushTime)
+      {
+         this.flushTime = flushTime;
+      }
+
+      public void done()
+      {
+         syncDone(System.nanoTime() - flushTime);
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+
    private class LogRatesTimerTask extends TimerTask
    {
       private boolean closed;
@@ -401,10 +666,6 @@ public class TimedBuffer
       int failedChecks = 0;
       long timeBefore = 0;
 
-      final int sleepMillis = timeout / 1000000; // truncates
-      final int sleepNanos = timeout % 1000000;
-
-
       public void run()
       {
          long lastFlushTime = 0;
@@ -459,6 +720,9 @@ public class TimedBuffer
       {
          if (isUseSleep())
          {
+            // the timeout may change when adaptive
+            final int sleepTimeout = timeout;
+
             if (checks < MAX_CHECKS_ON_SLEEP)
             {
                timeBefore = System.nanoTime();
@@ -466,7 +730,7 @@ public class TimedBuffer
 
             try
             {
-               sleep(sleepMillis, sleepNanos);
+               sleep(sleepTimeout / 1000000, sleepTimeout % 1000000);
             }
             catch (InterruptedException e)
             {
@@ -483,7 +747,7 @@ public class TimedBuffer
                long realTimeSleep = System.nanoTime() - timeBefore;
 
                // I'm letting the real time to be up to 50% than the requested sleep.
-               if (realTimeSleep > timeout * 1.5)
+               if (realTimeSleep > sleepTimeout * 1.5)
                {
                   failedChecks++;
                }
@@ -0,0 +1,593 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.api.core.ActiveMQException;
+import org.apache.activemq.api.core.ActiveMQExceptionType;
+import org.apache.activemq.api.core.ActiveMQInterruptedException;
+import org.apache.activemq.core.journal.IOAsyncTask;
+import org.apache.activemq.core.libaio.UringNative;
+import org.apache.activemq.journal.ActiveMQJournalLogger;
+
+/**
+ * The io_uring ring shared by the files of a {@link UringSequentialFileFactory}.
+ * <p/>
+ * Writes are only queued on the ring by the appending threads, a submit scheduled on the writer
+ * executor then hands every write queued in the meantime, from any file, to the kernel with a
+ * single system call. A sync write is linked to an fdatasync of its file, so the kernel starts the
+ * sync as soon as the write is done, without a round trip through the poller.
+ * <p/>
+ * A single poller thread reaps the completions of all the files.
+ */
+final class UringRing
+{
+   /** The user data of the operation stopping the poller */
+   private static final long STOP = -1;
+
+   /** Set on the user data of a write linked to a sync, its completion isn't the last one of the operation */
+   private static final long LINKED = 1L << 32;
+
+   private final UringSequentialFileFactory factory;
+
+   private final ByteBuffer handle;
+
+   private final int entries;
+
+   /** One permit per operation submitted, so the completion queue can't overflow */
+   private final Semaphore permits;
+
+   private final Operation[] operations;
+
+   private final int[] freeOperations;
+
+   private int freeCount;
+
+   private final Executor submitExecutor;
+
+   private boolean submitScheduled;
+
+   private final Runnable submitTask = new Runnable()
+   {
+      public void run()
+      {
+         submitPending();
+      }
+   };
+
+   private Map<ByteBuffer, Integer> registeredBuffers;
+
+   private final CountDownLatch pollerDone = new CountDownLatch(1);
+
+   /**
+    * @param submitExecutor where the queued writes are submitted, null to submit each write as it
+    *                       is queued
+    */
+   UringRing(final UringSequentialFileFactory factory, final int entries, final Executor submitExecutor) throws ActiveMQException
+   {
+      this.factory = factory;
+      this.entries = entries;
+      this.submitExecutor = submitExecutor;
+
+      handle = UringNative.init(entries);
+
+      permits = new Semaphore(entries);
+
+      operations = new Operation[entries];
+      freeOperations = new int[entries];
+
+      for (int i = 0; i < entries; i++)
+      {
+         operations[i] = new Operation();
+         freeOperations[i] = entries - 1 - i;
+      }
+
+      freeCount = entries;
+   }
+
+   void startPoller(final Executor pollerExecutor)
+   {
+      pollerExecutor.execute(new Runnable()
+      {
+         public void run()
+         {
+            poll();
+         }
+      });
+   }
+
+   /**
+    * Registers the buffers the factory hands out, so their writes don't have to map the pages of
+    * the buffer on every call.
+    *
+    * @return false if the kernel refused them, usually for the locked memory limit
+    */
+   synchronized boolean registerBuffers(final ByteBuffer[] buffers)
+   {
+      try
+      {
+         UringNative.registerBuffers(handle, buffers);
+      }
+      catch (ActiveMQException e)
+      {
+         ActiveMQJournalLogger.LOGGER.debug("Writing without registered buffers: " + e.getMessage());
+         return false;
+      }
+
+      registeredBuffers = new IdentityHashMap<ByteBuffer, Integer>();
+
+      for (int i = 0; i < buffers.length; i++)
+      {
+         registeredBuffers.put(buffers[i], i);
+      }
+
+      return true;
+   }
+
+   /**
+    * Queues a write.
+    *
+    * @param file          the file whose callbacks are called in the order of the writes, null if
+    *                      the order doesn't matter
+    * @param sync          whether the write is followed by an fdatasync before it is completed
+    * @param releaseBuffer whether the buffer goes back to the factory once written
+    * @param submitNow     whether the write is submitted right away instead of on the executor
+    */
+   void write(final UringSequentialFile file,
+              final int fd,
+              final long position,
+              final ByteBuffer buffer,
+              final int size,
+              final boolean sync,
+              final boolean releaseBuffer,
+              final IOAsyncTask callback,
+              final boolean submitNow)
+   {
+      permits.acquireUninterruptibly(sync ? 2 : 1);
+
+      synchronized (this)
+      {
+         int index = freeOperations[--freeCount];
+
+         Operation operation = operations[index];
+         operation.file = file;
+         operation.sequence = file == null ? -1 : file.nextSequence();
+         operation.callback = callback;
+         operation.buffer = buffer;
+         operation.releaseBuffer = releaseBuffer;
+         operation.write = true;
+         operation.sync = sync;
+         operation.size = size;
+         operation.pending = sync ? 2 : 1;
+
+         Integer bufferIndex = registeredBuffers == null ? null : registeredBuffers.get(buffer);
+
+         try
+         {
+            checkQueued(UringNative.prepareWrite(handle,
+                                                 fd,
+                                                 position,
+                                                 buffer,
+                                                 size,
+                                                 bufferIndex == null ? -1 : bufferIndex,
+                                                 sync,
+                                                 sync ? index | LINKED : index));
+            if (sync)
+            {
+               checkQueued(UringNative.prepareDataSync(handle, fd, index));
+            }
+         }
+         catch (ActiveMQException e)
+         {
+            // nothing was queued for an invalid buffer
+            operation.clear();
+            freeOperations[freeCount++] = index;
+            permits.release(sync ? 2 : 1);
+
+            ActiveMQJournalLogger.LOGGER.errorSubmittingWrite(e);
+
+            deliver(file, operation.sequence, callback, 0, e.getMessage());
+
+            if (releaseBuffer)
+            {
+               factory.releaseBuffer(buffer);
+            }
+            return;
+         }
+
+         submit(submitNow);
+      }
+   }
+
+   /**
+    * Queues a read, submitted right away.
+    */
+   void read(final int fd, final long position, final ByteBuffer buffer, final int size, final Completion completion) throws ActiveMQException
+   {
+      permits.acquireUninterruptibly();
+
+      synchronized (this)
+      {
+         int index = freeOperations[--freeCount];
+
+         Operation operation = operations[index];
+         operation.callback = completion;
+         operation.pending = 1;
+
+         try
+         {
+            checkQueued(UringNative.prepareRead(handle, fd, position, buffer, size, index));
+         }
+         catch (ActiveMQException e)
+         {
+            operation.clear();
+            freeOperations[freeCount++] = index;
+            permits.release();
+            throw e;
+         }
+
+         submit(true);
+      }
+   }
+
+   /**
+    * Queues an fdatasync, submitted right away.
+    */
+   void dataSync(final int fd, final Completion completion)
+   {
+      permits.acquireUninterruptibly();
+
+      synchronized (this)
+      {
+         int index = freeOperations[--freeCount];
+
+         Operation operation = operations[index];
+         operation.callback = completion;
+         operation.pending = 1;
+
+         checkQueued(UringNative.prepareDataSync(handle, fd, index));
+
+         submit(true);
+      }
+   }
+
+   /**
+    * Waits for the operations in flight and releases the ring, no other operation may be queued
+    * from here.
+    */
+   void close()
+   {
+      try
+      {
+         while (!permits.tryAcquire(entries, AbstractSequentialFileFactory.EXECUTOR_TIMEOUT, TimeUnit.SECONDS))
+         {
+            if (pollerDone.getCount() == 0)
+            {
+               // the poller died, nothing will complete any more
+               break;
+            }
+            ActiveMQJournalLogger.LOGGER.timeoutOnPollerShutdown(new Exception("trace"));
+         }
+
+         if (pollerDone.getCount() != 0)
+         {
+            synchronized (this)
+            {
+               checkQueued(UringNative.prepareNop(handle, STOP));
+
+               submit(true);
+            }
+
+            pollerDone.await();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         throw new ActiveMQInterruptedException(e);
+      }
+
+      UringNative.close(handle);
+   }
+
+   // Private -------------------------------------------------------
+
+   private static void checkQueued(final boolean queued)
+   {
+      // the permits never let more operations in than the submission queue holds
+      if (!queued)
+      {
+         throw new IllegalStateException("The io_uring submission queue is full");
+      }
+   }
+
+   /**
+    * Called holding the lock of the ring.
+    */
+   private void submit(final boolean now)
+   {
+      if (now || submitExecutor == null)
+      {
+         submitPending();
+      }
+      else if (!submitScheduled)
+      {
+         submitScheduled = true;
+
+         try
+         {
+            submitExecutor.execute(submitTask);
+         }
+         catch (RejectedExecutionException e)
+         {
+            // the factory is stopping
+            submitPending();
+         }
+      }
+   }
+
+   private synchronized void submitPending()
+   {
+      submitScheduled = false;
+
+      try
+      {
+         UringNative.submit(handle);
+      }
+      catch (ActiveMQException e)
+      {
+         ActiveMQJournalLogger.LOGGER.errorSubmittingWrite(e);
+      }
+   }
+
+   private void poll()
+   {
+      long[] userData = new long[entries];
+      int[] results = new int[entries];
+
+      try
+      {
+         boolean stopped = false;
+
+         while (!stopped)
+         {
+            int count = UringNative.waitCompletions(handle, userData, results);
+
+            for (int i = 0; i < count; i++)
+            {
+               if (userData[i] == STOP)
+               {
+                  stopped = true;
+               }
+               else
+               {
+                  complete(userData[i], results[i]);
+               }
+            }
+         }
+      }
+      catch (ActiveMQException e)
+      {
+         ActiveMQJournalLogger.LOGGER.ioError(e.getType().getCode(), e.getMessage());
+      }
+      finally
+      {
+         pollerDone.countDown();
+      }
+   }
+
+   private void complete(final long userData, final int result)
+   {
+      final int index = (int) userData;
+
+      final UringSequentialFile file;
+      final long sequence;
+      final IOAsyncTask callback;
+      final ByteBuffer buffer;
+      final boolean releaseBuffer;
+      final int bytes;
+      final String errorMessage;
+
+      synchronized (this)
+      {
+         Operation operation = operations[index];
+
+         if (result < 0)
+         {
+            if (operation.errorMessage == null)
+            {
+               operation.errorMessage = UringNative.errorMessage(-result);
+            }
+         }
+         else if (operation.write && (!operation.sync || (userData & LINKED) != 0) && result != operation.size)
+         {
+            if (operation.errorMessage == null)
+            {
+               operation.errorMessage = "Short write of " + result + " bytes out of " + operation.size;
+            }
+         }
+         else
+         {
+            operation.result = result;
+         }
+
+         if (--operation.pending > 0)
+         {
+            permits.release();
+            return;
+         }
+
+         file = operation.file;
+         sequence = operation.sequence;
+         callback = operation.callback;
+         buffer = operation.buffer;
+         releaseBuffer = operation.releaseBuffer;
+         bytes = operation.result;
+         errorMessage = operation.errorMessage;
+
+         operation.clear();
+         freeOperations[freeCount++] = index;
+      }
+
+      // released only once the operation is free, there is always one for every permit
+      permits.release();
+
+      deliver(file, sequence, callback, bytes, errorMessage);
+
+      if (releaseBuffer)
+      {
+         factory.releaseBuffer(buffer);
+      }
+   }
+
+   private void deliver(final UringSequentialFile file,
+                        final long sequence,
+                        final IOAsyncTask callback,
+                        final int bytes,
+                        final String errorMessage)
+   {
+      if (file != null)
+      {
+         file.done(sequence, callback, errorMessage);
+         return;
+      }
+
+      try
+      {
+         if (errorMessage == null)
+         {
+            if (callback instanceof Completion)
+            {
+               ((Completion) callback).result = bytes;
+            }
+            callback.done();
+         }
+         else
+         {
+            ActiveMQJournalLogger.LOGGER.ioError(ActiveMQExceptionType.IO_ERROR.getCode(), errorMessage);
+            callback.onError(ActiveMQExceptionType.IO_ERROR.getCode(), errorMessage);
+         }
+      }
+      catch (Throwable e)
+      {
+         ActiveMQJournalLogger.LOGGER.errorCompletingCallback(e);
+      }
+   }
+
+   private static final class Operation
+   {
+      UringSequentialFile file;
+
+      long sequence;
+
+      IOAsyncTask callback;
+
+      ByteBuffer buffer;
+
+      boolean releaseBuffer;
+
+      boolean write;
+
+      boolean sync;
+
+      int size;
+
+      /** The completions still expected */
+      int pending;
+
+      int result;
+
+      /** The first error of the operation */
+      String errorMessage;
+
+      void clear()
+      {
+         file = null;
+         callback = null;
+         buffer = null;
+         releaseBuffer = false;
+         write = false;
+         sync = false;
+         errorMessage = null;
+         result = 0;
+      }
+   }
+
+   /**
+    * Waits for a number of operations, keeping the first error and the bytes of the last one.
+    */
+   static final class Completion implements IOAsyncTask
+   {
+      private final CountDownLatch latch;
+
+      private volatile int result;
+
+      private volatile int errorCode;
+
+      private volatile String errorMessage;
+
+      Completion(final int operations)
+      {
+         latch = new CountDownLatch(operations);
+      }
+
+      public void done()
+      {
+         latch.countDown();
+      }
+
+      public synchronized void onError(final int errorCode, final String errorMessage)
+      {
+         if (this.errorMessage == null)
+         {
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+         }
+
+         latch.countDown();
+      }
+
+      /**
+       * @return the result of the last operation, the bytes read for a read
+       */
+      int await() throws ActiveMQException
+      {
+         try
+         {
+            latch.await();
+         }
+         catch (InterruptedException e)
+         {
+            throw new ActiveMQInterruptedException(e);
+         }
+
+         if (errorMessage != null)
+         {
+            throw ActiveMQExceptionType.createException(errorCode, errorMessage);
+         }
+
+         return result;
+      }
+   }
+}
@@ -0,0 +1,487 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.api.core.ActiveMQException;
+import org.apache.activemq.api.core.ActiveMQExceptionType;
+import org.apache.activemq.api.core.ActiveMQIOErrorException;
+import org.apache.activemq.core.asyncio.impl.AsynchronousFileImpl;
+import org.apache.activemq.core.journal.IOAsyncTask;
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.Histogram;
+import org.apache.activemq.utils.ReusableLatch;
+
+/**
+ * A SequentialFile writing through the io_uring ring of its {@link UringSequentialFileFactory}.
+ * <p/>
+ * The file is opened without O_DIRECT, a write goes to the page cache and a sync write is followed
+ * by an fdatasync linked to it on the ring. Completions may arrive out of order, the callbacks are
+ * still called in the order of the writes.
+ */
+public final class UringSequentialFile extends AbstractSequentialFile
+{
+   /** The largest write used to fill a file */
+   private static final int FILL_BLOCK_SIZE = 1024 * 1024;
+
+   private final UringSequentialFileFactory uringFactory;
+
+   private final int defaultMaxIO;
+
+   private volatile int fd = -1;
+
+   private boolean useExecutor;
+
+   /** Guarded by the lock of the ring */
+   private long nextSequence;
+
+   /** Guarded by doneWrites */
+   private long nextDoneSequence;
+
+   private final PriorityQueue<DoneWrite> doneWrites = new PriorityQueue<DoneWrite>();
+
+   private final ReusableLatch pendingWrites = new ReusableLatch();
+
+   public UringSequentialFile(final UringSequentialFileFactory factory,
+                              final String directory,
+                              final String fileName,
+                              final int maxIO,
+                              final Executor writerExecutor)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+      uringFactory = factory;
+      defaultMaxIO = maxIO;
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position)
+   {
+      return position;
+   }
+
+   public boolean isOpen()
+   {
+      return fd >= 0;
+   }
+
+   public void open() throws ActiveMQException
+   {
+      open(defaultMaxIO, true);
+   }
+
+   /**
+    * @param maxIO not used, the ring limits the operations in flight for all the files
+    */
+   public synchronized void open(final int maxIO, final boolean useExecutor) throws ActiveMQException
+   {
+      int handle = AsynchronousFileImpl.openFile(getFile().getAbsolutePath());
+
+      if (handle < 0)
+      {
+         ActiveMQIOErrorException e = new ActiveMQIOErrorException("Can't open file " + getFile().getAbsolutePath());
+         factory.onIOError(e, e.getMessage(), this);
+         throw e;
+      }
+
+      this.useExecutor = useExecutor;
+
+      synchronized (doneWrites)
+      {
+         nextDoneSequence = 0;
+      }
+      nextSequence = 0;
+
+      position.set(0);
+
+      fileSize = getFile().length();
+
+      fd = handle;
+   }
+
+   public synchronized void fill(final int position, final int size, final byte fillCharacter) throws ActiveMQException
+   {
+      checkOpened();
+
+      int blockSize = Math.min(size, FILL_BLOCK_SIZE);
+
+      ByteBuffer block = ByteBuffer.allocateDirect(blockSize);
+
+      for (int i = 0; i < blockSize; i++)
+      {
+         block.put(fillCharacter);
+      }
+
+      int blocks = (size + blockSize - 1) / blockSize;
+
+      UringRing.Completion completion = new UringRing.Completion(blocks);
+
+      for (int i = 0; i < blocks; i++)
+      {
+         int offset = i * blockSize;
+
+         uringFactory.getRing().write(null,
+                                      fd,
+                                      position + offset,
+                                      block,
+                                      Math.min(blockSize, size - offset),
+                                      false,
+                                      false,
+                                      completion,
+                                      true);
+      }
+
+      try
+      {
+         completion.await();
+
+         dataSync();
+      }
+      catch (ActiveMQException e)
+      {
+         factory.onIOError(e, e.getMessage(), this);
+         throw e;
+      }
+
+      fileSize = getFile().length();
+   }
+
+   public synchronized void waitForClose() throws InterruptedException
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws IOException, InterruptedException, ActiveMQException
+   {
+      if (!isOpen())
+      {
+         return;
+      }
+
+      // the writes still on the executor get queued on the ring
+      super.close();
+
+      while (!pendingWrites.await(AbstractSequentialFileFactory.EXECUTOR_TIMEOUT, TimeUnit.SECONDS))
+      {
+         ActiveMQJournalLogger.LOGGER.errorClosingFile(getFileName());
+      }
+
+      AsynchronousFileImpl.closeFile(fd);
+
+      fd = -1;
+
+      timedBuffer = null;
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   /**
+    * Reads from the position of the buffer up to its limit, leaving it flipped as the NIO file does.
+    */
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws ActiveMQException
+   {
+      checkOpened();
+
+      int bytesToRead = bytes.remaining();
+
+      ByteBuffer target = bytes.isDirect() ? bytes.slice() : ByteBuffer.allocateDirect(bytesToRead);
+
+      int bytesRead;
+
+      try
+      {
+         UringRing.Completion completion = new UringRing.Completion(1);
+
+         uringFactory.getRing().read(fd, position.get(), target, bytesToRead, completion);
+
+         bytesRead = completion.await();
+      }
+      catch (ActiveMQException e)
+      {
+         if (callback != null)
+         {
+            callback.onError(e.getType().getCode(), e.getMessage());
+         }
+
+         factory.onIOError(e, e.getMessage(), this);
+
+         throw e;
+      }
+
+      if (!bytes.isDirect())
+      {
+         target.limit(bytesRead);
+         bytes.put(target);
+      }
+      else
+      {
+         bytes.position(bytes.position() + bytesRead);
+      }
+
+      position.addAndGet(bytesRead);
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+
+      bytes.flip();
+
+      return bytesRead == 0 && bytesToRead > 0 ? -1 : bytesRead;
+   }
+
+   /**
+    * An fdatasync of the writes completed so far.
+    */
+   public void sync() throws IOException
+   {
+      try
+      {
+         dataSync();
+      }
+      catch (ActiveMQException e)
+      {
+         factory.onIOError(e, e.getMessage(), this);
+         throw new IOException(e.getMessage(), e);
+      }
+   }
+
+   public long size() throws Exception
+   {
+      return getFile().length();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "UringSequentialFile:" + getFile().getAbsolutePath();
+   }
+
+   public SequentialFile cloneFile()
+   {
+      return new UringSequentialFile(uringFactory, getFile().getParent(), getFileName(), defaultMaxIO, writerExecutor);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      if (sync)
+      {
+         SimpleWaitIOCallback completion = new SimpleWaitIOCallback();
+
+         writeDirect(bytes, true, completion);
+
+         completion.waitCompletion();
+      }
+      else
+      {
+         writeDirect(bytes, false, DummyCallback.getInstance());
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (bytes.isDirect())
+      {
+         write(bytes, sync, false, callback, !useExecutor);
+      }
+      else
+      {
+         // the ring only writes from native memory
+         ByteBuffer copy = factory.newBuffer(bytes.limit());
+         bytes.rewind();
+         copy.put(bytes);
+         copy.rewind();
+         write(copy, sync, true, callback, !useExecutor);
+      }
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws InterruptedException, ActiveMQException
+   {
+      SimpleWaitIOCallback completion = new SimpleWaitIOCallback();
+
+      write(bytes, true, false, completion, true);
+
+      completion.waitCompletion();
+   }
+
+   // Protected methods
+   // -----------------------------------------------------------------------------------------------------
+
+   @Override
+   protected void writeReleasingBuffer(final ByteBuffer buffer, final boolean sync, final IOAsyncTask callback)
+   {
+      write(buffer, sync, true, callback, !useExecutor);
+   }
+
+   // Package protected methods
+   // -----------------------------------------------------------------------------------------------------
+
+   /**
+    * Called holding the lock of the ring, as the write is queued.
+    */
+   long nextSequence()
+   {
+      return nextSequence++;
+   }
+
+   /**
+    * Called by the poller as a write is completed.
+    */
+   void done(final long sequence, final IOAsyncTask callback, final String errorMessage)
+   {
+      if (errorMessage != null)
+      {
+         ActiveMQJournalLogger.LOGGER.ioError(ActiveMQExceptionType.IO_ERROR.getCode(), errorMessage);
+
+         factory.onIOError(new ActiveMQIOErrorException(errorMessage), errorMessage, this);
+      }
+
+      synchronized (doneWrites)
+      {
+         if (sequence == nextDoneSequence)
+         {
+            nextDoneSequence++;
+            callDone(callback, errorMessage);
+
+            while (!doneWrites.isEmpty() && doneWrites.peek().sequence == nextDoneSequence)
+            {
+               DoneWrite write = doneWrites.poll();
+               nextDoneSequence++;
+               callDone(write.callback, write.errorMessage);
+            }
+         }
+         else
+         {
+            doneWrites.add(new DoneWrite(sequence, callback, errorMessage));
+         }
+      }
+
+      pendingWrites.countDown();
+   }
+
+   // Private methods
+   // -----------------------------------------------------------------------------------------------------
+
+   private void write(final ByteBuffer bytes,
+                      final boolean sync,
+                      final boolean releaseBuffer,
+                      final IOAsyncTask callback,
+                      final boolean submitNow)
+   {
+      final int bytesToWrite = bytes.limit();
+
+      final long positionToWrite = position.getAndAdd(bytesToWrite);
+
+      Histogram syncTimes = getSyncTimes();
+
+      pendingWrites.countUp();
+
+      uringFactory.getRing().write(this,
+                                   fd,
+                                   positionToWrite,
+                                   bytes,
+                                   bytesToWrite,
+                                   sync,
+                                   releaseBuffer,
+                                   !sync || syncTimes == null || callback == null ? callback
+                                      : new LatencyRecordingCallback(callback, syncTimes),
+                                   submitNow);
+   }
+
+   private void dataSync() throws ActiveMQException
+   {
+      checkOpened();
+
+      UringRing.Completion completion = new UringRing.Completion(1);
+
+      uringFactory.getRing().dataSync(fd, completion);
+
+      completion.await();
+   }
+
+   private static void callDone(final IOAsyncTask callback, final String errorMessage)
+   {
+      if (callback == null)
+      {
+         return;
+      }
+
+      try
+      {
+         if (errorMessage == null)
+         {
+            callback.done();
+         }
+         else
+         {
+            callback.onError(ActiveMQExceptionType.IO_ERROR.getCode(), errorMessage);
+         }
+      }
+      catch (Throwable e)
+      {
+         ActiveMQJournalLogger.LOGGER.errorCompletingCallback(e);
+      }
+   }
+
+   private void checkOpened()
+   {
+      if (fd < 0)
+      {
+         throw new IllegalStateException("File not opened");
+      }
+   }
+
+   private static final class DoneWrite implements Comparable<DoneWrite>
+   {
+      final long sequence;
+
+      final IOAsyncTask callback;
+
+      final String errorMessage;
+
+      DoneWrite(final long sequence, final IOAsyncTask callback, final String errorMessage)
+      {
+         this.sequence = sequence;
+         this.callback = callback;
+         this.errorMessage = errorMessage;
+      }
+
+      public int compareTo(final DoneWrite other)
+      {
+         return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+      }
+   }
+}
@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl;
+
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.activemq.api.core.ActiveMQException;
+import org.apache.activemq.api.core.ActiveMQInterruptedException;
+import org.apache.activemq.core.asyncio.impl.AsynchronousFileImpl;
+import org.apache.activemq.core.journal.IOCriticalErrorListener;
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.core.libaio.UringNative;
+import org.apache.activemq.journal.ActiveMQJournalLogger;
+import org.apache.activemq.utils.ActiveMQThreadFactory;
+
+/**
+ * A SequentialFileFactory doing its I/O through a single io_uring ring, see {@link UringRing}.
+ * <p/>
+ * The TimedBuffer flushes into buffers registered with the ring once, when the factory starts.
+ * Needs the native library and a kernel with io_uring (5.6 or later), see {@link #isSupported()}.
+ */
+public final class UringSequentialFileFactory extends AbstractSequentialFileFactory
+{
+   /** The submission slots of the ring, shared by all the files */
+   private static final int RING_ENTRIES = 1024;
+
+   /** The registered buffers, enough for the TimedBuffer flushes in flight */
+   private static final int REGISTERED_BUFFERS = 8;
+
+   private static final boolean SUPPORTED = checkSupported();
+
+   private volatile UringRing ring;
+
+   private ExecutorService pollerExecutor;
+
+   private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+   private Map<ByteBuffer, Integer> registeredBuffers;
+
+   /** 1 for the registered buffers handed out */
+   private AtomicIntegerArray usedBuffers;
+
+   public UringSequentialFileFactory(final String journalDir)
+   {
+      this(journalDir,
+           JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO,
+           JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO,
+           false,
+           null);
+   }
+
+   public UringSequentialFileFactory(final String journalDir,
+                                     final int bufferSize,
+                                     final int bufferTimeout,
+                                     final boolean logRates,
+                                     final IOCriticalErrorListener listener)
+   {
+      super(journalDir, true, bufferSize, bufferTimeout, logRates, listener);
+   }
+
+   /**
+    * @return whether the native library was loaded and has io_uring, and the kernel supports it
+    */
+   public static boolean isSupported()
+   {
+      return SUPPORTED;
+   }
+
+   public SequentialFile createSequentialFile(final String fileName, final int maxIO)
+   {
+      return new UringSequentialFile(this, journalDir, fileName, maxIO, writeExecutor);
+   }
+
+   public boolean isSupportsCallbacks()
+   {
+      return true;
+   }
+
+   public ByteBuffer allocateDirectBuffer(final int size)
+   {
+      return ByteBuffer.allocateDirect(size);
+   }
+
+   public void releaseDirectBuffer(final ByteBuffer buffer)
+   {
+      // direct buffers are released by GC
+   }
+
+   public ByteBuffer newBuffer(final int size)
+   {
+      if (size <= bufferSize)
+      {
+         ByteBuffer buffer = freeBuffers.poll();
+
+         if (buffer != null)
+         {
+            usedBuffers.set(registeredBuffers.get(buffer), 1);
+
+            buffer.clear();
+            buffer.limit(size);
+            clearBuffer(buffer);
+
+            return buffer;
+         }
+      }
+
+      return ByteBuffer.allocateDirect(size);
+   }
+
+   @Override
+   public void releaseBuffer(final ByteBuffer buffer)
+   {
+      Integer index = registeredBuffers == null ? null : registeredBuffers.get(buffer);
+
+      if (index != null && usedBuffers.compareAndSet(index, 1, 0))
+      {
+         freeBuffers.offer(buffer);
+      }
+   }
+
+   public void clearBuffer(final ByteBuffer buffer)
+   {
+      AsynchronousFileImpl.clearBuffer(buffer);
+   }
+
+   public ByteBuffer wrapBuffer(final byte[] bytes)
+   {
+      ByteBuffer buffer = newBuffer(bytes.length);
+      buffer.put(bytes);
+      return buffer;
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockSize(final int bytes)
+   {
+      return bytes;
+   }
+
+   @Override
+   public void start()
+   {
+      super.start();
+
+      try
+      {
+         ring = new UringRing(this, RING_ENTRIES, writeExecutor);
+      }
+      catch (ActiveMQException e)
+      {
+         onIOError(e, e.getMessage(), null);
+         throw new IllegalStateException(e.getMessage(), e);
+      }
+
+      pollerExecutor = Executors.newSingleThreadExecutor(new ActiveMQThreadFactory("ActiveMQ-io_uring-poller" + System.identityHashCode(this),
+                                                                                  true,
+                                                                                  UringSequentialFileFactory.getThisClassLoader()));
+
+      if (bufferSize > 0)
+      {
+         ByteBuffer[] buffers = new ByteBuffer[REGISTERED_BUFFERS];
+
+         for (int i = 0; i < buffers.length; i++)
+         {
+            buffers[i] = ByteBuffer.allocateDirect(bufferSize);
+         }
+
+         if (ring.registerBuffers(buffers))
+         {
+            registeredBuffers = new IdentityHashMap<ByteBuffer, Integer>();
+            usedBuffers = new AtomicIntegerArray(buffers.length);
+
+            for (int i = 0; i < buffers.length; i++)
+            {
+               registeredBuffers.put(buffers[i], i);
+               freeBuffers.offer(buffers[i]);
+            }
+         }
+      }
+
+      ring.startPoller(pollerExecutor);
+   }
+
+   @Override
+   public void stop()
+   {
+      super.stop();
+
+      if (ring != null)
+      {
+         ring.close();
+         ring = null;
+      }
+
+      if (pollerExecutor != null)
+      {
+         pollerExecutor.shutdown();
+
+         try
+         {
+            if (!pollerExecutor.awaitTermination(AbstractSequentialFileFactory.EXECUTOR_TIMEOUT, TimeUnit.SECONDS))
+            {
+               ActiveMQJournalLogger.LOGGER.timeoutOnPollerShutdown(new Exception("trace"));
+            }
+         }
+         catch (InterruptedException e)
+         {
+            throw new ActiveMQInterruptedException(e);
+         }
+
+         pollerExecutor = null;
+      }
+
+      freeBuffers.clear();
+      registeredBuffers = null;
+      usedBuffers = null;
+   }
+
+   UringRing getRing()
+   {
+      UringRing current = ring;
+
+      if (current == null)
+      {
+         throw new IllegalStateException("The factory isn't started");
+      }
+
+      return current;
+   }
+
+   private static boolean checkSupported()
+   {
+      if (!AsynchronousFileImpl.isLoaded())
+      {
+         return false;
+      }
+
+      try
+      {
+         return UringNative.isSupported();
+      }
+      catch (UnsatisfiedLinkError e)
+      {
+         // a library built before io_uring
+         ActiveMQJournalLogger.LOGGER.debug("The native library has no io_uring: " + e.getMessage());
+         return false;
+      }
+   }
+
+   private static ClassLoader getThisClassLoader()
+   {
+      return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>()
+      {
+         public ClassLoader run()
+         {
+            return UringSequentialFileFactory.class.getClassLoader();
+         }
+      });
+   }
+}
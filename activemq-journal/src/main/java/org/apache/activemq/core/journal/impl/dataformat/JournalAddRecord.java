@@ -19,6 +19,7 @@ package org.apache.activemq.core.journal.impl.dataformat;
 import org.apache.activemq.api.core.ActiveMQBuffer;
 import org.apache.activemq.core.journal.EncodingSupport;
 import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.utils.DataConstants;
 
 public class JournalAddRecord extends JournalInternalRecord
 {
@@ -50,6 +51,27 @@ public class JournalAddRecord extends JournalInternalRecord
    @Override
    public void encode(final ActiveMQBuffer buffer)
    {
+      if (packed)
+      {
+         buffer.writeByte(add ? JournalImpl.ADD_RECORD_PACKED : JournalImpl.UPDATE_RECORD_PACKED);
+
+         buffer.writeInt(fileID);
+
+         buffer.writeByte(compactCount);
+
+         VariableLengthEncoding.write(buffer, id);
+
+         VariableLengthEncoding.write(buffer, record.getEncodeSize());
+
+         buffer.writeByte(recordType);
+
+         record.encode(buffer);
+
+         buffer.writeInt(getEncodeSize());
+
+         return;
+      }
+
       if (add)
       {
          buffer.writeByte(JournalImpl.ADD_RECORD);
@@ -77,6 +99,16 @@ public class JournalAddRecord extends JournalInternalRecord
    @Override
    public int getEncodeSize()
    {
+      if (packed)
+      {
+         int size = record.getEncodeSize();
+
+         return JournalImpl.SIZE_PACKED_RECORD + VariableLengthEncoding.sizeOf(id) +
+            VariableLengthEncoding.sizeOf(size) +
+            DataConstants.SIZE_BYTE +
+            size;
+      }
+
       return JournalImpl.SIZE_ADD_RECORD + record.getEncodeSize() + 1;
    }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package org.apache.activemq.core.journal.impl.dataformat;
 import org.apache.activemq.api.core.ActiveMQBuffer;
 import org.apache.activemq.core.journal.EncodingSupport;
 import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.utils.DataConstants;
 
 public class JournalAddRecordTX extends JournalInternalRecord
 {
@@ -59,6 +60,29 @@ public class JournalAddRecordTX extends JournalInternalRecord
    @Override
    public void encode(final ActiveMQBuffer buffer)
    {
+      if (packed)
+      {
+         buffer.writeByte(add ? JournalImpl.ADD_RECORD_TX_PACKED : JournalImpl.UPDATE_RECORD_TX_PACKED);
+
+         buffer.writeInt(fileID);
+
+         buffer.writeByte(compactCount);
+
+         VariableLengthEncoding.write(buffer, txID);
+
+         VariableLengthEncoding.write(buffer, id);
+
+         VariableLengthEncoding.write(buffer, record.getEncodeSize());
+
+         buffer.writeByte(recordType);
+
+         record.encode(buffer);
+
+         buffer.writeInt(getEncodeSize());
+
+         return;
+      }
+
       if (add)
       {
          buffer.writeByte(JournalImpl.ADD_RECORD_TX);
@@ -88,6 +112,17 @@ public class JournalAddRecordTX extends JournalInternalRecord
    @Override
    public int getEncodeSize()
    {
+      if (packed)
+      {
+         int size = record.getEncodeSize();
+
+         return JournalImpl.SIZE_PACKED_RECORD + VariableLengthEncoding.sizeOf(txID) +
+            VariableLengthEncoding.sizeOf(id) +
+            VariableLengthEncoding.sizeOf(size) +
+            DataConstants.SIZE_BYTE +
+            size;
+      }
+
       return JournalImpl.SIZE_ADD_RECORD_TX + record.getEncodeSize() + 1;
    }
 }
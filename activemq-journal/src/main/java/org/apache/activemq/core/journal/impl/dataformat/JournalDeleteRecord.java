@@ -34,6 +34,21 @@ public class JournalDeleteRecord extends JournalInternalRecord
 
    public void encode(final ActiveMQBuffer buffer)
    {
+      if (packed)
+      {
+         buffer.writeByte(JournalImpl.DELETE_RECORD_PACKED);
+
+         buffer.writeInt(fileID);
+
+         buffer.writeByte(compactCount);
+
+         VariableLengthEncoding.write(buffer, id);
+
+         buffer.writeInt(getEncodeSize());
+
+         return;
+      }
+
       buffer.writeByte(JournalImpl.DELETE_RECORD);
 
       buffer.writeInt(fileID);
@@ -48,6 +63,11 @@ public class JournalDeleteRecord extends JournalInternalRecord
    @Override
    public int getEncodeSize()
    {
+      if (packed)
+      {
+         return JournalImpl.SIZE_PACKED_RECORD + VariableLengthEncoding.sizeOf(id);
+      }
+
       return JournalImpl.SIZE_DELETE_RECORD + 1;
    }
 }
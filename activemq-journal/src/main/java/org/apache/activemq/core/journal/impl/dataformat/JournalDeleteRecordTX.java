@@ -46,6 +46,30 @@ public class JournalDeleteRecordTX extends JournalInternalRecord
    @Override
    public void encode(final ActiveMQBuffer buffer)
    {
+      if (packed)
+      {
+         buffer.writeByte(JournalImpl.DELETE_RECORD_TX_PACKED);
+
+         buffer.writeInt(fileID);
+
+         buffer.writeByte(compactCount);
+
+         VariableLengthEncoding.write(buffer, txID);
+
+         VariableLengthEncoding.write(buffer, id);
+
+         VariableLengthEncoding.write(buffer, record != null ? record.getEncodeSize() : 0);
+
+         if (record != null)
+         {
+            record.encode(buffer);
+         }
+
+         buffer.writeInt(getEncodeSize());
+
+         return;
+      }
+
       buffer.writeByte(JournalImpl.DELETE_RECORD_TX);
 
       buffer.writeInt(fileID);
@@ -69,6 +93,16 @@ public class JournalDeleteRecordTX extends JournalInternalRecord
    @Override
    public int getEncodeSize()
    {
+      if (packed)
+      {
+         int size = record != null ? record.getEncodeSize() : 0;
+
+         return JournalImpl.SIZE_PACKED_RECORD + VariableLengthEncoding.sizeOf(txID) +
+            VariableLengthEncoding.sizeOf(id) +
+            VariableLengthEncoding.sizeOf(size) +
+            size;
+      }
+
       return JournalImpl.SIZE_DELETE_RECORD_TX + (record != null ? record.getEncodeSize() : 0) + 1;
    }
 }
@@ -26,6 +26,8 @@ public abstract class JournalInternalRecord implements EncodingSupport
 
    protected byte compactCount;
 
+   protected boolean packed;
+
    public int getFileID()
    {
       return fileID;
@@ -66,5 +68,19 @@ public abstract class JournalInternalRecord implements EncodingSupport
       }
    }
 
+   public boolean isPacked()
+   {
+      return packed;
+   }
+
+   /**
+    * Asks for the packed encoding of the record, with its IDs and sizes in variable length.
+    * Records without a packed form ignore it.
+    */
+   public void setPacked(final boolean packed)
+   {
+      this.packed = packed;
+   }
+
    public abstract int getEncodeSize();
 }
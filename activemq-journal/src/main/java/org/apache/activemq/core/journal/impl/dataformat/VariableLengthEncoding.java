@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.journal.impl.dataformat;
+
+import java.nio.ByteBuffer;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+
+/**
+ * The variable length encoding used by the packed journal records: 7 bits per byte, least
+ * significant group first, the high bit set on every byte but the last one.
+ * <p/>
+ * IDs and sizes are usually small, so they take one to three bytes instead of eight or four.
+ */
+public final class VariableLengthEncoding
+{
+   public static final int MAX_SIZE = 10;
+
+   private VariableLengthEncoding()
+   {
+   }
+
+   public static int sizeOf(long value)
+   {
+      int size = 1;
+
+      while ((value & ~0x7FL) != 0)
+      {
+         value >>>= 7;
+         size++;
+      }
+
+      return size;
+   }
+
+   public static void write(final ActiveMQBuffer buffer, long value)
+   {
+      while ((value & ~0x7FL) != 0)
+      {
+         buffer.writeByte((byte) ((value & 0x7F) | 0x80));
+         value >>>= 7;
+      }
+
+      buffer.writeByte((byte) value);
+   }
+
+   /**
+    * Reads a value previously validated by {@link #length(ByteBuffer, int)}.
+    */
+   public static long read(final ByteBuffer buffer)
+   {
+      long value = 0;
+
+      int shift = 0;
+
+      byte b;
+
+      do
+      {
+         b = buffer.get();
+         value |= (long) (b & 0x7F) << shift;
+         shift += 7;
+      }
+      while ((b & 0x80) != 0);
+
+      return value;
+   }
+
+   /**
+    * @return the number of bytes of the value at the buffer's position, or -1 if it goes past the
+    * limit or is longer than any valid value, as damaged data would be
+    */
+   public static int length(final ByteBuffer buffer, final int limit)
+   {
+      int pos = buffer.position();
+
+      for (int i = 0; i < MAX_SIZE && pos + i < limit; i++)
+      {
+         if ((buffer.get(pos + i) & 0x80) == 0)
+         {
+            return i + 1;
+         }
+      }
+
+      return -1;
+   }
+}
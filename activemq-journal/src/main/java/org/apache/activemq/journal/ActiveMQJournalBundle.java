@@ -18,6 +18,7 @@ package org.apache.activemq.journal;
 
 
 import org.apache.activemq.api.core.ActiveMQIOErrorException;
+import org.apache.activemq.api.core.ActiveMQIllegalStateException;
 import org.jboss.logging.annotations.Message;
 import org.jboss.logging.annotations.MessageBundle;
 import org.jboss.logging.Messages;
@@ -45,4 +46,7 @@ public interface ActiveMQJournalBundle
 
    @Message(id = 149003, value =   "File not opened")
    ActiveMQIOErrorException fileNotOpened();
+
+   @Message(id = 149004, value =  "A striped journal can't be synchronized to a backup, its file IDs are only unique per stripe")
+   ActiveMQIllegalStateException stripedJournalNotReplicable();
 }
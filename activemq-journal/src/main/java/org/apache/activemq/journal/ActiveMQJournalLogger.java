@@ -241,6 +241,30 @@ public interface ActiveMQJournalLogger extends BasicLogger
    @Message(id = 142034, value = "Exception on submitting write", format = Message.Format.MESSAGE_FORMAT)
    void errorSubmittingWrite(@Cause Throwable e);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142035, value = "Rolling back transaction {0}, it was not prepared on every journal stripe", format = Message.Format.MESSAGE_FORMAT)
+   void stripedTransactionRolledBack(Long txID);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142036, value = "Error rolling back transaction {0} on the journal stripes", format = Message.Format.MESSAGE_FORMAT)
+   void errorRollingBackStripedTransaction(@Cause Throwable e, Long txID);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142037, value = "Error writing the journal checkpoint {0}", format = Message.Format.MESSAGE_FORMAT)
+   void errorWritingCheckpoint(@Cause Throwable e, String fileName);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142038, value = "Ignoring the journal checkpoint {0}, it is damaged or doesn''t match the journal files. The journal is loaded from all its files", format = Message.Format.MESSAGE_FORMAT)
+   void ignoringCheckpoint(String fileName);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142039, value = "Error deleting the commit decision of transaction {0}, it is deleted on the next load", format = Message.Format.MESSAGE_FORMAT)
+   void errorDeletingCommitDecision(@Cause Throwable e, Long txID);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 142040, value = "Could not release the mapping of {0}, the memory and the file are held until the next GC", format = Message.Format.MESSAGE_FORMAT)
+   void errorReleasingMapping(@Cause Throwable e, String fileName);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 144000, value = "Failed to delete file {0}", format = Message.Format.MESSAGE_FORMAT)
    void errorDeletingFile(Object e);
@@ -269,4 +293,8 @@ public interface ActiveMQJournalLogger extends BasicLogger
    @Message(id = 144006, value = "IOError code {0}, {1}", format = Message.Format.MESSAGE_FORMAT)
    void ioError(final int errorCode, final String errorMessage);
 
+   @LogMessage(level = Logger.Level.ERROR)
+   @Message(id = 144007, value = "Error appending record on the journal writer thread", format = Message.Format.MESSAGE_FORMAT)
+   void errorAppendingRecord(@Cause Throwable e);
+
 }
@@ -17,11 +17,13 @@
 
 
 #include <string>
+#include <stdlib.h>
 #include "AIOController.h"
 #include "JavaUtilities.h"
 #include "JAIODatatypes.h"
+#include "AIOException.h"
 
-AIOController::AIOController(std::string fileName, int maxIO) : logger(0), fileOutput(fileName, this, maxIO) 
+AIOController::AIOController(std::string fileName, int _maxIO) : maxIO(_maxIO), batchFileController(0), batchCallbacks(0), batchBuffers(0), batchSequences(0), sequences(0), batchCount(0), logger(0), fileOutput(fileName, this, _maxIO)
 {
 }
 
@@ -45,12 +47,90 @@ void AIOController::log(THREAD_CONTEXT threadContext, short level, const char *
 }
 
 
+void AIOController::initBatch(THREAD_CONTEXT context, jclass callbackClass)
+{
+	jclass bufferClass = context->FindClass("java/nio/ByteBuffer");
+	if (bufferClass == 0)
+	{
+		throw AIOException(NATIVE_ERROR_INTERNAL, "Can't find java.nio.ByteBuffer");
+	}
+
+	jobjectArray callbacks = context->NewObjectArray(maxIO, callbackClass, 0);
+	jobjectArray buffers = context->NewObjectArray(maxIO, bufferClass, 0);
+	jlongArray longs = context->NewLongArray(maxIO);
+
+	if (callbacks == 0 || buffers == 0 || longs == 0)
+	{
+		throw AIOException(NATIVE_ERROR_ALLOCATE_MEMORY, "Can't allocate the completion arrays");
+	}
+
+	batchCallbacks = (jobjectArray) context->NewGlobalRef(callbacks);
+	batchBuffers = (jobjectArray) context->NewGlobalRef(buffers);
+	batchSequences = (jlongArray) context->NewGlobalRef(longs);
+
+	context->DeleteLocalRef(callbacks);
+	context->DeleteLocalRef(buffers);
+	context->DeleteLocalRef(longs);
+	context->DeleteLocalRef(bufferClass);
+
+	sequences = (jlong *) malloc(maxIO * sizeof(jlong));
+
+	if (sequences == 0)
+	{
+		throw AIOException(NATIVE_ERROR_ALLOCATE_MEMORY, "Can't allocate the completion arrays");
+	}
+}
+
+void AIOController::addDone(THREAD_CONTEXT context, jobject fileController, jobject callback, jlong sequence, jobject buffer)
+{
+	if (batchFileController == 0)
+	{
+		// every callback of this controller is sent to the same AsynchronousFileImpl
+		batchFileController = context->NewGlobalRef(fileController);
+	}
+
+	if (batchCount == maxIO)
+	{
+		flushDone(context);
+	}
+
+	context->SetObjectArrayElement(batchCallbacks, batchCount, callback);
+	context->SetObjectArrayElement(batchBuffers, batchCount, buffer);
+	sequences[batchCount++] = sequence;
+}
+
+void AIOController::flushDone(THREAD_CONTEXT context)
+{
+	if (batchCount == 0)
+	{
+		return;
+	}
+
+	int count = batchCount;
+	batchCount = 0;
+
+	context->SetLongArrayRegion(batchSequences, 0, count, sequences);
+	context->CallVoidMethod(batchFileController, doneBatch, batchCallbacks, batchSequences, batchBuffers, (jint) count);
+}
+
 void AIOController::destroy(THREAD_CONTEXT context)
 {
 	if (logger != 0)
 	{
 		context->DeleteGlobalRef(logger);
 	}
+	if (batchFileController != 0)
+	{
+		context->DeleteGlobalRef(batchFileController);
+	}
+	if (batchCallbacks != 0)
+	{
+		context->DeleteGlobalRef(batchCallbacks);
+		context->DeleteGlobalRef(batchBuffers);
+		context->DeleteGlobalRef(batchSequences);
+	}
+	free(sequences);
+	sequences = 0;
 }
 
 /*
@@ -25,8 +25,19 @@
 
 class AIOController
 {
+private:
+	int maxIO;
+
+	// The completions reaped by one io_getevents, delivered to callbacksDone at once
+	jobject batchFileController;
+	jobjectArray batchCallbacks;
+	jobjectArray batchBuffers;
+	jlongArray batchSequences;
+	jlong * sequences;
+	int batchCount;
+
 public:
-	jmethodID done;
+	jmethodID doneBatch;
 	jmethodID error;
 
 	jobject logger;
@@ -44,6 +55,15 @@ public:
 	AsyncFile fileOutput;
 	
 	void destroy(THREAD_CONTEXT context);
+
+	// Allocates the arrays used to deliver the completions in batches
+	void initBatch(THREAD_CONTEXT context, jclass callbackClass);
+
+	// Adds a completion to the current batch, the references are kept by the arrays
+	void addDone(THREAD_CONTEXT context, jobject fileController, jobject callback, jlong sequence, jobject buffer);
+
+	// Delivers the current batch (if any) with a single call to callbacksDone
+	void flushDone(THREAD_CONTEXT context);
 	
 	AIOController(std::string fileName, int maxIO);
 	virtual ~AIOController();
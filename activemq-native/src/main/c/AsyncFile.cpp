@@ -158,6 +158,9 @@ void AsyncFile::pollEvents(THREAD_CONTEXT threadContext)
 				long result = events[i].res;
 				if (result < 0)
 				{
+					// the completions before the error are delivered first
+					controller->flushDone(threadContext);
+
 					std::string strerror = io_error((int)result);
 					adapter->onError(threadContext, result, strerror);
 				}
@@ -169,6 +172,8 @@ void AsyncFile::pollEvents(THREAD_CONTEXT threadContext)
 
 			delete iocbp;
 		}
+
+		controller->flushDone(threadContext);
 	}
 #ifdef DEBUG
 	controller->log(threadContext, 2, "Poller finished execution");
@@ -270,6 +275,71 @@ void AsyncFile::write(THREAD_CONTEXT threadContext, long position, size_t size,
 	}
 }
 
+struct iocb * AsyncFile::prepareWrite(long position, size_t size, void * buffer, CallbackAdapter * adapter)
+{
+	struct iocb * iocb = new struct iocb();
+	::io_prep_pwrite(iocb, fileHandle, buffer, size, position);
+	iocb->data = (void *) adapter;
+	return iocb;
+}
+
+void AsyncFile::submit(THREAD_CONTEXT threadContext, struct iocb ** iocbs, int count)
+{
+	int submitted = 0;
+	int tries = 0;
+
+	while (submitted < count)
+	{
+		// io_submit may take only part of the iocbs when the queue is nearly full
+		int result = ::io_submit(aioContext, count - submitted, iocbs + submitted);
+
+		if (result > 0)
+		{
+			submitted += result;
+			tries = 0;
+			continue;
+		}
+
+		if (result == (-EAGAIN))
+		{
+#ifdef DEBUG
+			fprintf (stderr, "Retrying %d blocks as iocb was full (retry=%d)\n", count - submitted, tries);
+#endif
+			tries ++;
+			if (tries > TRIES_BEFORE_WARN)
+			{
+				controller->log(threadContext, 1, "You should consider expanding AIOLimit if this message appears too many times");
+			}
+
+			if (tries <= TRIES_BEFORE_ERROR)
+			{
+				::usleep(WAIT_FOR_SPOT);
+				continue;
+			}
+
+			failSubmit(threadContext, iocbs + submitted, count - submitted, NATIVE_ERROR_AIO_FULL, "Too many retries (500) waiting for a valid iocb block, please increase MAX_IO limit");
+		}
+		else
+		{
+			std::stringstream str;
+			str<< "Problem on submit block, errorCode=" << result;
+			failSubmit(threadContext, iocbs + submitted, count - submitted, NATIVE_ERROR_IO, str.str());
+		}
+
+		return;
+	}
+}
+
+void AsyncFile::failSubmit(THREAD_CONTEXT threadContext, struct iocb ** iocbs, int count, long errorCode, std::string error)
+{
+	for (int i = 0; i < count; i++)
+	{
+		CallbackAdapter * adapter = (CallbackAdapter *) iocbs[i]->data;
+		adapter->onError(threadContext, errorCode, error);
+		delete iocbs[i];
+	}
+}
+
 void AsyncFile::read(THREAD_CONTEXT threadContext, long position, size_t size, void *& buffer, CallbackAdapter *& adapter)
 {
 
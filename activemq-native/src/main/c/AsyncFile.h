@@ -47,11 +47,19 @@ private:
 	
 	int maxIO;
 	
+	void failSubmit(THREAD_CONTEXT threadContext, struct iocb ** iocbs, int count, long errorCode, std::string error);
+
 public:
 	AsyncFile(std::string & _fileName, AIOController * controller, int maxIO);
 	virtual ~AsyncFile();
 	
 	void write(THREAD_CONTEXT threadContext, long position, size_t size, void *& buffer, CallbackAdapter *& adapter);
+
+	/** Prepares a write to be sent by submit, the iocb is owned by the poller once submitted */
+	struct iocb * prepareWrite(long position, size_t size, void * buffer, CallbackAdapter * adapter);
+
+	/** Submits the iocbs with as few io_submit calls as the queue allows, the iocbs that couldn't be submitted are failed on their adapters */
+	void submit(THREAD_CONTEXT threadContext, struct iocb ** iocbs, int count);
 	
 	/** Write directly to the file without using libaio queue */
 	void writeInternal(THREAD_CONTEXT threadContext, long position, size_t size, void *& buffer);
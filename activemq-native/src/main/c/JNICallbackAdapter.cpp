@@ -44,7 +44,8 @@ JNICallbackAdapter::~JNICallbackAdapter()
 
 void JNICallbackAdapter::done(THREAD_CONTEXT threadContext)
 {
-	JNI_ENV(threadContext)->CallVoidMethod(fileController, controller->done, callback,  sequence, isRead ? nullObj : bufferReference); 
+	// delivered to java with the other completions of the same io_getevents
+	controller->addDone(JNI_ENV(threadContext), fileController, callback, sequence, isRead ? nullObj : bufferReference);
 
 	release(threadContext);
 }
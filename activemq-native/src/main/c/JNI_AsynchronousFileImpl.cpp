@@ -24,6 +24,7 @@
 #include <string>
 #include <time.h>
 #include <sys/file.h>
+#include <vector>
 
 #include "org_apache_activemq_core_libaio_Native.h"
 
@@ -98,15 +99,25 @@ JNIEXPORT jobject JNICALL Java_org_apache_activemq_core_libaio_Native_init
 		std::string fileName = convertJavaString(env, jstrFileName);
 
 		controller = new AIOController(fileName, (int) maxIO);
-		controller->done = env->GetMethodID(controllerClazz,"callbackDone","(Lorg/apache/activemq/core/asyncio/AIOCallback;JLjava/nio/ByteBuffer;)V");
-		if (!controller->done)
+		controller->doneBatch = env->GetMethodID(controllerClazz,"callbacksDone","([Lorg/apache/activemq/core/asyncio/AIOCallback;[J[Ljava/nio/ByteBuffer;I)V");
+		if (!controller->doneBatch)
 		{
-		   throwException (env, -1, "can't get callbackDone method");
+		   throwException (env, -1, "can't get callbacksDone method");
 		   return 0;
 		}
 
+		jclass callbackClazz = env->FindClass("org/apache/activemq/core/asyncio/AIOCallback");
+		if (!callbackClazz)
+		{
+		   throwException (env, -1, "can't find AIOCallback");
+		   return 0;
+		}
+
+		controller->initBatch(env, callbackClazz);
+		env->DeleteLocalRef(callbackClazz);
+
 		controller->error = env->GetMethodID(controllerClazz, "callbackError", "(Lorg/apache/activemq/core/asyncio/AIOCallback;JLjava/nio/ByteBuffer;ILjava/lang/String;)V");
-		if (!controller->done)
+		if (!controller->error)
 		{
 		   throwException (env, -1, "can't get callbackError method");
 		   return 0;
@@ -259,6 +270,63 @@ JNIEXPORT void JNICALL Java_org_apache_activemq_core_libaio_Native_write
 	}
 }
 
+/**
+* Submits count writes with a single io_submit (unless the queue is full), the writes get the sequences from firstSequence on.
+* A write that can't be submitted is failed through callbackError, as its completion would be.
+*/
+JNIEXPORT void JNICALL Java_org_apache_activemq_core_libaio_Native_writeBatch
+  (JNIEnv *env, jclass, jobject objThis, jobject controllerAddress, jlong firstSequence, jlongArray jpositions, jlongArray jsizes, jobjectArray jbuffers, jobjectArray jcallbacks, jint count)
+{
+	try
+	{
+		AIOController * controller = getController(env, controllerAddress);
+
+		std::vector<jlong> positions(count);
+		std::vector<jlong> sizes(count);
+
+		env->GetLongArrayRegion(jpositions, 0, count, &positions[0]);
+		env->GetLongArrayRegion(jsizes, 0, count, &sizes[0]);
+
+		if (env->ExceptionCheck())
+		{
+			return;
+		}
+
+		std::vector<struct iocb *> iocbs;
+		iocbs.reserve(count);
+
+		for (jint i = 0; i < count; i++)
+		{
+			jobject jbuffer = env->GetObjectArrayElement(jbuffers, i);
+			jobject callback = env->GetObjectArrayElement(jcallbacks, i);
+
+			void * buffer = env->GetDirectBufferAddress(jbuffer);
+
+			CallbackAdapter * adapter = new JNICallbackAdapter(controller, firstSequence + i, env->NewGlobalRef(callback), env->NewGlobalRef(objThis), env->NewGlobalRef(jbuffer), false);
+
+			env->DeleteLocalRef(jbuffer);
+			env->DeleteLocalRef(callback);
+
+			if (buffer == 0)
+			{
+				adapter->onError(env, NATIVE_ERROR_INVALID_BUFFER, "Invalid Buffer used, libaio requires NativeBuffer instead of Java ByteBuffer");
+				continue;
+			}
+
+			iocbs.push_back(controller->fileOutput.prepareWrite(positions[i], (size_t)sizes[i], buffer, adapter));
+		}
+
+		if (!iocbs.empty())
+		{
+			controller->fileOutput.submit(env, &iocbs[0], (int) iocbs.size());
+		}
+	}
+	catch (AIOException& e)
+	{
+		throwException(env, e.getErrorCode(), e.what());
+	}
+}
+
 JNIEXPORT void JNICALL Java_org_apache_activemq_core_libaio_Native_writeInternal
   (JNIEnv * env, jclass, jobject controllerAddress, jlong positionToWrite, jlong size, jobject jbuffer)
 {
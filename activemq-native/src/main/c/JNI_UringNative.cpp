@@ -0,0 +1,189 @@
+/*
+  * Licensed to the Apache Software Foundation (ASF) under one or more
+  * contributor license agreements. See the NOTICE file distributed with
+  * this work for additional information regarding copyright ownership.
+  * The ASF licenses this file to You under the Apache License, Version 2.0
+  * (the "License"); you may not use this file except in compliance with
+  * the License. You may obtain a copy of the License at
+  *
+  *     http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+
+#include <jni.h>
+#include <string.h>
+#include <vector>
+
+#include "org_apache_activemq_core_libaio_UringNative.h"
+
+#include "JavaUtilities.h"
+#include "UringRing.h"
+#include "AIOException.h"
+
+inline UringRing * getRing(JNIEnv *env, jobject & handle)
+{
+	return (UringRing *) env->GetDirectBufferAddress(handle);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_apache_activemq_core_libaio_UringNative_isSupported
+  (JNIEnv *, jclass)
+{
+	return UringRing::isSupported();
+}
+
+JNIEXPORT jobject JNICALL Java_org_apache_activemq_core_libaio_UringNative_init
+  (JNIEnv * env, jclass, jint entries)
+{
+	try
+	{
+		UringRing * ring = new UringRing((unsigned) entries);
+
+		return env->NewDirectByteBuffer(ring, 0);
+	}
+	catch (AIOException& e)
+	{
+		throwException(env, e.getErrorCode(), e.what());
+		return 0;
+	}
+}
+
+JNIEXPORT void JNICALL Java_org_apache_activemq_core_libaio_UringNative_registerBuffers
+  (JNIEnv * env, jclass, jobject handle, jobjectArray jbuffers)
+{
+	try
+	{
+		UringRing * ring = getRing(env, handle);
+
+		jsize count = env->GetArrayLength(jbuffers);
+
+		std::vector<struct iovec> buffers(count);
+
+		for (jsize i = 0; i < count; i++)
+		{
+			jobject jbuffer = env->GetObjectArrayElement(jbuffers, i);
+
+			buffers[i].iov_base = env->GetDirectBufferAddress(jbuffer);
+			buffers[i].iov_len = (size_t) env->GetDirectBufferCapacity(jbuffer);
+
+			env->DeleteLocalRef(jbuffer);
+
+			if (buffers[i].iov_base == 0)
+			{
+				throwException(env, NATIVE_ERROR_INVALID_BUFFER, "Invalid Buffer used, io_uring registers NativeBuffers only");
+				return;
+			}
+		}
+
+		ring->registerBuffers(&buffers[0], (unsigned) count);
+	}
+	catch (AIOException& e)
+	{
+		throwException(env, e.getErrorCode(), e.what());
+	}
+}
+
+JNIEXPORT jboolean JNICALL Java_org_apache_activemq_core_libaio_UringNative_prepareWrite
+  (JNIEnv * env, jclass, jobject handle, jint fd, jlong position, jobject jbuffer, jint size, jint bufferIndex, jboolean linkNext, jlong userData)
+{
+	UringRing * ring = getRing(env, handle);
+	void * buffer = env->GetDirectBufferAddress(jbuffer);
+
+	if (buffer == 0)
+	{
+		throwException(env, NATIVE_ERROR_INVALID_BUFFER, "Invalid Buffer used, io_uring requires NativeBuffer instead of Java ByteBuffer");
+		return false;
+	}
+
+	return ring->prepareWrite((int) fd, (unsigned long long) position, buffer, (unsigned) size, (int) bufferIndex, linkNext, (unsigned long long) userData);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_apache_activemq_core_libaio_UringNative_prepareRead
+  (JNIEnv * env, jclass, jobject handle, jint fd, jlong position, jobject jbuffer, jint size, jlong userData)
+{
+	UringRing * ring = getRing(env, handle);
+	void * buffer = env->GetDirectBufferAddress(jbuffer);
+
+	if (buffer == 0)
+	{
+		throwException(env, NATIVE_ERROR_INVALID_BUFFER, "Invalid Buffer used, io_uring requires NativeBuffer instead of Java ByteBuffer");
+		return false;
+	}
+
+	return ring->prepareRead((int) fd, (unsigned long long) position, buffer, (unsigned) size, (unsigned long long) userData);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_apache_activemq_core_libaio_UringNative_prepareDataSync
+  (JNIEnv * env, jclass, jobject handle, jint fd, jlong userData)
+{
+	return getRing(env, handle)->prepareDataSync((int) fd, (unsigned long long) userData);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_apache_activemq_core_libaio_UringNative_prepareNop
+  (JNIEnv * env, jclass, jobject handle, jlong userData)
+{
+	return getRing(env, handle)->prepareNop((unsigned long long) userData);
+}
+
+JNIEXPORT jint JNICALL Java_org_apache_activemq_core_libaio_UringNative_submit
+  (JNIEnv * env, jclass, jobject handle)
+{
+	try
+	{
+		return getRing(env, handle)->submit();
+	}
+	catch (AIOException& e)
+	{
+		throwException(env, e.getErrorCode(), e.what());
+		return -1;
+	}
+}
+
+JNIEXPORT jint JNICALL Java_org_apache_activemq_core_libaio_UringNative_waitCompletions
+  (JNIEnv * env, jclass, jobject handle, jlongArray juserData, jintArray jresults)
+{
+	try
+	{
+		UringRing * ring = getRing(env, handle);
+
+		jsize max = env->GetArrayLength(juserData);
+		if (env->GetArrayLength(jresults) < max)
+		{
+			max = env->GetArrayLength(jresults);
+		}
+
+		// the arrays can't be pinned while the thread is blocked on the kernel
+		std::vector<unsigned long long> userData(max);
+		std::vector<int> results(max);
+
+		int count = ring->waitCompletions(&userData[0], &results[0], (int) max);
+
+		std::vector<jlong> juserDataCopy(userData.begin(), userData.begin() + count);
+
+		env->SetLongArrayRegion(juserData, 0, count, &juserDataCopy[0]);
+		env->SetIntArrayRegion(jresults, 0, count, (jint *) &results[0]);
+
+		return count;
+	}
+	catch (AIOException& e)
+	{
+		throwException(env, e.getErrorCode(), e.what());
+		return -1;
+	}
+}
+
+JNIEXPORT void JNICALL Java_org_apache_activemq_core_libaio_UringNative_close
+  (JNIEnv * env, jclass, jobject handle)
+{
+	delete getRing(env, handle);
+}
+
+JNIEXPORT jstring JNICALL Java_org_apache_activemq_core_libaio_UringNative_errorMessage
+  (JNIEnv * env, jclass, jint error)
+{
+	return env->NewStringUTF(strerror((int) error));
+}
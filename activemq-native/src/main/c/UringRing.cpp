@@ -0,0 +1,369 @@
+/*
+  * Licensed to the Apache Software Foundation (ASF) under one or more
+  * contributor license agreements. See the NOTICE file distributed with
+  * this work for additional information regarding copyright ownership.
+  * The ASF licenses this file to You under the Apache License, Version 2.0
+  * (the "License"); you may not use this file except in compliance with
+  * the License. You may obtain a copy of the License at
+  *
+  *     http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+
+#ifndef _GNU_SOURCE
+#define _GNU_SOURCE
+#endif
+
+#include <stdlib.h>
+#include <string.h>
+#include <errno.h>
+#include <unistd.h>
+#include <sstream>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#include "UringRing.h"
+
+static int sys_io_uring_setup(unsigned entries, struct io_uring_params * params)
+{
+	return (int) syscall(__NR_io_uring_setup, entries, params);
+}
+
+static int sys_io_uring_enter(int fd, unsigned toSubmit, unsigned minComplete, unsigned flags)
+{
+	return (int) syscall(__NR_io_uring_enter, fd, toSubmit, minComplete, flags, NULL, 0);
+}
+
+static int sys_io_uring_register(int fd, unsigned opcode, void * arg, unsigned nrArgs)
+{
+	return (int) syscall(__NR_io_uring_register, fd, opcode, arg, nrArgs);
+}
+
+static std::string uring_error(const char * operation, int error)
+{
+	std::stringstream buffer;
+
+	if (error == ENOSYS)
+		buffer << operation << ": io_uring not in this kernel";
+	else
+		buffer << operation << ": " << strerror(error);
+
+	return buffer.str();
+}
+
+UringRing::UringRing(unsigned entries) : ringFd(-1), sqRing(MAP_FAILED), sqRingSize(0), sqes((struct io_uring_sqe *) MAP_FAILED), sqesSize(0), cqRing(MAP_FAILED), cqRingSize(0)
+{
+	struct io_uring_params params;
+	memset(&params, 0, sizeof(params));
+
+	ringFd = sys_io_uring_setup(entries, &params);
+	if (ringFd < 0)
+	{
+		throw AIOException(NATIVE_ERROR_CANT_INITIALIZE_AIO, uring_error("Can't initialize io_uring", errno));
+	}
+
+	sqEntries = params.sq_entries;
+	sqRingSize = params.sq_off.array + params.sq_entries * sizeof(unsigned);
+	cqRingSize = params.cq_off.cqes + params.cq_entries * sizeof(struct io_uring_cqe);
+
+	// since 5.4 both rings are in a single mapping
+	bool singleMmap = params.features & IORING_FEAT_SINGLE_MMAP;
+	if (singleMmap)
+	{
+		if (cqRingSize > sqRingSize)
+		{
+			sqRingSize = cqRingSize;
+		}
+		cqRingSize = 0;
+	}
+
+	sqRing = mmap(0, sqRingSize, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, ringFd, IORING_OFF_SQ_RING);
+	if (sqRing == MAP_FAILED)
+	{
+		int error = errno;
+		release();
+		throw AIOException(NATIVE_ERROR_CANT_INITIALIZE_AIO, uring_error("Can't map io_uring submission queue", error));
+	}
+
+	if (!singleMmap)
+	{
+		cqRing = mmap(0, cqRingSize, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, ringFd, IORING_OFF_CQ_RING);
+		if (cqRing == MAP_FAILED)
+		{
+			int error = errno;
+			release();
+			throw AIOException(NATIVE_ERROR_CANT_INITIALIZE_AIO, uring_error("Can't map io_uring completion queue", error));
+		}
+	}
+
+	sqesSize = params.sq_entries * sizeof(struct io_uring_sqe);
+	sqes = (struct io_uring_sqe *) mmap(0, sqesSize, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, ringFd, IORING_OFF_SQES);
+	if (sqes == MAP_FAILED)
+	{
+		int error = errno;
+		release();
+		throw AIOException(NATIVE_ERROR_CANT_INITIALIZE_AIO, uring_error("Can't map io_uring submission entries", error));
+	}
+
+	char * sq = (char *) sqRing;
+	sqHead = (unsigned *) (sq + params.sq_off.head);
+	sqTail = (unsigned *) (sq + params.sq_off.tail);
+	sqMask = (unsigned *) (sq + params.sq_off.ring_mask);
+	sqArray = (unsigned *) (sq + params.sq_off.array);
+	sqeTail = *sqTail;
+
+	char * cq = (char *) (singleMmap ? sqRing : cqRing);
+	cqHead = (unsigned *) (cq + params.cq_off.head);
+	cqTail = (unsigned *) (cq + params.cq_off.tail);
+	cqMask = (unsigned *) (cq + params.cq_off.ring_mask);
+	cqes = (struct io_uring_cqe *) (cq + params.cq_off.cqes);
+}
+
+UringRing::~UringRing()
+{
+	release();
+}
+
+void UringRing::release()
+{
+	if (sqes != MAP_FAILED)
+	{
+		munmap(sqes, sqesSize);
+		sqes = (struct io_uring_sqe *) MAP_FAILED;
+	}
+	if (cqRing != MAP_FAILED)
+	{
+		munmap(cqRing, cqRingSize);
+		cqRing = MAP_FAILED;
+	}
+	if (sqRing != MAP_FAILED)
+	{
+		munmap(sqRing, sqRingSize);
+		sqRing = MAP_FAILED;
+	}
+	if (ringFd >= 0)
+	{
+		::close(ringFd);
+		ringFd = -1;
+	}
+}
+
+bool UringRing::isSupported()
+{
+	struct io_uring_params params;
+	memset(&params, 0, sizeof(params));
+
+	// fails with ENOSYS before 5.1, or EPERM when disabled by kernel.io_uring_disabled or seccomp
+	int fd = sys_io_uring_setup(4, &params);
+	if (fd < 0)
+	{
+		return false;
+	}
+
+	// the probe itself appeared in 5.6, as did IORING_OP_READ and IORING_OP_WRITE
+	const unsigned probeOps = 256;
+	struct io_uring_probe * probe = (struct io_uring_probe *) calloc(1, sizeof(struct io_uring_probe) + probeOps * sizeof(struct io_uring_probe_op));
+
+	bool supported = probe != 0 && sys_io_uring_register(fd, IORING_REGISTER_PROBE, probe, probeOps) == 0;
+
+	if (supported)
+	{
+		const int ops[] = {IORING_OP_NOP, IORING_OP_READ, IORING_OP_WRITE, IORING_OP_WRITE_FIXED, IORING_OP_FSYNC};
+
+		for (unsigned i = 0; i < sizeof(ops) / sizeof(ops[0]); i++)
+		{
+			if (ops[i] > probe->last_op || !(probe->ops[ops[i]].flags & IO_URING_OP_SUPPORTED))
+			{
+				supported = false;
+			}
+		}
+	}
+
+	free(probe);
+	::close(fd);
+
+	return supported;
+}
+
+void UringRing::registerBuffers(struct iovec * buffers, unsigned count)
+{
+	if (sys_io_uring_register(ringFd, IORING_REGISTER_BUFFERS, buffers, count) < 0)
+	{
+		throw AIOException(NATIVE_ERROR_ALLOCATE_MEMORY, uring_error("Can't register io_uring buffers", errno));
+	}
+}
+
+struct io_uring_sqe * UringRing::nextSqe()
+{
+	unsigned head = __atomic_load_n(sqHead, __ATOMIC_ACQUIRE);
+
+	if (sqeTail - head >= sqEntries)
+	{
+		return 0;
+	}
+
+	unsigned index = sqeTail & *sqMask;
+
+	struct io_uring_sqe * sqe = &sqes[index];
+	memset(sqe, 0, sizeof(struct io_uring_sqe));
+
+	sqArray[index] = index;
+	sqeTail++;
+
+	return sqe;
+}
+
+bool UringRing::prepareWrite(int fd, unsigned long long position, void * buffer, unsigned size, int bufferIndex, bool linkNext, unsigned long long userData)
+{
+	struct io_uring_sqe * sqe = nextSqe();
+	if (sqe == 0)
+	{
+		return false;
+	}
+
+	if (bufferIndex >= 0)
+	{
+		sqe->opcode = IORING_OP_WRITE_FIXED;
+		sqe->buf_index = (unsigned short) bufferIndex;
+	}
+	else
+	{
+		sqe->opcode = IORING_OP_WRITE;
+	}
+	sqe->fd = fd;
+	sqe->off = position;
+	sqe->addr = (unsigned long) buffer;
+	sqe->len = size;
+	sqe->user_data = userData;
+	if (linkNext)
+	{
+		sqe->flags = IOSQE_IO_LINK;
+	}
+
+	return true;
+}
+
+bool UringRing::prepareRead(int fd, unsigned long long position, void * buffer, unsigned size, unsigned long long userData)
+{
+	struct io_uring_sqe * sqe = nextSqe();
+	if (sqe == 0)
+	{
+		return false;
+	}
+
+	sqe->opcode = IORING_OP_READ;
+	sqe->fd = fd;
+	sqe->off = position;
+	sqe->addr = (unsigned long) buffer;
+	sqe->len = size;
+	sqe->user_data = userData;
+
+	return true;
+}
+
+bool UringRing::prepareDataSync(int fd, unsigned long long userData)
+{
+	struct io_uring_sqe * sqe = nextSqe();
+	if (sqe == 0)
+	{
+		return false;
+	}
+
+	sqe->opcode = IORING_OP_FSYNC;
+	sqe->fd = fd;
+	sqe->fsync_flags = IORING_FSYNC_DATASYNC;
+	sqe->user_data = userData;
+
+	return true;
+}
+
+bool UringRing::prepareNop(unsigned long long userData)
+{
+	struct io_uring_sqe * sqe = nextSqe();
+	if (sqe == 0)
+	{
+		return false;
+	}
+
+	sqe->opcode = IORING_OP_NOP;
+	sqe->user_data = userData;
+
+	return true;
+}
+
+int UringRing::submit()
+{
+	unsigned toSubmit = sqeTail - *sqTail;
+
+	if (toSubmit == 0)
+	{
+		return 0;
+	}
+
+	// the entries have to be written before the kernel sees the new tail
+	__atomic_store_n(sqTail, sqeTail, __ATOMIC_RELEASE);
+
+	int submitted = 0;
+
+	while (toSubmit > 0)
+	{
+		int rc = sys_io_uring_enter(ringFd, toSubmit, 0, 0);
+
+		if (rc < 0)
+		{
+			if (errno == EINTR || errno == EAGAIN)
+			{
+				continue;
+			}
+			throw AIOException(NATIVE_ERROR_IO, uring_error("Can't submit to io_uring", errno));
+		}
+
+		if (rc == 0)
+		{
+			throw AIOException(NATIVE_ERROR_IO, "Can't submit to io_uring: no entry consumed");
+		}
+
+		submitted += rc;
+		toSubmit -= rc;
+	}
+
+	return submitted;
+}
+
+int UringRing::waitCompletions(unsigned long long * userData, int * results, int max)
+{
+	for (;;)
+	{
+		// only this thread moves the head
+		unsigned head = *cqHead;
+		unsigned tail = __atomic_load_n(cqTail, __ATOMIC_ACQUIRE);
+
+		if (head != tail)
+		{
+			int count = 0;
+
+			while (head != tail && count < max)
+			{
+				struct io_uring_cqe * cqe = &cqes[head & *cqMask];
+				userData[count] = cqe->user_data;
+				results[count] = cqe->res;
+				count++;
+				head++;
+			}
+
+			// the entries are read before the kernel may reuse them
+			__atomic_store_n(cqHead, head, __ATOMIC_RELEASE);
+
+			return count;
+		}
+
+		if (sys_io_uring_enter(ringFd, 0, 1, IORING_ENTER_GETEVENTS) < 0 && errno != EINTR)
+		{
+			throw AIOException(NATIVE_ERROR_IO, uring_error("Can't wait for io_uring completions", errno));
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+  * Licensed to the Apache Software Foundation (ASF) under one or more
+  * contributor license agreements. See the NOTICE file distributed with
+  * this work for additional information regarding copyright ownership.
+  * The ASF licenses this file to You under the Apache License, Version 2.0
+  * (the "License"); you may not use this file except in compliance with
+  * the License. You may obtain a copy of the License at
+  *
+  *     http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+
+#ifndef URINGRING_H_
+#define URINGRING_H_
+
+#include <stddef.h>
+#include <sys/uio.h>
+#include <linux/io_uring.h>
+#include "AIOException.h"
+
+/**
+ * An io_uring ring, set up and driven with the raw system calls: only the kernel headers are
+ * needed to build it, no library.
+ *
+ * The submission side (the prepare methods and submit) must be called by one thread at a time,
+ * the completion side (waitCompletions) by a single poller thread.
+ */
+class UringRing
+{
+private:
+	int ringFd;
+
+	void * sqRing;
+	size_t sqRingSize;
+	unsigned * sqHead;
+	unsigned * sqTail;
+	unsigned * sqMask;
+	unsigned * sqArray;
+	unsigned sqEntries;
+
+	struct io_uring_sqe * sqes;
+	size_t sqesSize;
+
+	// the entries prepared up to here are published to the kernel on submit
+	unsigned sqeTail;
+
+	void * cqRing;
+	size_t cqRingSize;
+	unsigned * cqHead;
+	unsigned * cqTail;
+	unsigned * cqMask;
+	struct io_uring_cqe * cqes;
+
+	struct io_uring_sqe * nextSqe();
+
+	void release();
+
+public:
+	UringRing(unsigned entries);
+	virtual ~UringRing();
+
+	static bool isSupported();
+
+	void registerBuffers(struct iovec * buffers, unsigned count);
+
+	bool prepareWrite(int fd, unsigned long long position, void * buffer, unsigned size, int bufferIndex, bool linkNext, unsigned long long userData);
+
+	bool prepareRead(int fd, unsigned long long position, void * buffer, unsigned size, unsigned long long userData);
+
+	bool prepareDataSync(int fd, unsigned long long userData);
+
+	bool prepareNop(unsigned long long userData);
+
+	int submit();
+
+	int waitCompletions(unsigned long long * userData, int * results, int max);
+};
+
+#endif /*URINGRING_H_*/
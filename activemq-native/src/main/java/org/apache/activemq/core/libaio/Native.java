@@ -49,6 +49,18 @@ public class Native
                              ByteBuffer buffer,
                              Object aioPackageCallback) throws ActiveMQException;
 
+   /**
+    * Writes the first count entries of the arrays with a single io_submit, the write at index i gets the sequence firstSequence + i.
+    * A write that can't be submitted is failed on its callback.
+    */
+   public static native void writeBatch(Object thisObject, ByteBuffer handle,
+                                        long firstSequence,
+                                        long[] positions,
+                                        long[] sizes,
+                                        ByteBuffer[] buffers,
+                                        Object[] aioPackageCallbacks,
+                                        int count) throws ActiveMQException;
+
    /** a direct write to the file without the use of libaio's submit. */
    public static native void writeInternal(ByteBuffer handle, long positionToWrite, long size, ByteBuffer bytes) throws ActiveMQException;
 
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.libaio;
+
+import java.nio.ByteBuffer;
+
+import org.apache.activemq.api.core.ActiveMQException;
+
+/**
+ * The io_uring functions of the native library, next to the libaio ones of {@link Native}.
+ * <p/>
+ * A ring is driven by two threads: the prepare methods and {@link #submit(ByteBuffer)} must be
+ * called by one thread at a time, while a single poller thread calls
+ * {@link #waitCompletions(ByteBuffer, long[], int[])}. Operations are only queued by the prepare
+ * methods, a single submit hands all of them to the kernel.
+ * <p/>
+ * Libraries built before io_uring don't have these functions, the callers have to expect an
+ * {@link UnsatisfiedLinkError} from {@link #isSupported()}.
+ */
+public class UringNative
+{
+   /** Whether the kernel has io_uring, with every operation used here */
+   public static native boolean isSupported();
+
+   /** @return the handle of a new ring of at least entries submission slots */
+   public static native ByteBuffer init(int entries) throws ActiveMQException;
+
+   /** Registers direct buffers with the ring, for {@link #prepareWrite} with their index */
+   public static native void registerBuffers(ByteBuffer handle, ByteBuffer[] buffers) throws ActiveMQException;
+
+   /**
+    * @param bufferIndex the index of a registered buffer, -1 if the buffer isn't registered
+    * @param linkNext    whether the next operation only starts once this one completed successfully
+    * @return false if the submission queue is full
+    */
+   public static native boolean prepareWrite(ByteBuffer handle,
+                                             int fd,
+                                             long position,
+                                             ByteBuffer buffer,
+                                             int size,
+                                             int bufferIndex,
+                                             boolean linkNext,
+                                             long userData) throws ActiveMQException;
+
+   public static native boolean prepareRead(ByteBuffer handle,
+                                            int fd,
+                                            long position,
+                                            ByteBuffer buffer,
+                                            int size,
+                                            long userData) throws ActiveMQException;
+
+   /** An fdatasync of the file */
+   public static native boolean prepareDataSync(ByteBuffer handle, int fd, long userData);
+
+   /** An operation doing nothing, used to wake up the poller */
+   public static native boolean prepareNop(ByteBuffer handle, long userData);
+
+   /**
+    * Submits every operation prepared since the last submit with a single system call.
+    *
+    * @return the number of operations submitted
+    */
+   public static native int submit(ByteBuffer handle) throws ActiveMQException;
+
+   /**
+    * Waits for at least one completion.
+    *
+    * @return the number of completions stored in userData and results, the result being the
+    * number of bytes or a negated errno
+    */
+   public static native int waitCompletions(ByteBuffer handle, long[] userData, int[] results) throws ActiveMQException;
+
+   public static native void close(ByteBuffer handle);
+
+   /** The description of an errno returned by a completion */
+   public static native String errorMessage(int errno);
+}
@@ -511,6 +511,110 @@ public interface Configuration
     */
    Configuration setJournalCompactPercentage(int percentage);
 
+   /**
+    * Returns the number of slots of the ring where appends are published for the journal writer thread. <br>
+    * 0 means each thread writes its own records. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_APPEND_RING_SIZE}.
+    */
+   int getJournalAppendRingSize();
+
+   /**
+    * Sets the number of slots of the ring where appends are published for the journal writer thread.
+    */
+   Configuration setJournalAppendRingSize(int size);
+
+   /**
+    * Returns the number of threads reading the message journal files and decoding its records at startup. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_LOAD_PARALLELISM}.
+    */
+   int getJournalLoadParallelism();
+
+   /**
+    * Sets the number of threads reading the message journal files and decoding its records at startup.
+    */
+   Configuration setJournalLoadParallelism(int parallelism);
+
+   /**
+    * Returns whether the timeout of the message journal buffer follows the measured sync time. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE}.
+    */
+   boolean isJournalBufferTimeoutAdaptive();
+
+   /**
+    * Sets whether the timeout of the message journal buffer follows the measured sync time.
+    */
+   Configuration setJournalBufferTimeoutAdaptive(boolean adaptive);
+
+   /**
+    * Returns the lowest timeout (in nanoseconds) of the message journal buffer when it is adaptive. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_TIMEOUT_MIN}.
+    */
+   int getJournalBufferTimeoutMin();
+
+   /**
+    * Sets the lowest timeout (in nanoseconds) of the message journal buffer when it is adaptive.
+    */
+   Configuration setJournalBufferTimeoutMin(int timeout);
+
+   /**
+    * Returns the highest timeout (in nanoseconds) of the message journal buffer when it is adaptive. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_TIMEOUT_MAX}.
+    */
+   int getJournalBufferTimeoutMax();
+
+   /**
+    * Sets the highest timeout (in nanoseconds) of the message journal buffer when it is adaptive.
+    */
+   Configuration setJournalBufferTimeoutMax(int timeout);
+
+   /**
+    * Returns whether the message journal writes its records with variable length IDs and sizes. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_PACKED_RECORDS}.
+    */
+   boolean isJournalPackedRecords();
+
+   /**
+    * Sets whether the message journal writes its records with variable length IDs and sizes.
+    */
+   Configuration setJournalPackedRecords(boolean packed);
+
+   /**
+    * Returns the number of files the message journal fills between two checkpoints. <br>
+    * A checkpoint bounds the number of files replayed when the journal is loaded, 0 disables checkpoints. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_CHECKPOINT_FILES}.
+    */
+   int getJournalCheckpointFiles();
+
+   /**
+    * Sets the number of files the message journal fills between two checkpoints.
+    */
+   Configuration setJournalCheckpointFiles(int files);
+
+   /**
+    * Returns the most bytes kept by the pool of direct buffers the NIO journal, page and large
+    * message files write from and read into. <br>
+    * 0 disables the pool. <br>
+    * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_IO_BUFFER_POOL_SIZE}.
+    */
+   long getIOBufferPoolSize();
+
+   /**
+    * Sets the most bytes kept by the pool of direct buffers of the NIO files.
+    */
+   Configuration setIOBufferPoolSize(long size);
+
+   /**
+    * Returns the directories of the extra message journal stripes. <br>
+    * When not empty, the message journal is striped over the journal directory and these directories. <br>
+    * Default value is an empty list.
+    */
+   List<String> getJournalStripeDirectories();
+
+   /**
+    * Sets the directories of the extra message journal stripes.
+    */
+   Configuration setJournalStripeDirectories(List<String> directories);
+
    /**
     * Returns the number of journal files to pre-create. <br>
     * Default value is {@value org.apache.activemq.api.config.ActiveMQDefaultConfiguration#DEFAULT_JOURNAL_MIN_FILES}.
@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.core.config;
 
+import java.util.List;
+
 import org.apache.activemq.api.core.ActiveMQIllegalStateException;
 import org.apache.activemq.core.config.ha.ColocatedPolicyConfiguration;
 import org.apache.activemq.core.config.ha.LiveOnlyPolicyConfiguration;
@@ -126,6 +128,43 @@ public final class ConfigurationUtils
       throw ActiveMQMessageBundle.BUNDLE.unsupportedHAPolicyConfiguration(conf);
    }
 
+   /**
+    * A striped message journal can't be replicated.
+    */
+   public static void validateJournalStripes(Configuration conf) throws ActiveMQIllegalStateException
+   {
+      List<String> stripeDirectories = conf.getJournalStripeDirectories();
+
+      if (stripeDirectories != null && !stripeDirectories.isEmpty() && isReplicated(conf.getHAPolicyConfiguration()))
+      {
+         throw ActiveMQMessageBundle.BUNDLE.stripedJournalReplicated();
+      }
+   }
+
+   private static boolean isReplicated(HAPolicyConfiguration conf)
+   {
+      if (conf == null)
+      {
+         return false;
+      }
+
+      switch (conf.getType())
+      {
+         case REPLICATED:
+         case REPLICA:
+            return true;
+         case COLOCATED:
+         {
+            // colocated servers replicate unless told otherwise
+            ColocatedPolicyConfiguration pc = (ColocatedPolicyConfiguration) conf;
+            return pc.getLiveConfig() == null || pc.getBackupConfig() == null ||
+               isReplicated(pc.getLiveConfig()) || isReplicated(pc.getBackupConfig());
+         }
+         default:
+            return false;
+      }
+   }
+
    public static ScaleDownPolicy getScaleDownPolicy(ScaleDownConfiguration scaleDownConfiguration)
    {
       if (scaleDownConfiguration != null)
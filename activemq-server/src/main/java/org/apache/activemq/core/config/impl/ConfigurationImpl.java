@@ -143,6 +143,24 @@ public class ConfigurationImpl implements Configuration, Serializable
 
    protected int journalCompactPercentage = ActiveMQDefaultConfiguration.getDefaultJournalCompactPercentage();
 
+   protected int journalAppendRingSize = ActiveMQDefaultConfiguration.getDefaultJournalAppendRingSize();
+
+   protected int journalLoadParallelism = ActiveMQDefaultConfiguration.getDefaultJournalLoadParallelism();
+
+   protected boolean journalBufferTimeoutAdaptive = ActiveMQDefaultConfiguration.isDefaultJournalBufferTimeoutAdaptive();
+
+   protected int journalBufferTimeoutMin = ActiveMQDefaultConfiguration.getDefaultJournalBufferTimeoutMin();
+
+   protected int journalBufferTimeoutMax = ActiveMQDefaultConfiguration.getDefaultJournalBufferTimeoutMax();
+
+   protected boolean journalPackedRecords = ActiveMQDefaultConfiguration.isDefaultJournalPackedRecords();
+
+   protected int journalCheckpointFiles = ActiveMQDefaultConfiguration.getDefaultJournalCheckpointFiles();
+
+   protected long ioBufferPoolSize = ActiveMQDefaultConfiguration.getDefaultIOBufferPoolSize();
+
+   protected List<String> journalStripeDirectories = new ArrayList<String>();
+
    protected int journalFileSize = ActiveMQDefaultConfiguration.getDefaultJournalFileSize();
 
    protected int journalMinFiles = ActiveMQDefaultConfiguration.getDefaultJournalMinFiles();
@@ -904,6 +922,105 @@ public class ConfigurationImpl implements Configuration, Serializable
       return this;
    }
 
+   public int getJournalAppendRingSize()
+   {
+      return journalAppendRingSize;
+   }
+
+   public ConfigurationImpl setJournalAppendRingSize(final int size)
+   {
+      journalAppendRingSize = size;
+      return this;
+   }
+
+   public int getJournalLoadParallelism()
+   {
+      return journalLoadParallelism;
+   }
+
+   public ConfigurationImpl setJournalLoadParallelism(final int parallelism)
+   {
+      journalLoadParallelism = parallelism;
+      return this;
+   }
+
+   public boolean isJournalBufferTimeoutAdaptive()
+   {
+      return journalBufferTimeoutAdaptive;
+   }
+
+   public ConfigurationImpl setJournalBufferTimeoutAdaptive(final boolean adaptive)
+   {
+      journalBufferTimeoutAdaptive = adaptive;
+      return this;
+   }
+
+   public int getJournalBufferTimeoutMin()
+   {
+      return journalBufferTimeoutMin;
+   }
+
+   public ConfigurationImpl setJournalBufferTimeoutMin(final int timeout)
+   {
+      journalBufferTimeoutMin = timeout;
+      return this;
+   }
+
+   public int getJournalBufferTimeoutMax()
+   {
+      return journalBufferTimeoutMax;
+   }
+
+   public ConfigurationImpl setJournalBufferTimeoutMax(final int timeout)
+   {
+      journalBufferTimeoutMax = timeout;
+      return this;
+   }
+
+   public boolean isJournalPackedRecords()
+   {
+      return journalPackedRecords;
+   }
+
+   public ConfigurationImpl setJournalPackedRecords(final boolean packed)
+   {
+      journalPackedRecords = packed;
+      return this;
+   }
+
+   public int getJournalCheckpointFiles()
+   {
+      return journalCheckpointFiles;
+   }
+
+   public ConfigurationImpl setJournalCheckpointFiles(final int files)
+   {
+      journalCheckpointFiles = files;
+      return this;
+   }
+
+   public long getIOBufferPoolSize()
+   {
+      return ioBufferPoolSize;
+   }
+
+   public ConfigurationImpl setIOBufferPoolSize(final long size)
+   {
+      ioBufferPoolSize = size;
+      return this;
+   }
+
+   public List<String> getJournalStripeDirectories()
+   {
+      return journalStripeDirectories;
+   }
+
+   public ConfigurationImpl setJournalStripeDirectories(final List<String> directories)
+   {
+      journalStripeDirectories = directories;
+      return this;
+   }
+
    public long getServerDumpInterval()
    {
       return serverDumpInterval;
@@ -1174,6 +1291,15 @@ public class ConfigurationImpl implements Configuration, Serializable
       result = prime * result + journalBufferTimeout_NIO;
       result = prime * result + journalCompactMinFiles;
       result = prime * result + journalCompactPercentage;
+      result = prime * result + journalAppendRingSize;
+      result = prime * result + journalLoadParallelism;
+      result = prime * result + (journalBufferTimeoutAdaptive ? 1231 : 1237);
+      result = prime * result + journalBufferTimeoutMin;
+      result = prime * result + journalBufferTimeoutMax;
+      result = prime * result + (journalPackedRecords ? 1231 : 1237);
+      result = prime * result + journalCheckpointFiles;
+      result = prime * result + (int) (ioBufferPoolSize ^ (ioBufferPoolSize >>> 32));
+      result = prime * result + ((journalStripeDirectories == null) ? 0 : journalStripeDirectories.hashCode());
       result = prime * result + ((journalDirectory == null) ? 0 : journalDirectory.hashCode());
       result = prime * result + journalFileSize;
       result = prime * result + journalMaxIO_AIO;
@@ -1366,6 +1492,29 @@ public class ConfigurationImpl implements Configuration, Serializable
          return false;
       if (journalCompactPercentage != other.journalCompactPercentage)
          return false;
+      if (journalAppendRingSize != other.journalAppendRingSize)
+         return false;
+      if (journalLoadParallelism != other.journalLoadParallelism)
+         return false;
+      if (journalBufferTimeoutAdaptive != other.journalBufferTimeoutAdaptive)
+         return false;
+      if (journalBufferTimeoutMin != other.journalBufferTimeoutMin)
+         return false;
+      if (journalBufferTimeoutMax != other.journalBufferTimeoutMax)
+         return false;
+      if (journalPackedRecords != other.journalPackedRecords)
+         return false;
+      if (journalCheckpointFiles != other.journalCheckpointFiles)
+         return false;
+      if (ioBufferPoolSize != other.ioBufferPoolSize)
+         return false;
+      if (journalStripeDirectories == null)
+      {
+         if (other.journalStripeDirectories != null)
+            return false;
+      }
+      else if (!journalStripeDirectories.equals(other.journalStripeDirectories))
+         return false;
       if (journalDirectory == null)
       {
          if (other.journalDirectory != null)
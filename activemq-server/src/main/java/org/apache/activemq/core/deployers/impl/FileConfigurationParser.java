@@ -39,6 +39,7 @@ import org.apache.activemq.api.core.client.ActiveMQClient;
 import org.apache.activemq.core.config.BridgeConfiguration;
 import org.apache.activemq.core.config.ClusterConnectionConfiguration;
 import org.apache.activemq.core.config.Configuration;
+import org.apache.activemq.core.config.ConfigurationUtils;
 import org.apache.activemq.core.config.ConnectorServiceConfiguration;
 import org.apache.activemq.core.config.CoreQueueConfiguration;
 import org.apache.activemq.core.config.DivertConfiguration;
@@ -53,6 +54,7 @@ import org.apache.activemq.core.config.impl.ConfigurationImpl;
 import org.apache.activemq.core.config.impl.Validators;
 import org.apache.activemq.core.journal.impl.AIOSequentialFileFactory;
 import org.apache.activemq.core.journal.impl.JournalConstants;
+import org.apache.activemq.core.journal.impl.UringSequentialFileFactory;
 import org.apache.activemq.core.security.Role;
 import org.apache.activemq.core.server.ActiveMQServerLogger;
 import org.apache.activemq.core.server.JournalType;
@@ -147,6 +149,12 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
 
    private static final String AUTO_DELETE_JMS_QUEUES = "auto-delete-jms-queues";
 
+   private static final String COMPRESS_STORED_MESSAGES = "compress-stored-messages";
+
+   private static final String PAGE_MAX_CACHE_BYTES_NODE_NAME = "page-max-cache-bytes";
+
+   private static final String PAGE_READ_AHEAD_NODE_NAME = "page-read-ahead";
+
    // Attributes ----------------------------------------------------
 
    private boolean validateAIO = false;
@@ -496,6 +504,10 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
       {
          config.setJournalType(JournalType.NIO);
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         config.setJournalType(JournalType.MAPPED);
+      }
       else if (s.equals(JournalType.ASYNCIO.toString()))
       {
          // https://jira.jboss.org/jira/browse/HORNETQ-295
@@ -518,6 +530,25 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
             config.setJournalType(JournalType.NIO);
          }
       }
+      else if (s.equals(JournalType.IO_URING.toString()))
+      {
+         // the same check as for AIO, falling back to AIO before NIO
+         if (UringSequentialFileFactory.isSupported())
+         {
+            config.setJournalType(JournalType.IO_URING);
+         }
+         else
+         {
+            JournalType fallback = AIOSequentialFileFactory.isSupported() ? JournalType.ASYNCIO : JournalType.NIO;
+
+            if (validateAIO)
+            {
+               ActiveMQServerLogger.LOGGER.uringNotFound(fallback);
+            }
+
+            config.setJournalType(fallback);
+         }
+      }
 
       config.setJournalSyncTransactional(getBoolean(e,
                                                     "journal-sync-transactional",
@@ -532,25 +563,28 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                            config.getJournalFileSize(),
                                            Validators.GT_ZERO));
 
+      // the io_uring journal shares the buffer settings with AIO
+      boolean aioBuffers = config.getJournalType() == JournalType.ASYNCIO || config.getJournalType() == JournalType.IO_URING;
+
       int journalBufferTimeout = getInteger(e,
                                             "journal-buffer-timeout",
-                                            config.getJournalType() == JournalType.ASYNCIO ? JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO
+                                            aioBuffers ? JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO
                                                : JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO,
                                             Validators.GT_ZERO);
 
       int journalBufferSize = getInteger(e,
                                          "journal-buffer-size",
-                                         config.getJournalType() == JournalType.ASYNCIO ? JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO
+                                         aioBuffers ? JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO
                                             : JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_NIO,
                                          Validators.GT_ZERO);
 
       int journalMaxIO = getInteger(e,
                                     "journal-max-io",
-                                    config.getJournalType() == JournalType.ASYNCIO ? ActiveMQDefaultConfiguration.getDefaultJournalMaxIoAio()
+                                    aioBuffers ? ActiveMQDefaultConfiguration.getDefaultJournalMaxIoAio()
                                        : ActiveMQDefaultConfiguration.getDefaultJournalMaxIoNio(),
                                     Validators.GT_ZERO);
 
-      if (config.getJournalType() == JournalType.ASYNCIO)
+      if (aioBuffers)
       {
          config.setJournalBufferTimeout_AIO(journalBufferTimeout);
          config.setJournalBufferSize_AIO(journalBufferSize);
@@ -563,16 +597,59 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
          config.setJournalMaxIO_NIO(journalMaxIO);
       }
 
+      config.setJournalBufferTimeoutAdaptive(getBoolean(e, "journal-buffer-timeout-adaptive",
+                                                        config.isJournalBufferTimeoutAdaptive()));
+
+      config.setJournalBufferTimeoutMin(getInteger(e, "journal-buffer-timeout-min", config.getJournalBufferTimeoutMin(),
+                                                   Validators.GT_ZERO));
+
+      config.setJournalBufferTimeoutMax(getInteger(e, "journal-buffer-timeout-max", config.getJournalBufferTimeoutMax(),
+                                                   Validators.GT_ZERO));
+
       config.setJournalMinFiles(getInteger(e, "journal-min-files", config.getJournalMinFiles(), Validators.GT_ZERO));
 
       config.setJournalCompactMinFiles(getInteger(e, "journal-compact-min-files", config.getJournalCompactMinFiles(),
                                                   Validators.GE_ZERO));
 
+      config.setJournalLoadParallelism(getInteger(e, "journal-load-parallelism", config.getJournalLoadParallelism(),
+                                                  Validators.GT_ZERO));
+
+      config.setJournalPackedRecords(getBoolean(e, "journal-packed-records", config.isJournalPackedRecords()));
+
+      config.setJournalCheckpointFiles(getInteger(e, "journal-checkpoint-files", config.getJournalCheckpointFiles(),
+                                                  Validators.GE_ZERO));
+
+      config.setIOBufferPoolSize(getLong(e, "io-buffer-pool-size", config.getIOBufferPoolSize(), Validators.GE_ZERO));
+
+      NodeList stripeDirectoriesNodes = e.getElementsByTagName("journal-stripe-directories");
+
+      if (stripeDirectoriesNodes.getLength() > 0)
+      {
+         ArrayList<String> stripeDirectories = new ArrayList<String>();
+
+         NodeList directories = stripeDirectoriesNodes.item(0).getChildNodes();
+
+         for (int i = 0; i < directories.getLength(); i++)
+         {
+            if ("directory".equalsIgnoreCase(directories.item(i).getNodeName()))
+            {
+               stripeDirectories.add(getTrimmedTextContent(directories.item(i)));
+            }
+         }
+
+         config.setJournalStripeDirectories(stripeDirectories);
+
+         ConfigurationUtils.validateJournalStripes(config);
+      }
+
       config.setJournalCompactPercentage(getInteger(e,
                                                     "journal-compact-percentage",
                                                     config.getJournalCompactPercentage(),
                                                     Validators.PERCENTAGE));
 
+      config.setJournalAppendRingSize(getInteger(e, "journal-append-ring-size", config.getJournalAppendRingSize(),
+                                                 Validators.GE_ZERO));
+
       config.setLogJournalWriteRate(getBoolean(e,
                                                "log-journal-write-rate",
                                                ActiveMQDefaultConfiguration.isDefaultJournalLogWriteRate()));
@@ -899,6 +976,18 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
          {
             addressSettings.setAutoDeleteJmsQueues(XMLUtil.parseBoolean(child));
          }
+         else if (COMPRESS_STORED_MESSAGES.equalsIgnoreCase(name))
+         {
+            addressSettings.setCompressStoredMessages(XMLUtil.parseBoolean(child));
+         }
+         else if (PAGE_MAX_CACHE_BYTES_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setPageCacheMaxBytes(XMLUtil.parseLong(child));
+         }
+         else if (PAGE_READ_AHEAD_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setPageReadAhead(XMLUtil.parseInt(child));
+         }
       }
       return setting;
    }
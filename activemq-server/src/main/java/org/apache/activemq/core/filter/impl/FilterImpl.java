@@ -105,6 +105,14 @@ public class FilterImpl implements Filter
       return sfilterString;
    }
 
+   /**
+    * @return the expression the filter string was parsed into
+    */
+   public BooleanExpression getBooleanExpression()
+   {
+      return booleanExpression;
+   }
+
    public synchronized boolean match(final ServerMessage message)
    {
       try
@@ -51,6 +51,9 @@ import org.apache.activemq.api.core.management.QueueControl;
 import org.apache.activemq.core.config.BridgeConfiguration;
 import org.apache.activemq.core.config.Configuration;
 import org.apache.activemq.core.config.DivertConfiguration;
+import org.apache.activemq.core.journal.ByteBufferPool;
+import org.apache.activemq.core.journal.Journal;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.messagecounter.MessageCounterManager;
 import org.apache.activemq.core.messagecounter.impl.MessageCounterManagerImpl;
 import org.apache.activemq.core.persistence.StorageManager;
@@ -85,6 +88,7 @@ import org.apache.activemq.core.transaction.TransactionDetail;
 import org.apache.activemq.core.transaction.impl.CoreTransactionDetail;
 import org.apache.activemq.core.transaction.impl.XidImpl;
 import org.apache.activemq.spi.core.protocol.RemotingConnection;
+import org.apache.activemq.utils.Histogram;
 import org.apache.activemq.utils.SecurityFormatter;
 import org.apache.activemq.utils.TypedProperties;
 import org.apache.activemq.utils.json.JSONArray;
@@ -266,8 +270,9 @@ public class ActiveMQServerControlImpl extends AbstractControl implements Active
       clearIO();
       try
       {
-         return configuration.getJournalType() == JournalType.ASYNCIO ? configuration.getJournalBufferSize_AIO()
-               : configuration.getJournalBufferSize_NIO();
+         return configuration.getJournalType() == JournalType.ASYNCIO || configuration.getJournalType() == JournalType.IO_URING
+            ? configuration.getJournalBufferSize_AIO()
+            : configuration.getJournalBufferSize_NIO();
       }
       finally
       {
@@ -282,8 +287,25 @@ public class ActiveMQServerControlImpl extends AbstractControl implements Active
       clearIO();
       try
       {
-         return configuration.getJournalType() == JournalType.ASYNCIO ? configuration.getJournalBufferTimeout_AIO()
-               : configuration.getJournalBufferTimeout_NIO();
+         return configuration.getJournalType() == JournalType.ASYNCIO || configuration.getJournalType() == JournalType.IO_URING
+            ? configuration.getJournalBufferTimeout_AIO()
+            : configuration.getJournalBufferTimeout_NIO();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalCurrentBufferTimeout()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         Journal journal = storageManager.getMessageJournal();
+         return journal == null ? 0 : journal.getFileFactory().getBufferTimeout();
       }
       finally
       {
@@ -341,8 +363,9 @@ public class ActiveMQServerControlImpl extends AbstractControl implements Active
       clearIO();
       try
       {
-         return configuration.getJournalType() == JournalType.ASYNCIO ? configuration.getJournalMaxIO_AIO()
-               : configuration.getJournalMaxIO_NIO();
+         return configuration.getJournalType() == JournalType.ASYNCIO || configuration.getJournalType() == JournalType.IO_URING
+            ? configuration.getJournalMaxIO_AIO()
+            : configuration.getJournalMaxIO_NIO();
       }
       finally
       {
@@ -425,6 +448,151 @@ public class ActiveMQServerControlImpl extends AbstractControl implements Active
       }
    }
 
+   public long getJournalCompactCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         Journal journal = storageManager.getMessageJournal();
+         return journal == null ? 0 : journal.getCompactCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalLastCompactPauseTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         Journal journal = storageManager.getMessageJournal();
+         return journal == null ? 0 : journal.getLastCompactPauseTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalMaxCompactPauseTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         Journal journal = storageManager.getMessageJournal();
+         return journal == null ? 0 : journal.getMaxCompactPauseTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalReclaimableFiles()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         Journal journal = storageManager.getMessageJournal();
+         return journal == null ? 0 : journal.getReclaimableFilesCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public String getJournalLatenciesAsJSON() throws Exception
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JSONObject latencies = new JSONObject();
+
+         JournalStatistics statistics = storageManager.getJournalStatistics();
+
+         if (statistics != null)
+         {
+            latencies.put("appendTime", ActiveMQServerControlImpl.toJSON(statistics.getAppendTimes()));
+            latencies.put("flushTime", ActiveMQServerControlImpl.toJSON(statistics.getFlushTimes()));
+            latencies.put("flushSize", ActiveMQServerControlImpl.toJSON(statistics.getFlushSizes()));
+            latencies.put("syncTime", ActiveMQServerControlImpl.toJSON(statistics.getSyncTimes()));
+         }
+
+         return latencies.toString();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public void resetJournalLatencies()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalStatistics statistics = storageManager.getJournalStatistics();
+
+         if (statistics != null)
+         {
+            statistics.reset();
+         }
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getIOBufferPoolHits()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         ByteBufferPool bufferPool = storageManager.getBufferPool();
+
+         return bufferPool == null ? 0 : bufferPool.getHits();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getIOBufferPoolMisses()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         ByteBufferPool bufferPool = storageManager.getBufferPool();
+
+         return bufferPool == null ? 0 : bufferPool.getMisses();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public boolean isPersistenceEnabled()
    {
       checkStarted();
@@ -2177,6 +2345,19 @@ public class ActiveMQServerControlImpl extends AbstractControl implements Active
       return list;
    }
 
+   private static JSONObject toJSON(final Histogram histogram) throws Exception
+   {
+      JSONObject json = new JSONObject();
+      json.put("count", histogram.getCount());
+      json.put("mean", histogram.getMean());
+      json.put("p50", histogram.getPercentile(50));
+      json.put("p90", histogram.getPercentile(90));
+      json.put("p99", histogram.getPercentile(99));
+      json.put("p999", histogram.getPercentile(99.9));
+      json.put("max", histogram.getMax());
+      return json;
+   }
+
    @Override
    public void onNotification(org.apache.activemq.core.server.management.Notification notification)
    {
@@ -65,6 +65,11 @@ public interface PagingStore extends ActiveMQComponent
 
    long getMaxSize();
 
+   /**
+    * @return whether the messages of this address are compressed on the journal and on the page files
+    */
+   boolean isCompressStoredMessages();
+
    void applySetting(AddressSettings addressSettings);
 
    boolean isPaging();
@@ -17,9 +17,9 @@
 package org.apache.activemq.core.paging.cursor;
 
 import org.apache.activemq.core.paging.PagedMessage;
-import org.apache.activemq.utils.SoftValueHashMap;
+import org.apache.activemq.core.paging.impl.PageSummary;
 
-public interface PageCache extends SoftValueHashMap.ValueCache
+public interface PageCache
 {
    long getPageId();
 
@@ -34,6 +34,16 @@ public interface PageCache extends SoftValueHashMap.ValueCache
     */
    boolean isLive();
 
+   /**
+    * @return the encoded size of the messages read so far, as an estimate of the memory used by the cache
+    */
+   long getMemoryEstimate();
+
+   /**
+    * @return the summary of the messages of the page, null if it isn't known
+    */
+   PageSummary getSummary();
+
    /**
     *
     * @param messageNumber The order of the message on the page
@@ -27,6 +27,18 @@ public interface PageCursorProvider
 
    PageCache getPageCache(long pageNr);
 
+   /**
+    * Called as a cursor moves into a page, so the pages after it can be read before the cursor gets there.
+    */
+   void readAhead(long pageNr);
+
+   /**
+    * Keeps the cache of a page an iterator is reading from being evicted, until it's unpinned.
+    */
+   void pinPage(long pageNr);
+
+   void unpinPage(long pageNr);
+
    PagedReference newReference(final PagePosition pos, final PagedMessage msg, PageSubscription sub);
 
    void addPageCache(PageCache cache);
@@ -65,6 +77,22 @@ public interface PageCursorProvider
 
    void setCacheMaxSize(int size);
 
+   /**
+    * @param bytes the estimated bytes of the cached pages before the least recently used are evicted, -1 for no limit
+    */
+   void setCacheMaxBytes(long bytes);
+
+   /**
+    * @param pages how many pages after the one a cursor moved into are read in advance, 0 for no read ahead
+    */
+   void setReadAheadPages(int pages);
+
+   long getCacheHits();
+
+   long getCacheMisses();
+
+   long getCacheEvictions();
+
    /**
     * @param pageCursorImpl
     */
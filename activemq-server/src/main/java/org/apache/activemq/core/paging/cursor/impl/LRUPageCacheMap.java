@@ -0,0 +1,330 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.paging.cursor.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.core.paging.cursor.PageCache;
+import org.apache.activemq.core.server.ActiveMQServerLogger;
+
+/**
+ * The page caches of an address, by page id.
+ * <p/>
+ * Once there are more than maxElements caches, or they use more than maxBytes by their
+ * {@link PageCache#getMemoryEstimate()}, the least recently used ones are evicted. Live caches and the caches of
+ * pinned pages are never evicted.
+ * <p/>
+ * The caches are kept in the order they were used, and their estimates in a running total. The estimate of a cache
+ * grows as its messages are read, it is taken again whenever the cache is used or {@link #update(long)} is called.
+ * <p/>
+ * This isn't thread safe, apart from the statistics, the callers synchronize on it.
+ */
+public class LRUPageCacheMap
+{
+   private final boolean isTrace = ActiveMQServerLogger.LOGGER.isTraceEnabled();
+
+   private final Map<Long, CacheEntry> caches = new HashMap<Long, CacheEntry>();
+
+   /**
+    * The least recently used entry, the most recently used one is its previous
+    */
+   private final CacheEntry head = new CacheEntry(-1, null);
+
+   /**
+    * The number of pins by page, a page may be pinned before it's cached
+    */
+   private final Map<Long, Integer> pins = new HashMap<Long, Integer>();
+
+   private long bytes;
+
+   private int maxElements;
+
+   private long maxBytes;
+
+   private final AtomicLong hits = new AtomicLong(0);
+
+   private final AtomicLong misses = new AtomicLong(0);
+
+   private final AtomicLong evictions = new AtomicLong(0);
+
+   /**
+    * @param maxElements the max number of caches, 0 or less for no limit
+    * @param maxBytes the max bytes used by the caches, 0 or less for no limit
+    */
+   public LRUPageCacheMap(final int maxElements, final long maxBytes)
+   {
+      this.maxElements = maxElements;
+      this.maxBytes = maxBytes;
+
+      head.previous = head;
+      head.next = head;
+   }
+
+   public void setMaxElements(final int maxElements)
+   {
+      this.maxElements = maxElements;
+      checkSize();
+   }
+
+   public void setMaxBytes(final long maxBytes)
+   {
+      this.maxBytes = maxBytes;
+      checkSize();
+   }
+
+   public long getMaxBytes()
+   {
+      return maxBytes;
+   }
+
+   /**
+    * Returns the cache of a page making it the most recently used, counted as a hit or a miss.
+    */
+   public PageCache get(final long pageId)
+   {
+      CacheEntry entry = caches.get(pageId);
+
+      if (entry == null)
+      {
+         misses.incrementAndGet();
+         return null;
+      }
+
+      hits.incrementAndGet();
+      entry.unlink();
+      entry.linkBefore(head);
+      updateEstimate(entry);
+      return entry.cache;
+   }
+
+   /**
+    * Returns the cache of a page without using it.
+    */
+   public PageCache peek(final long pageId)
+   {
+      CacheEntry entry = caches.get(pageId);
+      return entry == null ? null : entry.cache;
+   }
+
+   public boolean containsKey(final long pageId)
+   {
+      return caches.containsKey(pageId);
+   }
+
+   public void put(final long pageId, final PageCache cache)
+   {
+      CacheEntry entry = new CacheEntry(pageId, cache);
+
+      removeEntry(caches.put(pageId, entry));
+
+      entry.linkBefore(head);
+      updateEstimate(entry);
+      checkSize();
+   }
+
+   /**
+    * Takes the estimate of the cache of a page again, once some of its messages were read.
+    */
+   public void update(final long pageId)
+   {
+      CacheEntry entry = caches.get(pageId);
+
+      if (entry != null)
+      {
+         updateEstimate(entry);
+         checkSize();
+      }
+   }
+
+   public PageCache remove(final long pageId)
+   {
+      pins.remove(pageId);
+
+      CacheEntry entry = caches.remove(pageId);
+      removeEntry(entry);
+      return entry == null ? null : entry.cache;
+   }
+
+   public void clear()
+   {
+      caches.clear();
+      head.previous = head;
+      head.next = head;
+      bytes = 0;
+   }
+
+   public int size()
+   {
+      return caches.size();
+   }
+
+   public Collection<PageCache> values()
+   {
+      ArrayList<PageCache> values = new ArrayList<PageCache>(caches.size());
+      for (CacheEntry entry : caches.values())
+      {
+         values.add(entry.cache);
+      }
+      return values;
+   }
+
+   /**
+    * Keeps the cache of the page, once it's there, from being evicted until it's unpinned as many times.
+    */
+   public void pin(final long pageId)
+   {
+      Integer count = pins.get(pageId);
+      pins.put(pageId, count == null ? 1 : count + 1);
+   }
+
+   public void unpin(final long pageId)
+   {
+      Integer count = pins.get(pageId);
+
+      if (count == null)
+      {
+         // the page was removed
+         return;
+      }
+
+      if (count == 1)
+      {
+         pins.remove(pageId);
+         checkSize();
+      }
+      else
+      {
+         pins.put(pageId, count - 1);
+      }
+   }
+
+   public boolean isPinned(final long pageId)
+   {
+      return pins.containsKey(pageId);
+   }
+
+   public long getMemoryEstimate()
+   {
+      return bytes;
+   }
+
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   public long getEvictions()
+   {
+      return evictions.get();
+   }
+
+   /**
+    * Evicts the least recently used caches until the limits are respected, or there's nothing left to evict.
+    */
+   public void checkSize()
+   {
+      CacheEntry entry = head.next;
+
+      while (entry != head && isOverLimits())
+      {
+         CacheEntry next = entry.next;
+
+         if (!entry.cache.isLive() && !pins.containsKey(entry.pageId))
+         {
+            caches.remove(entry.pageId);
+            removeEntry(entry);
+            evictions.incrementAndGet();
+
+            if (isTrace)
+            {
+               ActiveMQServerLogger.LOGGER.trace("Evicting page cache " + entry.pageId + ", caches = " + caches.size() +
+                                                    ", estimated bytes = " + bytes);
+            }
+         }
+
+         entry = next;
+      }
+   }
+
+   private boolean isOverLimits()
+   {
+      return maxElements > 0 && caches.size() > maxElements || maxBytes > 0 && bytes > maxBytes;
+   }
+
+   private void updateEstimate(final CacheEntry entry)
+   {
+      long estimate = entry.cache.getMemoryEstimate();
+      bytes += estimate - entry.estimate;
+      entry.estimate = estimate;
+   }
+
+   private void removeEntry(final CacheEntry entry)
+   {
+      if (entry != null)
+      {
+         entry.unlink();
+         bytes -= entry.estimate;
+      }
+   }
+
+   private static final class CacheEntry
+   {
+      final long pageId;
+
+      final PageCache cache;
+
+      /**
+       * The estimate of the cache counted in the total
+       */
+      long estimate;
+
+      CacheEntry previous;
+
+      CacheEntry next;
+
+      CacheEntry(final long pageId, final PageCache cache)
+      {
+         this.pageId = pageId;
+         this.cache = cache;
+      }
+
+      void linkBefore(final CacheEntry entry)
+      {
+         previous = entry.previous;
+         next = entry;
+         previous.next = this;
+         entry.previous = this;
+      }
+
+      void unlink()
+      {
+         previous.next = next;
+         next.previous = previous;
+         previous = null;
+         next = null;
+      }
+   }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import org.apache.activemq.core.paging.PagedMessage;
 import org.apache.activemq.core.paging.cursor.LivePageCache;
 import org.apache.activemq.core.paging.impl.Page;
+import org.apache.activemq.core.paging.impl.PageSummary;
 import org.apache.activemq.core.server.LargeServerMessage;
 
 /**
@@ -35,6 +36,8 @@ public class LivePageCacheImpl implements LivePageCache
 
    private boolean isLive = true;
 
+   private long memoryEstimate;
+
    public LivePageCacheImpl(final Page page)
    {
       this.page = page;
@@ -101,6 +104,20 @@ public class LivePageCacheImpl implements LivePageCache
          ((LargeServerMessage)message.getMessage()).incrementDelayDeletionCount();
       }
       this.messages.add(message);
+      memoryEstimate += message.getMessage().getMemoryEstimate();
+   }
+
+   @Override
+   public synchronized long getMemoryEstimate()
+   {
+      return memoryEstimate;
+   }
+
+   @Override
+   public PageSummary getSummary()
+   {
+      // the messages are still being written, they are checked one by one
+      return null;
    }
 
    @Override
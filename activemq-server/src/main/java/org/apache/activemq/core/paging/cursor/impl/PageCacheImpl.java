@@ -16,21 +16,29 @@
  */
 package org.apache.activemq.core.paging.cursor.impl;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.core.paging.PagedMessage;
 import org.apache.activemq.core.paging.cursor.PageCache;
 import org.apache.activemq.core.paging.impl.Page;
+import org.apache.activemq.core.paging.impl.PageSummary;
+import org.apache.activemq.core.persistence.StorageManager;
 
 /**
  * The caching associated to a single page.
+ * <p/>
+ * When the page has an index the messages are read as they're asked for, {@link #MESSAGES_PER_READ} at a time.
  */
 class PageCacheImpl implements PageCache
 {
 
    // Constants -----------------------------------------------------
 
+   static final int MESSAGES_PER_READ = 128;
+
    // Attributes ----------------------------------------------------
 
    private final ReadWriteLock lock = new ReentrantReadWriteLock();
@@ -39,13 +47,33 @@ class PageCacheImpl implements PageCache
 
    private final Page page;
 
+   private final StorageManager storageManager;
+
+   /**
+    * The index of the page, null when all the messages were given to {@link #setMessages(PagedMessage[])}
+    */
+   private int[] offsets;
+
+   /**
+    * The ranges of {@link #MESSAGES_PER_READ} messages already read, guarded by this
+    */
+   private boolean[] rangesRead;
+
+   /**
+    * Updated under this as the ranges are read, read by the page cache map under its own lock
+    */
+   private volatile long memoryEstimate;
+
+   private volatile PageSummary summary;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
 
-   public PageCacheImpl(final Page page)
+   public PageCacheImpl(final Page page, final StorageManager storageManager)
    {
       this.page = page;
+      this.storageManager = storageManager;
    }
 
    // Public --------------------------------------------------------
@@ -58,6 +86,10 @@ class PageCacheImpl implements PageCache
       {
          if (messageNumber < messages.length)
          {
+            if (offsets != null)
+            {
+               return readMessage(messageNumber);
+            }
             return messages[messageNumber];
          }
          else
@@ -89,6 +121,40 @@ class PageCacheImpl implements PageCache
    public void setMessages(final PagedMessage[] messages)
    {
       this.messages = messages;
+
+      long estimate = 0;
+      for (PagedMessage message : messages)
+      {
+         estimate += message.getMessage().getMemoryEstimate();
+      }
+      memoryEstimate = estimate;
+   }
+
+   public long getMemoryEstimate()
+   {
+      return memoryEstimate;
+   }
+
+   public PageSummary getSummary()
+   {
+      return summary;
+   }
+
+   public void setSummary(final PageSummary summary)
+   {
+      this.summary = summary;
+   }
+
+   /**
+    * Called instead of {@link #setMessages(PagedMessage[])}, the messages will be read from the page as needed.
+    *
+    * @param offsets as returned by {@link Page#readIndex()}
+    */
+   public void setIndex(final int[] offsets)
+   {
+      this.offsets = offsets;
+      this.messages = new PagedMessage[offsets.length - 1];
+      this.rangesRead = new boolean[(messages.length + MESSAGES_PER_READ - 1) / MESSAGES_PER_READ];
    }
 
    public int getNumberOfMessages()
@@ -123,6 +189,116 @@ class PageCacheImpl implements PageCache
    @Override
    public PagedMessage[] getMessages()
    {
-      return messages;
+      lock.readLock().lock();
+      try
+      {
+         if (offsets != null)
+         {
+            readAll();
+         }
+         return messages;
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private synchronized PagedMessage readMessage(final int messageNumber)
+   {
+      int range = messageNumber / MESSAGES_PER_READ;
+
+      if (!rangesRead[range])
+      {
+         readRange(range);
+      }
+
+      return messages[messageNumber];
+   }
+
+   private synchronized void readAll()
+   {
+      for (int range = 0; range < rangesRead.length; range++)
+      {
+         if (!rangesRead[range])
+         {
+            readRange(range);
+         }
+      }
+   }
+
+   private void readRange(final int range)
+   {
+      int first = range * MESSAGES_PER_READ;
+      int last = Math.min(first + MESSAGES_PER_READ, messages.length);
+
+      try
+      {
+         storageManager.beforePageRead();
+         try
+         {
+            page.open();
+            try
+            {
+               List<PagedMessage> read = page.read(storageManager, offsets[first], offsets[last]);
+
+               if (read.size() < last - first)
+               {
+                  // the index doesn't match the page, the messages missing would never be read again
+                  readWholePage();
+                  return;
+               }
+
+               long estimate = 0;
+               for (int i = first; i < last; i++)
+               {
+                  messages[i] = read.get(i - first);
+                  estimate += messages[i].getMessage().getMemoryEstimate();
+               }
+               memoryEstimate += estimate;
+            }
+            finally
+            {
+               // just the file, closing the page would be replicated as if it had been written
+               page.getFile().close();
+            }
+         }
+         finally
+         {
+            storageManager.afterPageRead();
+         }
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
+      }
+
+      rangesRead[range] = true;
+   }
+
+   /**
+    * Reads every message of the open page, failing if the page has fewer messages than its index.
+    */
+   private void readWholePage() throws Exception
+   {
+      List<PagedMessage> read = page.read(storageManager);
+
+      if (read.size() < messages.length)
+      {
+         throw new IllegalStateException("Page " + page.getPageId() + " has " + read.size() +
+                                            " messages but its index has " + messages.length);
+      }
+
+      long estimate = 0;
+      for (int i = 0; i < messages.length; i++)
+      {
+         messages[i] = read.get(i);
+         estimate += messages[i].getMessage().getMemoryEstimate();
+      }
+      memoryEstimate = estimate;
+
+      Arrays.fill(rangesRead, true);
    }
 }
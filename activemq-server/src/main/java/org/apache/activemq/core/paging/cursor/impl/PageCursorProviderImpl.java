@@ -36,10 +36,11 @@ import org.apache.activemq.core.paging.cursor.PagedReferenceImpl;
 import org.apache.activemq.core.paging.impl.Page;
 import org.apache.activemq.core.persistence.StorageManager;
 import org.apache.activemq.core.server.ActiveMQServerLogger;
+import org.apache.activemq.core.settings.impl.AddressSettings;
 import org.apache.activemq.core.transaction.Transaction;
 import org.apache.activemq.core.transaction.impl.TransactionImpl;
+import org.apache.activemq.utils.ConcurrentHashSet;
 import org.apache.activemq.utils.FutureLatch;
-import org.apache.activemq.utils.SoftValueHashMap;
 /**
  * A PageProviderIMpl
  *
@@ -68,7 +69,24 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // This is the same executor used at the PageStoreImpl. One Executor per pageStore
    private final Executor executor;
 
-   private final SoftValueHashMap<Long, PageCache> softCache;
+   /**
+    * Reads the next pages while the cursors are still on the current one, null if there's no read ahead
+    */
+   private final Executor readAheadExecutor;
+
+   /**
+    * The pages scheduled to be read ahead
+    */
+   private final ConcurrentHashSet<Long> readingAhead = new ConcurrentHashSet<Long>();
+
+   private volatile int maxCacheSize;
+
+   /**
+    * How many pages after the one a cursor moved into are read in advance
+    */
+   private volatile int readAheadPages = AddressSettings.DEFAULT_PAGE_READ_AHEAD;
+
+   private final LRUPageCacheMap pageCaches;
 
    private final ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
@@ -80,11 +98,22 @@ public class PageCursorProviderImpl implements PageCursorProvider
                                  final StorageManager storageManager,
                                  final Executor executor,
                                  final int maxCacheSize)
+   {
+      this(pagingStore, storageManager, executor, null, maxCacheSize);
+   }
+
+   public PageCursorProviderImpl(final PagingStore pagingStore,
+                                 final StorageManager storageManager,
+                                 final Executor executor,
+                                 final Executor readAheadExecutor,
+                                 final int maxCacheSize)
    {
       this.pagingStore = pagingStore;
       this.storageManager = storageManager;
       this.executor = executor;
-      this.softCache = new SoftValueHashMap<Long, PageCache>(maxCacheSize);
+      this.readAheadExecutor = readAheadExecutor;
+      this.maxCacheSize = maxCacheSize;
+      this.pageCaches = new LRUPageCacheMap(maxCacheSize, -1);
    }
 
    // Public --------------------------------------------------------
@@ -136,16 +165,16 @@ public class PageCursorProviderImpl implements PageCursorProvider
    {
       try
       {
-         boolean needToRead = false;
+         PageCacheImpl newCache = null;
          PageCache cache = null;
-         synchronized (softCache)
+         synchronized (pageCaches)
          {
             if (pageId > pagingStore.getCurrentWritingPage())
             {
                return null;
             }
 
-            cache = softCache.get(pageId);
+            cache = pageCaches.get(pageId);
             if (cache == null)
             {
                if (!pagingStore.checkPageFileExists((int)pageId))
@@ -153,8 +182,8 @@ public class PageCursorProviderImpl implements PageCursorProvider
                   return null;
                }
 
-               cache = createPageCache(pageId);
-               needToRead = true;
+               newCache = createPageCache(pageId);
+               cache = newCache;
                // anyone reading from this cache will have to wait reading to finish first
                // we also want only one thread reading this cache
                cache.lock();
@@ -162,13 +191,13 @@ public class PageCursorProviderImpl implements PageCursorProvider
                {
                   ActiveMQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
                }
-               softCache.put(pageId, cache);
+               pageCaches.put(pageId, cache);
             }
          }
 
          // Reading is done outside of the synchronized block, however
          // the page stays locked until the entire reading is finished
-         if (needToRead)
+         if (newCache != null)
          {
             Page page = null;
             try
@@ -178,8 +207,20 @@ public class PageCursorProviderImpl implements PageCursorProvider
                storageManager.beforePageRead();
                page.open();
 
-               List<PagedMessage> pgdMessages = page.read(storageManager);
-               cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               int[] index = page.readIndex();
+
+               if (index != null)
+               {
+                  // the messages are read as the cursors get to them
+                  newCache.setIndex(index);
+               }
+               else
+               {
+                  List<PagedMessage> pgdMessages = page.read(storageManager);
+                  newCache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               }
+
+               newCache.setSummary(page.getSummary());
             }
             finally
             {
@@ -196,6 +237,12 @@ public class PageCursorProviderImpl implements PageCursorProvider
                storageManager.afterPageRead();
                cache.unlock();
             }
+
+            // the size of the cache is only known now
+            synchronized (pageCaches)
+            {
+               pageCaches.update(pageId);
+            }
          }
 
          return cache;
@@ -206,32 +253,190 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
    }
 
+   /**
+    * Reads up to page-read-ahead pages after pageNr on the read ahead executor. The pages read ahead count against
+    * the page-max-cache-size and page-max-cache-bytes of the address: there's always room left for the page the
+    * cursor is on, and no page is read ahead once the pages from pageNr on would take the whole byte budget, so the
+    * read ahead never evicts the pages the cursors are about to read.
+    */
+   public void readAhead(final long pageNr)
+   {
+      int pages = readAheadPages;
+
+      if (readAheadExecutor == null || pages <= 0)
+      {
+         return;
+      }
+
+      int maxSize = maxCacheSize;
+
+      if (maxSize > 0)
+      {
+         pages = Math.min(pages, maxSize - 1);
+      }
+
+      long lastPage = Math.min(pageNr + pages,
+                               // the page being written is already on its live cache
+                               pagingStore.getCurrentWritingPage() - 1);
+
+      for (long nextPage = pageNr + 1; nextPage <= lastPage; nextPage++)
+      {
+         synchronized (pageCaches)
+         {
+            if (pageCaches.containsKey(nextPage))
+            {
+               continue;
+            }
+
+            if (!fitsReadAhead(pageNr, nextPage))
+            {
+               break;
+            }
+         }
+
+         if (readingAhead.add(nextPage))
+         {
+            final long pageToRead = nextPage;
+
+            readAheadExecutor.execute(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     PageCache cache = getPageCache(pageToRead);
+
+                     if (cache != null)
+                     {
+                        // decoding the messages of an indexed page as well
+                        cache.getMessages();
+
+                        // the decoded messages are part of the estimate of the page now
+                        synchronized (pageCaches)
+                        {
+                           pageCaches.update(pageToRead);
+                        }
+                     }
+                  }
+                  catch (Throwable e)
+                  {
+                     // the cursor will read the page itself when it gets there
+                     ActiveMQServerLogger.LOGGER.debug("Couldn't read ahead page " + pageToRead + " on address " +
+                                                          pagingStore.getAddress(), e);
+                  }
+                  finally
+                  {
+                     readingAhead.remove(pageToRead);
+                  }
+               }
+            });
+         }
+      }
+   }
+
+   /**
+    * Whether nextPage can be read ahead within the byte budget of the cache: the pages from pageNr up to nextPage
+    * must fit in the budget, the ones not cached yet taken to be as big as the page the cursor is on.
+    */
+   private boolean fitsReadAhead(final long pageNr, final long nextPage)
+   {
+      long maxBytes = pageCaches.getMaxBytes();
+
+      if (maxBytes <= 0)
+      {
+         return true;
+      }
+
+      PageCache current = pageCaches.peek(pageNr);
+
+      long estimate = current == null ? 0 : current.getMemoryEstimate();
+
+      long bytes = estimate;
+
+      for (long page = pageNr + 1; page <= nextPage; page++)
+      {
+         PageCache cache = pageCaches.peek(page);
+
+         bytes += cache != null ? cache.getMemoryEstimate() : estimate;
+      }
+
+      return bytes <= maxBytes;
+   }
+
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         softCache.put(cache.getPageId(), cache);
+         pageCaches.put(cache.getPageId(), cache);
       }
    }
 
    public void setCacheMaxSize(final int size)
    {
-      softCache.setMaxElements(size);
+      maxCacheSize = size;
+      synchronized (pageCaches)
+      {
+         pageCaches.setMaxElements(size);
+      }
+   }
+
+   public void setCacheMaxBytes(final long bytes)
+   {
+      synchronized (pageCaches)
+      {
+         pageCaches.setMaxBytes(bytes);
+      }
+   }
+
+   public void setReadAheadPages(final int pages)
+   {
+      readAheadPages = pages;
+   }
+
+   public void pinPage(final long pageNr)
+   {
+      synchronized (pageCaches)
+      {
+         pageCaches.pin(pageNr);
+      }
+   }
+
+   public void unpinPage(final long pageNr)
+   {
+      synchronized (pageCaches)
+      {
+         pageCaches.unpin(pageNr);
+      }
+   }
+
+   public long getCacheHits()
+   {
+      return pageCaches.getHits();
+   }
+
+   public long getCacheMisses()
+   {
+      return pageCaches.getMisses();
+   }
+
+   public long getCacheEvictions()
+   {
+      return pageCaches.getEvictions();
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         return softCache.size();
+         return pageCaches.size();
       }
    }
 
    public void clearCache()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         softCache.clear();
+         pageCaches.clear();
       }
    }
 
@@ -274,10 +479,20 @@ public class PageCursorProviderImpl implements PageCursorProvider
          cursor.stop();
       }
 
+      if (readAheadExecutor != null)
+      {
+         waitForFuture(readAheadExecutor);
+      }
+
       waitForFuture();
    }
 
    private void waitForFuture()
+   {
+      waitForFuture(executor);
+   }
+
+   private static void waitForFuture(final Executor executor)
    {
       FutureLatch future = new FutureLatch();
 
@@ -496,9 +711,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
          {
             PageCache cache;
             PagedMessage[] pgdMessages;
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               cache = softCache.get((long)depagedPage.getPageId());
+               cache = pageCaches.peek(depagedPage.getPageId());
             }
 
             if (isTrace)
@@ -542,9 +757,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
             depagedPage.delete(pgdMessages);
             onDeletePage(depagedPage);
 
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               pageCaches.remove((long)depagedPage.getPageId());
             }
          }
       }
@@ -633,7 +848,12 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      Collection<PageCache> caches;
+      synchronized (pageCaches)
+      {
+         caches = pageCaches.values();
+      }
+      for (PageCache cache : caches)
       {
          System.out.println("Cache " + cache);
       }
@@ -646,7 +866,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
    /* Protected as we may let test cases to instrument the test */
    protected PageCacheImpl createPageCache(final long pageId) throws Exception
    {
-      return new PageCacheImpl(pagingStore.createPage((int)pageId));
+      return new PageCacheImpl(pagingStore.createPage((int)pageId), storageManager);
    }
 
    // Private -------------------------------------------------------
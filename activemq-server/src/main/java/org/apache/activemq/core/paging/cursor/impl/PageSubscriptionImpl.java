@@ -18,21 +18,21 @@ package org.apache.activemq.core.paging.cursor.impl;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.activemq.core.filter.Filter;
+import org.apache.activemq.core.filter.impl.FilterImpl;
 import org.apache.activemq.core.journal.IOAsyncTask;
 import org.apache.activemq.core.paging.PageTransactionInfo;
 import org.apache.activemq.core.paging.PagedMessage;
@@ -45,6 +45,7 @@ import org.apache.activemq.core.paging.cursor.PageSubscription;
 import org.apache.activemq.core.paging.cursor.PageSubscriptionCounter;
 import org.apache.activemq.core.paging.cursor.PagedReference;
 import org.apache.activemq.core.paging.impl.Page;
+import org.apache.activemq.core.paging.impl.PageSummary;
 import org.apache.activemq.core.persistence.StorageManager;
 import org.apache.activemq.core.server.ActiveMQServerLogger;
 import org.apache.activemq.core.server.MessageReference;
@@ -54,13 +55,18 @@ import org.apache.activemq.core.transaction.Transaction;
 import org.apache.activemq.core.transaction.TransactionOperationAbstract;
 import org.apache.activemq.core.transaction.TransactionPropertyIndexes;
 import org.apache.activemq.core.transaction.impl.TransactionImpl;
-import org.apache.activemq.utils.ConcurrentHashSet;
+import org.apache.activemq.selector.filter.BooleanExpression;
+import org.apache.activemq.utils.ConcurrentBitSet;
 import org.apache.activemq.utils.FutureLatch;
 
 final class PageSubscriptionImpl implements PageSubscription
 {
    private final boolean isTrace = ActiveMQServerLogger.LOGGER.isTraceEnabled();
 
+   private static final long[] NO_RECORDS = new long[0];
+
+   private static final int INITIAL_RECORDS = 16;
+
    private boolean empty = true;
 
    // Number of scheduled cleanups, to avoid too many schedules
@@ -78,6 +84,11 @@ final class PageSubscriptionImpl implements PageSubscription
 
    private final Filter filter;
 
+   /**
+    * The expression of {@link #filter}, checked against the summaries of the pages before reading them
+    */
+   private final BooleanExpression filterExpression;
+
    private final PagingStore pageStore;
 
    private final PageCursorProvider cursorProvider;
@@ -86,7 +97,8 @@ final class PageSubscriptionImpl implements PageSubscription
 
    private List<PagePosition> recoveredACK;
 
-   private final SortedMap<Long, PageCursorInfo> consumedPages = new TreeMap<Long, PageCursorInfo>();
+   // changed only holding its lock, a single page is looked up without it
+   private final SortedMap<Long, PageCursorInfo> consumedPages = new ConcurrentSkipListMap<Long, PageCursorInfo>();
 
    private final PageSubscriptionCounter counter;
 
@@ -108,6 +120,7 @@ final class PageSubscriptionImpl implements PageSubscription
       this.cursorId = cursorId;
       this.executor = executor;
       this.filter = filter;
+      this.filterExpression = filter instanceof FilterImpl ? ((FilterImpl) filter).getBooleanExpression() : null;
       this.persistent = persistent;
       this.counter = new PageSubscriptionCounterImpl(store, this, executor, persistent, cursorId);
    }
@@ -316,22 +329,18 @@ final class PageSubscriptionImpl implements PageSubscription
          }
 
          // it will delete the page ack records
-         for (PagePosition pos : infoPG.acks)
+         for (long recordID : infoPG.getAckRecords())
          {
-            if (pos.getRecordID() >= 0)
+            store.deleteCursorAcknowledgeTransactional(tx.getID(), recordID);
+            if (!persist)
             {
-               store.deleteCursorAcknowledgeTransactional(tx.getID(), pos.getRecordID());
-               if (!persist)
-               {
-                  // only need to set it once
-                  tx.setContainsPersistent();
-                  persist = true;
-               }
+               // only need to set it once
+               tx.setContainsPersistent();
+               persist = true;
             }
          }
 
-         infoPG.acks.clear();
-         infoPG.removedReferences.clear();
+         infoPG.clearAcks();
       }
 
       tx.addOperation(new TransactionOperationAbstract()
@@ -389,13 +398,19 @@ final class PageSubscriptionImpl implements PageSubscription
 
       // it will scan for the next available page
       while ((cache == null && retPos.getPageNr() <= pageStore.getCurrentWritingPage()) ||
-         (cache != null && retPos.getPageNr() <= pageStore.getCurrentWritingPage() && cache.getNumberOfMessages() == 0))
+         (cache != null && retPos.getPageNr() <= pageStore.getCurrentWritingPage() &&
+            (cache.getNumberOfMessages() == 0 || skipPage(retPos, cache))))
       {
          retPos = moveNextPage(retPos);
 
          cache = cursorProvider.getPageCache(retPos.getPageNr());
       }
 
+      if (retPos.getPageNr() != pos.getPageNr())
+      {
+         cursorProvider.readAhead(retPos.getPageNr());
+      }
+
       if (cache == null)
       {
          // it will be null in the case of the current writing page
@@ -416,6 +431,41 @@ final class PageSubscriptionImpl implements PageSubscription
       }
    }
 
+   /**
+    * A page whose summary tells that none of its messages is routed to this subscription or matches its filter is
+    * acknowledged at once, as its messages would be one by one, without reading it.
+    *
+    * @return true if the page was skipped
+    */
+   private boolean skipPage(final PagePosition pos, final PageCache cache)
+   {
+      PageSummary summary = cache.getSummary();
+
+      if (pos.getMessageNr() != 0 || cache.isLive() || summary == null)
+      {
+         return false;
+      }
+
+      if (summary.isRoutedTo(cursorId) && (filterExpression == null || summary.mayMatch(filterExpression)))
+      {
+         return false;
+      }
+
+      if (isTrace)
+      {
+         ActiveMQServerLogger.LOGGER.trace("Skipping page " + pos.getPageNr() + " on " + this + ", " + summary);
+      }
+
+      int numberOfMessages = cache.getNumberOfMessages();
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         processACK(new PagePositionImpl(pos.getPageNr(), i));
+      }
+
+      return true;
+   }
+
    private PagePosition moveNextPage(final PagePosition pos)
    {
       PagePosition retPos = pos;
@@ -676,13 +726,10 @@ final class PageSubscriptionImpl implements PageSubscription
          {
             for (PageCursorInfo cursor : consumedPages.values())
             {
-               for (PagePosition info : cursor.acks)
+               for (long recordID : cursor.getAckRecords())
                {
-                  if (info.getRecordID() >= 0)
-                  {
-                     isPersistent = true;
-                     store.deleteCursorAcknowledgeTransactional(tx, info.getRecordID());
-                  }
+                  isPersistent = true;
+                  store.deleteCursorAcknowledgeTransactional(tx, recordID);
                }
                PagePosition completeInfo = cursor.getCompleteInfo();
                if (completeInfo != null && completeInfo.getRecordID() >= 0)
@@ -818,21 +865,18 @@ final class PageSubscriptionImpl implements PageSubscription
             }
             info.setCompleteInfo(null);
          }
-         for (PagePosition deleteInfo : info.acks)
+         for (long recordID : info.getAckRecords())
          {
-            if (deleteInfo.getRecordID() >= 0)
+            try
             {
-               try
-               {
-                  store.deleteCursorAcknowledge(deleteInfo.getRecordID());
-               }
-               catch (Exception e)
-               {
-                  ActiveMQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
-               }
+               store.deleteCursorAcknowledge(recordID);
+            }
+            catch (Exception e)
+            {
+               ActiveMQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
             }
          }
-         info.acks.clear();
+         info.clearAcks();
       }
    }
 
@@ -854,6 +898,13 @@ final class PageSubscriptionImpl implements PageSubscription
 
    private PageCursorInfo getPageInfo(final long pageNr, boolean create)
    {
+      PageCursorInfo existingInfo = consumedPages.get(pageNr);
+
+      if (existingInfo != null)
+      {
+         return existingInfo;
+      }
+
       synchronized (consumedPages)
       {
          PageCursorInfo pageInfo = consumedPages.get(pageNr);
@@ -1000,12 +1051,17 @@ final class PageSubscriptionImpl implements PageSubscription
 
       private final long pageId;
 
-      // Confirmed ACKs on this page
-      private final Set<PagePosition> acks = Collections.synchronizedSet(new LinkedHashSet<PagePosition>());
+      // Confirmed ACKs on this page, by message number
+      private final ConcurrentBitSet acks = new ConcurrentBitSet();
+
+      // The journal records of the confirmed ACKs, to be deleted along with the page
+      private long[] ackRecords = NO_RECORDS;
+
+      private int numberOfAckRecords;
 
       private WeakReference<PageCache> cache;
 
-      private final Set<PagePosition> removedReferences = new ConcurrentHashSet<PagePosition>();
+      private final ConcurrentBitSet removedReferences = new ConcurrentBitSet();
 
       // The page was live at the time of the creation
       private final boolean wasLive;
@@ -1031,7 +1087,7 @@ final class PageSubscriptionImpl implements PageSubscription
       public boolean isAck(PagePosition position)
       {
          return completePage != null ||
-                acks.contains(position);
+                acks.get(position.getMessageNr());
       }
 
       @Override
@@ -1110,12 +1166,15 @@ final class PageSubscriptionImpl implements PageSubscription
 
       public boolean isRemoved(final PagePosition pos)
       {
-         return removedReferences.contains(pos);
+         return removedReferences.get(pos.getMessageNr());
       }
 
       public void remove(final PagePosition position)
       {
-         removedReferences.add(position);
+         if (position.getMessageNr() >= 0)
+         {
+            removedReferences.set(position.getMessageNr());
+         }
       }
 
       public void addACK(final PagePosition posACK)
@@ -1152,8 +1211,50 @@ final class PageSubscriptionImpl implements PageSubscription
 
       private boolean internalAddACK(final PagePosition posACK)
       {
-         removedReferences.add(posACK);
-         return acks.add(posACK);
+         boolean added;
+
+         if (posACK.getMessageNr() >= 0)
+         {
+            removedReferences.set(posACK.getMessageNr());
+            added = acks.set(posACK.getMessageNr());
+         }
+         else
+         {
+            // a bookmark before the first message, only its record is kept
+            added = true;
+         }
+
+         if (added && posACK.getRecordID() >= 0)
+         {
+            addAckRecord(posACK.getRecordID());
+         }
+
+         return added;
+      }
+
+      private synchronized void addAckRecord(final long recordID)
+      {
+         if (numberOfAckRecords == ackRecords.length)
+         {
+            ackRecords = Arrays.copyOf(ackRecords, Math.max(INITIAL_RECORDS, numberOfAckRecords * 2));
+         }
+         ackRecords[numberOfAckRecords++] = recordID;
+      }
+
+      /**
+       * @return the journal records of the ACKs on this page
+       */
+      public synchronized long[] getAckRecords()
+      {
+         return Arrays.copyOf(ackRecords, numberOfAckRecords);
+      }
+
+      public synchronized void clearAcks()
+      {
+         acks.clear();
+         removedReferences.clear();
+         ackRecords = NO_RECORDS;
+         numberOfAckRecords = 0;
       }
 
       /**
@@ -1246,6 +1347,9 @@ final class PageSubscriptionImpl implements PageSubscription
 
       private volatile PagedReference lastRedelivery = null;
 
+      // The page this iterator is reading, pinned on the page cache
+      private long pinnedPage = -1;
+
       // We only store the position for redeliveries. They will be read from the SoftCache again during delivery.
       private final java.util.Queue<PagePosition> redeliveries = new LinkedList<PagePosition>();
 
@@ -1357,6 +1461,8 @@ final class PageSubscriptionImpl implements PageSubscription
                   break;
                }
 
+               pinPage(message.getPosition().getPageNr());
+
                tmpPosition = message.getPosition();
 
                boolean valid = true;
@@ -1482,9 +1588,27 @@ final class PageSubscriptionImpl implements PageSubscription
          }
       }
 
+      private void pinPage(final long pageNr)
+      {
+         if (pageNr != pinnedPage)
+         {
+            cursorProvider.pinPage(pageNr);
+            if (pinnedPage >= 0)
+            {
+               cursorProvider.unpinPage(pinnedPage);
+            }
+            pinnedPage = pageNr;
+         }
+      }
+
       @Override
-      public void close()
+      public synchronized void close()
       {
+         if (pinnedPage >= 0)
+         {
+            cursorProvider.unpinPage(pinnedPage);
+            pinnedPage = -1;
+         }
       }
    }
 }
@@ -18,6 +18,7 @@ package org.apache.activemq.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -49,6 +50,13 @@ public final class Page implements Comparable<Page>
 
    private static final byte END_BYTE = (byte) '}';
 
+   /**
+    * The extension of the index of a page, kept next to the page file
+    */
+   public static final String INDEX_EXTENSION = "pindex";
+
+   private static final int INITIAL_OFFSETS = 16;
+
    // Attributes ----------------------------------------------------
 
    private final int pageId;
@@ -72,6 +80,25 @@ public final class Page implements Comparable<Page>
 
    private final SimpleString storeName;
 
+   /**
+    * The offset of each message written or read on the page, written to the index of the page as it's closed
+    */
+   private int[] offsets = new int[INITIAL_OFFSETS];
+
+   private int offsetCount;
+
+   /**
+    * Whether {@link #offsets} has all the messages of the page, from its start
+    */
+   private boolean offsetsComplete;
+
+   /**
+    * The summary of the messages of the page, built along with {@link #offsets} or read from the index
+    */
+   private PageSummary summary;
+
+   private boolean written;
+
    /**
     * A list of subscriptions containing pending counters (with non tx adds) on this page
     */
@@ -112,16 +139,122 @@ public final class Page implements Comparable<Page>
          throw ActiveMQMessageBundle.BUNDLE.invalidPageIO();
       }
 
+      size.set((int) file.size());
+
+      offsetCount = 0;
+      summary = new PageSummary();
+
+      List<PagedMessage> messages = read(storage, 0, size.get(), true);
+
+      // anything written after a corrupted record couldn't be indexed
+      offsetsComplete = !suspiciousRecords;
+
+      numberOfMessages.set(messages.size());
+
+      return messages;
+   }
+
+   /**
+    * Reads the messages between two offsets of the page, as returned by {@link #readIndex()}.
+    */
+   public synchronized List<PagedMessage> read(StorageManager storage, int startOffset, int endOffset) throws Exception
+   {
+      if (isDebug)
+      {
+         ActiveMQServerLogger.LOGGER.debug("reading page " + this.pageId + " on address = " + storeName +
+                                              " from " + startOffset + " to " + endOffset);
+      }
+
+      if (!file.isOpen())
+      {
+         throw ActiveMQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      return read(storage, startOffset, endOffset, false);
+   }
+
+   /**
+    * The offsets of the messages on the page, written as the page was closed after being written.
+    * <p/>
+    * The summary of the messages is read along with them, see {@link #getSummary()}.
+    *
+    * @return the offset of each message followed by the size of the page, or null if the page has no index or it
+    * doesn't match the page
+    */
+   public synchronized int[] readIndex() throws Exception
+   {
+      SequentialFile indexFile = fileFactory.createSequentialFile(getIndexFileName(), 1);
+
+      if (!indexFile.exists())
+      {
+         return null;
+      }
+
+      indexFile.open();
+
+      ByteBuffer buffer = null;
+      try
+      {
+         int indexSize = (int) indexFile.size();
+
+         if (indexSize < 2 * DataConstants.SIZE_INT)
+         {
+            return null;
+         }
+
+         buffer = fileFactory.newBuffer(indexSize);
+         indexFile.position(0);
+         indexFile.read(buffer);
+         buffer.rewind();
+
+         int count = buffer.getInt();
+
+         // indexes written before the pages had summaries end with the size of the page
+         boolean hasSummary = indexSize == (count + 2) * DataConstants.SIZE_INT + PageSummary.ENCODE_SIZE;
+
+         if (count < 0 || !hasSummary && indexSize != (count + 2) * DataConstants.SIZE_INT)
+         {
+            return null;
+         }
+
+         int[] index = new int[count + 1];
+
+         for (int i = 0; i <= count; i++)
+         {
+            index[i] = buffer.getInt();
+         }
+
+         // the page was written again after its index
+         if (index[count] != file.size())
+         {
+            return null;
+         }
+
+         summary = hasSummary ? PageSummary.decode(buffer) : null;
+
+         return index;
+      }
+      finally
+      {
+         if (buffer != null)
+         {
+            fileFactory.releaseBuffer(buffer);
+         }
+         indexFile.close();
+      }
+   }
+
+   private List<PagedMessage> read(StorageManager storage, int startOffset, int endOffset, boolean recordOffsets) throws Exception
+   {
       ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
 
-      size.set((int) file.size());
       // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
-      ByteBuffer directBuffer = storage.allocateDirectBuffer((int) file.size());
+      ByteBuffer directBuffer = storage.allocateDirectBuffer(endOffset - startOffset);
       ActiveMQBuffer fileBuffer = null;
       try
       {
 
-         file.position(0);
+         file.position(startOffset);
          file.read(directBuffer);
 
          directBuffer.rewind();
@@ -160,17 +293,22 @@ public final class Page implements Comparable<Page>
                         ActiveMQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
                      }
                      messages.add(msg);
+                     if (recordOffsets)
+                     {
+                        addOffset(startOffset + position);
+                        summary.add(msg);
+                     }
                   }
                   else
                   {
-                     markFileAsSuspect(file.getFileName(), position, messages.size());
+                     markFileAsSuspect(file.getFileName(), startOffset + position, messages.size());
                      break;
                   }
                }
             }
             else
             {
-               markFileAsSuspect(file.getFileName(), position, messages.size());
+               markFileAsSuspect(file.getFileName(), startOffset + position, messages.size());
                break;
             }
          }
@@ -184,8 +322,6 @@ public final class Page implements Comparable<Page>
          storage.freeDirectBuffer(directBuffer);
       }
 
-      numberOfMessages.set(messages.size());
-
       return messages;
    }
 
@@ -212,15 +348,27 @@ public final class Page implements Comparable<Page>
 
       buffer.rewind();
 
+      int bufferSize = buffer.limit();
+
+      addOffset(size.get());
+      if (summary != null)
+      {
+         summary.add(message);
+      }
+      written = true;
+
       file.writeDirect(buffer, false);
 
+      // the write is synchronous, the buffer can go back to the pool of the factory
+      fileFactory.releaseBuffer(buffer);
+
       if (pageCache != null)
       {
          pageCache.addLiveMessage(message);
       }
 
       numberOfMessages.incrementAndGet();
-      size.addAndGet(buffer.limit());
+      size.addAndGet(bufferSize);
 
       storageManager.pageWrite(message, pageId);
    }
@@ -238,6 +386,11 @@ public final class Page implements Comparable<Page>
       }
       size.set((int) file.size());
       file.position(0);
+
+      offsetCount = 0;
+      // the offsets of the messages already on the page are only known after reading it
+      offsetsComplete = size.get() == 0;
+      summary = offsetsComplete ? new PageSummary() : null;
    }
 
    public synchronized void close() throws Exception
@@ -254,6 +407,11 @@ public final class Page implements Comparable<Page>
       }
       file.close();
 
+      if (written && offsetsComplete)
+      {
+         writeIndex();
+      }
+
       Set<PageSubscriptionCounter> counters = getPendingCounters();
       if (counters != null)
       {
@@ -309,6 +467,12 @@ public final class Page implements Comparable<Page>
             file.delete();
          }
 
+         SequentialFile indexFile = fileFactory.createSequentialFile(getIndexFileName(), 1);
+         if (indexFile.exists())
+         {
+            indexFile.delete();
+         }
+
          return true;
       }
       catch (Exception e)
@@ -328,6 +492,15 @@ public final class Page implements Comparable<Page>
       return size.intValue();
    }
 
+   /**
+    * @return the summary of the messages of the page, as read by {@link #readIndex()} or built as the page is read
+    * or written from its start, null if there's none
+    */
+   public PageSummary getSummary()
+   {
+      return summary;
+   }
+
    @Override
    public String toString()
    {
@@ -380,6 +553,66 @@ public final class Page implements Comparable<Page>
       return true;
    }
 
+   private void addOffset(final int offset)
+   {
+      if (offsetCount == offsets.length)
+      {
+         offsets = Arrays.copyOf(offsets, offsetCount * 2);
+      }
+      offsets[offsetCount++] = offset;
+   }
+
+   private String getIndexFileName()
+   {
+      String fileName = file.getFileName();
+      return fileName.substring(0, fileName.lastIndexOf('.') + 1) + INDEX_EXTENSION;
+   }
+
+   /**
+    * Writes the number of messages, their offsets, the size of the page the offsets are valid for and the summary of
+    * the messages.
+    * <p/>
+    * The index isn't synced, an index not matching its page is ignored by {@link #readIndex()}.
+    */
+   private void writeIndex()
+   {
+      try
+      {
+         SequentialFile indexFile = fileFactory.createSequentialFile(getIndexFileName(), 1);
+
+         if (indexFile.exists())
+         {
+            indexFile.delete();
+         }
+
+         ByteBuffer buffer = fileFactory.newBuffer((offsetCount + 2) * DataConstants.SIZE_INT +
+                                                      PageSummary.ENCODE_SIZE);
+         buffer.putInt(offsetCount);
+         for (int i = 0; i < offsetCount; i++)
+         {
+            buffer.putInt(offsets[i]);
+         }
+         buffer.putInt(size.get());
+         summary.encode(buffer);
+         buffer.rewind();
+
+         indexFile.open();
+         try
+         {
+            indexFile.writeDirect(buffer, false);
+         }
+         finally
+         {
+            fileFactory.releaseBuffer(buffer);
+            indexFile.close();
+         }
+      }
+      catch (Exception e)
+      {
+         ActiveMQServerLogger.LOGGER.pageIndexWriteError(file.getFileName(), e);
+      }
+   }
+
    /**
     * @param position
     * @param msgNumber
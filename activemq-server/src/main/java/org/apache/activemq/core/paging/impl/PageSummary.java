@@ -0,0 +1,367 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.paging.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.activemq.api.core.FilterConstants;
+import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.core.paging.PagedMessage;
+import org.apache.activemq.core.server.ServerMessage;
+import org.apache.activemq.selector.filter.BooleanExpression;
+import org.apache.activemq.selector.filter.ComparisonExpression;
+import org.apache.activemq.selector.filter.ConstantExpression;
+import org.apache.activemq.selector.filter.Expression;
+import org.apache.activemq.selector.filter.LogicExpression;
+import org.apache.activemq.selector.filter.PropertyExpression;
+import org.apache.activemq.utils.DataConstants;
+
+/**
+ * A summary of the messages of a page, written to its index so the subscriptions can tell a page
+ * has nothing for them without reading it.
+ * <p/>
+ * It keeps the queues the messages were routed to, the range of their priorities and timestamps and
+ * a bloom filter of their String properties. It can only tell for sure that no message of the page
+ * is routed to a queue or matches a filter, a page it can't rule out still has to be read.
+ */
+public final class PageSummary
+{
+   // Constants -----------------------------------------------------
+
+   private static final int MAX_QUEUES = 64;
+
+   private static final int BLOOM_BITS = 32768;
+
+   private static final int BLOOM_HASHES = 3;
+
+   public static final int ENCODE_SIZE = DataConstants.SIZE_INT + MAX_QUEUES * DataConstants.SIZE_LONG +
+      2 * DataConstants.SIZE_BYTE + 2 * DataConstants.SIZE_LONG + BLOOM_BITS / 8;
+
+   // Attributes ----------------------------------------------------
+
+   private final long[] queueIDs = new long[MAX_QUEUES];
+
+   /**
+    * The number of {@link #queueIDs}, -1 once there are more queues than they can keep
+    */
+   private int numberOfQueues;
+
+   private byte minPriority = Byte.MAX_VALUE;
+
+   private byte maxPriority = Byte.MIN_VALUE;
+
+   private long minTimestamp = Long.MAX_VALUE;
+
+   private long maxTimestamp = Long.MIN_VALUE;
+
+   private final long[] bloom = new long[BLOOM_BITS / 64];
+
+   // Public --------------------------------------------------------
+
+   public void add(final PagedMessage pagedMessage)
+   {
+      ServerMessage message = pagedMessage.getMessage();
+
+      minPriority = (byte) Math.min(minPriority, message.getPriority());
+      maxPriority = (byte) Math.max(maxPriority, message.getPriority());
+      minTimestamp = Math.min(minTimestamp, message.getTimestamp());
+      maxTimestamp = Math.max(maxTimestamp, message.getTimestamp());
+
+      for (long queueID : pagedMessage.getQueueIDs())
+      {
+         addQueue(queueID);
+      }
+
+      for (SimpleString name : message.getPropertyNames())
+      {
+         Object value = message.getObjectProperty(name);
+
+         if (value instanceof SimpleString)
+         {
+            addHash(valueHash(name.toString(), value.toString()));
+         }
+         else if (value != null)
+         {
+            // the selectors may convert it to a String, we only know the property is there
+            addHash(typedHash(name.toString()));
+         }
+      }
+   }
+
+   /**
+    * @return false if no message of the page is routed to the queue
+    */
+   public boolean isRoutedTo(final long queueID)
+   {
+      if (numberOfQueues < 0)
+      {
+         return true;
+      }
+
+      for (int i = 0; i < numberOfQueues; i++)
+      {
+         if (queueIDs[i] == queueID)
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * @return false if no message of the page matches the expression
+    */
+   public boolean mayMatch(final BooleanExpression expression)
+   {
+      return mayMatch((Expression) expression);
+   }
+
+   public void encode(final ByteBuffer buffer)
+   {
+      buffer.putInt(numberOfQueues);
+      for (long queueID : queueIDs)
+      {
+         buffer.putLong(queueID);
+      }
+      buffer.put(minPriority);
+      buffer.put(maxPriority);
+      buffer.putLong(minTimestamp);
+      buffer.putLong(maxTimestamp);
+      for (long bits : bloom)
+      {
+         buffer.putLong(bits);
+      }
+   }
+
+   public static PageSummary decode(final ByteBuffer buffer)
+   {
+      PageSummary summary = new PageSummary();
+      summary.numberOfQueues = Math.max(-1, Math.min(MAX_QUEUES, buffer.getInt()));
+      for (int i = 0; i < MAX_QUEUES; i++)
+      {
+         summary.queueIDs[i] = buffer.getLong();
+      }
+      summary.minPriority = buffer.get();
+      summary.maxPriority = buffer.get();
+      summary.minTimestamp = buffer.getLong();
+      summary.maxTimestamp = buffer.getLong();
+      for (int i = 0; i < summary.bloom.length; i++)
+      {
+         summary.bloom[i] = buffer.getLong();
+      }
+      return summary;
+   }
+
+   @Override
+   public String toString()
+   {
+      String queues = numberOfQueues < 0 ? "*" : Arrays.toString(Arrays.copyOf(queueIDs, numberOfQueues));
+
+      return "PageSummary [queues=" + queues + ", priority=" + minPriority + ".." + maxPriority + ", timestamp=" +
+         minTimestamp + ".." + maxTimestamp + "]";
+   }
+
+   // Private -------------------------------------------------------
+
+   private boolean mayMatch(final Expression expression)
+   {
+      if (expression instanceof LogicExpression)
+      {
+         LogicExpression logic = (LogicExpression) expression;
+
+         if ("AND".equals(logic.getExpressionSymbol()))
+         {
+            return mayMatch(logic.getLeft()) && mayMatch(logic.getRight());
+         }
+         else if ("OR".equals(logic.getExpressionSymbol()))
+         {
+            return mayMatch(logic.getLeft()) || mayMatch(logic.getRight());
+         }
+      }
+      else if (expression instanceof ComparisonExpression)
+      {
+         ComparisonExpression comparison = (ComparisonExpression) expression;
+
+         String symbol = comparison.getExpressionSymbol();
+
+         if (comparison.getLeft() instanceof PropertyExpression &&
+            comparison.getRight() instanceof ConstantExpression)
+         {
+            return mayMatch(((PropertyExpression) comparison.getLeft()).getName(),
+                            symbol,
+                            ((ConstantExpression) comparison.getRight()).getValue());
+         }
+         else if (comparison.getRight() instanceof PropertyExpression &&
+            comparison.getLeft() instanceof ConstantExpression)
+         {
+            return mayMatch(((PropertyExpression) comparison.getRight()).getName(),
+                            mirror(symbol),
+                            ((ConstantExpression) comparison.getLeft()).getValue());
+         }
+      }
+
+      // anything else (NOT, LIKE, IN...) could match
+      return true;
+   }
+
+   private boolean mayMatch(final String name, final String symbol, final Object value)
+   {
+      if (value == null)
+      {
+         // IS NULL
+         return true;
+      }
+
+      if (value instanceof Number)
+      {
+         if (FilterConstants.ACTIVEMQ_PRIORITY.toString().equals(name))
+         {
+            return mayMatch(minPriority, maxPriority, symbol, ((Number) value).doubleValue());
+         }
+         else if (FilterConstants.ACTIVEMQ_TIMESTAMP.toString().equals(name))
+         {
+            return mayMatch(minTimestamp, maxTimestamp, symbol, ((Number) value).doubleValue());
+         }
+      }
+      else if (value instanceof String && "=".equals(symbol) && !isHeader(name))
+      {
+         return containsHash(valueHash(name, (String) value)) || containsHash(typedHash(name));
+      }
+
+      return true;
+   }
+
+   private static boolean mayMatch(final long min, final long max, final String symbol, final double value)
+   {
+      if ("=".equals(symbol))
+      {
+         return min <= value && value <= max;
+      }
+      else if (">".equals(symbol))
+      {
+         return max > value;
+      }
+      else if (">=".equals(symbol))
+      {
+         return max >= value;
+      }
+      else if ("<".equals(symbol))
+      {
+         return min < value;
+      }
+      else if ("<=".equals(symbol))
+      {
+         return min <= value;
+      }
+      return true;
+   }
+
+   /**
+    * @return the operator of the comparison with its operands swapped
+    */
+   private static String mirror(final String symbol)
+   {
+      if (">".equals(symbol))
+      {
+         return "<";
+      }
+      else if (">=".equals(symbol))
+      {
+         return "<=";
+      }
+      else if ("<".equals(symbol))
+      {
+         return ">";
+      }
+      else if ("<=".equals(symbol))
+      {
+         return ">=";
+      }
+      return symbol;
+   }
+
+   /**
+    * The headers are read from the message instead of its properties by the filters
+    */
+   private static boolean isHeader(final String name)
+   {
+      return FilterConstants.ACTIVEMQ_USERID.toString().equals(name) ||
+         FilterConstants.ACTIVEMQ_PRIORITY.toString().equals(name) ||
+         FilterConstants.ACTIVEMQ_TIMESTAMP.toString().equals(name) ||
+         FilterConstants.ACTIVEMQ_DURABLE.toString().equals(name) ||
+         FilterConstants.ACTIVEMQ_EXPIRATION.toString().equals(name) ||
+         FilterConstants.ACTIVEMQ_SIZE.toString().equals(name);
+   }
+
+   private void addQueue(final long queueID)
+   {
+      if (isRoutedTo(queueID))
+      {
+         return;
+      }
+
+      if (numberOfQueues == MAX_QUEUES)
+      {
+         numberOfQueues = -1;
+      }
+      else
+      {
+         queueIDs[numberOfQueues++] = queueID;
+      }
+   }
+
+   private static int valueHash(final String name, final String value)
+   {
+      return (31 * name.hashCode() + value.hashCode()) * 31 + 'v';
+   }
+
+   private static int typedHash(final String name)
+   {
+      return name.hashCode() * 31 + 't';
+   }
+
+   private void addHash(final int hash)
+   {
+      for (int i = 0; i < BLOOM_HASHES; i++)
+      {
+         int bit = bit(hash, i);
+         bloom[bit >>> 6] |= 1L << bit;
+      }
+   }
+
+   private boolean containsHash(final int hash)
+   {
+      for (int i = 0; i < BLOOM_HASHES; i++)
+      {
+         int bit = bit(hash, i);
+         if ((bloom[bit >>> 6] & (1L << bit)) == 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static int bit(final int hash, final int i)
+   {
+      // double hashing, the second hash derived from the first one
+      int second = Integer.reverse(hash * 0x85EBCA6B) | 1;
+      return (hash + i * second) & (BLOOM_BITS - 1);
+   }
+}
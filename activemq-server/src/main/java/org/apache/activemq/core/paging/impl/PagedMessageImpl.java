@@ -22,6 +22,7 @@ import org.apache.activemq.api.core.ActiveMQBuffer;
 import org.apache.activemq.api.core.ActiveMQBuffers;
 import org.apache.activemq.core.paging.PagedMessage;
 import org.apache.activemq.core.persistence.StorageManager;
+import org.apache.activemq.core.persistence.impl.CompressedMessageEncoding;
 import org.apache.activemq.core.server.LargeServerMessage;
 import org.apache.activemq.core.server.ServerMessage;
 import org.apache.activemq.core.server.impl.ServerMessageImpl;
@@ -32,6 +33,13 @@ import org.apache.activemq.utils.DataConstants;
  */
 public class PagedMessageImpl implements PagedMessage
 {
+   // the kinds of encoded message, a boolean telling large messages on older page files
+   private static final byte STANDARD_MESSAGE = 0;
+
+   private static final byte LARGE_MESSAGE = 1;
+
+   private static final byte COMPRESSED_MESSAGE = 2;
+
    /**
     * Large messages will need to be instantiated lazily during getMessage when the StorageManager
     * is available
@@ -40,6 +48,11 @@ public class PagedMessageImpl implements PagedMessage
 
    private ServerMessage message;
 
+   /**
+    * The compressed form of the message being paged, if its address compresses the stored messages
+    */
+   private CompressedMessageEncoding compressedMessage;
+
    private long[] queueIDs;
 
    private long transactionID = 0;
@@ -50,6 +63,18 @@ public class PagedMessageImpl implements PagedMessage
       this.transactionID = transactionID;
    }
 
+   public PagedMessageImpl(final ServerMessage message,
+                           final long[] queueIDs,
+                           final long transactionID,
+                           final boolean compress)
+   {
+      this(message, queueIDs, transactionID);
+      if (compress)
+      {
+         this.compressedMessage = CompressedMessageEncoding.compress(message);
+      }
+   }
+
    public PagedMessageImpl(final ServerMessage message, final long[] queueIDs)
    {
       this.queueIDs = queueIDs;
@@ -95,9 +120,9 @@ public class PagedMessageImpl implements PagedMessage
    {
       transactionID = buffer.readLong();
 
-      boolean isLargeMessage = buffer.readBoolean();
+      byte kind = buffer.readByte();
 
-      if (isLargeMessage)
+      if (kind == LARGE_MESSAGE)
       {
          int largeMessageHeaderSize = buffer.readInt();
 
@@ -105,6 +130,16 @@ public class PagedMessageImpl implements PagedMessage
 
          buffer.readBytes(largeMessageLazyData);
       }
+      else if (kind == COMPRESSED_MESSAGE)
+      {
+         buffer.readInt();
+
+         CompressedMessageEncoding encoding = new CompressedMessageEncoding();
+
+         encoding.decode(buffer);
+
+         message = encoding.getMessage();
+      }
       else
       {
          buffer.readInt(); // This value is only used on LargeMessages for now
@@ -128,11 +163,22 @@ public class PagedMessageImpl implements PagedMessage
    {
       buffer.writeLong(transactionID);
 
-      buffer.writeBoolean(message instanceof LargeServerMessage);
+      if (compressedMessage != null)
+      {
+         buffer.writeByte(COMPRESSED_MESSAGE);
+
+         buffer.writeInt(compressedMessage.getEncodeSize());
 
-      buffer.writeInt(message.getEncodeSize());
+         compressedMessage.encode(buffer);
+      }
+      else
+      {
+         buffer.writeByte(message instanceof LargeServerMessage ? LARGE_MESSAGE : STANDARD_MESSAGE);
 
-      message.encode(buffer);
+         buffer.writeInt(message.getEncodeSize());
+
+         message.encode(buffer);
+      }
 
       buffer.writeInt(queueIDs.length);
 
@@ -144,7 +190,9 @@ public class PagedMessageImpl implements PagedMessage
 
    public int getEncodeSize()
    {
-      return DataConstants.SIZE_LONG + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT + message.getEncodeSize() +
+      int messageSize = compressedMessage != null ? compressedMessage.getEncodeSize() : message.getEncodeSize();
+
+      return DataConstants.SIZE_LONG + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT + messageSize +
          DataConstants.SIZE_INT + queueIDs.length * DataConstants.SIZE_LONG;
    }
 
@@ -106,6 +106,7 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
                                  address,
                                  settings,
                                  executorFactory.getExecutor(),
+                                 executorFactory.getExecutor(),
                                  syncNonTransactional);
    }
 
@@ -199,6 +200,7 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
                                                     address,
                                                     settings,
                                                     executorFactory.getExecutor(),
+                                                    executorFactory.getExecutor(),
                                                     syncNonTransactional);
 
             storesReturn.add(store);
@@ -210,6 +212,16 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    private SequentialFileFactory newFileFactory(final String directoryName)
    {
-      return new NIOSequentialFileFactory(directory + File.separatorChar + directoryName, false, critialErrorListener);
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(directory + File.separatorChar + directoryName,
+                                                                      false,
+                                                                      critialErrorListener);
+
+      if (storageManager != null)
+      {
+         // the page files share the buffers of the journal
+         factory.setBufferPool(storageManager.getBufferPool());
+      }
+
+      return factory;
    }
 }
@@ -91,6 +91,8 @@ public class PagingStoreImpl implements PagingStore
 
    private volatile AddressFullMessagePolicy addressFullMessagePolicy;
 
+   private volatile boolean compressStoredMessages;
+
    private boolean printedDropMessagesWarning;
 
    private final PagingManager pagingManager;
@@ -133,6 +135,36 @@ public class PagingStoreImpl implements PagingStore
                           final AddressSettings addressSettings,
                           final Executor executor,
                           final boolean syncNonTransactional)
+   {
+      this(address,
+           scheduledExecutor,
+           syncTimeout,
+           pagingManager,
+           storageManager,
+           fileFactory,
+           storeFactory,
+           storeName,
+           addressSettings,
+           executor,
+           null,
+           syncNonTransactional);
+   }
+
+   /**
+    * @param readAheadExecutor reads the pages ahead of the cursors, null to read them only as the cursors get there
+    */
+   public PagingStoreImpl(final SimpleString address,
+                          final ScheduledExecutorService scheduledExecutor,
+                          final long syncTimeout,
+                          final PagingManager pagingManager,
+                          final StorageManager storageManager,
+                          final SequentialFileFactory fileFactory,
+                          final PagingStoreFactory storeFactory,
+                          final SimpleString storeName,
+                          final AddressSettings addressSettings,
+                          final Executor executor,
+                          final Executor readAheadExecutor,
+                          final boolean syncNonTransactional)
    {
       if (pagingManager == null)
       {
@@ -179,8 +211,12 @@ public class PagingStoreImpl implements PagingStore
       this.cursorProvider = new PageCursorProviderImpl(this,
          this.storageManager,
          executor,
+         readAheadExecutor,
          addressSettings.getPageCacheMaxSize());
 
+      this.cursorProvider.setCacheMaxBytes(addressSettings.getPageCacheMaxBytes());
+
+      this.cursorProvider.setReadAheadPages(addressSettings.getPageReadAhead());
    }
 
    /**
@@ -194,9 +230,13 @@ public class PagingStoreImpl implements PagingStore
 
       addressFullMessagePolicy = addressSettings.getAddressFullMessagePolicy();
 
+      compressStoredMessages = addressSettings.isCompressStoredMessages();
+
       if (cursorProvider != null)
       {
          cursorProvider.setCacheMaxSize(addressSettings.getPageCacheMaxSize());
+         cursorProvider.setCacheMaxBytes(addressSettings.getPageCacheMaxBytes());
+         cursorProvider.setReadAheadPages(addressSettings.getPageReadAhead());
       }
    }
 
@@ -264,6 +304,11 @@ public class PagingStoreImpl implements PagingStore
       return pageSize;
    }
 
+   public boolean isCompressStoredMessages()
+   {
+      return compressStoredMessages;
+   }
+
    public String getFolder()
    {
       SequentialFileFactory factoryUsed = this.fileFactory;
@@ -900,7 +945,8 @@ public class PagingStoreImpl implements PagingStore
             }
 
             final long transactionID = tx == null ? -1 : tx.getID();
-            PagedMessage pagedMessage = new PagedMessageImpl(message, routeQueues(tx, listCtx), transactionID);
+            PagedMessage pagedMessage = new PagedMessageImpl(message, routeQueues(tx, listCtx), transactionID,
+                                                             compressStoredMessages);
 
             if (message.isLargeMessage())
             {
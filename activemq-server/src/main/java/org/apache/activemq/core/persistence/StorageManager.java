@@ -25,9 +25,11 @@ import java.util.concurrent.Executor;
 
 import org.apache.activemq.api.core.Pair;
 import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.core.journal.ByteBufferPool;
 import org.apache.activemq.core.journal.IOAsyncTask;
 import org.apache.activemq.core.journal.Journal;
 import org.apache.activemq.core.journal.JournalLoadInformation;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.journal.SequentialFile;
 import org.apache.activemq.core.message.impl.MessageInternal;
 import org.apache.activemq.core.paging.PageTransactionInfo;
@@ -168,8 +170,19 @@ public interface StorageManager extends IDGenerator, ActiveMQComponent
 
    void storeReference(long queueID, long messageID, boolean last) throws Exception;
 
+   /**
+    * Stores the references of a message to all the given queues as a single record.
+    */
+   void storeReferences(long[] queueIDs, long messageID, boolean last) throws Exception;
+
    void deleteMessage(long messageID) throws Exception;
 
+   /**
+    * Deletes a message as its last durable reference is acknowledged, in place of the acknowledgement
+    * and the delete that would follow it. Synced as {@link #storeAcknowledge(long, long)}.
+    */
+   void deleteMessageOnAcknowledge(long messageID) throws Exception;
+
    void storeAcknowledge(long queueID, long messageID) throws Exception;
 
    void storeCursorAcknowledge(long queueID, PagePosition position) throws Exception;
@@ -186,8 +199,15 @@ public interface StorageManager extends IDGenerator, ActiveMQComponent
 
    void storeReferenceTransactional(long txID, long queueID, long messageID) throws Exception;
 
+   void storeReferencesTransactional(long txID, long[] queueIDs, long messageID) throws Exception;
+
    void storeAcknowledgeTransactional(long txID, long queueID, long messageID) throws Exception;
 
+   /**
+    * Deletes a message as part of the transaction acknowledging its last durable reference.
+    */
+   void deleteMessageTransactional(long txID, long messageID) throws Exception;
+
    void storeCursorAcknowledgeTransactional(long txID, long queueID, PagePosition position) throws Exception;
 
    void deleteCursorAcknowledgeTransactional(long txID, long ackID) throws Exception;
@@ -341,6 +361,16 @@ public interface StorageManager extends IDGenerator, ActiveMQComponent
     */
    Journal getMessageJournal();
 
+   /**
+    * @return the latencies measured on the message journal, or null when there is no journal
+    */
+   JournalStatistics getJournalStatistics();
+
+   /**
+    * @return the pool of direct buffers of the NIO files, or null when it is disabled
+    */
+   ByteBufferPool getBufferPool();
+
    /**
     * @see org.apache.activemq.core.persistence.impl.journal.JournalStorageManager#startReplication(org.apache.activemq.core.replication.ReplicationManager, org.apache.activemq.core.paging.PagingManager, String, boolean)
     */
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.persistence.impl;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.core.journal.EncodingSupport;
+import org.apache.activemq.core.server.ServerMessage;
+import org.apache.activemq.core.server.impl.ServerMessageImpl;
+import org.apache.activemq.utils.DataConstants;
+import org.apache.activemq.utils.LZ4Util;
+
+/**
+ * The encoding of a message compressed with {@link LZ4Util}, as it is stored on the journal and on
+ * the page files of the addresses configured with compress-stored-messages.
+ * <p/>
+ * The message is compressed once when the encoding is created, so its size is known before it is
+ * written and the journal or the replication can encode it several times.
+ */
+public final class CompressedMessageEncoding implements EncodingSupport
+{
+   /**
+    * Messages encoded in fewer bytes are stored as they are
+    */
+   public static final int MIN_COMPRESSION_SIZE = 256;
+
+   private ServerMessage message;
+
+   private int uncompressedSize;
+
+   private byte[] compressed;
+
+   private int compressedSize;
+
+   /**
+    * @return the compressed encoding of the message, or null if the message is too small or
+    * doesn't compress
+    */
+   public static CompressedMessageEncoding compress(final ServerMessage message)
+   {
+      int size = message.getEncodeSize();
+
+      if (size < MIN_COMPRESSION_SIZE || message.isLargeMessage())
+      {
+         return null;
+      }
+
+      byte[] encoded = new byte[size];
+
+      ActiveMQBuffer buffer = ActiveMQBuffers.wrappedBuffer(encoded);
+
+      buffer.writerIndex(0);
+
+      message.encode(buffer);
+
+      byte[] compressed = new byte[LZ4Util.maxCompressedLength(size)];
+
+      int compressedSize = LZ4Util.compress(encoded, 0, size, compressed, 0);
+
+      if (compressedSize + 2 * DataConstants.SIZE_INT >= size)
+      {
+         return null;
+      }
+
+      CompressedMessageEncoding encoding = new CompressedMessageEncoding();
+
+      encoding.message = message;
+      encoding.uncompressedSize = size;
+      encoding.compressed = compressed;
+      encoding.compressedSize = compressedSize;
+
+      return encoding;
+   }
+
+   /**
+    * Used to decode a message
+    */
+   public CompressedMessageEncoding()
+   {
+   }
+
+   public ServerMessage getMessage()
+   {
+      return message;
+   }
+
+   public void decode(final ActiveMQBuffer buffer)
+   {
+      uncompressedSize = buffer.readInt();
+
+      compressedSize = buffer.readInt();
+
+      compressed = new byte[compressedSize];
+
+      buffer.readBytes(compressed);
+
+      byte[] encoded = new byte[uncompressedSize];
+
+      LZ4Util.decompress(compressed, 0, compressedSize, encoded, 0, uncompressedSize);
+
+      // the compressed bytes aren't needed once the message is decoded
+      compressed = null;
+
+      message = new ServerMessageImpl(-1, 50);
+
+      message.decode(ActiveMQBuffers.wrappedBuffer(encoded));
+   }
+
+   public void encode(final ActiveMQBuffer buffer)
+   {
+      buffer.writeInt(uncompressedSize);
+
+      buffer.writeInt(compressedSize);
+
+      buffer.writeBytes(compressed, 0, compressedSize);
+   }
+
+   public int getEncodeSize()
+   {
+      return DataConstants.SIZE_INT + DataConstants.SIZE_INT + compressedSize;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "CompressedMessageEncoding [uncompressedSize=" + uncompressedSize +
+         ", compressedSize=" +
+         compressedSize +
+         ", message=" +
+         message +
+         "]";
+   }
+}
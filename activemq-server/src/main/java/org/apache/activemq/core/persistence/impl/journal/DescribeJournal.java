@@ -38,6 +38,7 @@ import org.apache.activemq.core.journal.impl.JournalReaderCallback;
 import org.apache.activemq.core.journal.impl.NIOSequentialFileFactory;
 import org.apache.activemq.core.paging.cursor.impl.PageSubscriptionCounterImpl;
 import org.apache.activemq.core.paging.impl.PageTransactionInfoImpl;
+import org.apache.activemq.core.persistence.impl.CompressedMessageEncoding;
 import org.apache.activemq.core.persistence.impl.journal.BatchingIDGenerator.IDCounterEncoding;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
@@ -45,6 +46,7 @@ import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.D
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.DuplicateIDEncoding;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.HeuristicCompletionEncoding;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.LargeMessageEncoding;
+import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.MultiRefEncoding;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.PageCountPendingImpl;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.PageCountRecord;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.PageCountRecordInc;
@@ -61,9 +63,11 @@ import org.apache.activemq.utils.XidCodecSupport;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_CURSOR;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_REF;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ADDRESS_SETTING_RECORD;
+import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ADD_COMPRESSED_MESSAGE;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE_PENDING;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ADD_MESSAGE;
+import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ADD_MULTI_REF;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.ADD_REF;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.DUPLICATE_ID;
 import static org.apache.activemq.core.persistence.impl.journal.JournalRecordIds.HEURISTIC_COMPLETION;
@@ -94,7 +98,20 @@ public final class DescribeJournal
       describeJournal(bindingsFF, bindings, bindingsDir);
    }
 
-   public static void describeMessagesJournal(final String messagesDir) throws Exception
+   /**
+    * @param stripeDirectories the directories of the other stripes, when the message journal is striped
+    */
+   public static void describeMessagesJournal(final String messagesDir, final String... stripeDirectories) throws Exception
+   {
+      describeMessagesStripe(messagesDir);
+
+      for (String stripeDirectory : stripeDirectories)
+      {
+         describeMessagesStripe(stripeDirectory);
+      }
+   }
+
+   private static void describeMessagesStripe(final String messagesDir) throws Exception
    {
 
       SequentialFileFactory messagesFF = new NIOSequentialFileFactory(messagesDir, null);
@@ -287,7 +304,8 @@ public final class DescribeJournal
          long queueIDForCounter = 0;
 
          Object o = newObjectEncoding(info);
-         if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE)
+         if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE ||
+            info.getUserRecordType() == JournalRecordIds.ADD_COMPRESSED_MESSAGE)
          {
             messageCount++;
          }
@@ -305,6 +323,15 @@ public final class DescribeJournal
                messageRefCounts.put(ref.refEncoding.queueID, count + 1);
             }
          }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_MULTI_REF)
+         {
+            MultiReferenceDescribe ref = (MultiReferenceDescribe)o;
+            for (long queueID : ref.refEncoding.queueIDs)
+            {
+               Integer count = messageRefCounts.get(queueID);
+               messageRefCounts.put(queueID, count == null ? 1 : count + 1);
+            }
+         }
          else if (info.getUserRecordType() == JournalRecordIds.ACKNOWLEDGE_REF)
          {
             AckDescribe ref = (AckDescribe)o;
@@ -506,6 +533,14 @@ public final class DescribeJournal
 
             return new MessageDescribe(message);
          }
+         case ADD_COMPRESSED_MESSAGE:
+         {
+            CompressedMessageEncoding encoding = new CompressedMessageEncoding();
+
+            encoding.decode(buffer);
+
+            return new MessageDescribe(encoding.getMessage());
+         }
          case ADD_REF:
          {
             final RefEncoding encoding = new RefEncoding();
@@ -513,6 +548,13 @@ public final class DescribeJournal
             return new ReferenceDescribe(encoding);
          }
 
+         case ADD_MULTI_REF:
+         {
+            final MultiRefEncoding encoding = new MultiRefEncoding();
+            encoding.decode(buffer);
+            return new MultiReferenceDescribe(encoding);
+         }
+
          case ACKNOWLEDGE_REF:
          {
             final RefEncoding encoding = new RefEncoding();
@@ -726,4 +768,20 @@ public final class DescribeJournal
       }
    }
 
+   public static final class MultiReferenceDescribe
+   {
+      public MultiRefEncoding refEncoding;
+
+      public MultiReferenceDescribe(MultiRefEncoding refEncoding)
+      {
+         this.refEncoding = refEncoding;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "AddRefs;" + refEncoding;
+      }
+   }
+
 }
@@ -56,8 +56,21 @@ public final class JournalRecordIds
 
    public static final byte ADD_MESSAGE = 31;
 
+   /**
+    * A message stored compressed, for the addresses with compress-stored-messages.
+    * @see org.apache.activemq.core.persistence.impl.CompressedMessageEncoding
+    */
+   public static final byte ADD_COMPRESSED_MESSAGE = 44;
+
    public static final byte ADD_REF = 32;
 
+   /**
+    * The references of a message to several queues in a single record, used when a durable message is
+    * routed to more than one durable queue of an address.
+    * @see JournalStorageManager.MultiRefEncoding
+    */
+   public static final byte ADD_MULTI_REF = 45;
+
    public static final byte ACKNOWLEDGE_REF = 33;
 
    public static final byte UPDATE_DELIVERY_COUNT = 34;
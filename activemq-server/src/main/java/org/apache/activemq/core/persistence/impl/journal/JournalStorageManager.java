@@ -26,6 +26,7 @@ import java.security.InvalidParameterException;
 import java.security.MessageDigest;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -55,11 +56,13 @@ import org.apache.activemq.api.core.Pair;
 import org.apache.activemq.api.core.SimpleString;
 import org.apache.activemq.core.config.Configuration;
 import org.apache.activemq.core.filter.Filter;
+import org.apache.activemq.core.journal.ByteBufferPool;
 import org.apache.activemq.core.journal.EncodingSupport;
 import org.apache.activemq.core.journal.IOAsyncTask;
 import org.apache.activemq.core.journal.IOCriticalErrorListener;
 import org.apache.activemq.core.journal.Journal;
 import org.apache.activemq.core.journal.JournalLoadInformation;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.journal.PreparedTransactionInfo;
 import org.apache.activemq.core.journal.RecordInfo;
 import org.apache.activemq.core.journal.SequentialFile;
@@ -68,7 +71,10 @@ import org.apache.activemq.core.journal.TransactionFailureCallback;
 import org.apache.activemq.core.journal.impl.AIOSequentialFileFactory;
 import org.apache.activemq.core.journal.impl.JournalFile;
 import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.core.journal.impl.MappedSequentialFileFactory;
 import org.apache.activemq.core.journal.impl.NIOSequentialFileFactory;
+import org.apache.activemq.core.journal.impl.StripedJournal;
+import org.apache.activemq.core.journal.impl.UringSequentialFileFactory;
 import org.apache.activemq.core.message.impl.MessageInternal;
 import org.apache.activemq.core.paging.PageTransactionInfo;
 import org.apache.activemq.core.paging.PagedMessage;
@@ -85,6 +91,7 @@ import org.apache.activemq.core.persistence.QueueBindingInfo;
 import org.apache.activemq.core.persistence.StorageManager;
 import org.apache.activemq.core.persistence.config.PersistedAddressSetting;
 import org.apache.activemq.core.persistence.config.PersistedRoles;
+import org.apache.activemq.core.persistence.impl.CompressedMessageEncoding;
 import org.apache.activemq.core.persistence.impl.PageCountPending;
 import org.apache.activemq.core.postoffice.Binding;
 import org.apache.activemq.core.postoffice.DuplicateIDCache;
@@ -174,6 +181,9 @@ public class JournalStorageManager implements StorageManager
 
    private final SequentialFileFactory journalFF;
 
+   // shared by the message journal, its stripes and their file factories
+   private final JournalStatistics journalStatistics = new JournalStatistics();
+
    private Journal messageJournal;
 
    private Journal bindingsJournal;
@@ -184,6 +194,9 @@ public class JournalStorageManager implements StorageManager
 
    private final SequentialFileFactory largeMessagesFactory;
 
+   // the direct buffers of the NIO files: bindings, journal, pages and large messages. null when disabled
+   private final ByteBufferPool bufferPool;
+
    private volatile boolean started;
 
    /**
@@ -201,6 +214,8 @@ public class JournalStorageManager implements StorageManager
 
    private final int perfBlastPages;
 
+   private final int loadParallelism;
+
    private final boolean createBindingsDir;
 
    private final String bindingsDir;
@@ -209,6 +224,8 @@ public class JournalStorageManager implements StorageManager
 
    private final String journalDir;
 
+   private final List<String> stripeDirectories;
+
    private final String largeMessagesDirectory;
 
    private boolean journalLoaded = false;
@@ -234,7 +251,8 @@ public class JournalStorageManager implements StorageManager
 
       executor = executorFactory.getExecutor();
 
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO &&
+         config.getJournalType() != JournalType.MAPPED && config.getJournalType() != JournalType.IO_URING)
       {
          throw ActiveMQMessageBundle.BUNDLE.invalidJournal();
       }
@@ -249,7 +267,11 @@ public class JournalStorageManager implements StorageManager
 
       journalDir = config.getJournalDirectory();
 
-      SequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
+      bufferPool = config.getIOBufferPoolSize() > 0 ? new ByteBufferPool(config.getIOBufferPoolSize()) : null;
+
+      NIOSequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
+
+      bindingsFF.setBufferPool(bufferPool);
 
       Journal localBindings = new JournalImpl(1024 * 1024,
                                               2,
@@ -277,46 +299,66 @@ public class JournalStorageManager implements StorageManager
       if (config.getJournalType() == JournalType.ASYNCIO)
       {
          ActiveMQServerLogger.LOGGER.journalUseAIO();
-
-         journalFF = new AIOSequentialFileFactory(journalDir,
-                                                  config.getJournalBufferSize_AIO(),
-                                                  config.getJournalBufferTimeout_AIO(),
-                                                  config.isLogJournalWriteRate(),
-                                                  criticalErrorListener);
       }
       else if (config.getJournalType() == JournalType.NIO)
       {
          ActiveMQServerLogger.LOGGER.journalUseNIO();
-         journalFF = new NIOSequentialFileFactory(journalDir,
-                                                  true,
-                                                  config.getJournalBufferSize_NIO(),
-                                                  config.getJournalBufferTimeout_NIO(),
-                                                  config.isLogJournalWriteRate(),
-                                                  criticalErrorListener);
+      }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         ActiveMQServerLogger.LOGGER.journalUseMAPPED();
       }
       else
       {
-         throw ActiveMQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
+         ActiveMQServerLogger.LOGGER.journalUseIO_URING();
       }
 
+      journalFF = newJournalFileFactory(config, journalDir, criticalErrorListener, journalStatistics, bufferPool);
+
       idGenerator = new BatchingIDGenerator(0, JournalStorageManager.CHECKPOINT_BATCH_SIZE, this);
 
-      Journal localMessage = new JournalImpl(config.getJournalFileSize(),
-                                             config.getJournalMinFiles(),
-                                             config.getJournalCompactMinFiles(),
-                                             config.getJournalCompactPercentage(),
-                                             journalFF,
-                                             "activemq-data",
-                                             "amq",
-                                             config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
-                                                : config.getJournalMaxIO_NIO());
+      loadParallelism = config.getJournalLoadParallelism();
+
+      JournalImpl localMessage = newMessageJournal(config, journalFF);
+
+      stripeDirectories = config.getJournalStripeDirectories() == null ? new ArrayList<String>()
+         : new ArrayList<String>(config.getJournalStripeDirectories());
+
+      if (stripeDirectories.isEmpty())
+      {
+         messageJournal = localMessage;
+      }
+      else
+      {
+         // The journal directory holds the first stripe
+         Journal[] stripes = new Journal[stripeDirectories.size() + 1];
+
+         stripes[0] = localMessage;
+
+         for (int i = 0; i < stripeDirectories.size(); i++)
+         {
+            stripes[i + 1] = newMessageJournal(config,
+                                               newJournalFileFactory(config,
+                                                                     stripeDirectories.get(i),
+                                                                     criticalErrorListener,
+                                                                     journalStatistics,
+                                                                     bufferPool));
+         }
+
+         messageJournal = new StripedJournal(stripes);
+      }
 
-      messageJournal = localMessage;
-      originalMessageJournal = localMessage;
+      originalMessageJournal = messageJournal;
 
       largeMessagesDirectory = config.getLargeMessagesDirectory();
 
-      largeMessagesFactory = new NIOSequentialFileFactory(largeMessagesDirectory, false, criticalErrorListener);
+      NIOSequentialFileFactory largeMessagesNIOFactory = new NIOSequentialFileFactory(largeMessagesDirectory,
+                                                                                     false,
+                                                                                     criticalErrorListener);
+
+      largeMessagesNIOFactory.setBufferPool(bufferPool);
+
+      largeMessagesFactory = largeMessagesNIOFactory;
 
       perfBlastPages = config.getJournalPerfBlastPages();
 
@@ -795,7 +837,28 @@ public class JournalStorageManager implements StorageManager
       {
          file.position(file.size());
 
-         file.writeDirect(ByteBuffer.wrap(bytes), false);
+         if (bufferPool == null)
+         {
+            file.writeDirect(ByteBuffer.wrap(bytes), false);
+         }
+         else
+         {
+            // NIO would copy a heap buffer into a temporary direct buffer on every write
+            ByteBuffer buffer = bufferPool.borrow(bytes.length);
+
+            try
+            {
+               buffer.put(bytes);
+
+               buffer.flip();
+
+               file.writeDirect(buffer, false);
+            }
+            finally
+            {
+               bufferPool.release(buffer);
+            }
+         }
 
          if (isReplicated())
          {
@@ -916,8 +979,18 @@ public class JournalStorageManager implements StorageManager
          }
          else
          {
-            messageJournal.appendAddRecord(message.getMessageID(), JournalRecordIds.ADD_MESSAGE, message, false,
-                                           getContext(false));
+            CompressedMessageEncoding compressed = compressMessage(message);
+
+            if (compressed != null)
+            {
+               messageJournal.appendAddRecord(message.getMessageID(), JournalRecordIds.ADD_COMPRESSED_MESSAGE,
+                                              compressed, false, getContext(false));
+            }
+            else
+            {
+               messageJournal.appendAddRecord(message.getMessageID(), JournalRecordIds.ADD_MESSAGE, message, false,
+                                              getContext(false));
+            }
          }
       }
       finally
@@ -940,6 +1013,20 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public void storeReferences(final long[] queueIDs, final long messageID, final boolean last) throws Exception
+   {
+      readLock();
+      try
+      {
+         messageJournal.appendUpdateRecord(messageID, JournalRecordIds.ADD_MULTI_REF, new MultiRefEncoding(queueIDs),
+                                           last && syncNonTransactional, getContext(last && syncNonTransactional));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    @Override
    public void readLock()
    {
@@ -1002,6 +1089,20 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public void deleteMessageOnAcknowledge(final long messageID) throws Exception
+   {
+      readLock();
+      try
+      {
+         // this takes the place of the ack, so it is synced as the ack would be
+         messageJournal.appendDeleteRecord(messageID, syncNonTransactional, getContext(syncNonTransactional));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    public void updateScheduledDeliveryTime(final MessageReference ref) throws Exception
    {
       ScheduledDeliveryEncoding encoding = new ScheduledDeliveryEncoding(ref.getScheduledDeliveryTime(), ref.getQueue()
@@ -1073,9 +1174,20 @@ public class JournalStorageManager implements StorageManager
          }
          else
          {
-            messageJournal.appendAddRecordTransactional(txID, message.getMessageID(),
-                                                        JournalRecordIds.ADD_MESSAGE,
-                                                        message);
+            CompressedMessageEncoding compressed = compressMessage(message);
+
+            if (compressed != null)
+            {
+               messageJournal.appendAddRecordTransactional(txID, message.getMessageID(),
+                                                           JournalRecordIds.ADD_COMPRESSED_MESSAGE,
+                                                           compressed);
+            }
+            else
+            {
+               messageJournal.appendAddRecordTransactional(txID, message.getMessageID(),
+                                                           JournalRecordIds.ADD_MESSAGE,
+                                                           message);
+            }
          }
 
       }
@@ -1146,6 +1258,33 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public void storeReferencesTransactional(final long txID, final long[] queueIDs, final long messageID) throws Exception
+   {
+      readLock();
+      try
+      {
+         messageJournal.appendUpdateRecordTransactional(txID, messageID, JournalRecordIds.ADD_MULTI_REF,
+                                                        new MultiRefEncoding(queueIDs));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
+   public void deleteMessageTransactional(final long txID, final long messageID) throws Exception
+   {
+      readLock();
+      try
+      {
+         messageJournal.appendDeleteRecordTransactional(txID, messageID);
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    public void storeAcknowledgeTransactional(final long txID, final long queueID, final long messageID) throws Exception
    {
       readLock();
@@ -1565,338 +1704,337 @@ public class JournalStorageManager implements StorageManager
 
          final int totalSize = records.size();
 
-         for (int reccount = 0; reccount < totalSize; reccount++)
-         {
-            // It will show log.info only with large journals (more than 1 million records)
-            if (reccount > 0 && reccount % 1000000 == 0)
-            {
-               long percent = (long) ((((double) reccount) / ((double) totalSize)) * 100f);
-
-               ActiveMQServerLogger.LOGGER.percentLoaded(percent);
-            }
-
-            RecordInfo record = records.get(reccount);
-            byte[] data = record.data;
-
-            ActiveMQBuffer buff = ActiveMQBuffers.wrappedBuffer(data);
+         // messages, references and acks are decoded ahead on a pool, but they are still applied here in order
+         final LoadRecordDecoder decoder = loadParallelism > 1 && totalSize > 0
+            ? new LoadRecordDecoder(records, loadParallelism, new ActiveMQThreadFactory("ActiveMQ-Load-Decoder",
+                                                                                       true,
+                                                                                       getThisClassLoader()))
+            : null;
 
-            byte recordType = record.getUserRecordType();
-
-            switch (recordType)
+         try
+         {
+            for (int reccount = 0; reccount < totalSize; reccount++)
             {
-               case JournalRecordIds.ADD_LARGE_MESSAGE_PENDING:
+               // It will show log.info only with large journals (more than 1 million records)
+               if (reccount > 0 && reccount % 1000000 == 0)
                {
-                  PendingLargeMessageEncoding pending = new PendingLargeMessageEncoding();
-
-                  pending.decode(buff);
+                  long percent = (long) ((((double) reccount) / ((double) totalSize)) * 100f);
 
-                  if (pendingLargeMessages != null)
-                  {
-                     // it could be null on tests, and we don't need anything on that case
-                     pendingLargeMessages.add(new Pair<Long, Long>(record.id, pending.largeMessageID));
-                  }
-                  break;
+                  ActiveMQServerLogger.LOGGER.percentLoaded(percent);
                }
-               case JournalRecordIds.ADD_LARGE_MESSAGE:
-               {
-                  LargeServerMessage largeMessage = parseLargeMessage(messages, buff);
-
-                  messages.put(record.id, largeMessage);
 
-                  largeMessages.add(largeMessage);
+               RecordInfo record = records.get(reccount);
+               byte[] data = record.data;
 
-                  break;
-               }
-               case JournalRecordIds.ADD_MESSAGE:
-               {
-                  ServerMessage message = new ServerMessageImpl(record.id, 50);
+               ActiveMQBuffer buff = ActiveMQBuffers.wrappedBuffer(data);
 
-                  message.decode(buff);
+               byte recordType = record.getUserRecordType();
 
-                  messages.put(record.id, message);
+               Object decodedRecord = decoder != null ? decoder.get(reccount) : LoadRecordDecoder.decode(record);
 
-                  break;
-               }
-               case JournalRecordIds.ADD_REF:
+               switch (recordType)
                {
-                  long messageID = record.id;
-
-                  RefEncoding encoding = new RefEncoding();
-
-                  encoding.decode(buff);
+                  case JournalRecordIds.ADD_LARGE_MESSAGE_PENDING:
+                  {
+                     PendingLargeMessageEncoding pending = new PendingLargeMessageEncoding();
 
-                  Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
+                     pending.decode(buff);
 
-                  if (queueMessages == null)
+                     if (pendingLargeMessages != null)
+                     {
+                        // it could be null on tests, and we don't need anything on that case
+                        pendingLargeMessages.add(new Pair<Long, Long>(record.id, pending.largeMessageID));
+                     }
+                     break;
+                  }
+                  case JournalRecordIds.ADD_LARGE_MESSAGE:
                   {
-                     queueMessages = new LinkedHashMap<Long, AddMessageRecord>();
+                     LargeServerMessage largeMessage = parseLargeMessage(messages, buff);
 
-                     queueMap.put(encoding.queueID, queueMessages);
-                  }
+                     messages.put(record.id, largeMessage);
 
-                  ServerMessage message = messages.get(messageID);
+                     largeMessages.add(largeMessage);
 
-                  if (message == null)
-                  {
-                     ActiveMQServerLogger.LOGGER.cannotFindMessage(record.id);
+                     break;
                   }
-                  else
+                  case JournalRecordIds.ADD_MESSAGE:
+                  case JournalRecordIds.ADD_COMPRESSED_MESSAGE:
                   {
-                     queueMessages.put(messageID, new AddMessageRecord(message));
-                  }
+                     ServerMessage message = (ServerMessage) decodedRecord;
 
-                  break;
-               }
-               case JournalRecordIds.ACKNOWLEDGE_REF:
-               {
-                  long messageID = record.id;
-
-                  RefEncoding encoding = new RefEncoding();
+                     messages.put(record.id, message);
 
-                  encoding.decode(buff);
+                     break;
+                  }
+                  case JournalRecordIds.ADD_REF:
+                  {
+                     RefEncoding encoding = (RefEncoding) decodedRecord;
 
-                  Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
+                     loadReference(queueMap, messages, encoding.queueID, record.id);
 
-                  if (queueMessages == null)
-                  {
-                     ActiveMQServerLogger.LOGGER.journalCannotFindQueue(encoding.queueID, messageID);
+                     break;
                   }
-                  else
+                  case JournalRecordIds.ADD_MULTI_REF:
                   {
-                     AddMessageRecord rec = queueMessages.remove(messageID);
+                     MultiRefEncoding encoding = (MultiRefEncoding) decodedRecord;
 
-                     if (rec == null)
+                     for (long queueID : encoding.queueIDs)
                      {
-                        ActiveMQServerLogger.LOGGER.cannotFindMessage(messageID);
+                        loadReference(queueMap, messages, queueID, record.id);
                      }
+
+                     break;
                   }
+                  case JournalRecordIds.ACKNOWLEDGE_REF:
+                  {
+                     long messageID = record.id;
 
-                  break;
-               }
-               case JournalRecordIds.UPDATE_DELIVERY_COUNT:
-               {
-                  long messageID = record.id;
+                     RefEncoding encoding = (RefEncoding) decodedRecord;
 
-                  DeliveryCountUpdateEncoding encoding = new DeliveryCountUpdateEncoding();
+                     Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
 
-                  encoding.decode(buff);
+                     if (queueMessages == null)
+                     {
+                        ActiveMQServerLogger.LOGGER.journalCannotFindQueue(encoding.queueID, messageID);
+                     }
+                     else
+                     {
+                        AddMessageRecord rec = queueMessages.remove(messageID);
 
-                  Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
+                        if (rec == null)
+                        {
+                           ActiveMQServerLogger.LOGGER.cannotFindMessage(messageID);
+                        }
+                     }
 
-                  if (queueMessages == null)
-                  {
-                     ActiveMQServerLogger.LOGGER.journalCannotFindQueueDelCount(encoding.queueID);
+                     break;
                   }
-                  else
+                  case JournalRecordIds.UPDATE_DELIVERY_COUNT:
                   {
-                     AddMessageRecord rec = queueMessages.get(messageID);
+                     long messageID = record.id;
+
+                     DeliveryCountUpdateEncoding encoding = new DeliveryCountUpdateEncoding();
 
-                     if (rec == null)
+                     encoding.decode(buff);
+
+                     Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
+
+                     if (queueMessages == null)
                      {
-                        ActiveMQServerLogger.LOGGER.journalCannotFindMessageDelCount(messageID);
+                        ActiveMQServerLogger.LOGGER.journalCannotFindQueueDelCount(encoding.queueID);
                      }
                      else
                      {
-                        rec.deliveryCount = encoding.count;
+                        AddMessageRecord rec = queueMessages.get(messageID);
+
+                        if (rec == null)
+                        {
+                           ActiveMQServerLogger.LOGGER.journalCannotFindMessageDelCount(messageID);
+                        }
+                        else
+                        {
+                           rec.deliveryCount = encoding.count;
+                        }
                      }
-                  }
 
-                  break;
-               }
-               case JournalRecordIds.PAGE_TRANSACTION:
-               {
-                  if (record.isUpdate)
-                  {
-                     PageUpdateTXEncoding pageUpdate = new PageUpdateTXEncoding();
-
-                     pageUpdate.decode(buff);
-
-                     PageTransactionInfo pageTX = pagingManager.getTransaction(pageUpdate.pageTX);
-
-                     pageTX.onUpdate(pageUpdate.recods, null, null);
+                     break;
                   }
-                  else
+                  case JournalRecordIds.PAGE_TRANSACTION:
                   {
-                     PageTransactionInfoImpl pageTransactionInfo = new PageTransactionInfoImpl();
+                     if (record.isUpdate)
+                     {
+                        PageUpdateTXEncoding pageUpdate = new PageUpdateTXEncoding();
 
-                     pageTransactionInfo.decode(buff);
+                        pageUpdate.decode(buff);
 
-                     pageTransactionInfo.setRecordID(record.id);
+                        PageTransactionInfo pageTX = pagingManager.getTransaction(pageUpdate.pageTX);
 
-                     pagingManager.addTransaction(pageTransactionInfo);
-                  }
-
-                  break;
-               }
-               case JournalRecordIds.SET_SCHEDULED_DELIVERY_TIME:
-               {
-                  long messageID = record.id;
+                        pageTX.onUpdate(pageUpdate.recods, null, null);
+                     }
+                     else
+                     {
+                        PageTransactionInfoImpl pageTransactionInfo = new PageTransactionInfoImpl();
 
-                  ScheduledDeliveryEncoding encoding = new ScheduledDeliveryEncoding();
+                        pageTransactionInfo.decode(buff);
 
-                  encoding.decode(buff);
+                        pageTransactionInfo.setRecordID(record.id);
 
-                  Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
+                        pagingManager.addTransaction(pageTransactionInfo);
+                     }
 
-                  if (queueMessages == null)
-                  {
-                     ActiveMQServerLogger.LOGGER.journalCannotFindQueueScheduled(encoding.queueID, messageID);
+                     break;
                   }
-                  else
+                  case JournalRecordIds.SET_SCHEDULED_DELIVERY_TIME:
                   {
+                     long messageID = record.id;
+
+                     ScheduledDeliveryEncoding encoding = new ScheduledDeliveryEncoding();
 
-                     AddMessageRecord rec = queueMessages.get(messageID);
+                     encoding.decode(buff);
 
-                     if (rec == null)
+                     Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
+
+                     if (queueMessages == null)
                      {
-                        ActiveMQServerLogger.LOGGER.cannotFindMessage(messageID);
+                        ActiveMQServerLogger.LOGGER.journalCannotFindQueueScheduled(encoding.queueID, messageID);
                      }
                      else
                      {
-                        rec.scheduledDeliveryTime = encoding.scheduledDeliveryTime;
-                     }
-                  }
 
-                  break;
-               }
-               case JournalRecordIds.DUPLICATE_ID:
-               {
-                  DuplicateIDEncoding encoding = new DuplicateIDEncoding();
+                        AddMessageRecord rec = queueMessages.get(messageID);
 
-                  encoding.decode(buff);
-
-                  List<Pair<byte[], Long>> ids = duplicateIDMap.get(encoding.address);
+                        if (rec == null)
+                        {
+                           ActiveMQServerLogger.LOGGER.cannotFindMessage(messageID);
+                        }
+                        else
+                        {
+                           rec.scheduledDeliveryTime = encoding.scheduledDeliveryTime;
+                        }
+                     }
 
-                  if (ids == null)
+                     break;
+                  }
+                  case JournalRecordIds.DUPLICATE_ID:
                   {
-                     ids = new ArrayList<Pair<byte[], Long>>();
+                     DuplicateIDEncoding encoding = new DuplicateIDEncoding();
 
-                     duplicateIDMap.put(encoding.address, ids);
-                  }
+                     encoding.decode(buff);
 
-                  ids.add(new Pair<byte[], Long>(encoding.duplID, record.id));
+                     List<Pair<byte[], Long>> ids = duplicateIDMap.get(encoding.address);
 
-                  break;
-               }
-               case JournalRecordIds.HEURISTIC_COMPLETION:
-               {
-                  HeuristicCompletionEncoding encoding = new HeuristicCompletionEncoding();
-                  encoding.decode(buff);
-                  resourceManager.putHeuristicCompletion(record.id, encoding.xid, encoding.isCommit);
-                  break;
-               }
-               case JournalRecordIds.ACKNOWLEDGE_CURSOR:
-               {
-                  CursorAckRecordEncoding encoding = new CursorAckRecordEncoding();
-                  encoding.decode(buff);
+                     if (ids == null)
+                     {
+                        ids = new ArrayList<Pair<byte[], Long>>();
 
-                  encoding.position.setRecordID(record.id);
+                        duplicateIDMap.put(encoding.address, ids);
+                     }
 
-                  PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+                     ids.add(new Pair<byte[], Long>(encoding.duplID, record.id));
 
-                  if (sub != null)
+                     break;
+                  }
+                  case JournalRecordIds.HEURISTIC_COMPLETION:
                   {
-                     sub.reloadACK(encoding.position);
+                     HeuristicCompletionEncoding encoding = new HeuristicCompletionEncoding();
+                     encoding.decode(buff);
+                     resourceManager.putHeuristicCompletion(record.id, encoding.xid, encoding.isCommit);
+                     break;
                   }
-                  else
+                  case JournalRecordIds.ACKNOWLEDGE_CURSOR:
                   {
-                     ActiveMQServerLogger.LOGGER.journalCannotFindQueueReloading(encoding.queueID);
-                     messageJournal.appendDeleteRecord(record.id, false);
+                     CursorAckRecordEncoding encoding = (CursorAckRecordEncoding) decodedRecord;
 
-                  }
+                     encoding.position.setRecordID(record.id);
 
-                  break;
-               }
-               case JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE:
-               {
-                  PageCountRecord encoding = new PageCountRecord();
+                     PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
 
-                  encoding.decode(buff);
+                     if (sub != null)
+                     {
+                        sub.reloadACK(encoding.position);
+                     }
+                     else
+                     {
+                        ActiveMQServerLogger.LOGGER.journalCannotFindQueueReloading(encoding.queueID);
+                        messageJournal.appendDeleteRecord(record.id, false);
 
-                  PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+                     }
 
-                  if (sub != null)
-                  {
-                     sub.getCounter().loadValue(record.id, encoding.value);
+                     break;
                   }
-                  else
+                  case JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE:
                   {
-                     ActiveMQServerLogger.LOGGER.journalCannotFindQueueReloadingPage(encoding.queueID);
-                     messageJournal.appendDeleteRecord(record.id, false);
-                  }
-
-                  break;
-               }
+                     PageCountRecord encoding = (PageCountRecord) decodedRecord;
 
-               case JournalRecordIds.PAGE_CURSOR_COUNTER_INC:
-               {
-                  PageCountRecordInc encoding = new PageCountRecordInc();
-
-                  encoding.decode(buff);
+                     PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
 
-                  PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+                     if (sub != null)
+                     {
+                        sub.getCounter().loadValue(record.id, encoding.value);
+                     }
+                     else
+                     {
+                        ActiveMQServerLogger.LOGGER.journalCannotFindQueueReloadingPage(encoding.queueID);
+                        messageJournal.appendDeleteRecord(record.id, false);
+                     }
 
-                  if (sub != null)
-                  {
-                     sub.getCounter().loadInc(record.id, encoding.value);
+                     break;
                   }
-                  else
+
+                  case JournalRecordIds.PAGE_CURSOR_COUNTER_INC:
                   {
-                     ActiveMQServerLogger.LOGGER.journalCannotFindQueueReloadingPageCursor(encoding.queueID);
-                     messageJournal.appendDeleteRecord(record.id, false);
+                     PageCountRecordInc encoding = (PageCountRecordInc) decodedRecord;
+
+                     PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+
+                     if (sub != null)
+                     {
+                        sub.getCounter().loadInc(record.id, encoding.value);
+                     }
+                     else
+                     {
+                        ActiveMQServerLogger.LOGGER.journalCannotFindQueueReloadingPageCursor(encoding.queueID);
+                        messageJournal.appendDeleteRecord(record.id, false);
+                     }
+
+                     break;
                   }
 
-                  break;
-               }
+                  case JournalRecordIds.PAGE_CURSOR_COMPLETE:
+                  {
+                     CursorAckRecordEncoding encoding = (CursorAckRecordEncoding) decodedRecord;
 
-               case JournalRecordIds.PAGE_CURSOR_COMPLETE:
-               {
-                  CursorAckRecordEncoding encoding = new CursorAckRecordEncoding();
-                  encoding.decode(buff);
+                     encoding.position.setRecordID(record.id);
 
-                  encoding.position.setRecordID(record.id);
+                     PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
 
-                  PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+                     if (sub != null)
+                     {
+                        sub.reloadPageCompletion(encoding.position);
+                     }
+                     else
+                     {
+                        ActiveMQServerLogger.LOGGER.cantFindQueueOnPageComplete(encoding.queueID);
+                        messageJournal.appendDeleteRecord(record.id, false);
+                     }
 
-                  if (sub != null)
-                  {
-                     sub.reloadPageCompletion(encoding.position);
+                     break;
                   }
-                  else
+
+                  case JournalRecordIds.PAGE_CURSOR_PENDING_COUNTER:
                   {
-                     ActiveMQServerLogger.LOGGER.cantFindQueueOnPageComplete(encoding.queueID);
-                     messageJournal.appendDeleteRecord(record.id, false);
-                  }
 
-                  break;
-               }
+                     PageCountPendingImpl pendingCountEncoding = new PageCountPendingImpl();
+                     pendingCountEncoding.decode(buff);
+                     pendingCountEncoding.setID(record.id);
 
-               case JournalRecordIds.PAGE_CURSOR_PENDING_COUNTER:
-               {
+                     // This can be null on testcases not interested on this outcome
+                     if (pendingNonTXPageCounter != null)
+                     {
+                        pendingNonTXPageCounter.add(pendingCountEncoding);
+                     }
+                     break;
+                  }
 
-                  PageCountPendingImpl pendingCountEncoding = new PageCountPendingImpl();
-                  pendingCountEncoding.decode(buff);
-                  pendingCountEncoding.setID(record.id);
 
-                  // This can be null on testcases not interested on this outcome
-                  if (pendingNonTXPageCounter != null)
+                  default:
                   {
-                     pendingNonTXPageCounter.add(pendingCountEncoding);
+                     throw new IllegalStateException("Invalid record type " + recordType);
                   }
-                  break;
                }
 
-
-               default:
-               {
-                  throw new IllegalStateException("Invalid record type " + recordType);
-               }
+               // This will free up memory sooner. The record is not needed any more
+               // and its byte array would consume memory during the load process even though it's not necessary any longer
+               // what would delay processing time during load
+               records.set(reccount, null);
+            }
+         }
+         finally
+         {
+            if (decoder != null)
+            {
+               decoder.stop();
             }
-
-            // This will free up memory sooner. The record is not needed any more
-            // and its byte array would consume memory during the load process even though it's not necessary any longer
-            // what would delay processing time during load
-            records.set(reccount, null);
          }
 
          // Release the memory as soon as not needed any longer
@@ -2245,6 +2383,11 @@ public class JournalStorageManager implements StorageManager
 
       checkAndCreateDir(journalDir, createJournalDir);
 
+      for (String stripeDirectory : stripeDirectories)
+      {
+         checkAndCreateDir(stripeDirectory, createJournalDir);
+      }
+
       checkAndCreateDir(largeMessagesDirectory, createJournalDir);
 
       cleanupIncompleteFiles();
@@ -2378,13 +2521,25 @@ public class JournalStorageManager implements StorageManager
    @Override
    public ByteBuffer allocateDirectBuffer(int size)
    {
+      if (bufferPool != null)
+      {
+         return bufferPool.borrow(size);
+      }
+
       return journalFF.allocateDirectBuffer(size);
    }
 
    @Override
    public void freeDirectBuffer(ByteBuffer buffer)
    {
-      journalFF.releaseBuffer(buffer);
+      if (bufferPool != null)
+      {
+         bufferPool.release(buffer);
+      }
+      else
+      {
+         journalFF.releaseBuffer(buffer);
+      }
    }
 
    // Public -----------------------------------------------------------------------------------
@@ -2394,6 +2549,16 @@ public class JournalStorageManager implements StorageManager
       return messageJournal;
    }
 
+   public JournalStatistics getJournalStatistics()
+   {
+      return journalStatistics;
+   }
+
+   public ByteBufferPool getBufferPool()
+   {
+      return bufferPool;
+   }
+
    public Journal getBindingsJournal()
    {
       return bindingsJournal;
@@ -2523,6 +2688,98 @@ public class JournalStorageManager implements StorageManager
 
    // Private ----------------------------------------------------------------------------------
 
+   private static SequentialFileFactory newJournalFileFactory(final Configuration config,
+                                                              final String directory,
+                                                              final IOCriticalErrorListener criticalErrorListener,
+                                                              final JournalStatistics statistics,
+                                                              final ByteBufferPool bufferPool)
+   {
+      if (config.getJournalType() == JournalType.ASYNCIO)
+      {
+         AIOSequentialFileFactory factory = new AIOSequentialFileFactory(directory,
+                                                                         config.getJournalBufferSize_AIO(),
+                                                                         config.getJournalBufferTimeout_AIO(),
+                                                                         config.isLogJournalWriteRate(),
+                                                                         criticalErrorListener);
+         if (config.isJournalBufferTimeoutAdaptive())
+         {
+            factory.setAdaptiveBufferTimeout(config.getJournalBufferTimeoutMin(), config.getJournalBufferTimeoutMax());
+         }
+         factory.setStatistics(statistics);
+         return factory;
+      }
+      else if (config.getJournalType() == JournalType.NIO || config.getJournalType() == JournalType.MAPPED)
+      {
+         // The mapped journal shares the buffer settings with NIO
+         NIOSequentialFileFactory factory = config.getJournalType() == JournalType.NIO
+            ? new NIOSequentialFileFactory(directory,
+                                           true,
+                                           config.getJournalBufferSize_NIO(),
+                                           config.getJournalBufferTimeout_NIO(),
+                                           config.isLogJournalWriteRate(),
+                                           criticalErrorListener)
+            : new MappedSequentialFileFactory(directory,
+                                              true,
+                                              config.getJournalBufferSize_NIO(),
+                                              config.getJournalBufferTimeout_NIO(),
+                                              config.isLogJournalWriteRate(),
+                                              criticalErrorListener);
+         if (config.isJournalBufferTimeoutAdaptive())
+         {
+            factory.setAdaptiveBufferTimeout(config.getJournalBufferTimeoutMin(), config.getJournalBufferTimeoutMax());
+         }
+         factory.setStatistics(statistics);
+         // ignored by the mapped journal, its buffers are slices of the mappings
+         factory.setBufferPool(bufferPool);
+         return factory;
+      }
+      else if (config.getJournalType() == JournalType.IO_URING)
+      {
+         // The io_uring journal shares the buffer settings with AIO
+         UringSequentialFileFactory factory = new UringSequentialFileFactory(directory,
+                                                                             config.getJournalBufferSize_AIO(),
+                                                                             config.getJournalBufferTimeout_AIO(),
+                                                                             config.isLogJournalWriteRate(),
+                                                                             criticalErrorListener);
+         if (config.isJournalBufferTimeoutAdaptive())
+         {
+            factory.setAdaptiveBufferTimeout(config.getJournalBufferTimeoutMin(), config.getJournalBufferTimeoutMax());
+         }
+         factory.setStatistics(statistics);
+         return factory;
+      }
+      else
+      {
+         throw ActiveMQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
+      }
+   }
+
+   private JournalImpl newMessageJournal(final Configuration config, final SequentialFileFactory fileFactory)
+   {
+      JournalImpl journal = new JournalImpl(config.getJournalFileSize(),
+                                            config.getJournalMinFiles(),
+                                            config.getJournalCompactMinFiles(),
+                                            config.getJournalCompactPercentage(),
+                                            fileFactory,
+                                            "activemq-data",
+                                            "amq",
+                                            config.getJournalType() == JournalType.ASYNCIO || config.getJournalType() == JournalType.IO_URING
+                                               ? config.getJournalMaxIO_AIO() : config.getJournalMaxIO_NIO());
+
+      // Only the message journal sees enough concurrent appends to be worth a writer thread
+      journal.setAppendRingSize(config.getJournalAppendRingSize());
+
+      journal.setLoadParallelism(loadParallelism);
+
+      journal.setPackedRecords(config.isJournalPackedRecords());
+
+      journal.setCheckpointFiles(config.getJournalCheckpointFiles());
+
+      journal.setStatistics(journalStatistics);
+
+      return journal;
+   }
+
    private void checkAndCreateDir(final String dir, final boolean create)
    {
       File f = new File(dir);
@@ -2543,6 +2800,48 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * @return the compressed encoding of the message when its address stores messages compressed
+    * and the message compresses, null otherwise
+    */
+   private static CompressedMessageEncoding compressMessage(final ServerMessage message)
+   {
+      PagingStore store = message.getPagingStore();
+
+      if (store == null || !store.isCompressStoredMessages())
+      {
+         return null;
+      }
+
+      return CompressedMessageEncoding.compress(message);
+   }
+
+   private static void loadReference(final Map<Long, Map<Long, AddMessageRecord>> queueMap,
+                                     final Map<Long, ServerMessage> messages,
+                                     final long queueID,
+                                     final long messageID)
+   {
+      Map<Long, AddMessageRecord> queueMessages = queueMap.get(queueID);
+
+      if (queueMessages == null)
+      {
+         queueMessages = new LinkedHashMap<Long, AddMessageRecord>();
+
+         queueMap.put(queueID, queueMessages);
+      }
+
+      ServerMessage message = messages.get(messageID);
+
+      if (message == null)
+      {
+         ActiveMQServerLogger.LOGGER.cannotFindMessage(messageID);
+      }
+      else
+      {
+         queueMessages.put(messageID, new AddMessageRecord(message));
+      }
+   }
+
    /**
     * @param messages
     * @param buff
@@ -2632,6 +2931,16 @@ public class JournalStorageManager implements StorageManager
 
                   break;
                }
+               case JournalRecordIds.ADD_COMPRESSED_MESSAGE:
+               {
+                  CompressedMessageEncoding encoding = new CompressedMessageEncoding();
+
+                  encoding.decode(buff);
+
+                  messages.put(record.id, encoding.getMessage());
+
+                  break;
+               }
                case JournalRecordIds.ADD_REF:
                {
                   long messageID = record.id;
@@ -2651,6 +2960,28 @@ public class JournalStorageManager implements StorageManager
 
                   break;
                }
+               case JournalRecordIds.ADD_MULTI_REF:
+               {
+                  long messageID = record.id;
+
+                  MultiRefEncoding encoding = new MultiRefEncoding();
+
+                  encoding.decode(buff);
+
+                  ServerMessage message = messages.get(messageID);
+
+                  if (message == null)
+                  {
+                     throw new IllegalStateException("Cannot find message with id " + messageID);
+                  }
+
+                  for (long queueID : encoding.queueIDs)
+                  {
+                     journalLoader.handlePreparedSendMessage(message, tx, queueID);
+                  }
+
+                  break;
+               }
                case JournalRecordIds.ACKNOWLEDGE_REF:
                {
                   long messageID = record.id;
@@ -3349,6 +3680,54 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * The references of a message to several queues, see {@link JournalRecordIds#ADD_MULTI_REF}.
+    */
+   public static class MultiRefEncoding implements EncodingSupport
+   {
+      public long[] queueIDs;
+
+      public MultiRefEncoding()
+      {
+      }
+
+      public MultiRefEncoding(final long[] queueIDs)
+      {
+         this.queueIDs = queueIDs;
+      }
+
+      public void decode(final ActiveMQBuffer buffer)
+      {
+         queueIDs = new long[buffer.readInt()];
+
+         for (int i = 0; i < queueIDs.length; i++)
+         {
+            queueIDs[i] = buffer.readLong();
+         }
+      }
+
+      public void encode(final ActiveMQBuffer buffer)
+      {
+         buffer.writeInt(queueIDs.length);
+
+         for (long queueID : queueIDs)
+         {
+            buffer.writeLong(queueID);
+         }
+      }
+
+      public int getEncodeSize()
+      {
+         return DataConstants.SIZE_INT + DataConstants.SIZE_LONG * queueIDs.length;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "MultiRefEncoding [queueIDs=" + Arrays.toString(queueIDs) + "]";
+      }
+   }
+
    public static class PageUpdateTXEncoding implements EncodingSupport
    {
 
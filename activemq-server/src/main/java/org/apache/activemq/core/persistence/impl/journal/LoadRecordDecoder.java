@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.persistence.impl.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.persistence.impl.CompressedMessageEncoding;
+import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
+import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.MultiRefEncoding;
+import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.PageCountRecord;
+import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.PageCountRecordInc;
+import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.RefEncoding;
+import org.apache.activemq.core.server.ServerMessage;
+import org.apache.activemq.core.server.impl.ServerMessageImpl;
+
+/**
+ * Decodes the bulk of the message journal records (messages, references, acknowledgements and
+ * page cursor records) on a pool of threads while the storage manager applies them.
+ * <p/>
+ * Records are decoded in chunks, a few chunks ahead of the position being applied. Decoding has
+ * no side effect, so the storage manager still applies the records one by one in journal order
+ * and the outcome of the load is the same as with a sequential decode.
+ */
+final class LoadRecordDecoder
+{
+   private static final int CHUNK_SIZE = 4096;
+
+   private final List<RecordInfo> records;
+
+   private final int window;
+
+   private final List<Future<Object[]>> chunks = new ArrayList<Future<Object[]>>();
+
+   private final ExecutorService executor;
+
+   private int nextChunk;
+
+   private int currentChunk = -1;
+
+   private Object[] current;
+
+   LoadRecordDecoder(final List<RecordInfo> records, final int parallelism, final ThreadFactory threadFactory)
+   {
+      this.records = records;
+      this.window = parallelism * 2;
+      this.executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+   }
+
+   /**
+    * Returns the decoded form of the record at the given position, as {@link #decode(RecordInfo)}.
+    * Positions must be requested in increasing order.
+    */
+   Object get(final int index) throws Exception
+   {
+      int chunk = index / CHUNK_SIZE;
+
+      if (chunk != currentChunk)
+      {
+         current = waitChunk(chunk);
+         currentChunk = chunk;
+      }
+
+      int offset = index % CHUNK_SIZE;
+      Object decoded = current[offset];
+      current[offset] = null;
+      return decoded;
+   }
+
+   void stop()
+   {
+      executor.shutdownNow();
+   }
+
+   /**
+    * @return the decoded record, or null for the record types that are left to the storage manager
+    */
+   static Object decode(final RecordInfo record)
+   {
+      ActiveMQBuffer buff = ActiveMQBuffers.wrappedBuffer(record.data);
+
+      switch (record.getUserRecordType())
+      {
+         case JournalRecordIds.ADD_MESSAGE:
+         {
+            ServerMessage message = new ServerMessageImpl(record.id, 50);
+            message.decode(buff);
+            return message;
+         }
+         case JournalRecordIds.ADD_COMPRESSED_MESSAGE:
+         {
+            CompressedMessageEncoding encoding = new CompressedMessageEncoding();
+            encoding.decode(buff);
+            return encoding.getMessage();
+         }
+         case JournalRecordIds.ADD_REF:
+         case JournalRecordIds.ACKNOWLEDGE_REF:
+         {
+            RefEncoding encoding = new RefEncoding();
+            encoding.decode(buff);
+            return encoding;
+         }
+         case JournalRecordIds.ADD_MULTI_REF:
+         {
+            MultiRefEncoding encoding = new MultiRefEncoding();
+            encoding.decode(buff);
+            return encoding;
+         }
+         case JournalRecordIds.ACKNOWLEDGE_CURSOR:
+         case JournalRecordIds.PAGE_CURSOR_COMPLETE:
+         {
+            CursorAckRecordEncoding encoding = new CursorAckRecordEncoding();
+            encoding.decode(buff);
+            return encoding;
+         }
+         case JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE:
+         {
+            PageCountRecord encoding = new PageCountRecord();
+            encoding.decode(buff);
+            return encoding;
+         }
+         case JournalRecordIds.PAGE_CURSOR_COUNTER_INC:
+         {
+            PageCountRecordInc encoding = new PageCountRecordInc();
+            encoding.decode(buff);
+            return encoding;
+         }
+         default:
+            return null;
+      }
+   }
+
+   private Object[] waitChunk(final int chunk) throws Exception
+   {
+      int totalChunks = (records.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+      while (nextChunk < totalChunks && nextChunk <= chunk + window)
+      {
+         final int start = nextChunk * CHUNK_SIZE;
+         final int end = Math.min(start + CHUNK_SIZE, records.size());
+
+         chunks.add(executor.submit(new Callable<Object[]>()
+         {
+            public Object[] call() throws Exception
+            {
+               Object[] decoded = new Object[end - start];
+               for (int i = start; i < end; i++)
+               {
+                  decoded[i - start] = decode(records.get(i));
+               }
+               return decoded;
+            }
+         }));
+
+         nextChunk++;
+      }
+
+      Future<Object[]> future = chunks.get(chunk);
+      chunks.set(chunk, null);
+
+      try
+      {
+         return future.get();
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception)
+         {
+            throw (Exception) cause;
+         }
+         throw new Exception(cause.getMessage(), cause);
+      }
+   }
+}
@@ -16,9 +16,8 @@
  */
 package org.apache.activemq.core.persistence.impl.journal;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -79,23 +78,23 @@ public class OperationContextImpl implements OperationContext
       OperationContextImpl.threadLocalContext.set(context);
    }
 
-   private List<TaskHolder> tasks;
+   /** Added by any thread, only polled by the thread draining them, see {@link #checkTasks()} */
+   private final Queue<TaskHolder> tasks = new ConcurrentLinkedQueue<TaskHolder>();
 
-   private long minimalStore = Long.MAX_VALUE;
-   private long minimalReplicated = Long.MAX_VALUE;
-   private long minimalPage = Long.MAX_VALUE;
+   /** The requests to drain the tasks, the thread taking it from 0 drains until it gets back to 0 */
+   private final AtomicInteger drainRequests = new AtomicInteger(0);
 
    private final AtomicLong storeLineUp = new AtomicLong(0);
    private final AtomicLong replicationLineUp = new AtomicLong(0);
    private final AtomicLong pageLineUp = new AtomicLong(0);
 
-   private long stored = 0;
-   private long replicated = 0;
-   private long paged = 0;
+   private final AtomicLong stored = new AtomicLong(0);
+   private final AtomicLong replicated = new AtomicLong(0);
+   private final AtomicLong paged = new AtomicLong(0);
 
-   private int errorCode = -1;
+   private volatile int errorCode = -1;
 
-   private String errorMessage = null;
+   private volatile String errorMessage = null;
 
    private final Executor executor;
 
@@ -112,9 +111,9 @@ public class OperationContextImpl implements OperationContext
       pageLineUp.incrementAndGet();
    }
 
-   public synchronized void pageSyncDone()
+   public void pageSyncDone()
    {
-      paged++;
+      paged.incrementAndGet();
       checkTasks();
    }
 
@@ -128,9 +127,9 @@ public class OperationContextImpl implements OperationContext
       replicationLineUp.incrementAndGet();
    }
 
-   public synchronized void replicationDone()
+   public void replicationDone()
    {
-      replicated++;
+      replicated.incrementAndGet();
       checkTasks();
    }
 
@@ -142,86 +141,82 @@ public class OperationContextImpl implements OperationContext
          return;
       }
 
-      boolean executeNow = false;
+      TaskHolder holder = new TaskHolder(completion);
 
-      synchronized (this)
+      // On this case, we can just execute the context directly
+      // We want to avoid the executor if everything is complete...
+      // However, we can't execute the context if there are executions pending or tasks waiting ahead of this one
+      // A task being moved to the executor is counted as pending before it leaves the queue
+      if (tasks.isEmpty() && executorsPending.get() == 0 && holder.isComplete())
       {
-         if (tasks == null)
-         {
-            tasks = new LinkedList<TaskHolder>();
-            minimalReplicated = replicationLineUp.intValue();
-            minimalStore = storeLineUp.intValue();
-            minimalPage = pageLineUp.intValue();
-         }
-
-         // On this case, we can just execute the context directly
-         if (replicationLineUp.intValue() == replicated && storeLineUp.intValue() == stored &&
-                  pageLineUp.intValue() == paged)
-         {
-            // We want to avoid the executor if everything is complete...
-            // However, we can't execute the context if there are executions pending
-            // We need to use the executor on this case
-            if (executorsPending.get() == 0)
-            {
-               // No need to use an executor here or a context switch
-               // there are no actions pending.. hence we can just execute the task directly on the same thread
-               executeNow = true;
-            }
-            else
-            {
-               execute(completion);
-            }
-         }
-         else
-         {
-            tasks.add(new TaskHolder(completion));
-         }
-      }
-
-      if (executeNow)
-      {
-         // Executing outside of any locks
+         // No need to use an executor here or a context switch
+         // there are no actions pending.. hence we can just execute the task directly on the same thread
          completion.done();
+         return;
       }
 
+      tasks.add(holder);
+
+      // the operations may have completed before the task was queued
+      checkTasks();
    }
 
-   public synchronized void done()
+   public void done()
    {
-      stored++;
+      stored.incrementAndGet();
       checkTasks();
    }
 
+   /**
+    * Moves the completed tasks to the executor, in the order they were added.
+    * <p/>
+    * Only one thread drains at a time, a thread asking while another one is draining just makes it go over the
+    * tasks once more, so no completion is missed and the executor gets the tasks in order without a lock.
+    */
    private void checkTasks()
    {
-      if (stored >= minimalStore && replicated >= minimalReplicated && paged >= minimalPage)
+      if (drainRequests.getAndIncrement() != 0)
+      {
+         return;
+      }
+
+      int requests = 1;
+
+      do
       {
-         Iterator<TaskHolder> iter = tasks.iterator();
-         while (iter.hasNext())
+         if (errorCode != -1)
          {
-            TaskHolder holder = iter.next();
-            if (stored >= holder.storeLined && replicated >= holder.replicationLined && paged >= holder.pageLined)
+            TaskHolder holder;
+            while ((holder = tasks.poll()) != null)
             {
-               // If set, we use an executor to avoid the server being single threaded
-               execute(holder.task);
-
-               iter.remove();
+               holder.task.onError(errorCode, errorMessage);
             }
-            else
+         }
+         else
+         {
+            TaskHolder holder;
+            while ((holder = tasks.peek()) != null && holder.isComplete())
             {
-               // End of list here. No other task will be completed after this
-               break;
+               // If set, we use an executor to avoid the server being single threaded
+               executorsPending.incrementAndGet();
+
+               tasks.poll();
+
+               submit(holder.task);
             }
+            // End of queue here. No other task will be completed after this
          }
+
+         requests = drainRequests.addAndGet(-requests);
       }
+      while (requests != 0);
    }
 
    /**
-    * @param task
+    * Runs the task on the executor, it has to be counted on executorsPending already.
     */
-   private void execute(final IOAsyncTask task)
+   private void submit(final IOAsyncTask task)
    {
-      executorsPending.incrementAndGet();
       try
       {
          executor.execute(new Runnable()
@@ -259,21 +254,13 @@ public class OperationContextImpl implements OperationContext
    }
 
    @Override
-   public synchronized void onError(final int errorCode, final String errorMessage)
+   public void onError(final int errorCode, final String errorMessage)
    {
-      this.errorCode = errorCode;
       this.errorMessage = errorMessage;
+      this.errorCode = errorCode;
 
-      if (tasks != null)
-      {
-         Iterator<TaskHolder> iter = tasks.iterator();
-         while (iter.hasNext())
-         {
-            TaskHolder holder = iter.next();
-            holder.task.onError(errorCode, errorMessage);
-            iter.remove();
-         }
-      }
+      // the queued tasks are failed by the draining thread, so none of them is executed and failed at once
+      checkTasks();
    }
 
    final class TaskHolder
@@ -292,19 +279,24 @@ public class OperationContextImpl implements OperationContext
                 "]";
       }
 
-      final int storeLined;
-      final int replicationLined;
-      final int pageLined;
+      final long storeLined;
+      final long replicationLined;
+      final long pageLined;
 
       final IOAsyncTask task;
 
       TaskHolder(final IOAsyncTask task)
       {
-         storeLined = storeLineUp.intValue();
-         replicationLined = replicationLineUp.intValue();
-         pageLined = pageLineUp.intValue();
+         storeLined = storeLineUp.get();
+         replicationLined = replicationLineUp.get();
+         pageLined = pageLineUp.get();
          this.task = task;
       }
+
+      boolean isComplete()
+      {
+         return stored.get() >= storeLined && replicated.get() >= replicationLined && paged.get() >= pageLined;
+      }
    }
 
    @Override
@@ -334,29 +326,21 @@ public class OperationContextImpl implements OperationContext
    public String toString()
    {
       StringBuffer buffer = new StringBuffer();
-      if (tasks != null)
+      for (TaskHolder hold : tasks)
       {
-         for (TaskHolder hold : tasks)
-         {
-            buffer.append("Task = " + hold + "\n");
-         }
+         buffer.append("Task = " + hold + "\n");
       }
 
-      return "OperationContextImpl [" + hashCode() + "] [minimalStore=" + minimalStore +
-             ", storeLineUp=" +
+      return "OperationContextImpl [" + hashCode() + "] [storeLineUp=" +
              storeLineUp +
              ", stored=" +
              stored +
-             ", minimalReplicated=" +
-             minimalReplicated +
              ", replicationLineUp=" +
              replicationLineUp +
              ", replicated=" +
              replicated +
              ", paged=" +
              paged +
-             ", minimalPage=" +
-             minimalPage +
              ", pageLineUp=" +
              pageLineUp +
              ", errorCode=" +
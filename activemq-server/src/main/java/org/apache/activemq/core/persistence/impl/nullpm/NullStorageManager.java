@@ -27,9 +27,11 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.activemq.api.core.Pair;
 import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.core.journal.ByteBufferPool;
 import org.apache.activemq.core.journal.IOAsyncTask;
 import org.apache.activemq.core.journal.Journal;
 import org.apache.activemq.core.journal.JournalLoadInformation;
+import org.apache.activemq.core.journal.JournalStatistics;
 import org.apache.activemq.core.journal.SequentialFile;
 import org.apache.activemq.core.message.impl.MessageInternal;
 import org.apache.activemq.core.paging.PageTransactionInfo;
@@ -160,11 +162,31 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   @Override
+   public void storeReferences(final long[] queueIDs, final long messageID, final boolean last) throws Exception
+   {
+   }
+
+   @Override
+   public void deleteMessageOnAcknowledge(final long messageID) throws Exception
+   {
+   }
+
+   @Override
+   public void deleteMessageTransactional(final long txID, final long messageID) throws Exception
+   {
+   }
+
    @Override
    public void storeReferenceTransactional(final long txID, final long queueID, final long messageID) throws Exception
    {
    }
 
+   @Override
+   public void storeReferencesTransactional(final long txID, final long[] queueIDs, final long messageID) throws Exception
+   {
+   }
+
    @Override
    public void storeAcknowledge(final long queueID, final long messageID) throws Exception
    {
@@ -549,6 +571,18 @@ public class NullStorageManager implements StorageManager
       return null;
    }
 
+   @Override
+   public JournalStatistics getJournalStatistics()
+   {
+      return null;
+   }
+
+   @Override
+   public ByteBufferPool getBufferPool()
+   {
+      return null;
+   }
+
    @Override
    public void startReplication(final ReplicationManager replicationManager, final PagingManager pagingManager,
                                 final String nodeID, final boolean autoFailBack) throws Exception
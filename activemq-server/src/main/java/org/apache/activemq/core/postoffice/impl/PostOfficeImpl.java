@@ -1077,7 +1077,14 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
             message.incrementRefCount();
          }
 
-         Iterator<Queue> iter = entry.getValue().getDurableQueues().iterator();
+         List<Queue> durableQueues = entry.getValue().getDurableQueues();
+
+         // a durable message routed to several durable queues gets all its references in a single record
+         long[] durableQueueIDs = message.isDurable() && durableQueues.size() > 1 ? getQueueIDs(durableQueues) : null;
+
+         boolean referencesStored = false;
+
+         Iterator<Queue> iter = durableQueues.iterator();
 
          while (iter.hasNext())
          {
@@ -1124,7 +1131,26 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
                   }
                }
 
-               if (tx != null)
+               if (durableQueueIDs != null)
+               {
+                  // stored with the first queue, ahead of the scheduled delivery times and acks of all of them
+                  if (!referencesStored)
+                  {
+                     if (tx != null)
+                     {
+                        storageManager.storeReferencesTransactional(tx.getID(), durableQueueIDs, message.getMessageID());
+
+                        tx.setContainsPersistent();
+                     }
+                     else
+                     {
+                        storageManager.storeReferences(durableQueueIDs, message.getMessageID(), true);
+                     }
+
+                     referencesStored = true;
+                  }
+               }
+               else if (tx != null)
                {
                   storageManager.storeReferenceTransactional(tx.getID(), queue.getID(), message.getMessageID());
 
@@ -1175,6 +1201,18 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
       }
    }
 
+   private static long[] getQueueIDs(final List<Queue> queues)
+   {
+      long[] queueIDs = new long[queues.size()];
+
+      for (int i = 0; i < queueIDs.length; i++)
+      {
+         queueIDs[i] = queues.get(i).getID();
+      }
+
+      return queueIDs;
+   }
+
    /**
     * @param tx
     * @param message
@@ -535,7 +535,7 @@ public class ReplicatedJournal implements Journal
    @Override
    public SequentialFileFactory getFileFactory()
    {
-      throw new UnsupportedOperationException();
+      return localJournal.getFileFactory();
    }
 
    public int getFileSize()
@@ -549,6 +549,30 @@ public class ReplicatedJournal implements Journal
       localJournal.scheduleCompactAndBlock(timeout);
    }
 
+   @Override
+   public long getCompactCount()
+   {
+      return localJournal.getCompactCount();
+   }
+
+   @Override
+   public long getLastCompactPauseTime()
+   {
+      return localJournal.getLastCompactPauseTime();
+   }
+
+   @Override
+   public long getMaxCompactPauseTime()
+   {
+      return localJournal.getMaxCompactPauseTime();
+   }
+
+   @Override
+   public int getReclaimableFilesCount()
+   {
+      return localJournal.getReclaimableFilesCount();
+   }
+
    @Override
    public void replicationSyncPreserveOldFiles()
    {
@@ -292,6 +292,18 @@ public interface ActiveMQServerLogger extends BasicLogger
    @Message(id = 221050, value = "Activating Shared Store Slave", format = Message.Format.MESSAGE_FORMAT)
    void activatingSharedStoreSlave();
 
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221051, value = "Using Memory Mapped Journal", format = Message.Format.MESSAGE_FORMAT)
+   void journalUseMAPPED();
+
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221052, value = "Using io_uring Journal", format = Message.Format.MESSAGE_FORMAT)
+   void journalUseIO_URING();
+
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221053, value = "io_uring is not available, switching the configuration into {0}", format = Message.Format.MESSAGE_FORMAT)
+   void switchingFromIO_URING(JournalType journalType);
+
    @LogMessage(level = Logger.Level.WARN)
    @Message(id = 222000, value = "ActiveMQServer is being finalized and has not been stopped. Please remember to stop the server before letting it go out of scope",
             format = Message.Format.MESSAGE_FORMAT)
@@ -1104,6 +1116,18 @@ public interface ActiveMQServerLogger extends BasicLogger
          format = Message.Format.MESSAGE_FORMAT)
    void disallowedProtocol(String protocol);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222191,
+         value = "io_uring was not located on this platform, it will fall back to the {0} journal. io_uring needs Linux 5.6 or later and a native library built with it",
+         format = Message.Format.MESSAGE_FORMAT)
+   void uringNotFound(JournalType journalType);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222192,
+         value = "Unable to write the index of page file {0}, the page will be read as a whole",
+         format = Message.Format.MESSAGE_FORMAT)
+   void pageIndexWriteError(String fileName, @Cause Exception e);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 224000, value = "Failure in initialisation", format = Message.Format.MESSAGE_FORMAT)
    void initializationError(@Cause Throwable e);
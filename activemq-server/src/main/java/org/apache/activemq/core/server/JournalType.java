@@ -18,5 +18,5 @@ package org.apache.activemq.core.server;
 
 public enum JournalType
 {
-   NIO, ASYNCIO;
+   NIO, ASYNCIO, MAPPED, IO_URING;
 }
@@ -46,6 +46,8 @@ public interface ServerMessage extends MessageInternal, EncodingSupport
 
    int decrementDurableRefCount();
 
+   int getDurableRefCount();
+
    ServerMessage copy(long newID);
 
    void finishCopy() throws Exception;
@@ -59,6 +59,7 @@ import org.apache.activemq.core.journal.JournalLoadInformation;
 import org.apache.activemq.core.journal.SequentialFile;
 import org.apache.activemq.core.journal.impl.AIOSequentialFileFactory;
 import org.apache.activemq.core.journal.impl.SyncSpeedTest;
+import org.apache.activemq.core.journal.impl.UringSequentialFileFactory;
 import org.apache.activemq.core.management.impl.ActiveMQServerControlImpl;
 import org.apache.activemq.core.paging.PagingManager;
 import org.apache.activemq.core.paging.cursor.PageSubscription;
@@ -374,6 +375,8 @@ public class ActiveMQServerImpl implements ActiveMQServer
 
       state = SERVER_STATE.STARTING;
 
+      ConfigurationUtils.validateJournalStripes(configuration);
+
       if (haPolicy == null)
       {
          haPolicy = ConfigurationUtils.getHAPolicy(configuration.getHAPolicyConfiguration());
@@ -1605,6 +1608,13 @@ public class ActiveMQServerImpl implements ActiveMQServer
          configuration.setJournalType(JournalType.NIO);
       }
 
+      if (configuration.getJournalType() == JournalType.IO_URING && !UringSequentialFileFactory.isSupported())
+      {
+         JournalType fallback = AIOSequentialFileFactory.isSupported() ? JournalType.ASYNCIO : JournalType.NIO;
+         ActiveMQServerLogger.LOGGER.switchingFromIO_URING(fallback);
+         configuration.setJournalType(fallback);
+      }
+
       managementService = new ManagementServiceImpl(mbeanServer, configuration);
 
       if (configuration.getMemoryMeasureInterval() != -1)
@@ -1079,11 +1079,20 @@ public class QueueImpl implements Queue
 
          boolean durableRef = message.isDurable() && durable;
 
-         if (durableRef)
+         if (durableRef && isLastDurableRef(ref))
          {
-            storageManager.storeAcknowledge(id, message.getMessageID());
+            storageManager.deleteMessageOnAcknowledge(message.getMessageID());
+
+            postAcknowledge(ref, true);
+         }
+         else
+         {
+            if (durableRef)
+            {
+               storageManager.storeAcknowledge(id, message.getMessageID());
+            }
+            postAcknowledge(ref);
          }
-         postAcknowledge(ref);
       }
 
       messagesAcknowledged++;
@@ -1104,14 +1113,26 @@ public class QueueImpl implements Queue
 
          boolean durableRef = message.isDurable() && durable;
 
-         if (durableRef)
+         // a prepared transaction is reloaded from its acks, so only the others may delete the message instead
+         if (durableRef && tx.getXid() == null && isLastDurableRef(ref))
          {
-            storageManager.storeAcknowledgeTransactional(tx.getID(), id, message.getMessageID());
+            storageManager.deleteMessageTransactional(tx.getID(), message.getMessageID());
 
             tx.setContainsPersistent();
+
+            getRefsOperation(tx).addAckDeletingMessage(ref);
          }
+         else
+         {
+            if (durableRef)
+            {
+               storageManager.storeAcknowledgeTransactional(tx.getID(), id, message.getMessageID());
 
-         getRefsOperation(tx).addAck(ref);
+               tx.setContainsPersistent();
+            }
+
+            getRefsOperation(tx).addAck(ref);
+         }
       }
 
       messagesAcknowledged++;
@@ -2862,6 +2883,14 @@ public class QueueImpl implements Queue
    }
 
    public void postAcknowledge(final MessageReference ref)
+   {
+      postAcknowledge(ref, false);
+   }
+
+   /**
+    * @param messageDeleted whether the message was already deleted in place of the ack, see {@link #isLastDurableRef(MessageReference)}
+    */
+   void postAcknowledge(final MessageReference ref, final boolean messageDeleted)
    {
       QueueImpl queue = (QueueImpl) ref.getQueue();
 
@@ -2890,7 +2919,7 @@ public class QueueImpl implements Queue
       {
          int count = message.decrementDurableRefCount();
 
-         if (count == 0)
+         if (count == 0 && !messageDeleted)
          {
             // Note - we MUST store the delete after the preceding ack has been committed to storage, we cannot combine
             // the last ack and delete into a single delete.
@@ -2903,6 +2932,9 @@ public class QueueImpl implements Queue
             // also note then when this happens as part of a transaction it is the tx commit of the ack that is
             // important not this
 
+            // The last ack is only combined with the delete when it is the single durable reference left as it is
+            // acked, see isLastDurableRef
+
             // Also note that this delete shouldn't sync to disk, or else we would build up the executor's queue
             // as we can't delete each messaging with sync=true while adding messages transactionally.
             // There is a startup check to remove non referenced messages case these deletes fail
@@ -2918,6 +2950,22 @@ public class QueueImpl implements Queue
       }
    }
 
+   /**
+    * Whether the reference is the only durable one left to its message, so the message can be deleted in place of
+    * storing the ack and a delete after it.
+    * <p/>
+    * Unlike the concurrent acks described in postAcknowledge, no ack of another queue can still be uncommitted here:
+    * the other references only release their count once their ack is committed, and the journal keeps those acks
+    * ahead of this delete.
+    */
+   private static boolean isLastDurableRef(final MessageReference ref)
+   {
+      ServerMessage message = ref.getMessage();
+
+      // a large message deletes its file as it is released, and a ref acked as it is routed isn't counted yet
+      return !message.isLargeMessage() && !ref.isAlreadyAcked() && message.getDurableRefCount() == 1;
+   }
+
    void postRollback(final LinkedList<MessageReference> refs)
    {
       addHead(refs);
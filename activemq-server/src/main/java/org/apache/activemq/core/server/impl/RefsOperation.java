@@ -26,10 +26,13 @@ import org.apache.activemq.core.transaction.TransactionOperationAbstract;
 import org.apache.activemq.core.transaction.impl.TransactionImpl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class RefsOperation extends TransactionOperationAbstract
 {
@@ -39,6 +42,11 @@ public class RefsOperation extends TransactionOperationAbstract
 
    List<ServerMessage> pagedMessagesToPostACK = null;
 
+   /**
+    * The acked refs whose message was deleted in the transaction instead of storing the ack
+    */
+   Set<MessageReference> refsDeletingMessage = null;
+
    /**
     * It will ignore redelivery check, which is used during consumer.close
     * to not perform reschedule redelivery check
@@ -70,6 +78,16 @@ public class RefsOperation extends TransactionOperationAbstract
       }
    }
 
+   synchronized void addAckDeletingMessage(final MessageReference ref)
+   {
+      addAck(ref);
+      if (refsDeletingMessage == null)
+      {
+         refsDeletingMessage = Collections.newSetFromMap(new IdentityHashMap<MessageReference, Boolean>());
+      }
+      refsDeletingMessage.add(ref);
+   }
+
    @Override
    public void afterRollback(final Transaction tx)
    {
@@ -171,7 +189,14 @@ public class RefsOperation extends TransactionOperationAbstract
       {
          synchronized (ref.getQueue())
          {
-            queue.postAcknowledge(ref);
+            if (refsDeletingMessage != null && refsDeletingMessage.contains(ref))
+            {
+               ((QueueImpl) queue).postAcknowledge(ref, true);
+            }
+            else
+            {
+               queue.postAcknowledge(ref);
+            }
          }
       }
 
@@ -172,6 +172,11 @@ public class ServerMessageImpl extends MessageImpl implements ServerMessage
       return durableRefCount.decrementAndGet();
    }
 
+   public int getDurableRefCount()
+   {
+      return durableRefCount.get();
+   }
+
    public int getRefCount()
    {
       return refCount.get();
@@ -69,6 +69,13 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final SlowConsumerPolicy DEFAULT_SLOW_CONSUMER_POLICY = SlowConsumerPolicy.NOTIFY;
 
+   public static final boolean DEFAULT_COMPRESS_STORED_MESSAGES = false;
+
+   // as many bytes as page-max-cache-size pages of the default size
+   public static final long DEFAULT_PAGE_MAX_CACHE_BYTES = DEFAULT_PAGE_MAX_CACHE * DEFAULT_PAGE_SIZE;
+
+   public static final int DEFAULT_PAGE_READ_AHEAD = 2;
+
    private AddressFullMessagePolicy addressFullMessagePolicy = null;
 
    private Long maxSizeBytes = null;
@@ -111,6 +118,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Boolean autoDeleteJmsQueues = null;
 
+   private Boolean compressStoredMessages = null;
+
+   private Long pageMaxCacheBytes = null;
+
+   private Integer pageReadAhead = null;
+
    public AddressSettings(AddressSettings other)
    {
       this.addressFullMessagePolicy = other.addressFullMessagePolicy;
@@ -134,6 +147,9 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.slowConsumerPolicy = other.slowConsumerPolicy;
       this.autoCreateJmsQueues = other.autoCreateJmsQueues;
       this.autoDeleteJmsQueues = other.autoDeleteJmsQueues;
+      this.compressStoredMessages = other.compressStoredMessages;
+      this.pageMaxCacheBytes = other.pageMaxCacheBytes;
+      this.pageReadAhead = other.pageReadAhead;
    }
 
    public AddressSettings()
@@ -161,6 +177,36 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.autoDeleteJmsQueues = autoDeleteJmsQueues;
    }
 
+   public boolean isCompressStoredMessages()
+   {
+      return compressStoredMessages != null ? compressStoredMessages : AddressSettings.DEFAULT_COMPRESS_STORED_MESSAGES;
+   }
+
+   public void setCompressStoredMessages(final boolean compressStoredMessages)
+   {
+      this.compressStoredMessages = compressStoredMessages;
+   }
+
+   public long getPageCacheMaxBytes()
+   {
+      return pageMaxCacheBytes != null ? pageMaxCacheBytes : AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES;
+   }
+
+   public void setPageCacheMaxBytes(final long pageMaxCacheBytes)
+   {
+      this.pageMaxCacheBytes = pageMaxCacheBytes;
+   }
+
+   public int getPageReadAhead()
+   {
+      return pageReadAhead != null ? pageReadAhead : AddressSettings.DEFAULT_PAGE_READ_AHEAD;
+   }
+
+   public void setPageReadAhead(final int pageReadAhead)
+   {
+      this.pageReadAhead = pageReadAhead;
+   }
+
    public boolean isLastValueQueue()
    {
       return lastValueQueue != null ? lastValueQueue : AddressSettings.DEFAULT_LAST_VALUE_QUEUE;
@@ -433,6 +479,18 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          autoDeleteJmsQueues = merged.autoDeleteJmsQueues;
       }
+      if (compressStoredMessages == null)
+      {
+         compressStoredMessages = merged.compressStoredMessages;
+      }
+      if (pageMaxCacheBytes == null)
+      {
+         pageMaxCacheBytes = merged.pageMaxCacheBytes;
+      }
+      if (pageReadAhead == null)
+      {
+         pageReadAhead = merged.pageReadAhead;
+      }
    }
 
    @Override
@@ -497,6 +555,22 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       autoCreateJmsQueues = BufferHelper.readNullableBoolean(buffer);
 
       autoDeleteJmsQueues = BufferHelper.readNullableBoolean(buffer);
+
+      // settings persisted by older versions end here
+      if (buffer.readableBytes() > 0)
+      {
+         compressStoredMessages = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readableBytes() > 0)
+      {
+         pageMaxCacheBytes = BufferHelper.readNullableLong(buffer);
+      }
+
+      if (buffer.readableBytes() > 0)
+      {
+         pageReadAhead = BufferHelper.readNullableInteger(buffer);
+      }
    }
 
    @Override
@@ -523,7 +597,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
          BufferHelper.sizeOfNullableLong(slowConsumerThreshold) +
          BufferHelper.sizeOfNullableSimpleString(slowConsumerPolicy != null ? slowConsumerPolicy.toString() : null) +
          BufferHelper.sizeOfNullableBoolean(autoCreateJmsQueues) +
-         BufferHelper.sizeOfNullableBoolean(autoDeleteJmsQueues);
+         BufferHelper.sizeOfNullableBoolean(autoDeleteJmsQueues) +
+         BufferHelper.sizeOfNullableBoolean(compressStoredMessages) +
+         BufferHelper.sizeOfNullableLong(pageMaxCacheBytes) +
+         BufferHelper.sizeOfNullableInteger(pageReadAhead);
    }
 
    @Override
@@ -571,6 +648,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableBoolean(buffer, autoCreateJmsQueues);
 
       BufferHelper.writeNullableBoolean(buffer, autoDeleteJmsQueues);
+
+      BufferHelper.writeNullableBoolean(buffer, compressStoredMessages);
+
+      BufferHelper.writeNullableLong(buffer, pageMaxCacheBytes);
+
+      BufferHelper.writeNullableInteger(buffer, pageReadAhead);
    }
 
    /* (non-Javadoc)
@@ -603,6 +686,9 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((slowConsumerPolicy == null) ? 0 : slowConsumerPolicy.hashCode());
       result = prime * result + ((autoCreateJmsQueues == null) ? 0 : autoCreateJmsQueues.hashCode());
       result = prime * result + ((autoDeleteJmsQueues == null) ? 0 : autoDeleteJmsQueues.hashCode());
+      result = prime * result + ((compressStoredMessages == null) ? 0 : compressStoredMessages.hashCode());
+      result = prime * result + ((pageMaxCacheBytes == null) ? 0 : pageMaxCacheBytes.hashCode());
+      result = prime * result + ((pageReadAhead == null) ? 0 : pageReadAhead.hashCode());
       return result;
    }
 
@@ -766,6 +852,27 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!autoDeleteJmsQueues.equals(other.autoDeleteJmsQueues))
          return false;
+      if (compressStoredMessages == null)
+      {
+         if (other.compressStoredMessages != null)
+            return false;
+      }
+      else if (!compressStoredMessages.equals(other.compressStoredMessages))
+         return false;
+      if (pageMaxCacheBytes == null)
+      {
+         if (other.pageMaxCacheBytes != null)
+            return false;
+      }
+      else if (!pageMaxCacheBytes.equals(other.pageMaxCacheBytes))
+         return false;
+      if (pageReadAhead == null)
+      {
+         if (other.pageReadAhead != null)
+            return false;
+      }
+      else if (!pageReadAhead.equals(other.pageReadAhead))
+         return false;
       return true;
    }
 
@@ -816,6 +923,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
          autoCreateJmsQueues +
          ", autoDeleteJmsQueues=" +
          autoDeleteJmsQueues +
+         ", compressStoredMessages=" +
+         compressStoredMessages +
+         ", pageMaxCacheBytes=" +
+         pageMaxCacheBytes +
+         ", pageReadAhead=" +
+         pageReadAhead +
          "]";
    }
 }
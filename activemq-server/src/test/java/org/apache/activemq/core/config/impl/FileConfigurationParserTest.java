@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.activemq.api.config.ActiveMQDefaultConfiguration;
+import org.apache.activemq.api.core.ActiveMQIllegalStateException;
 import org.apache.activemq.core.config.Configuration;
 import org.apache.activemq.core.config.FileDeploymentManager;
 import org.apache.activemq.core.deployers.impl.FileConfigurationParser;
@@ -74,6 +75,33 @@ public class FileConfigurationParserTest extends UnitTestCase
       deploymentManager.readConfiguration();
    }
 
+   @Test
+   public void testJournalStripesNotReplicated() throws Exception
+   {
+      FileConfigurationParser parser = new FileConfigurationParser();
+
+      String stripesPart = "<journal-stripe-directories><directory>/stripe1</directory></journal-stripe-directories>";
+
+      String configStr = firstPart + stripesPart + lastPart;
+
+      Configuration config = parser.parseMainConfig(new ByteArrayInputStream(configStr.getBytes(StandardCharsets.UTF_8)));
+
+      assertEquals(1, config.getJournalStripeDirectories().size());
+
+      String replicationPart = "<ha-policy><replication><master/></replication></ha-policy>";
+
+      configStr = firstPart + replicationPart + stripesPart + lastPart;
+
+      try
+      {
+         parser.parseMainConfig(new ByteArrayInputStream(configStr.getBytes(StandardCharsets.UTF_8)));
+         fail("a striped journal can't be replicated");
+      }
+      catch (ActiveMQIllegalStateException expected)
+      {
+      }
+   }
+
    @Test
    public void testParsingDefaultServerConfig() throws Exception
    {
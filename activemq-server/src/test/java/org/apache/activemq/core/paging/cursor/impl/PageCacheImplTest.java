@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.core.paging.cursor.impl;
+
+import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.core.journal.impl.NIOSequentialFileFactory;
+import org.apache.activemq.core.paging.impl.Page;
+import org.apache.activemq.core.paging.impl.PagedMessageImpl;
+import org.apache.activemq.core.persistence.impl.nullpm.NullStorageManager;
+import org.apache.activemq.core.server.ServerMessage;
+import org.apache.activemq.core.server.impl.ServerMessageImpl;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PageCacheImplTest extends UnitTestCase
+{
+   @Test
+   public void testIndexNotMatchingThePage() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      SequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      Page page = newPage(factory);
+
+      page.open();
+
+      for (int i = 0; i < 100; i++)
+      {
+         ServerMessage msg = new ServerMessageImpl(i, 100);
+         msg.setAddress(new SimpleString("Test"));
+         page.write(new PagedMessageImpl(msg, new long[0]));
+      }
+
+      page.close();
+
+      page = newPage(factory);
+
+      page.open();
+
+      int[] index = page.readIndex();
+
+      page.getFile().close();
+
+      Assert.assertEquals(101, index.length);
+
+      // the range of the first messages ends before its last message
+      index[100] = index[99];
+
+      PageCacheImpl cache = new PageCacheImpl(page, new NullStorageManager());
+
+      cache.setIndex(index);
+
+      for (int i = 0; i < 100; i++)
+      {
+         Assert.assertNotNull(cache.getMessage(i));
+         Assert.assertEquals(i, cache.getMessage(i).getMessage().getMessageID());
+      }
+
+      Assert.assertTrue(cache.getMemoryEstimate() > 0);
+   }
+
+   private Page newPage(final SequentialFileFactory factory) throws Exception
+   {
+      return new Page(new SimpleString("something"), new NullStorageManager(), factory,
+                      factory.createSequentialFile("00010.page", 1), 10);
+   }
+}
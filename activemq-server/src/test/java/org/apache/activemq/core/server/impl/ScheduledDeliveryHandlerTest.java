@@ -375,6 +375,12 @@ public class ScheduledDeliveryHandlerTest extends Assert
          return 0;
       }
 
+      @Override
+      public int getDurableRefCount()
+      {
+         return 0;
+      }
+
       @Override
       public ServerMessage copy(long newID)
       {
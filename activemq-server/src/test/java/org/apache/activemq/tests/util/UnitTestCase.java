@@ -78,6 +78,7 @@ import org.apache.activemq.core.journal.SequentialFileFactory;
 import org.apache.activemq.core.journal.impl.JournalImpl;
 import org.apache.activemq.core.journal.impl.NIOSequentialFileFactory;
 import org.apache.activemq.core.persistence.impl.journal.DescribeJournal;
+import org.apache.activemq.core.persistence.impl.journal.DescribeJournal.MultiReferenceDescribe;
 import org.apache.activemq.core.persistence.impl.journal.DescribeJournal.ReferenceDescribe;
 import org.apache.activemq.core.persistence.impl.journal.JournalRecordIds;
 import org.apache.activemq.core.persistence.impl.journal.OperationContextImpl;
@@ -1764,6 +1765,22 @@ public abstract class UnitTestCase extends CoreUnitTestCase
                count.incrementAndGet();
             }
          }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_MULTI_REF)
+         {
+            MultiReferenceDescribe refs = (MultiReferenceDescribe) o;
+            for (long queueID : refs.refEncoding.queueIDs)
+            {
+               AtomicInteger count = messageRefCounts.get(queueID);
+               if (count == null)
+               {
+                  messageRefCounts.put(queueID, new AtomicInteger(1));
+               }
+               else
+               {
+                  count.incrementAndGet();
+               }
+            }
+         }
       }
 
       messagesJournal.stop();
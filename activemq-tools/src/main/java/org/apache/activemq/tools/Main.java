@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.tools;
 
+import java.util.Arrays;
+
 public class Main
 {
    public static final String USAGE = "Use: java -jar " + getJarName();
@@ -60,14 +62,15 @@ public class Main
       }
       else if (EXPORT.equals(arg[0]))
       {
-         if (arg.length != 5)
+         if (arg.length < 5)
          {
-            System.out.println(USAGE + " " + EXPORT + " <bindings-directory> <journal-directory> <paging-directory> <large-messages-directory>");
+            System.out.println(USAGE + " " + EXPORT + " <bindings-directory> <journal-directory> <paging-directory> <large-messages-directory> [<journal-stripe-directory>...]");
             System.exit(-1);
          }
          else
          {
-            XmlDataExporter xmlDataExporter = new XmlDataExporter(System.out, arg[1], arg[2], arg[3], arg[4]);
+            XmlDataExporter xmlDataExporter = new XmlDataExporter(System.out, arg[1], arg[2], arg[3], arg[4],
+                                                                  Arrays.copyOfRange(arg, 5, arg.length));
             xmlDataExporter.writeXMLData();
          }
       }
@@ -86,13 +89,13 @@ public class Main
       }
       else if (PRINT_DATA.equals(arg[0]))
       {
-         if (arg.length != 3)
+         if (arg.length < 3)
          {
-            System.err.println(USAGE + " " + PRINT_DATA + " <bindings-directory> <journal-directory>");
+            System.err.println(USAGE + " " + PRINT_DATA + " <bindings-directory> <journal-directory> [<journal-stripe-directory>...]");
             System.exit(-1);
          }
 
-         PrintData.printData(arg[1], arg[2]);
+         PrintData.printData(arg[1], arg[2], Arrays.copyOfRange(arg, 3, arg.length));
       }
       else if (PRINT_PAGES.equals(arg[0]))
       {
@@ -30,11 +30,12 @@ import org.apache.activemq.core.server.impl.FileLockNodeManager;
  * cd activemq-server
  * mvn -q exec:java -Dexec.args="/foo/activemq/bindings /foo/activemq/journal" -Dexec.mainClass="org.apache.activemq.tools.PrintData"
  * </pre>
+ * The directories of the other stripes of a striped message journal follow the journal directory.
  */
 public class PrintData // NO_UCD (unused code)
 {
 
-   protected static void printData(String bindingsDirectory, String messagesDirectory)
+   protected static void printData(String bindingsDirectory, String messagesDirectory, String... stripeDirectories)
    {
       File serverLockFile = new File(messagesDirectory, "server.lock");
 
@@ -74,7 +75,7 @@ public class PrintData // NO_UCD (unused code)
 
       try
       {
-         DescribeJournal.describeMessagesJournal(messagesDirectory);
+         DescribeJournal.describeMessagesJournal(messagesDirectory, stripeDirectories);
       }
       catch (Exception e)
       {
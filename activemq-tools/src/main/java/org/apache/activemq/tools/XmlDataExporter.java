@@ -24,6 +24,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -65,6 +66,7 @@ import org.apache.activemq.core.paging.impl.PagingManagerImpl;
 import org.apache.activemq.core.paging.impl.PagingStoreFactoryNIO;
 import org.apache.activemq.core.persistence.impl.journal.DescribeJournal;
 import org.apache.activemq.core.persistence.impl.journal.DescribeJournal.MessageDescribe;
+import org.apache.activemq.core.persistence.impl.journal.DescribeJournal.MultiReferenceDescribe;
 import org.apache.activemq.core.persistence.impl.journal.DescribeJournal.ReferenceDescribe;
 import org.apache.activemq.core.persistence.impl.journal.JournalRecordIds;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager;
@@ -72,6 +74,7 @@ import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.A
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.PersistentQueueBindingEncoding;
+import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.RefEncoding;
 import org.apache.activemq.core.server.ActiveMQServerLogger;
 import org.apache.activemq.core.server.JournalType;
 import org.apache.activemq.core.server.LargeServerMessage;
@@ -133,12 +136,16 @@ public final class XmlDataExporter
 
    // Constructors --------------------------------------------------
 
+   /**
+    * @param stripeDirs the directories of the other stripes, when the message journal is striped
+    */
    public XmlDataExporter(OutputStream out, String bindingsDir, String journalDir, String pagingDir,
-                          String largeMessagesDir) throws Exception
+                          String largeMessagesDir, String... stripeDirs) throws Exception
    {
       config = new ConfigurationImpl()
          .setBindingsDirectory(bindingsDir)
          .setJournalDirectory(journalDir)
+         .setJournalStripeDirectories(Arrays.asList(stripeDirs))
          .setPagingDirectory(pagingDir)
          .setLargeMessagesDirectory(largeMessagesDir)
          .setJournalType(JournalType.NIO);
@@ -243,7 +250,15 @@ public final class XmlDataExporter
          }
       };
 
-      ((JournalImpl) messageJournal).load(records, preparedTransactions, transactionFailureCallback, false);
+      if (messageJournal instanceof JournalImpl)
+      {
+         ((JournalImpl) messageJournal).load(records, preparedTransactions, transactionFailureCallback, false);
+      }
+      else
+      {
+         // a striped journal, the records of its stripes come back in their original order
+         messageJournal.load(records, preparedTransactions, transactionFailureCallback);
+      }
 
       // Since we don't use these nullify the reference so that the garbage collector can clean them up
       preparedTransactions = null;
@@ -255,7 +270,8 @@ public final class XmlDataExporter
          ActiveMQBuffer buff = ActiveMQBuffers.wrappedBuffer(data);
 
          Object o = DescribeJournal.newObjectEncoding(info, storageManager);
-         if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE)
+         if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE ||
+            info.getUserRecordType() == JournalRecordIds.ADD_COMPRESSED_MESSAGE)
          {
             messages.put(info.id, ((MessageDescribe) o).getMsg());
          }
@@ -278,6 +294,20 @@ public final class XmlDataExporter
                map.put(ref.refEncoding.queueID, ref);
             }
          }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_MULTI_REF)
+         {
+            MultiReferenceDescribe refs = (MultiReferenceDescribe) o;
+            HashMap<Long, ReferenceDescribe> map = messageRefs.get(info.id);
+            if (map == null)
+            {
+               map = new HashMap<>();
+               messageRefs.put(info.id, map);
+            }
+            for (long queueID : refs.refEncoding.queueIDs)
+            {
+               map.put(queueID, new ReferenceDescribe(new RefEncoding(queueID)));
+            }
+         }
          else if (info.getUserRecordType() == JournalRecordIds.ACKNOWLEDGE_REF)
          {
             acks.add(info);
@@ -15,6 +15,9 @@
  * limitations under the License.
  */
 package org.apache.activemq.tests.integration.client;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 
 import org.junit.Test;
@@ -28,6 +31,7 @@ import org.apache.activemq.api.core.client.ClientProducer;
 import org.apache.activemq.api.core.client.ClientSession;
 import org.apache.activemq.api.core.client.ClientSessionFactory;
 import org.apache.activemq.api.core.client.ServerLocator;
+import org.apache.activemq.core.persistence.impl.journal.JournalRecordIds;
 import org.apache.activemq.core.server.ActiveMQServer;
 import org.apache.activemq.tests.util.RandomUtil;
 import org.apache.activemq.tests.util.ServiceTestBase;
@@ -133,6 +137,133 @@ public class DurableQueueTest extends ServiceTestBase
       session.deleteQueue(queue);
    }
 
+   @Test
+   public void testConsumeFromSeveralDurableQueuesAfterServerRestart() throws Exception
+   {
+      SimpleString address = RandomUtil.randomSimpleString();
+      SimpleString[] queues = new SimpleString[3];
+
+      for (int i = 0; i < queues.length; i++)
+      {
+         queues[i] = RandomUtil.randomSimpleString();
+         session.createQueue(address, queues[i], true);
+      }
+
+      ClientProducer producer = session.createProducer(address);
+      producer.send(session.createMessage(true));
+
+      ClientSession txSession = sf.createSession(false, false, false);
+      txSession.createProducer(address).send(txSession.createMessage(true));
+      txSession.commit();
+      txSession.close();
+
+      session.close();
+
+      server.stop();
+
+      // both messages got their references to all the queues
+      Map<Long, AtomicInteger> references = loadQueues(server);
+
+      server.start();
+
+      for (SimpleString queue : queues)
+      {
+         Assert.assertEquals(2, references.get(server.locateQueue(queue).getID()).intValue());
+      }
+
+      sf = createSessionFactory(locator);
+      session = sf.createSession(false, true, true);
+
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(queues[0]);
+      for (int i = 0; i < 2; i++)
+      {
+         ClientMessage message = consumer.receive(500);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+      consumer.close();
+
+      session.close();
+
+      server.stop();
+      server.start();
+
+      sf = createSessionFactory(locator);
+      session = sf.createSession(false, true, true);
+
+      session.start();
+
+      Assert.assertNull(session.createConsumer(queues[0]).receiveImmediate());
+
+      for (int i = 1; i < queues.length; i++)
+      {
+         consumer = session.createConsumer(queues[i]);
+         for (int j = 0; j < 2; j++)
+         {
+            ClientMessage message = consumer.receive(500);
+            Assert.assertNotNull(message);
+            message.acknowledge();
+         }
+         Assert.assertNull(consumer.receiveImmediate());
+         consumer.close();
+      }
+   }
+
+   @Test
+   public void testLastAcknowledgeDeletesMessage() throws Exception
+   {
+      SimpleString queue = RandomUtil.randomSimpleString();
+      SimpleString address = RandomUtil.randomSimpleString();
+
+      session.createQueue(address, queue, true);
+
+      ClientProducer producer = session.createProducer(address);
+      for (int i = 0; i < 20; i++)
+      {
+         producer.send(session.createMessage(true));
+      }
+
+      session.start();
+      ClientConsumer consumer = session.createConsumer(queue);
+      for (int i = 0; i < 10; i++)
+      {
+         ClientMessage message = consumer.receive(500);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+      consumer.close();
+
+      ClientSession txSession = sf.createSession(false, false, false);
+      txSession.start();
+      consumer = txSession.createConsumer(queue);
+      for (int i = 0; i < 10; i++)
+      {
+         ClientMessage message = consumer.receive(500);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+      txSession.commit();
+      txSession.close();
+
+      session.close();
+
+      server.stop();
+
+      // the messages had a single reference, so they were deleted without storing the acks
+      Assert.assertNull(countJournal(server.getConfiguration()).get((int) JournalRecordIds.ACKNOWLEDGE_REF));
+      Assert.assertNull(countJournalLivingRecords(server.getConfiguration()).get((int) JournalRecordIds.ADD_MESSAGE));
+
+      server.start();
+
+      sf = createSessionFactory(locator);
+      session = sf.createSession(false, true, true);
+      session.start();
+
+      Assert.assertNull(session.createConsumer(queue).receiveImmediate());
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -63,6 +63,7 @@ import org.apache.activemq.core.paging.cursor.impl.PagePositionImpl;
 import org.apache.activemq.core.paging.impl.Page;
 import org.apache.activemq.core.persistence.OperationContext;
 import org.apache.activemq.core.persistence.impl.journal.DescribeJournal;
+import org.apache.activemq.core.persistence.impl.journal.DescribeJournal.MultiReferenceDescribe;
 import org.apache.activemq.core.persistence.impl.journal.DescribeJournal.ReferenceDescribe;
 import org.apache.activemq.core.persistence.impl.journal.JournalRecordIds;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
@@ -962,6 +963,18 @@ public class PagingTest extends ServiceTestBase
                deletedQueueReferences.add(new Long(info.id));
             }
          }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_MULTI_REF)
+         {
+            MultiReferenceDescribe refs = (MultiReferenceDescribe) DescribeJournal.newObjectEncoding(info);
+
+            for (long queueID : refs.refEncoding.queueIDs)
+            {
+               if (queueID == deletedQueueID)
+               {
+                  deletedQueueReferences.add(new Long(info.id));
+               }
+            }
+         }
          else if (info.getUserRecordType() == JournalRecordIds.ACKNOWLEDGE_REF)
          {
             AckDescribe ref = (AckDescribe) DescribeJournal.newObjectEncoding(info);
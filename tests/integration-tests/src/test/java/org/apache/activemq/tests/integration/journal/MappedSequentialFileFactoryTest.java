@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.integration.journal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.core.journal.impl.MappedSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.SequentialFileFactoryTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedSequentialFileFactoryTest extends SequentialFileFactoryTestBase
+{
+
+   @Override
+   protected SequentialFileFactory createFactory()
+   {
+      return new MappedSequentialFileFactory(getTestDir(), true);
+   }
+
+   @Test
+   public void testWriteBeyondMapping() throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("mapped.amq", 1);
+
+      file.open();
+
+      try
+      {
+         file.fill(0, 100, (byte) 'J');
+
+         file.position(90);
+
+         // the first 10 bytes go to the mapping, the remaining are appended through the channel
+         ByteBuffer bytes = factory.wrapBuffer(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15});
+         file.writeDirect(bytes, true);
+      }
+      finally
+      {
+         file.close();
+      }
+
+      file.open();
+
+      try
+      {
+         Assert.assertEquals(105, file.size());
+
+         file.position(88);
+
+         ByteBuffer read = factory.newBuffer(17);
+
+         Assert.assertEquals(17, file.read(read));
+
+         Assert.assertEquals((byte) 'J', read.get(0));
+         Assert.assertEquals((byte) 'J', read.get(1));
+
+         for (int i = 0; i < 15; i++)
+         {
+            Assert.assertEquals(i + 1, read.get(i + 2));
+         }
+      }
+      finally
+      {
+         file.close();
+      }
+   }
+
+   @Test
+   public void testSyncWhileClosing() throws Exception
+   {
+      final SequentialFile file = factory.createSequentialFile("mapped.amq", 1);
+
+      file.open();
+      file.fill(0, 10 * 1024, (byte) 'J');
+      file.close();
+
+      final AtomicBoolean running = new AtomicBoolean(true);
+
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+      // the mapping is released on close, a sync racing with it must not force the released memory
+      Thread syncer = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               while (running.get())
+               {
+                  file.sync();
+               }
+            }
+            catch (Throwable e)
+            {
+               error.set(e);
+            }
+         }
+      };
+
+      syncer.start();
+
+      try
+      {
+         for (int i = 0; i < 100; i++)
+         {
+            file.open();
+            file.close();
+         }
+      }
+      finally
+      {
+         running.set(false);
+         syncer.join();
+      }
+
+      Assert.assertNull(error.get());
+   }
+
+}
@@ -1263,6 +1263,56 @@ public class NIOJournalCompactTest extends JournalImplTestBase
 
    }
 
+   @Test
+   public void testCompactPauseStatistics() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      Assert.assertEquals(0, journal.getCompactCount());
+      Assert.assertEquals(0, journal.getMaxCompactPauseTime());
+
+      for (int i = 0; i < 1000; i++)
+      {
+         add(i);
+         if (i % 100 == 0)
+         {
+            journal.forceMoveNextFile();
+         }
+      }
+
+      for (int i = 0; i < 1000; i += 2)
+      {
+         delete(i);
+      }
+
+      journal.forceMoveNextFile();
+
+      journal.testCompact();
+
+      Assert.assertEquals(1, journal.getCompactCount());
+      Assert.assertTrue(journal.getLastCompactPauseTime() > 0);
+      Assert.assertEquals(journal.getLastCompactPauseTime(), journal.getMaxCompactPauseTime());
+
+      // records added after the switch must live with the compacted ones
+      add(1000);
+      update(999);
+      delete(1);
+
+      journal.testCompact();
+
+      Assert.assertEquals(2, journal.getCompactCount());
+      Assert.assertTrue(journal.getMaxCompactPauseTime() >= journal.getLastCompactPauseTime());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
    @Test
    public void testLiveSize() throws Exception
    {
@@ -17,11 +17,18 @@
 package org.apache.activemq.tests.integration.journal;
 
 import java.io.File;
+import java.util.ArrayList;
 
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
 import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.core.journal.impl.JournalImpl;
 import org.apache.activemq.core.journal.impl.NIOSequentialFileFactory;
 import org.apache.activemq.tests.integration.IntegrationTestLogger;
 import org.apache.activemq.tests.unit.core.journal.impl.JournalImplTestUnit;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.junit.Assert;
+import org.junit.Test;
 
 public class NIOJournalImplTest extends JournalImplTestUnit
 {
@@ -47,4 +54,63 @@ public class NIOJournalImplTest extends JournalImplTestUnit
       return 1;
    }
 
+   @Test
+   public void testDeleteCancelsBufferedRecord() throws Exception
+   {
+      // a long timeout keeps the records on the buffer until debugWait flushes it
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir(), true, 100 * 1024, 1000000000, false);
+
+      JournalImpl bufferedJournal = new JournalImpl(100 * 1024, 2, 0, 0, factory, "amq", "amq", 1);
+
+      try
+      {
+         bufferedJournal.start();
+         bufferedJournal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+
+         long position = bufferedJournal.getCurrentFile().getFile().position();
+
+         bufferedJournal.appendAddRecord(1, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+         bufferedJournal.appendUpdateRecord(1, (byte) 1, new SimpleEncoding(10, (byte) 2), false);
+         bufferedJournal.appendAddRecord(2, (byte) 1, new SimpleEncoding(10, (byte) 3), false);
+         bufferedJournal.appendDeleteRecord(1, false);
+
+         bufferedJournal.debugWait();
+
+         // only the add of record 2 was written
+         Assert.assertEquals(position + 10 + JournalImpl.SIZE_ADD_RECORD + 1,
+                             bufferedJournal.getCurrentFile().getFile().position());
+         Assert.assertEquals(1, bufferedJournal.getNumberOfRecords());
+
+         // once flushed, a record is deleted as usual
+         position = bufferedJournal.getCurrentFile().getFile().position();
+
+         bufferedJournal.appendDeleteRecord(2, true);
+
+         bufferedJournal.debugWait();
+
+         Assert.assertTrue(bufferedJournal.getCurrentFile().getFile().position() > position);
+
+         bufferedJournal.appendAddRecord(3, (byte) 1, new SimpleEncoding(10, (byte) 4), false);
+
+         // everything cancelled, a sync delete still completes
+         bufferedJournal.appendAddRecord(4, (byte) 1, new SimpleEncoding(10, (byte) 5), false);
+         bufferedJournal.appendDeleteRecord(4, true);
+
+         bufferedJournal.stop();
+
+         bufferedJournal = new JournalImpl(100 * 1024, 2, 0, 0, factory, "amq", "amq", 1);
+         bufferedJournal.start();
+
+         ArrayList<RecordInfo> loaded = new ArrayList<RecordInfo>();
+         bufferedJournal.load(loaded, new ArrayList<PreparedTransactionInfo>(), null);
+
+         Assert.assertEquals(1, loaded.size());
+         Assert.assertEquals(3L, loaded.get(0).id);
+      }
+      finally
+      {
+         bufferedJournal.stop();
+      }
+   }
+
 }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.integration.journal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.core.journal.IOAsyncTask;
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.core.journal.impl.UringSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.SequentialFileFactoryTestBase;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class UringSequentialFileFactoryTest extends SequentialFileFactoryTestBase
+{
+
+   @BeforeClass
+   public static void hasUring()
+   {
+      org.junit.Assume.assumeTrue("Test case needs io_uring to run", UringSequentialFileFactory.isSupported());
+   }
+
+   @Override
+   protected SequentialFileFactory createFactory()
+   {
+      return new UringSequentialFileFactory(getTestDir());
+   }
+
+   @Test
+   public void testCallbacksInWriteOrder() throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("uring.amq", 1);
+
+      file.open();
+
+      try
+      {
+         file.fill(0, 1024 * 1024, (byte) 0);
+
+         final int writes = 1000;
+
+         final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+
+         final CountDownLatch latch = new CountDownLatch(writes);
+
+         for (int i = 0; i < writes; i++)
+         {
+            ByteBuffer bytes = factory.newBuffer(1000);
+
+            for (int j = 0; j < 1000; j++)
+            {
+               bytes.put(j, getSamplebyte(i + j));
+            }
+
+            final int write = i;
+
+            // the syncs make the completions come back out of order
+            file.writeDirect(bytes, i % 10 == 0, new IOAsyncTask()
+            {
+               public void done()
+               {
+                  completed.add(write);
+                  latch.countDown();
+               }
+
+               public void onError(final int errorCode, final String errorMessage)
+               {
+                  latch.countDown();
+               }
+            });
+         }
+
+         Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+         Assert.assertEquals(writes, completed.size());
+
+         for (int i = 0; i < writes; i++)
+         {
+            Assert.assertEquals(i, completed.get(i).intValue());
+         }
+
+         file.position(0);
+
+         ByteBuffer read = factory.allocateDirectBuffer(writes * 1000);
+
+         Assert.assertEquals(writes * 1000, file.read(read));
+
+         for (int i = 0; i < writes; i++)
+         {
+            for (int j = 0; j < 1000; j++)
+            {
+               Assert.assertEquals(getSamplebyte(i + j), read.get(i * 1000 + j));
+            }
+         }
+      }
+      finally
+      {
+         file.close();
+      }
+   }
+
+   @Test
+   public void testRegisteredBuffersReused() throws Exception
+   {
+      ByteBuffer buffer = factory.newBuffer(10);
+
+      Assert.assertTrue(buffer.isDirect());
+      Assert.assertEquals(10, buffer.limit());
+
+      factory.releaseBuffer(buffer);
+
+      // a second release mustn't hand the same buffer out twice
+      factory.releaseBuffer(buffer);
+
+      ByteBuffer first = factory.newBuffer(10);
+      ByteBuffer second = factory.newBuffer(10);
+
+      Assert.assertNotSame(first, second);
+
+      factory.releaseBuffer(first);
+      factory.releaseBuffer(second);
+   }
+
+}
@@ -510,6 +510,11 @@ public class ActiveMQServerControlUsingCoreTest extends ActiveMQServerControlTes
             return (Integer) proxy.retrieveAttributeValue("JournalBufferTimeout");
          }
 
+         public int getJournalCurrentBufferTimeout()
+         {
+            return (Integer) proxy.retrieveAttributeValue("journalCurrentBufferTimeout", Integer.class);
+         }
+
          public int getJournalCompactMinFiles()
          {
             return (Integer) proxy.retrieveAttributeValue("JournalCompactMinFiles");
@@ -520,6 +525,46 @@ public class ActiveMQServerControlUsingCoreTest extends ActiveMQServerControlTes
             return (Integer) proxy.retrieveAttributeValue("JournalCompactPercentage");
          }
 
+         public long getJournalCompactCount()
+         {
+            return (Long) proxy.retrieveAttributeValue("journalCompactCount", Long.class);
+         }
+
+         public long getJournalLastCompactPauseTime()
+         {
+            return (Long) proxy.retrieveAttributeValue("journalLastCompactPauseTime", Long.class);
+         }
+
+         public long getJournalMaxCompactPauseTime()
+         {
+            return (Long) proxy.retrieveAttributeValue("journalMaxCompactPauseTime", Long.class);
+         }
+
+         public int getJournalReclaimableFiles()
+         {
+            return (Integer) proxy.retrieveAttributeValue("journalReclaimableFiles", Integer.class);
+         }
+
+         public String getJournalLatenciesAsJSON() throws Exception
+         {
+            return (String) proxy.retrieveAttributeValue("journalLatenciesAsJSON");
+         }
+
+         public void resetJournalLatencies() throws Exception
+         {
+            proxy.invokeOperation("resetJournalLatencies");
+         }
+
+         public long getIOBufferPoolHits()
+         {
+            return (Long) proxy.retrieveAttributeValue("IOBufferPoolHits", Long.class);
+         }
+
+         public long getIOBufferPoolMisses()
+         {
+            return (Long) proxy.retrieveAttributeValue("IOBufferPoolMisses", Long.class);
+         }
+
          public boolean isPersistenceEnabled()
          {
             return (Boolean) proxy.retrieveAttributeValue("PersistenceEnabled");
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.integration.persistence;
+
+import java.util.Arrays;
+
+import org.apache.activemq.api.core.client.ClientConsumer;
+import org.apache.activemq.api.core.client.ClientMessage;
+import org.apache.activemq.api.core.client.ClientProducer;
+import org.apache.activemq.api.core.client.ClientSession;
+import org.apache.activemq.api.core.client.ClientSessionFactory;
+import org.apache.activemq.api.core.client.ServerLocator;
+import org.apache.activemq.core.config.Configuration;
+import org.apache.activemq.core.server.ActiveMQServer;
+import org.apache.activemq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedJournalRestartTest extends ServiceTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final String ADDRESS = "ADDRESS";
+
+   private static final int NUMBER_OF_MESSAGES = 200;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testOrderKeptOverRestart() throws Exception
+   {
+      Configuration config = createDefaultConfig()
+         .setJournalStripeDirectories(Arrays.asList(getTestDir() + "/stripe1", getTestDir() + "/stripe2"));
+
+      ActiveMQServer server = createServer(true, config);
+
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory factory = createSessionFactory(locator);
+
+      ClientSession session = factory.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES / 2; i++)
+      {
+         producer.send(createMessage(session, i));
+      }
+
+      session.close();
+
+      // the messages of a transaction go to several stripes too
+      ClientSession txSession = factory.createSession(false, false, false);
+
+      producer = txSession.createProducer(ADDRESS);
+
+      for (int i = NUMBER_OF_MESSAGES / 2; i < NUMBER_OF_MESSAGES; i++)
+      {
+         producer.send(createMessage(txSession, i));
+      }
+
+      txSession.commit();
+
+      txSession.close();
+
+      factory.close();
+
+      server.stop();
+
+      server.start();
+
+      factory = createSessionFactory(locator);
+
+      session = factory.createSession(false, true, true);
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+         Assert.assertEquals(i, message.getIntProperty("i").intValue());
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+   }
+
+   // Private -------------------------------------------------------
+
+   private static ClientMessage createMessage(final ClientSession session, final int i)
+   {
+      ClientMessage message = session.createMessage(true);
+      message.putIntProperty("i", i);
+      return message;
+   }
+}
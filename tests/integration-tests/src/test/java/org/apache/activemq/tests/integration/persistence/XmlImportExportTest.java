@@ -39,6 +39,7 @@ import org.apache.activemq.api.core.client.ClientSession;
 import org.apache.activemq.api.core.client.ClientSessionFactory;
 import org.apache.activemq.api.core.client.ActiveMQClient;
 import org.apache.activemq.api.core.client.ServerLocator;
+import org.apache.activemq.core.config.Configuration;
 import org.apache.activemq.core.persistence.impl.journal.JournalStorageManager;
 import org.apache.activemq.core.persistence.impl.journal.LargeServerMessageImpl;
 import org.apache.activemq.tools.XmlDataConstants;
@@ -1021,6 +1022,128 @@ public class XmlImportExportTest extends ServiceTestBase
       server.stop();
    }
 
+   @Test
+   public void testCompressedMessage() throws Exception
+   {
+      final String QUEUE_NAME = "A1";
+      ActiveMQServer server = createServer(true);
+      AddressSettings defaultSetting = new AddressSettings();
+      defaultSetting.setCompressStoredMessages(true);
+      server.getAddressSettingsRepository().addMatch("#", defaultSetting);
+      server.start();
+      ServerLocator locator = createInVMNonHALocator();
+      ClientSessionFactory factory = locator.createSessionFactory();
+      ClientSession session = factory.createSession(false, true, true);
+
+      session.createQueue(QUEUE_NAME, QUEUE_NAME, true);
+
+      ClientProducer producer = session.createProducer(QUEUE_NAME);
+
+      // large and repetitive enough to be stored compressed
+      StringBuilder body = new StringBuilder();
+      for (int i = 0; i < 100; i++)
+      {
+         body.append("bob123");
+      }
+
+      ClientMessage msg = session.createMessage(Message.TEXT_TYPE, true);
+      msg.getBodyBuffer().writeString(body.toString());
+      msg.putStringProperty("myStringProperty", "myStringPropertyValue");
+      producer.send(msg);
+
+      session.close();
+      locator.close();
+      server.stop();
+
+      ByteArrayOutputStream xmlOutputStream = new ByteArrayOutputStream();
+      XmlDataExporter xmlDataExporter = new XmlDataExporter(xmlOutputStream, getBindingsDir(), getJournalDir(), getPageDir(), getLargeMessagesDir());
+      xmlDataExporter.writeXMLData();
+      System.out.print(new String(xmlOutputStream.toByteArray()));
+
+      clearDataRecreateServerDirs();
+      server.start();
+      locator = createInVMNonHALocator();
+      factory = locator.createSessionFactory();
+      session = factory.createSession(false, false, true);
+      ClientSession managementSession = factory.createSession(false, true, true);
+
+      ByteArrayInputStream xmlInputStream = new ByteArrayInputStream(xmlOutputStream.toByteArray());
+      XmlDataImporter xmlDataImporter = new XmlDataImporter(xmlInputStream, session, managementSession);
+      xmlDataImporter.processXml();
+      ClientConsumer consumer = session.createConsumer(QUEUE_NAME);
+      session.start();
+
+      msg = consumer.receive(CONSUMER_TIMEOUT);
+      assertNotNull(msg);
+      assertEquals(body.toString(), msg.getBodyBuffer().readString());
+      assertEquals("myStringPropertyValue", msg.getStringProperty("myStringProperty"));
+
+      session.close();
+      locator.close();
+      server.stop();
+   }
+
+   @Test
+   public void testStripedJournal() throws Exception
+   {
+      final String QUEUE_NAME = "A1";
+      final String[] stripes = {getTestDir() + "/stripe1", getTestDir() + "/stripe2"};
+      Configuration config = createDefaultConfig()
+         .setJournalStripeDirectories(Arrays.asList(stripes));
+      ActiveMQServer server = createServer(true, config);
+      server.start();
+      ServerLocator locator = createInVMNonHALocator();
+      ClientSessionFactory factory = locator.createSessionFactory();
+      ClientSession session = factory.createSession(false, true, true);
+
+      session.createQueue(QUEUE_NAME, QUEUE_NAME, true);
+
+      ClientProducer producer = session.createProducer(QUEUE_NAME);
+
+      for (int i = 0; i < 20; i++)
+      {
+         ClientMessage msg = session.createMessage(true);
+         msg.putIntProperty("i", i);
+         producer.send(msg);
+      }
+
+      session.close();
+      locator.close();
+      server.stop();
+
+      ByteArrayOutputStream xmlOutputStream = new ByteArrayOutputStream();
+      XmlDataExporter xmlDataExporter = new XmlDataExporter(xmlOutputStream, getBindingsDir(), getJournalDir(), getPageDir(), getLargeMessagesDir(), stripes);
+      xmlDataExporter.writeXMLData();
+      System.out.print(new String(xmlOutputStream.toByteArray()));
+
+      clearDataRecreateServerDirs();
+      server.start();
+      locator = createInVMNonHALocator();
+      factory = locator.createSessionFactory();
+      session = factory.createSession(false, false, true);
+      ClientSession managementSession = factory.createSession(false, true, true);
+
+      ByteArrayInputStream xmlInputStream = new ByteArrayInputStream(xmlOutputStream.toByteArray());
+      XmlDataImporter xmlDataImporter = new XmlDataImporter(xmlInputStream, session, managementSession);
+      xmlDataImporter.processXml();
+      ClientConsumer consumer = session.createConsumer(QUEUE_NAME);
+      session.start();
+
+      // the messages of every stripe were exported, in the order they were sent
+      for (int i = 0; i < 20; i++)
+      {
+         ClientMessage msg = consumer.receive(CONSUMER_TIMEOUT);
+         assertNotNull(msg);
+         assertEquals(i, msg.getIntProperty("i").intValue());
+      }
+
+      assertNull(consumer.receiveImmediate());
+
+      session.close();
+      locator.close();
+      server.stop();
+   }
+
    @Test
    public void testBody2() throws Exception
    {
@@ -951,6 +951,30 @@ public final class ReplicationTest extends ServiceTestBase
       {
       }
 
+      @Override
+      public long getCompactCount()
+      {
+         return 0;
+      }
+
+      @Override
+      public long getLastCompactPauseTime()
+      {
+         return 0;
+      }
+
+      @Override
+      public long getMaxCompactPauseTime()
+      {
+         return 0;
+      }
+
+      @Override
+      public int getReclaimableFilesCount()
+      {
+         return 0;
+      }
+
       @Override
       public void replicationSyncPreserveOldFiles()
       {
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.performance.jmh;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.core.postoffice.DuplicateIDCache;
+import org.apache.activemq.core.postoffice.impl.DuplicateIDCacheImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and insertions on a non persistent {@link DuplicateIDCacheImpl}, as done for every message
+ * carrying a duplicate ID.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DuplicateIDCacheBenchmark
+{
+   private static final int IDS = 1 << 16;
+
+   @Param({"2000", "20000"})
+   public int cacheSize;
+
+   private DuplicateIDCache cache;
+
+   private byte[][] ids;
+
+   private int next;
+
+   @Setup
+   public void setup() throws Exception
+   {
+      cache = new DuplicateIDCacheImpl(new SimpleString("jms.queue.bench"), cacheSize, null, false);
+
+      ids = new byte[IDS][];
+
+      for (int i = 0; i < IDS; i++)
+      {
+         ids[i] = UUID.randomUUID().toString().getBytes();
+      }
+
+      // Warm the cache so it is full and every add will evict the oldest entry
+      for (int i = 0; i < cacheSize; i++)
+      {
+         cache.addToCache(ids[i % IDS], null);
+      }
+   }
+
+   private byte[] nextID()
+   {
+      next = (next + 1) & (IDS - 1);
+      return ids[next];
+   }
+
+   @Benchmark
+   public boolean contains()
+   {
+      return cache.contains(nextID());
+   }
+
+   @Benchmark
+   public void add() throws Exception
+   {
+      cache.addToCache(nextID(), null);
+   }
+
+   @Benchmark
+   public boolean containsThenAdd() throws Exception
+   {
+      byte[] id = nextID();
+
+      boolean duplicate = cache.contains(id);
+
+      if (!duplicate)
+      {
+         cache.addToCache(id, null);
+      }
+
+      return duplicate;
+   }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.core.filter.Filter;
+import org.apache.activemq.core.filter.impl.FilterImpl;
+import org.apache.activemq.core.server.ServerMessage;
+import org.apache.activemq.core.server.impl.ServerMessageImpl;
+import org.apache.activemq.selector.filter.BooleanExpression;
+import org.apache.activemq.selector.impl.SelectorParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selector parsing through {@link SelectorParser} and evaluation through {@link FilterImpl#match(ServerMessage)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark
+{
+   @Param({"region = 'europe'",
+      "region = 'europe' AND price > 100 AND urgent = FALSE",
+      "JMSPriority > 3 AND symbol LIKE 'VO%' AND region IN ('asia', 'europe')"})
+   public String selector;
+
+   private Filter filter;
+
+   private ServerMessage message;
+
+   @Setup
+   public void setup() throws Exception
+   {
+      filter = FilterImpl.createFilter(selector);
+
+      message = new ServerMessageImpl(1, 1024);
+      message.setPriority((byte) 4);
+      message.putStringProperty("region", "europe");
+      message.putStringProperty("symbol", "VOD");
+      message.putDoubleProperty("price", 101.25);
+      message.putBooleanProperty("urgent", false);
+      message.putLongProperty("orderID", 123456789L);
+   }
+
+   @Benchmark
+   public BooleanExpression parse() throws Exception
+   {
+      // The parser keeps a cache of the parsed selectors, we want to measure the parsing itself
+      SelectorParser.clearCache();
+      return SelectorParser.parse(selector);
+   }
+
+   @Benchmark
+   public boolean match()
+   {
+      return filter.match(message);
+   }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.performance.jmh;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link JournalImpl#appendAddRecord} against an in memory {@link FakeSequentialFileFactory}, so the score is the
+ * cost of the journal bookkeeping (locks, record map, file switching and reclaiming) without any disk involved.
+ * <p/>
+ * Every thread keeps {@link #liveRecords} records alive and deletes the oldest one after each add, so the
+ * journal reaches a steady state instead of growing for the duration of the run.
+ * Use <code>-t</code> to measure the contention with several producers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalAppendBenchmark
+{
+   private static final byte RECORD_TYPE = 1;
+
+   @Param({"1024"})
+   public int recordSize;
+
+   @Param({"1", "10000"})
+   public int liveRecords;
+
+   private JournalImpl journal;
+
+   private SimpleEncoding record;
+
+   private final AtomicLong idGenerator = new AtomicLong(0);
+
+   @Setup
+   public void setup() throws Exception
+   {
+      FakeSequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      journal = new JournalImpl(10 * 1024 * 1024, 2, 0, 0, factory, "activemq-data", "amq", 1);
+
+      journal.start();
+
+      journal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+
+      record = new SimpleEncoding(recordSize, (byte) 'a');
+   }
+
+   @TearDown
+   public void tearDown() throws Exception
+   {
+      journal.stop();
+   }
+
+   @State(Scope.Thread)
+   public static class ProducerState
+   {
+      long[] live;
+
+      int position;
+
+      @Setup
+      public void setup(final JournalAppendBenchmark benchmark)
+      {
+         live = new long[benchmark.liveRecords];
+         position = 0;
+         for (int i = 0; i < live.length; i++)
+         {
+            live[i] = -1;
+         }
+      }
+   }
+
+   @Benchmark
+   public void appendAddRecord(final ProducerState producer) throws Exception
+   {
+      long id = idGenerator.incrementAndGet();
+
+      journal.appendAddRecord(id, RECORD_TYPE, record, false);
+
+      long oldest = producer.live[producer.position];
+
+      if (oldest >= 0)
+      {
+         journal.appendDeleteRecord(oldest, false);
+      }
+
+      producer.live[producer.position] = id;
+
+      if (++producer.position == producer.live.length)
+      {
+         producer.position = 0;
+      }
+   }
+
+   @Benchmark
+   public void appendAddRecordTransactional(final ProducerState producer) throws Exception
+   {
+      long txID = idGenerator.incrementAndGet();
+      long id = idGenerator.incrementAndGet();
+
+      journal.appendAddRecordTransactional(txID, id, RECORD_TYPE, record);
+
+      long oldest = producer.live[producer.position];
+
+      if (oldest >= 0)
+      {
+         journal.appendDeleteRecordTransactional(txID, oldest);
+      }
+
+      journal.appendCommitRecord(txID, false);
+
+      producer.live[producer.position] = id;
+
+      if (++producer.position == producer.live.length)
+      {
+         producer.position = 0;
+      }
+   }
+}
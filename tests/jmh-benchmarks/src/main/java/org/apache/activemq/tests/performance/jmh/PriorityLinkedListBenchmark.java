@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.utils.LinkedListIterator;
+import org.apache.activemq.utils.PriorityLinkedListImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The message references of every QueueImpl are held on a {@link PriorityLinkedListImpl}.
+ * Scores are per element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriorityLinkedListBenchmark
+{
+   private static final int ELEMENTS = 1024;
+
+   private static final int PRIORITIES = 10;
+
+   /**
+    * 1 = everything on the same priority, 10 = spread over all the JMS priorities
+    */
+   @Param({"1", "10"})
+   public int usedPriorities;
+
+   private PriorityLinkedListImpl<Long> list;
+
+   private PriorityLinkedListImpl<Long> filledList;
+
+   private Long[] elements;
+
+   @Setup
+   public void setup()
+   {
+      list = new PriorityLinkedListImpl<Long>(PRIORITIES);
+
+      filledList = new PriorityLinkedListImpl<Long>(PRIORITIES);
+
+      elements = new Long[ELEMENTS];
+
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         elements[i] = Long.valueOf(i);
+         filledList.addTail(elements[i], i % usedPriorities);
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ELEMENTS)
+   public long addTailThenPoll()
+   {
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         list.addTail(elements[i], i % usedPriorities);
+      }
+
+      long sum = 0;
+
+      Long value;
+      while ((value = list.poll()) != null)
+      {
+         sum += value;
+      }
+
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ELEMENTS)
+   public long addHeadThenPoll()
+   {
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         list.addHead(elements[i], i % usedPriorities);
+      }
+
+      long sum = 0;
+
+      Long value;
+      while ((value = list.poll()) != null)
+      {
+         sum += value;
+      }
+
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ELEMENTS)
+   public long iterate()
+   {
+      long sum = 0;
+
+      LinkedListIterator<Long> iterator = filledList.iterator();
+      try
+      {
+         while (iterator.hasNext())
+         {
+            sum += iterator.next();
+         }
+      }
+      finally
+      {
+         iterator.close();
+      }
+
+      return sum;
+   }
+}
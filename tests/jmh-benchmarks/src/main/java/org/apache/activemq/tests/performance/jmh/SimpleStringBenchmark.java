@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.api.core.SimpleString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing and equality of {@link SimpleString}, used as the key of pretty much every map on the routing path.
+ * <p/>
+ * The hash is cached on the instance, so {@link #hashFresh()} measures a hash on a newly created string (as happens
+ * for each incoming address or property name) while {@link #hashCached()} measures the cached path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleStringBenchmark
+{
+   @Param({"jms.queue.Q", "jms.topic.prices.europe.equities.LSE.VOD"})
+   public String value;
+
+   private byte[] data;
+
+   private SimpleString cached;
+
+   private SimpleString same;
+
+   private SimpleString different;
+
+   @Setup
+   public void setup()
+   {
+      cached = new SimpleString(value);
+      cached.hashCode();
+      data = cached.getData();
+      same = new SimpleString(value);
+      // same length, last character differs: worst case for a byte by byte comparison
+      different = new SimpleString(value.substring(0, value.length() - 1) + "#");
+   }
+
+   @Benchmark
+   public int hashFresh()
+   {
+      return new SimpleString(data).hashCode();
+   }
+
+   @Benchmark
+   public int hashCached()
+   {
+      return cached.hashCode();
+   }
+
+   @Benchmark
+   public boolean equalsSame()
+   {
+      return cached.equals(same);
+   }
+
+   @Benchmark
+   public boolean equalsDifferent()
+   {
+      return cached.equals(different);
+   }
+}
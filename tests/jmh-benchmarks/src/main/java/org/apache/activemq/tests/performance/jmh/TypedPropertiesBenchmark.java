@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.utils.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode of a {@link TypedProperties} shaped like the properties of a typical JMS message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypedPropertiesBenchmark
+{
+   private TypedProperties properties;
+
+   private ActiveMQBuffer encodeBuffer;
+
+   private ActiveMQBuffer decodeBuffer;
+
+   @Setup
+   public void setup()
+   {
+      properties = new TypedProperties();
+      properties.putSimpleStringProperty(new SimpleString("_AMQ_DUPL_ID"), new SimpleString("b8f4c3e2-7a51-11e4-9a0a-3c970e4a8b2d"));
+      properties.putSimpleStringProperty(new SimpleString("JMSXGroupID"), new SimpleString("group-17"));
+      properties.putSimpleStringProperty(new SimpleString("region"), new SimpleString("europe"));
+      properties.putIntProperty(new SimpleString("JMSXDeliveryCount"), 1);
+      properties.putIntProperty(new SimpleString("priorityClass"), 4);
+      properties.putLongProperty(new SimpleString("_AMQ_SCHED_DELIVERY"), System.currentTimeMillis());
+      properties.putLongProperty(new SimpleString("orderID"), 123456789L);
+      properties.putBooleanProperty(new SimpleString("urgent"), false);
+      properties.putDoubleProperty(new SimpleString("price"), 101.25);
+      properties.putBytesProperty(new SimpleString("token"), new byte[32]);
+
+      int size = properties.getEncodeSize();
+
+      encodeBuffer = ActiveMQBuffers.fixedBuffer(size);
+
+      decodeBuffer = ActiveMQBuffers.fixedBuffer(size);
+      properties.encode(decodeBuffer);
+   }
+
+   @Benchmark
+   public ActiveMQBuffer encode()
+   {
+      encodeBuffer.clear();
+      properties.encode(encodeBuffer);
+      return encodeBuffer;
+   }
+
+   @Benchmark
+   public TypedProperties decode()
+   {
+      decodeBuffer.readerIndex(0);
+      TypedProperties decoded = new TypedProperties();
+      decoded.decode(decodeBuffer);
+      return decoded;
+   }
+
+   @Benchmark
+   public int encodeSize()
+   {
+      return properties.getEncodeSize();
+   }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.performance.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.core.postoffice.Bindings;
+import org.apache.activemq.core.postoffice.BindingsFactory;
+import org.apache.activemq.core.postoffice.impl.BindingsImpl;
+import org.apache.activemq.core.postoffice.impl.LocalQueueBinding;
+import org.apache.activemq.core.postoffice.impl.WildcardAddressManager;
+import org.apache.activemq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routing address lookups on a {@link WildcardAddressManager} holding a topic hierarchy with both
+ * plain and wildcard subscriptions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WildcardAddressManagerBenchmark
+{
+   private static final SimpleString NODE_ID = new SimpleString("bench-node");
+
+   @Param({"10", "100"})
+   public int topics;
+
+   private WildcardAddressManager addressManager;
+
+   private SimpleString[] addresses;
+
+   private int next;
+
+   @Setup
+   public void setup() throws Exception
+   {
+      addressManager = new WildcardAddressManager(new BindingsFactory()
+      {
+         public Bindings createBindings(final SimpleString address) throws Exception
+         {
+            return new BindingsImpl(address, null, null);
+         }
+      });
+
+      addresses = new SimpleString[topics];
+
+      long queueID = 0;
+
+      for (int i = 0; i < topics; i++)
+      {
+         addresses[i] = new SimpleString("jms.topic.prices.region" + (i % 10) + ".instrument" + i);
+
+         addBinding(addresses[i], queueID++);
+      }
+
+      for (int i = 0; i < 10; i++)
+      {
+         addBinding(new SimpleString("jms.topic.prices.region" + i + ".*"), queueID++);
+      }
+
+      addBinding(new SimpleString("jms.topic.prices.#"), queueID++);
+
+      // the first lookup links the address to its wildcards, we measure the steady state afterwards
+      for (SimpleString address : addresses)
+      {
+         addressManager.getBindingsForRoutingAddress(address);
+      }
+   }
+
+   private void addBinding(final SimpleString address, final long queueID) throws Exception
+   {
+      FakeQueue queue = new FakeQueue(new SimpleString("queue-" + queueID), queueID);
+
+      addressManager.addBinding(new LocalQueueBinding(address, queue, NODE_ID));
+   }
+
+   @Benchmark
+   public Bindings lookup() throws Exception
+   {
+      next = (next + 1) % topics;
+      return addressManager.getBindingsForRoutingAddress(addresses[next]);
+   }
+}
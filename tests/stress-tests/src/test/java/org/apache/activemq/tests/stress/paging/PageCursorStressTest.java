@@ -105,6 +105,91 @@ public class PageCursorStressTest extends ServiceTestBase
       System.out.println("Cache size = " + cursorProvider.getCacheSize());
    }
 
+   @Test
+   public void testReadAhead() throws Exception
+   {
+
+      final int NUM_MESSAGES = 100;
+
+      int numberOfPages = addMessages(NUM_MESSAGES, 1024 * 1024);
+
+      assertTrue(numberOfPages > AddressSettings.DEFAULT_PAGE_READ_AHEAD + 2);
+
+      PageCursorProviderImpl cursorProvider = new PageCursorProviderImpl(lookupPageStore(ADDRESS),
+                                                                         server.getStorageManager(),
+                                                                         server.getExecutorFactory().getExecutor(),
+                                                                         server.getExecutorFactory().getExecutor(),
+                                                                         5);
+
+      cursorProvider.readAhead(1);
+
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (System.currentTimeMillis() < timeout && cursorProvider.getCacheSize() < AddressSettings.DEFAULT_PAGE_READ_AHEAD)
+      {
+         Thread.sleep(100);
+      }
+
+      assertEquals(AddressSettings.DEFAULT_PAGE_READ_AHEAD, cursorProvider.getCacheSize());
+
+      // the pages read ahead are the ones after the page the cursor moved into
+      for (int i = 0; i < AddressSettings.DEFAULT_PAGE_READ_AHEAD; i++)
+      {
+         assertTrue(cursorProvider.getPageCache(i + 2).getNumberOfMessages() > 0);
+      }
+
+      assertEquals(AddressSettings.DEFAULT_PAGE_READ_AHEAD, cursorProvider.getCacheSize());
+
+      cursorProvider.stop();
+   }
+
+   @Test
+   public void testReadAheadWithinMaxBytes() throws Exception
+   {
+
+      final int NUM_MESSAGES = 100;
+
+      int numberOfPages = addMessages(NUM_MESSAGES, 1024 * 1024);
+
+      assertTrue(numberOfPages > 5);
+
+      PageCursorProviderImpl cursorProvider = new PageCursorProviderImpl(lookupPageStore(ADDRESS),
+                                                                         server.getStorageManager(),
+                                                                         server.getExecutorFactory().getExecutor(),
+                                                                         server.getExecutorFactory().getExecutor(),
+                                                                         5);
+
+      PageCache current = cursorProvider.getPageCache(1);
+      current.getMessages();
+
+      // room for the page the cursor is on and another one of about the same size, not for a third one
+      cursorProvider.setCacheMaxBytes(current.getMemoryEstimate() * 5 / 2);
+      cursorProvider.setReadAheadPages(3);
+
+      cursorProvider.readAhead(1);
+
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (System.currentTimeMillis() < timeout && cursorProvider.getCacheSize() < 2)
+      {
+         Thread.sleep(100);
+      }
+
+      Thread.sleep(500);
+
+      assertEquals(2, cursorProvider.getCacheSize());
+
+      cursorProvider.setReadAheadPages(0);
+
+      cursorProvider.readAhead(2);
+
+      Thread.sleep(500);
+
+      assertEquals(2, cursorProvider.getCacheSize());
+
+      cursorProvider.stop();
+   }
+
    @Test
    public void testSimpleCursor() throws Exception
    {
@@ -928,6 +928,59 @@ public class AsynchronousFileTest extends AIOTestBase
       Assert.assertFalse(aioBlock.doneCalled);
    }
 
+   /**
+    * The writes queued while the executor is busy are submitted together, an invalid buffer fails
+    * its own write only and the callbacks are still called in order.
+    */
+   @Test
+   public void testInvalidBufferOnBatch() throws Exception
+   {
+      controller = new AsynchronousFileImpl(executor, pollerExecutor);
+      controller.open(fileName, 100);
+
+      final int NUMBER_OF_WRITES = 50;
+      final int INVALID_WRITE = 17;
+      final int SIZE = 512;
+
+      buffer = AsynchronousFileImpl.newBuffer(SIZE);
+      encodeBufer(buffer);
+
+      preAlloc(controller, NUMBER_OF_WRITES * SIZE);
+
+      final CountDownLatch executorBlocked = new CountDownLatch(1);
+
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               executorBlocked.await();
+            }
+            catch (InterruptedException ignored)
+            {
+            }
+         }
+      });
+
+      CountDownLatch latchDone = new CountDownLatch(NUMBER_OF_WRITES);
+      AtomicInteger errors = new AtomicInteger(0);
+      ArrayList<Integer> result = new ArrayList<Integer>();
+
+      for (int i = 0; i < NUMBER_OF_WRITES; i++)
+      {
+         ByteBuffer bufferToWrite = i == INVALID_WRITE ? ByteBuffer.allocate(SIZE) : buffer;
+         controller.write(i * SIZE, SIZE, bufferToWrite, new CountDownCallback(latchDone, errors, result, i));
+      }
+
+      executorBlocked.countDown();
+
+      UnitTestCase.waitForLatch(latchDone);
+
+      Assert.assertEquals(1, errors.get());
+      CountDownCallback.checkResults(NUMBER_OF_WRITES, result);
+   }
+
    @Test
    public void testInvalidAlloc() throws Exception
    {
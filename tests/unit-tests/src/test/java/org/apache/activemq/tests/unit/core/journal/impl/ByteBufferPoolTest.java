@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.journal.impl;
+
+import java.nio.ByteBuffer;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.core.journal.ByteBufferPool;
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.core.journal.impl.NIOSequentialFileFactory;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteBufferPoolTest extends UnitTestCase
+{
+   @Test
+   public void testReuseBuffers() throws Exception
+   {
+      ByteBufferPool pool = new ByteBufferPool(1024 * 1024);
+
+      ByteBuffer buffer = pool.borrow(1000);
+
+      Assert.assertTrue(buffer.isDirect());
+      Assert.assertEquals(0, buffer.position());
+      Assert.assertEquals(1000, buffer.limit());
+      Assert.assertTrue(buffer.capacity() >= 1000 && buffer.capacity() <= 1250);
+      Assert.assertEquals(1, pool.getMisses());
+
+      while (buffer.hasRemaining())
+      {
+         buffer.put((byte) 'x');
+      }
+
+      pool.release(buffer);
+
+      Assert.assertEquals(buffer.capacity(), pool.getPooledBytes());
+
+      // a smaller size of the same class gets the same buffer back, cleared
+      ByteBuffer reused = pool.borrow(990);
+
+      Assert.assertSame(buffer, reused);
+      Assert.assertEquals(990, reused.limit());
+      Assert.assertEquals(1, pool.getHits());
+      Assert.assertEquals(0, pool.getPooledBytes());
+
+      for (int i = 0; i < reused.limit(); i++)
+      {
+         Assert.assertEquals(0, reused.get(i));
+      }
+
+      // a different class allocates
+      Assert.assertNotSame(buffer, pool.borrow(3000));
+      Assert.assertEquals(2, pool.getMisses());
+   }
+
+   @Test
+   public void testSizeClasses() throws Exception
+   {
+      ByteBufferPool pool = new ByteBufferPool(Long.MAX_VALUE);
+
+      for (int size = 1; size < 1024 * 1024; size += 97)
+      {
+         ByteBuffer buffer = pool.borrow(size);
+
+         Assert.assertEquals(size, buffer.limit());
+         Assert.assertTrue("size=" + size + ", capacity=" + buffer.capacity(),
+                           buffer.capacity() <= Math.max(512, size + size / 4));
+
+         pool.release(buffer);
+      }
+   }
+
+   @Test
+   public void testPooledBytesLimit() throws Exception
+   {
+      ByteBufferPool pool = new ByteBufferPool(4096);
+
+      ByteBuffer buffer1 = pool.borrow(2048);
+      ByteBuffer buffer2 = pool.borrow(2048);
+      ByteBuffer buffer3 = pool.borrow(2048);
+
+      pool.release(buffer1);
+      pool.release(buffer2);
+      pool.release(buffer3);
+
+      Assert.assertEquals(4096, pool.getPooledBytes());
+
+      // larger than the pool, never pooled
+      ByteBuffer large = pool.borrow(10000);
+
+      Assert.assertTrue(large.isDirect());
+      Assert.assertEquals(10000, large.limit());
+
+      pool.clear();
+
+      pool.release(large);
+
+      // heap buffers aren't pooled either
+      pool.release(ByteBuffer.allocate(2048));
+
+      Assert.assertEquals(0, pool.getPooledBytes());
+   }
+
+   @Test
+   public void testNIOFileWrites() throws Exception
+   {
+      ByteBufferPool pool = new ByteBufferPool(1024 * 1024);
+
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      factory.setBufferPool(pool);
+
+      factory.start();
+
+      SequentialFile file = factory.createSequentialFile("pool.tst", 1);
+
+      try
+      {
+         file.open();
+
+         ActiveMQBuffer bytes = ActiveMQBuffers.fixedBuffer(1000);
+
+         for (int i = 0; i < 1000; i++)
+         {
+            bytes.writeByte(getSamplebyte(i));
+         }
+
+         for (int i = 0; i < 10; i++)
+         {
+            file.write(bytes, true);
+         }
+
+         // each write gave its buffer back once written
+         Assert.assertEquals(9, pool.getHits());
+         Assert.assertEquals(1, pool.getMisses());
+         Assert.assertTrue(pool.getPooledBytes() > 0);
+
+         file.position(0);
+
+         ByteBuffer read = factory.allocateDirectBuffer(10000);
+
+         Assert.assertEquals(10000, file.read(read));
+
+         for (int i = 0; i < 10000; i++)
+         {
+            Assert.assertEquals(getSamplebyte(i % 1000), read.get(i));
+         }
+
+         factory.releaseDirectBuffer(read);
+      }
+      finally
+      {
+         file.close();
+
+         factory.stop();
+      }
+   }
+}
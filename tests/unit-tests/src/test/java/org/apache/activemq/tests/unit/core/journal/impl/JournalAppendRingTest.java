@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalAppendRingTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int JOURNAL_SIZE = 10 * 1024;
+
+   // Attributes ----------------------------------------------------
+
+   private FakeSequentialFileFactory factory;
+
+   private JournalImpl journalImpl = null;
+
+   private ArrayList<RecordInfo> records = null;
+
+   private ArrayList<PreparedTransactionInfo> transactions = null;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testConcurrentAppends() throws Exception
+   {
+      final int THREADS = 10;
+
+      final int RECORDS = 200;
+
+      setupJournal(8);
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+      class LocalThread extends Thread
+      {
+         final int base;
+
+         LocalThread(final int base)
+         {
+            this.base = base;
+         }
+
+         @Override
+         public void run()
+         {
+            try
+            {
+               start.await();
+
+               for (int i = 0; i < RECORDS; i++)
+               {
+                  long id = base + i;
+                  journalImpl.appendAddRecord(id, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+                  journalImpl.appendUpdateRecord(id, (byte) 1, new SimpleEncoding(10, (byte) 2), false);
+                  if (i % 2 == 0)
+                  {
+                     journalImpl.appendDeleteRecord(id, i % 10 == 0);
+                  }
+               }
+            }
+            catch (Throwable e)
+            {
+               error.compareAndSet(null, e);
+            }
+         }
+      }
+
+      LocalThread[] threads = new LocalThread[THREADS];
+
+      for (int i = 0; i < THREADS; i++)
+      {
+         threads[i] = new LocalThread(i * RECORDS);
+         threads[i].start();
+      }
+
+      start.countDown();
+
+      for (LocalThread t : threads)
+      {
+         t.join();
+      }
+
+      Assert.assertNull(error.get());
+
+      journalImpl.debugWait();
+
+      Assert.assertEquals(THREADS * RECORDS / 2, journalImpl.getNumberOfRecords());
+
+      setupJournal(8);
+
+      Assert.assertEquals(THREADS * RECORDS / 2, records.size());
+   }
+
+   @Test
+   public void testTransactionalAppends() throws Exception
+   {
+      setupJournal(8);
+
+      for (int i = 0; i < 10; i++)
+      {
+         journalImpl.appendAddRecordTransactional(1L, i, (byte) 1, new SimpleEncoding(1, (byte) 0));
+      }
+
+      journalImpl.appendCommitRecord(1L, true);
+
+      for (int i = 10; i < 20; i++)
+      {
+         journalImpl.appendAddRecordTransactional(2L, i, (byte) 1, new SimpleEncoding(1, (byte) 0));
+      }
+
+      journalImpl.appendRollbackRecord(2L, true);
+
+      setupJournal(8);
+
+      Assert.assertEquals(10, records.size());
+      Assert.assertEquals(0, transactions.size());
+   }
+
+   @Test
+   public void testErrorReportedToCallback() throws Exception
+   {
+      setupJournal(8);
+
+      try
+      {
+         // the writer thread can't throw to us, the failure has to come back through the callback
+         journalImpl.appendDeleteRecord(1L, true);
+         Assert.fail("Exception expected");
+      }
+      catch (Exception ignored)
+      {
+      }
+
+      journalImpl.appendAddRecord(2L, (byte) 1, new SimpleEncoding(1, (byte) 0), true);
+
+      setupJournal(8);
+
+      Assert.assertEquals(1, records.size());
+   }
+
+   @Test
+   public void testStopRunsPendingAppends() throws Exception
+   {
+      setupJournal(4);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         journalImpl.appendAddRecord(i, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+      }
+
+      setupJournal(4);
+
+      Assert.assertEquals(1000, records.size());
+   }
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+
+      records = new ArrayList<RecordInfo>();
+
+      transactions = new ArrayList<PreparedTransactionInfo>();
+
+      factory = null;
+
+      journalImpl = null;
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      if (journalImpl != null)
+      {
+         try
+         {
+            journalImpl.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void setupJournal(final int ringSize) throws Exception
+   {
+      if (factory == null)
+      {
+         factory = new FakeSequentialFileFactory(1, true);
+      }
+
+      if (journalImpl != null)
+      {
+         journalImpl.stop();
+      }
+
+      journalImpl = new JournalImpl(JOURNAL_SIZE, 5, 0, 0, factory, "tt", "tt", 1000);
+
+      journalImpl.setAppendRingSize(ringSize);
+
+      journalImpl.start();
+
+      records.clear();
+      transactions.clear();
+
+      journalImpl.load(records, transactions, null);
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -0,0 +1,342 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.journal.impl;
+
+import java.util.ArrayList;
+
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.SequentialFile;
+import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalCheckpointTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int JOURNAL_SIZE = 10 * 1024;
+
+   private static final String CHECKPOINT_FILE = "tt.checkpoint";
+
+   // Attributes ----------------------------------------------------
+
+   private FakeSequentialFileFactory factory;
+
+   private JournalImpl journalImpl = null;
+
+   private ArrayList<RecordInfo> records = null;
+
+   private ArrayList<PreparedTransactionInfo> transactions = null;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testCheckpointLoadMatchesFullLoad() throws Exception
+   {
+      setupJournal(2);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         journalImpl.appendAddRecord(i, (byte) 1, new SimpleEncoding(20, (byte) i), false);
+
+         if (i % 3 == 0)
+         {
+            journalImpl.appendUpdateRecord(i, (byte) 1, new SimpleEncoding(20, (byte) (i + 1)), false);
+         }
+
+         if (i % 5 == 0)
+         {
+            journalImpl.appendDeleteRecord(i, false);
+         }
+      }
+
+      // transactions spanning several files, one of them is never completed
+      for (int i = 1000; i < 1200; i++)
+      {
+         journalImpl.appendAddRecordTransactional(1L, i, (byte) 1, new SimpleEncoding(20, (byte) 1));
+         journalImpl.appendAddRecordTransactional(2L, i + 1000, (byte) 1, new SimpleEncoding(20, (byte) 1));
+         journalImpl.appendAddRecordTransactional(3L, i + 2000, (byte) 1, new SimpleEncoding(20, (byte) 1));
+         journalImpl.appendAddRecordTransactional(4L, i + 3000, (byte) 1, new SimpleEncoding(20, (byte) 1));
+
+         if (i % 10 == 1)
+         {
+            journalImpl.appendDeleteRecordTransactional(1L, i - 1000);
+         }
+
+         if (i % 10 == 2)
+         {
+            journalImpl.appendDeleteRecordTransactional(3L, i - 1000);
+         }
+      }
+
+      journalImpl.appendCommitRecord(1L, false);
+      journalImpl.appendRollbackRecord(2L, false);
+      journalImpl.appendPrepareRecord(3L, new SimpleEncoding(10, (byte) 3), false);
+
+      // the records after the checkpoint are replayed
+      for (int i = 5000; i < 5400; i++)
+      {
+         journalImpl.appendAddRecord(i, (byte) 1, new SimpleEncoding(20, (byte) i), false);
+      }
+
+      journalImpl.debugWait();
+
+      waitForCheckpoint();
+
+      setupJournal(2);
+
+      Assert.assertTrue("the checkpoint should be kept after loading from it", checkpointExists());
+
+      RecordInfo[] checkpointRecords = records.toArray(new RecordInfo[records.size()]);
+
+      Assert.assertEquals(1, transactions.size());
+      Assert.assertEquals(3L, transactions.get(0).id);
+      Assert.assertEquals(200, transactions.get(0).records.size());
+      Assert.assertEquals(20, transactions.get(0).recordsToDelete.size());
+
+      // without checkpoints the journal is loaded from all its files
+      setupJournal(0);
+
+      Assert.assertFalse(checkpointExists());
+
+      assertSameRecords(checkpointRecords);
+
+      Assert.assertEquals(1, transactions.size());
+      Assert.assertEquals(3L, transactions.get(0).id);
+      Assert.assertEquals(200, transactions.get(0).records.size());
+      Assert.assertEquals(20, transactions.get(0).recordsToDelete.size());
+
+      // the journal must be usable after a load from a checkpoint
+      journalImpl.appendAddRecord(6000, (byte) 1, new SimpleEncoding(20, (byte) 1), false);
+      journalImpl.appendCommitRecord(3L, false);
+
+      setupJournal(0);
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(6000, records.get(records.size() - 1).id);
+   }
+
+   @Test
+   public void testCheckpointWithReclaimedFiles() throws Exception
+   {
+      setupJournal(3);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         journalImpl.appendAddRecord(i, (byte) 1, new SimpleEncoding(20, (byte) i), false);
+
+         if (i % 4 == 0)
+         {
+            journalImpl.appendUpdateRecord(i, (byte) 1, new SimpleEncoding(20, (byte) (i + 1)), false);
+         }
+      }
+
+      // most of the files the checkpoints covered are reclaimed while new ones are written
+      for (int i = 0; i < 950; i++)
+      {
+         journalImpl.appendDeleteRecord(i, false);
+
+         journalImpl.appendAddRecord(i + 2000, (byte) 1, new SimpleEncoding(20, (byte) i), false);
+      }
+
+      journalImpl.debugWait();
+
+      waitForCheckpoint();
+
+      setupJournal(3);
+
+      RecordInfo[] checkpointRecords = records.toArray(new RecordInfo[records.size()]);
+
+      Assert.assertEquals(1000, checkpointRecords.length - countUpdates(checkpointRecords));
+
+      setupJournal(0);
+
+      assertSameRecords(checkpointRecords);
+   }
+
+   @Test
+   public void testCompactingDeletesCheckpoint() throws Exception
+   {
+      setupJournal(1);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         journalImpl.appendAddRecord(i, (byte) 1, new SimpleEncoding(20, (byte) i), false);
+
+         if (i % 2 == 0)
+         {
+            journalImpl.appendDeleteRecord(i, false);
+         }
+      }
+
+      journalImpl.debugWait();
+
+      waitForCheckpoint();
+
+      setupJournal(1);
+
+      Assert.assertTrue(checkpointExists());
+
+      journalImpl.testCompact();
+
+      Assert.assertFalse(checkpointExists());
+
+      setupJournal(1);
+
+      Assert.assertEquals(500, records.size());
+   }
+
+   @Test
+   public void testInvalidCheckpointFiles() throws Exception
+   {
+      factory = new FakeSequentialFileFactory(1, true);
+
+      journalImpl = new JournalImpl(JOURNAL_SIZE, 5, 0, 0, factory, "tt", "tt", 1000);
+
+      try
+      {
+         journalImpl.setCheckpointFiles(-1);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      journalImpl = null;
+   }
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+
+      records = new ArrayList<RecordInfo>();
+
+      transactions = new ArrayList<PreparedTransactionInfo>();
+
+      factory = null;
+
+      journalImpl = null;
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      if (journalImpl != null)
+      {
+         try
+         {
+            journalImpl.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void setupJournal(final int checkpointFiles) throws Exception
+   {
+      if (factory == null)
+      {
+         factory = new FakeSequentialFileFactory(1, true);
+      }
+
+      if (journalImpl != null)
+      {
+         journalImpl.stop();
+      }
+
+      journalImpl = new JournalImpl(JOURNAL_SIZE, 2, 0, 0, factory, "tt", "tt", 1000);
+
+      journalImpl.setCheckpointFiles(checkpointFiles);
+
+      journalImpl.start();
+
+      records.clear();
+      transactions.clear();
+
+      journalImpl.load(records, transactions, null);
+   }
+
+   /**
+    * Checkpoints are written in the background, stopping the journal doesn't wait for the ones not started yet
+    */
+   private void waitForCheckpoint() throws Exception
+   {
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (!checkpointExists() && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertTrue("no checkpoint was written", checkpointExists());
+   }
+
+   private boolean checkpointExists()
+   {
+      // looked up without createSequentialFile, which would move the position of a file being read
+      SequentialFile file = factory.getFileMap().get(CHECKPOINT_FILE);
+
+      return file != null && file.exists();
+   }
+
+   private void assertSameRecords(final RecordInfo[] expected)
+   {
+      Assert.assertEquals(expected.length, records.size());
+
+      for (int i = 0; i < expected.length; i++)
+      {
+         Assert.assertEquals(expected[i].id, records.get(i).id);
+         Assert.assertEquals(expected[i].isUpdate, records.get(i).isUpdate);
+         Assert.assertArrayEquals(expected[i].data, records.get(i).data);
+      }
+   }
+
+   private static int countUpdates(final RecordInfo[] recordInfos)
+   {
+      int updates = 0;
+
+      for (RecordInfo info : recordInfos)
+      {
+         if (info.isUpdate)
+         {
+            updates++;
+         }
+      }
+
+      return updates;
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -1515,6 +1515,46 @@ public abstract class JournalImplTestUnit extends JournalImplTestBase
       Assert.assertEquals(2, journal.getIDMapSize());
    }
 
+   // file 1: add 1
+   // file 2: delete 1 tx
+   // file 3: add 3
+   // file 4: commit 1, delete 3
+
+   @Test
+   public void testTransactionalDeleteInClosedFileReclaim() throws Exception
+   {
+      setup(2, calculateRecordSize(JournalImpl.SIZE_HEADER, getAlignment()) + calculateRecordSize(recordLength,
+                                                                                                  getAlignment()), true);
+      createJournal();
+      startJournal();
+      load();
+
+      addWithSize(recordLength - JournalImpl.SIZE_ADD_RECORD - 1, 1);
+
+      deleteTx(2, 1);
+
+      // closes the file holding the delete before the transaction is committed
+      addWithSize(recordLength - JournalImpl.SIZE_ADD_RECORD - 1, 3);
+
+      commit(2);
+
+      delete(3);
+
+      journal.forceMoveNextFile();
+
+      Assert.assertEquals(4, journal.getDataFilesCount());
+
+      // the delete only counts against file 1 once committed, file 1 can't be left behind
+      checkAndReclaimFiles();
+
+      Assert.assertEquals(0, journal.getDataFilesCount());
+
+      stopJournal(false);
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
    // file 1: add 1 tx,
    // file 2: commit 1, add 2, delete 2
    // file 3: add 3
@@ -0,0 +1,320 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.journal.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.activemq.api.core.ActiveMQBuffer;
+import org.apache.activemq.api.core.ActiveMQBuffers;
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.impl.JournalFile;
+import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.core.journal.impl.dataformat.VariableLengthEncoding;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackedRecordsTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int JOURNAL_SIZE = 10 * 1024;
+
+   // Attributes ----------------------------------------------------
+
+   private FakeSequentialFileFactory factory;
+
+   private JournalImpl journalImpl = null;
+
+   private ArrayList<RecordInfo> records = null;
+
+   private ArrayList<PreparedTransactionInfo> transactions = null;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testPackedRecordSize() throws Exception
+   {
+      setupJournal(true);
+
+      long position = journalImpl.getCurrentFile().getFile().position();
+
+      journalImpl.appendAddRecord(1, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+
+      // one byte for the ID, one for the size and one for the user record type
+      Assert.assertEquals(JournalImpl.SIZE_PACKED_RECORD + 3 + 10, journalImpl.getCurrentFile().getFile().position() -
+         position);
+
+      position = journalImpl.getCurrentFile().getFile().position();
+
+      journalImpl.appendDeleteRecord(1, false);
+
+      Assert.assertEquals(JournalImpl.SIZE_PACKED_RECORD + 1, journalImpl.getCurrentFile().getFile().position() -
+         position);
+
+      setupJournal(false);
+
+      position = journalImpl.getCurrentFile().getFile().position();
+
+      journalImpl.appendAddRecord(2, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+
+      Assert.assertEquals(JournalImpl.SIZE_ADD_RECORD + 1 + 10, journalImpl.getCurrentFile().getFile().position() -
+         position);
+   }
+
+   @Test
+   public void testPackedRecordsReload() throws Exception
+   {
+      setupJournal(true);
+
+      addRecords(0);
+
+      setupJournal(true);
+
+      checkRecords(0);
+
+      // the format doesn't depend on the setting
+      setupJournal(false);
+
+      checkRecords(0);
+   }
+
+   @Test
+   public void testMixedFormats() throws Exception
+   {
+      setupJournal(false);
+
+      addRecords(0);
+
+      setupJournal(true);
+
+      addRecords(1000);
+
+      setupJournal(false);
+
+      checkRecords(0);
+      checkRecords(1000);
+
+      journalImpl.setPackedRecords(true);
+
+      journalImpl.testCompact();
+
+      setupJournal(true);
+
+      checkRecords(0);
+      checkRecords(1000);
+   }
+
+   @Test
+   public void testFormatVersion() throws Exception
+   {
+      setupJournal(false);
+
+      addRecords(0);
+
+      Assert.assertEquals(JournalImpl.FORMAT_VERSION, journalImpl.getCurrentFile().getJournalVersion());
+
+      // the packed records don't go to the file written without them
+      setupJournal(true);
+
+      Assert.assertEquals(JournalImpl.PACKED_FORMAT_VERSION, journalImpl.getCurrentFile().getJournalVersion());
+
+      for (JournalFile file : journalImpl.getDataFiles())
+      {
+         Assert.assertEquals(JournalImpl.FORMAT_VERSION, file.getJournalVersion());
+      }
+
+      addRecords(1000);
+
+      setupJournal(true);
+
+      checkRecords(0);
+      checkRecords(1000);
+   }
+
+   @Test
+   public void testVariableLengthEncoding() throws Exception
+   {
+      long[] values = new long[]{0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+
+      ActiveMQBuffer buffer = ActiveMQBuffers.fixedBuffer(values.length * VariableLengthEncoding.MAX_SIZE);
+
+      for (long value : values)
+      {
+         int start = buffer.writerIndex();
+
+         VariableLengthEncoding.write(buffer, value);
+
+         Assert.assertEquals(VariableLengthEncoding.sizeOf(value), buffer.writerIndex() - start);
+      }
+
+      Assert.assertEquals(1, VariableLengthEncoding.sizeOf(127));
+      Assert.assertEquals(2, VariableLengthEncoding.sizeOf(128));
+      Assert.assertEquals(VariableLengthEncoding.MAX_SIZE, VariableLengthEncoding.sizeOf(-1));
+
+      ByteBuffer read = ByteBuffer.wrap(buffer.toByteBuffer().array(), 0, buffer.writerIndex());
+
+      for (long value : values)
+      {
+         Assert.assertEquals(VariableLengthEncoding.sizeOf(value), VariableLengthEncoding.length(read, read.limit()));
+         Assert.assertEquals(value, VariableLengthEncoding.read(read));
+      }
+
+      // a value cut by the end of the file
+      read.position(read.limit() - VariableLengthEncoding.MAX_SIZE);
+
+      Assert.assertEquals(-1, VariableLengthEncoding.length(read, read.limit() - 1));
+   }
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+
+      records = new ArrayList<RecordInfo>();
+
+      transactions = new ArrayList<PreparedTransactionInfo>();
+
+      factory = null;
+
+      journalImpl = null;
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      if (journalImpl != null)
+      {
+         try
+         {
+            journalImpl.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void addRecords(final long base) throws Exception
+   {
+      for (long i = base; i < base + 100; i++)
+      {
+         journalImpl.appendAddRecord(i, (byte) 1, new SimpleEncoding(20, (byte) i), false);
+
+         if (i % 3 == 0)
+         {
+            journalImpl.appendUpdateRecord(i, (byte) 2, new SimpleEncoding(20, (byte) (i + 1)), false);
+         }
+
+         if (i % 5 == 0)
+         {
+            journalImpl.appendDeleteRecord(i, false);
+         }
+      }
+
+      // a committed transaction replacing records, and a rolled back one
+      journalImpl.appendAddRecordTransactional(base + 1, base + 200, (byte) 1, new SimpleEncoding(20, (byte) 1));
+      journalImpl.appendUpdateRecordTransactional(base + 1, base + 1, (byte) 1, new SimpleEncoding(20, (byte) 1));
+      journalImpl.appendDeleteRecordTransactional(base + 1, base + 2, new SimpleEncoding(5, (byte) 1));
+      journalImpl.appendCommitRecord(base + 1, false);
+
+      journalImpl.appendAddRecordTransactional(base + 2, base + 300, (byte) 1, new SimpleEncoding(20, (byte) 1));
+      journalImpl.appendDeleteRecordTransactional(base + 2, base + 4);
+      journalImpl.appendRollbackRecord(base + 2, false);
+
+      journalImpl.debugWait();
+   }
+
+   private void checkRecords(final long base)
+   {
+      Set<Long> expected = new HashSet<Long>();
+
+      for (long i = base; i < base + 100; i++)
+      {
+         if (i % 5 != 0 && i != base + 2)
+         {
+            expected.add(i);
+         }
+      }
+
+      expected.add(base + 200);
+
+      Set<Long> ids = new HashSet<Long>();
+
+      for (RecordInfo info : records)
+      {
+         if (info.id >= base && info.id < base + 1000)
+         {
+            ids.add(info.id);
+
+            if (info.id == base + 3 && info.isUpdate)
+            {
+               Assert.assertEquals(2, info.userRecordType);
+               Assert.assertEquals((byte) (base + 4), info.data[0]);
+            }
+         }
+      }
+
+      Assert.assertEquals(expected, ids);
+   }
+
+   private void setupJournal(final boolean packed) throws Exception
+   {
+      if (factory == null)
+      {
+         factory = new FakeSequentialFileFactory(1, true);
+      }
+
+      if (journalImpl != null)
+      {
+         journalImpl.stop();
+      }
+
+      journalImpl = new JournalImpl(JOURNAL_SIZE, 2, 0, 0, factory, "tt", "tt", 1000);
+
+      journalImpl.setPackedRecords(packed);
+
+      journalImpl.start();
+
+      records.clear();
+      transactions.clear();
+
+      journalImpl.load(records, transactions, null);
+
+      Assert.assertEquals(0, transactions.size());
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
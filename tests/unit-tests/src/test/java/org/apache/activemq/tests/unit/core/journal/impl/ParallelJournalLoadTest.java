@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelJournalLoadTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int JOURNAL_SIZE = 10 * 1024;
+
+   // Attributes ----------------------------------------------------
+
+   private FakeSequentialFileFactory factory;
+
+   private JournalImpl journalImpl = null;
+
+   private ArrayList<RecordInfo> records = null;
+
+   private ArrayList<PreparedTransactionInfo> transactions = null;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testParallelLoadMatchesSequentialLoad() throws Exception
+   {
+      setupJournal(1);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         journalImpl.appendAddRecord(i, (byte) 1, new SimpleEncoding(20, (byte) i), false);
+
+         if (i % 3 == 0)
+         {
+            journalImpl.appendUpdateRecord(i, (byte) 1, new SimpleEncoding(20, (byte) (i + 1)), false);
+         }
+
+         if (i % 5 == 0)
+         {
+            journalImpl.appendDeleteRecord(i, false);
+         }
+      }
+
+      // transactions spanning several files
+      for (int i = 1000; i < 1200; i++)
+      {
+         journalImpl.appendAddRecordTransactional(1L, i, (byte) 1, new SimpleEncoding(20, (byte) 1));
+         journalImpl.appendAddRecordTransactional(2L, i + 1000, (byte) 1, new SimpleEncoding(20, (byte) 1));
+         journalImpl.appendAddRecordTransactional(3L, i + 2000, (byte) 1, new SimpleEncoding(20, (byte) 1));
+      }
+
+      journalImpl.appendCommitRecord(1L, false);
+      journalImpl.appendRollbackRecord(2L, false);
+      journalImpl.appendPrepareRecord(3L, new SimpleEncoding(10, (byte) 3), false);
+
+      journalImpl.debugWait();
+
+      setupJournal(1);
+
+      Assert.assertTrue(journalImpl.getDataFilesCount() > 4);
+
+      RecordInfo[] sequentialRecords = records.toArray(new RecordInfo[records.size()]);
+      Assert.assertEquals(1, transactions.size());
+      Assert.assertEquals(200, transactions.get(0).records.size());
+
+      setupJournal(4);
+
+      Assert.assertEquals(sequentialRecords.length, records.size());
+      Assert.assertTrue(Arrays.equals(sequentialRecords, records.toArray(new RecordInfo[records.size()])));
+
+      for (int i = 0; i < sequentialRecords.length; i++)
+      {
+         Assert.assertArrayEquals(sequentialRecords[i].data, records.get(i).data);
+      }
+
+      Assert.assertEquals(1, transactions.size());
+      Assert.assertEquals(3L, transactions.get(0).id);
+      Assert.assertEquals(200, transactions.get(0).records.size());
+
+      // the journal must be usable after a parallel load
+      journalImpl.appendAddRecord(5000, (byte) 1, new SimpleEncoding(20, (byte) 1), false);
+      journalImpl.appendCommitRecord(3L, false);
+
+      setupJournal(3);
+
+      Assert.assertEquals(sequentialRecords.length + 201, records.size());
+      Assert.assertEquals(0, transactions.size());
+   }
+
+   @Test
+   public void testInvalidParallelism() throws Exception
+   {
+      factory = new FakeSequentialFileFactory(1, true);
+
+      journalImpl = new JournalImpl(JOURNAL_SIZE, 5, 0, 0, factory, "tt", "tt", 1000);
+
+      try
+      {
+         journalImpl.setLoadParallelism(0);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      journalImpl = null;
+   }
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+
+      records = new ArrayList<RecordInfo>();
+
+      transactions = new ArrayList<PreparedTransactionInfo>();
+
+      factory = null;
+
+      journalImpl = null;
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      if (journalImpl != null)
+      {
+         try
+         {
+            journalImpl.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void setupJournal(final int loadParallelism) throws Exception
+   {
+      if (factory == null)
+      {
+         factory = new FakeSequentialFileFactory(1, true);
+      }
+
+      if (journalImpl != null)
+      {
+         journalImpl.stop();
+      }
+
+      journalImpl = new JournalImpl(JOURNAL_SIZE, 2, 0, 0, factory, "tt", "tt", 1000);
+
+      journalImpl.setLoadParallelism(loadParallelism);
+
+      journalImpl.start();
+
+      records.clear();
+      transactions.clear();
+
+      journalImpl.load(records, transactions, null);
+   }
+
+   // Inner classes -------------------------------------------------
+
+}
@@ -19,6 +19,7 @@ import org.junit.Before;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -719,6 +720,78 @@ public class ReclaimerTest extends UnitTestCase
       assertCantDelete(2);
    }
 
+   @Test
+   public void testFileClosed() throws Exception
+   {
+      setup(3);
+
+      setupPosNeg(0, 10);
+      setupPosNeg(1, 10, 10);
+      setupPosNeg(2, 0, 0, 10);
+
+      reclaimer.scan(new JournalFile[]{files[0]});
+
+      assertCantDelete(0);
+      assertEquals(0, reclaimer.getReclaimableCount());
+
+      reclaimer.fileClosed(files[1]);
+
+      assertCanDelete(0);
+      assertCantDelete(1);
+      assertEquals(1, reclaimer.getReclaimableCount());
+
+      reclaimer.fileClosed(files[2]);
+
+      assertCanDelete(0, 1, 2);
+      assertEquals(3, reclaimer.getReclaimableCount());
+
+      assertEquals(Arrays.asList(files), reclaimer.pollReclaimable());
+      assertEquals(0, reclaimer.getReclaimableCount());
+      assertTrue(reclaimer.isTracking(0));
+   }
+
+   @Test
+   public void testFileClosedReclaimsDependents() throws Exception
+   {
+      setup(3);
+
+      setupPosNeg(0, 10);
+      setupPosNeg(1, 0, 5);
+      setupPosNeg(2, 0, 5);
+
+      reclaimer.scan(new JournalFile[]{files[0]});
+
+      reclaimer.fileClosed(files[1]);
+
+      assertCantDelete(0, 1);
+
+      // the negatives completing file 0 also release file 1, which only waited on it
+      reclaimer.fileClosed(files[2]);
+
+      assertCanDelete(0, 1, 2);
+      assertEquals(3, reclaimer.getReclaimableCount());
+   }
+
+   @Test
+   public void testInvalidate() throws Exception
+   {
+      setup(2);
+
+      setupPosNeg(0, 10);
+      setupPosNeg(1, 0, 10);
+
+      reclaimer.scan(new JournalFile[]{files[0]});
+      assertTrue(reclaimer.isTracking(1));
+
+      reclaimer.invalidate();
+      reclaimer.fileClosed(files[1]);
+
+      assertFalse(reclaimer.isTracking(1));
+      assertFalse(reclaimer.isTracking(2));
+      assertCantDelete(0, 1);
+      assertEquals(0, reclaimer.getReclaimableCount());
+   }
+
    // Private
    // ------------------------------------------------------------------------
 
@@ -0,0 +1,529 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.activemq.api.core.ActiveMQException;
+import org.apache.activemq.core.journal.EncodingSupport;
+import org.apache.activemq.core.journal.IOCompletion;
+import org.apache.activemq.core.journal.LoaderCallback;
+import org.apache.activemq.core.journal.PreparedTransactionInfo;
+import org.apache.activemq.core.journal.RecordInfo;
+import org.apache.activemq.core.journal.SequentialFileFactory;
+import org.apache.activemq.core.journal.impl.JournalImpl;
+import org.apache.activemq.core.journal.impl.SimpleWaitIOCallback;
+import org.apache.activemq.core.journal.impl.StripedJournal;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.apache.activemq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StripedJournalTest extends UnitTestCase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final int JOURNAL_SIZE = 10 * 1024;
+
+   private static final int STRIPES = 2;
+
+   // Attributes ----------------------------------------------------
+
+   private FakeSequentialFileFactory[] factories;
+
+   private FailingJournal[] stripes;
+
+   private StripedJournal journal;
+
+   private ArrayList<RecordInfo> records;
+
+   private ArrayList<PreparedTransactionInfo> transactions;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testRecordsSpreadOverStripes() throws Exception
+   {
+      setupJournal();
+
+      for (long i = 0; i < 100; i++)
+      {
+         journal.appendAddRecord(i, (byte) 1, new SimpleEncoding(10, (byte) i), false);
+      }
+
+      for (long i = 0; i < 100; i += 3)
+      {
+         journal.appendUpdateRecord(i, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+      }
+
+      for (long i = 0; i < 100; i += 5)
+      {
+         journal.appendDeleteRecord(i, false);
+      }
+
+      Assert.assertEquals(40, stripes[0].getNumberOfRecords());
+      Assert.assertEquals(40, stripes[1].getNumberOfRecords());
+
+      setupJournal();
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(80, getIds(records).size());
+      Assert.assertFalse(getIds(records).contains(5L));
+      Assert.assertTrue(getIds(records).contains(7L));
+   }
+
+   @Test
+   public void testRecordsLoadedInOrder() throws Exception
+   {
+      setupJournal();
+
+      for (long i = 0; i < 100; i++)
+      {
+         journal.appendAddRecord(i, (byte) 1, new SimpleEncoding(10, (byte) i), false);
+      }
+
+      journal.appendAddRecordTransactional(200, 100, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(200, 101, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendCommitRecord(200, true);
+
+      setupJournal();
+
+      Assert.assertEquals(102, records.size());
+
+      for (int i = 0; i < records.size(); i++)
+      {
+         Assert.assertEquals(i, records.get(i).id);
+      }
+   }
+
+   @Test
+   public void testLoadWithLoaderCallback() throws Exception
+   {
+      setupJournal();
+
+      journal.appendAddRecord(1, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+      journal.appendAddRecord(2, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+      journal.appendUpdateRecord(2, (byte) 1, new SimpleEncoding(10, (byte) 2), false);
+
+      journal.appendAddRecordTransactional(100, 3, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(100, 4, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendPrepareRecord(100, new SimpleEncoding(10, (byte) 1), true);
+
+      journal.forceMoveNextFile();
+
+      Assert.assertEquals(stripes[0].getDataFiles().length + stripes[1].getDataFiles().length,
+                          journal.getDataFiles().length);
+
+      journal.stop();
+
+      for (int i = 0; i < STRIPES; i++)
+      {
+         stripes[i] = new FailingJournal(factories[i]);
+      }
+
+      journal = new StripedJournal(stripes);
+
+      journal.start();
+
+      final ArrayList<RecordInfo> added = new ArrayList<RecordInfo>();
+      final ArrayList<RecordInfo> updated = new ArrayList<RecordInfo>();
+
+      journal.load(new LoaderCallback()
+      {
+         public void addPreparedTransaction(final PreparedTransactionInfo preparedTransaction)
+         {
+            transactions.add(preparedTransaction);
+         }
+
+         public void addRecord(final RecordInfo info)
+         {
+            added.add(info);
+         }
+
+         public void deleteRecord(final long id)
+         {
+         }
+
+         public void updateRecord(final RecordInfo info)
+         {
+            updated.add(info);
+         }
+
+         public void failedTransaction(final long transactionID,
+                                       final List<RecordInfo> records,
+                                       final List<RecordInfo> recordsToDelete)
+         {
+         }
+      });
+
+      Assert.assertEquals(set(1L, 2L), getIds(added));
+      Assert.assertEquals(set(2L), getIds(updated));
+      Assert.assertEquals(1, transactions.size());
+      Assert.assertEquals(set(3L, 4L), getIds(transactions.get(0).records));
+   }
+
+   @Test
+   public void testCommitAcrossStripes() throws Exception
+   {
+      setupJournal();
+
+      journal.appendAddRecord(1, (byte) 1, new SimpleEncoding(10, (byte) 1), false);
+
+      journal.appendAddRecordTransactional(100, 2, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(100, 3, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendDeleteRecordTransactional(100, 1);
+      journal.appendCommitRecord(100, true);
+
+      journal.appendAddRecordTransactional(200, 4, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(200, 5, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendRollbackRecord(200, true);
+
+      setupJournal();
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(set(2L, 3L), getIds(records));
+   }
+
+   @Test
+   public void testDecidedCommitCompletedOnLoad() throws Exception
+   {
+      setupJournal();
+
+      journal.appendAddRecordTransactional(100, 2, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(100, 3, (byte) 1, new SimpleEncoding(10, (byte) 1));
+
+      // the commit decision is written, then the second stripe fails before committing
+      stripes[1].failCommit = true;
+
+      try
+      {
+         journal.appendCommitRecord(100, true);
+         Assert.fail("Exception expected");
+      }
+      catch (ActiveMQException expected)
+      {
+      }
+
+      setupJournal();
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(set(2L, 3L), getIds(records));
+
+      // the decision is gone once the commit was completed
+      setupJournal();
+
+      Assert.assertEquals(set(2L, 3L), getIds(records));
+      Assert.assertEquals(1, stripes[0].getNumberOfRecords());
+   }
+
+   @Test
+   public void testCommitDoesNotWaitForSyncs() throws Exception
+   {
+      setupJournal();
+
+      journal.appendAddRecordTransactional(100, 2, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(100, 3, (byte) 1, new SimpleEncoding(10, (byte) 1));
+
+      for (FakeSequentialFileFactory factory : factories)
+      {
+         factory.setHoldCallbacks(true, null);
+      }
+
+      SimpleWaitIOCallback callback = new SimpleWaitIOCallback();
+
+      // the prepares aren't synced yet, the commit goes on once they are
+      journal.appendCommitRecord(100, true, callback, false);
+
+      Assert.assertFalse(callback.waitCompletion(100));
+
+      for (FakeSequentialFileFactory factory : factories)
+      {
+         factory.setHoldCallbacks(false, null);
+         factory.flushAllCallbacks();
+      }
+
+      Assert.assertTrue(callback.waitCompletion(5000));
+
+      setupJournal();
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(set(2L, 3L), getIds(records));
+   }
+
+   @Test
+   public void testCommitNotSynced() throws Exception
+   {
+      setupJournal();
+
+      journal.appendAddRecordTransactional(100, 2, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(100, 3, (byte) 1, new SimpleEncoding(10, (byte) 1));
+
+      // returns once the commits are written, the records can be used right away
+      journal.appendCommitRecord(100, false);
+
+      journal.appendUpdateRecord(2, (byte) 1, new SimpleEncoding(10, (byte) 2), false);
+      journal.appendDeleteRecord(3, false);
+
+      setupJournal();
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(set(2L), getIds(records));
+   }
+
+   @Test
+   public void testUndecidedCommitRolledBackOnLoad() throws Exception
+   {
+      setupJournal();
+
+      journal.appendAddRecordTransactional(100, 2, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(100, 3, (byte) 1, new SimpleEncoding(10, (byte) 1));
+
+      stripes[1].failPrepare = true;
+
+      try
+      {
+         journal.appendCommitRecord(100, true);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      setupJournal();
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(0, records.size());
+   }
+
+   @Test
+   public void testUserPrepareAcrossStripes() throws Exception
+   {
+      setupJournal();
+
+      journal.appendAddRecordTransactional(100, 2, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(100, 3, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendPrepareRecord(100, new SimpleEncoding(5, (byte) 7), true);
+
+      // prepared on a single stripe only, it can't be recovered
+      journal.appendAddRecordTransactional(200, 4, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      journal.appendAddRecordTransactional(200, 5, (byte) 1, new SimpleEncoding(10, (byte) 1));
+      stripes[1].failPrepare = true;
+
+      try
+      {
+         journal.appendPrepareRecord(200, new SimpleEncoding(5, (byte) 7), true);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      setupJournal();
+
+      Assert.assertEquals(0, records.size());
+      Assert.assertEquals(1, transactions.size());
+
+      PreparedTransactionInfo tx = transactions.get(0);
+      Assert.assertEquals(100L, tx.id);
+      Assert.assertArrayEquals(new byte[]{7, 7, 7, 7, 7}, tx.extraData);
+      Assert.assertEquals(set(2L, 3L), getIds(tx.records));
+
+      journal.appendCommitRecord(100, true);
+
+      setupJournal();
+
+      Assert.assertEquals(0, transactions.size());
+      Assert.assertEquals(set(2L, 3L), getIds(records));
+   }
+
+   @Test
+   public void testRecordsFoundOutsideTheirStripe() throws Exception
+   {
+      // a single journal holding data before striping was enabled
+      factories = new FakeSequentialFileFactory[]{new FakeSequentialFileFactory(1, true), new FakeSequentialFileFactory(1, true)};
+
+      JournalImpl single = new FailingJournal(factories[0]);
+      single.start();
+      single.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+      single.appendAddRecord(1, (byte) 1, new SimpleEncoding(10, (byte) 1), true);
+      single.appendAddRecord(3, (byte) 1, new SimpleEncoding(10, (byte) 1), true);
+      single.stop();
+
+      setupJournal();
+
+      Assert.assertEquals(set(1L, 3L), getIds(records));
+
+      journal.appendUpdateRecord(1, (byte) 1, new SimpleEncoding(10, (byte) 2), true);
+      journal.appendDeleteRecord(3, true);
+
+      Assert.assertEquals(1, stripes[0].getNumberOfRecords());
+      Assert.assertEquals(0, stripes[1].getNumberOfRecords());
+
+      setupJournal();
+
+      Assert.assertEquals(set(1L), getIds(records));
+      Assert.assertEquals(2, records.get(records.size() - 1).data[0]);
+   }
+
+   // Protected -----------------------------------------------------
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+
+      records = new ArrayList<RecordInfo>();
+
+      transactions = new ArrayList<PreparedTransactionInfo>();
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      if (journal != null)
+      {
+         try
+         {
+            journal.stop();
+         }
+         catch (Throwable ignored)
+         {
+         }
+      }
+
+      super.tearDown();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void setupJournal() throws Exception
+   {
+      if (factories == null)
+      {
+         factories = new FakeSequentialFileFactory[STRIPES];
+
+         for (int i = 0; i < STRIPES; i++)
+         {
+            factories[i] = new FakeSequentialFileFactory(1, true);
+         }
+      }
+
+      if (journal != null)
+      {
+         journal.stop();
+      }
+
+      stripes = new FailingJournal[STRIPES];
+
+      for (int i = 0; i < STRIPES; i++)
+      {
+         stripes[i] = new FailingJournal(factories[i]);
+      }
+
+      journal = new StripedJournal(stripes);
+
+      journal.start();
+
+      records.clear();
+      transactions.clear();
+
+      journal.load(records, transactions, null);
+   }
+
+   private static Set<Long> getIds(final Iterable<RecordInfo> infos)
+   {
+      Set<Long> ids = new HashSet<Long>();
+      for (RecordInfo info : infos)
+      {
+         ids.add(info.id);
+      }
+      return ids;
+   }
+
+   private static Set<Long> set(final Long... ids)
+   {
+      Set<Long> set = new HashSet<Long>();
+      for (Long id : ids)
+      {
+         set.add(id);
+      }
+      return set;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * A stripe able to fail its next prepare or commit, as a crash would leave it.
+    */
+   private static final class FailingJournal extends JournalImpl
+   {
+      volatile boolean failPrepare;
+
+      volatile boolean failCommit;
+
+      FailingJournal(final SequentialFileFactory factory)
+      {
+         super(JOURNAL_SIZE, 2, 0, 0, factory, "tt", "tt", 1000);
+      }
+
+      @Override
+      public void appendPrepareRecord(final long txID,
+                                      final EncodingSupport transactionData,
+                                      final boolean sync,
+                                      final IOCompletion callback) throws Exception
+      {
+         if (failPrepare)
+         {
+            throw new IllegalStateException("prepare failed");
+         }
+         super.appendPrepareRecord(txID, transactionData, sync, callback);
+      }
+
+      @Override
+      public void appendCommitRecord(final long txID,
+                                     final boolean sync,
+                                     final IOCompletion callback,
+                                     final boolean lineUpContext) throws Exception
+      {
+         if (failCommit)
+         {
+            throw new IllegalStateException("commit failed");
+         }
+         super.appendCommitRecord(txID, sync, callback, lineUpContext);
+      }
+
+      @Override
+      public void appendRollbackRecord(final long txID, final boolean sync, final IOCompletion callback) throws Exception
+      {
+         if (failPrepare || failCommit)
+         {
+            // a crashed stripe doesn't roll back either
+            throw new IllegalStateException("rollback failed");
+         }
+         super.appendRollbackRecord(txID, sync, callback);
+      }
+   }
+}
@@ -24,6 +24,8 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -399,4 +401,229 @@ public class TimedBufferTest extends UnitTestCase
          timedBuffer.stop();
       }
    }
+
+   @Test
+   public void testAdaptiveTimeout() throws Exception
+   {
+      final int minTimeout = 10000;
+      final int maxTimeout = 5000000;
+      final long syncTime = TimeUnit.MILLISECONDS.toNanos(2);
+
+      final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+
+      class SlowSyncObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            syncExecutor.execute(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     TimeUnit.NANOSECONDS.sleep(syncTime);
+                  }
+                  catch (InterruptedException ignored)
+                  {
+                  }
+
+                  for (IOAsyncTask callback : callbacks)
+                  {
+                     callback.done();
+                  }
+               }
+            });
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      TimedBuffer timedBuffer = new TimedBuffer(100 * 1024, TimedBufferTest.ONE_SECOND_IN_NANOS / 1000, false);
+
+      timedBuffer.setAdaptiveTimeout(minTimeout, maxTimeout);
+
+      Assert.assertTrue(timedBuffer.isAdaptiveTimeout());
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new SlowSyncObserver());
+
+         // many sync requests while the device syncs: the timeout follows the sync time
+         final CountDownLatch busyLatch = new CountDownLatch(500);
+
+         for (int i = 0; i < 500; i++)
+         {
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(ActiveMQBuffers.wrappedBuffer(new byte[10]), true, new LatchCallback(busyLatch));
+            Thread.sleep(0, 100000);
+         }
+
+         Assert.assertTrue(busyLatch.await(10, TimeUnit.SECONDS));
+
+         Assert.assertTrue(timedBuffer.getAverageSyncTime() >= syncTime);
+         Assert.assertTrue(timedBuffer.getTimeout() >= syncTime);
+         Assert.assertTrue(timedBuffer.getTimeout() <= maxTimeout);
+
+         // sync requests slower than the device: there is nothing to batch
+         for (int i = 0; i < 10; i++)
+         {
+            CountDownLatch idleLatch = new CountDownLatch(1);
+            Thread.sleep(20);
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(ActiveMQBuffers.wrappedBuffer(new byte[10]), true, new LatchCallback(idleLatch));
+            Assert.assertTrue(idleLatch.await(10, TimeUnit.SECONDS));
+         }
+
+         // the probe of the last flush completes after its callbacks
+         Thread.sleep(50);
+
+         Assert.assertEquals(minTimeout, timedBuffer.getTimeout());
+      }
+      finally
+      {
+         timedBuffer.stop();
+         syncExecutor.shutdown();
+      }
+   }
+
+   @Test
+   public void testInvalidAdaptiveTimeout() throws Exception
+   {
+      TimedBuffer timedBuffer = new TimedBuffer(100, TimedBufferTest.ONE_SECOND_IN_NANOS / 1000, false);
+
+      try
+      {
+         timedBuffer.setAdaptiveTimeout(1000, 10);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      Assert.assertFalse(timedBuffer.isAdaptiveTimeout());
+      Assert.assertEquals(TimedBufferTest.ONE_SECOND_IN_NANOS / 1000, timedBuffer.getTimeout());
+   }
+
+   @Test
+   public void testCancelWrites() throws Exception
+   {
+      final ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+      final ArrayList<List<IOAsyncTask>> flushedCallbacks = new ArrayList<List<IOAsyncTask>>();
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            buffers.add(buffer);
+            flushedCallbacks.add(callbacks);
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      TimedBuffer timedBuffer = new TimedBuffer(100, TimedBufferTest.ONE_SECOND_IN_NANOS, false);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         long[] writes = new long[3];
+
+         for (int i = 0; i < 3; i++)
+         {
+            byte[] bytes = new byte[10];
+            for (int j = 0; j < 10; j++)
+            {
+               bytes[j] = (byte) (i + 1);
+            }
+
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(ActiveMQBuffers.wrappedBuffer(bytes), false, dummyCallback);
+
+            writes[i] = timedBuffer.getLastWrite();
+         }
+
+         writes[1] = writes[2];
+
+         Assert.assertTrue(timedBuffer.cancel(writes, 2, false, dummyCallback));
+
+         timedBuffer.flush();
+
+         Assert.assertEquals(1, buffers.size());
+
+         ByteBuffer flushedBuffer = buffers.get(0);
+
+         Assert.assertEquals(10, flushedBuffer.limit());
+
+         flushedBuffer.rewind();
+
+         for (int i = 0; i < 10; i++)
+         {
+            Assert.assertEquals(2, flushedBuffer.get());
+         }
+
+         // the callbacks of the cancelled writes are still completed with the flush
+         Assert.assertEquals(4, flushedCallbacks.get(0).size());
+
+         // flushed writes can't be cancelled
+         Assert.assertEquals(-1, timedBuffer.getLastWrite());
+         Assert.assertFalse(timedBuffer.cancel(writes, 1, false, dummyCallback));
+
+         timedBuffer.checkSize(10);
+         timedBuffer.addBytes(ActiveMQBuffers.wrappedBuffer(new byte[10]), false, dummyCallback);
+
+         writes[0] = timedBuffer.getLastWrite();
+
+         Assert.assertTrue(timedBuffer.cancel(writes, 1, false, dummyCallback));
+
+         timedBuffer.flush();
+
+         // the callbacks still go through the file
+         Assert.assertEquals(2, buffers.size());
+         Assert.assertEquals(1, buffers.get(1).limit());
+         Assert.assertEquals(2, flushedCallbacks.get(1).size());
+      }
+      finally
+      {
+         timedBuffer.stop();
+      }
+   }
+
+   private static final class LatchCallback implements IOAsyncTask
+   {
+      private final CountDownLatch latch;
+
+      LatchCallback(final CountDownLatch latch)
+      {
+         this.latch = latch;
+      }
+
+      public void done()
+      {
+         latch.countDown();
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
 }
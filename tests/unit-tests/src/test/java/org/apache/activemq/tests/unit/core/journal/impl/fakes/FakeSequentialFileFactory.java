@@ -658,6 +658,16 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
       {
       }
 
+      public long getLastBufferedWrite()
+      {
+         return -1;
+      }
+
+      public boolean cancelBufferedWrites(final long[] writes, final int count, final boolean sync, final IOAsyncTask callback)
+      {
+         return false;
+      }
+
       /* (non-Javadoc)
        * @see org.apache.activemq.core.journal.SequentialFile#copyTo(org.apache.activemq.core.journal.SequentialFile)
        */
@@ -734,4 +744,10 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
       return null;
    }
 
+   @Override
+   public int getBufferTimeout()
+   {
+      return 0;
+   }
+
 }
@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.paging.impl;
+
+import org.apache.activemq.core.paging.PagedMessage;
+import org.apache.activemq.core.paging.cursor.PageCache;
+import org.apache.activemq.core.paging.cursor.impl.LRUPageCacheMap;
+import org.apache.activemq.core.paging.impl.PageSummary;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.Test;
+
+public class LRUPageCacheMapTest extends UnitTestCase
+{
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testEvictLeastRecentlyUsed()
+   {
+      LRUPageCacheMap caches = new LRUPageCacheMap(3, -1);
+
+      caches.put(1, new FakePageCache(1, 100));
+      caches.put(2, new FakePageCache(2, 100));
+      caches.put(3, new FakePageCache(3, 100));
+
+      assertNotNull(caches.get(1));
+
+      caches.put(4, new FakePageCache(4, 100));
+
+      assertEquals(3, caches.size());
+      assertTrue(caches.containsKey(1));
+      assertFalse(caches.containsKey(2));
+      assertEquals(1, caches.getEvictions());
+   }
+
+   @Test
+   public void testEvictOverMaxBytes()
+   {
+      LRUPageCacheMap caches = new LRUPageCacheMap(-1, 250);
+
+      caches.put(1, new FakePageCache(1, 100));
+      caches.put(2, new FakePageCache(2, 100));
+
+      assertEquals(2, caches.size());
+
+      caches.put(3, new FakePageCache(3, 100));
+
+      assertEquals(2, caches.size());
+      assertFalse(caches.containsKey(1));
+      assertEquals(200, caches.getMemoryEstimate());
+
+      caches.setMaxBytes(100);
+
+      assertEquals(1, caches.size());
+      assertTrue(caches.containsKey(3));
+   }
+
+   @Test
+   public void testPinnedAndLiveAreNotEvicted()
+   {
+      LRUPageCacheMap caches = new LRUPageCacheMap(1, -1);
+
+      FakePageCache live = new FakePageCache(1, 100);
+      live.live = true;
+
+      caches.pin(2);
+
+      caches.put(1, live);
+      caches.put(2, new FakePageCache(2, 100));
+      caches.put(3, new FakePageCache(3, 100));
+
+      assertTrue(caches.containsKey(1));
+      assertTrue(caches.containsKey(2));
+      assertFalse(caches.containsKey(3));
+
+      caches.unpin(2);
+
+      assertEquals(1, caches.size());
+      assertTrue(caches.containsKey(1));
+
+      live.live = false;
+      caches.put(4, new FakePageCache(4, 100));
+
+      assertEquals(1, caches.size());
+      assertTrue(caches.containsKey(4));
+   }
+
+   @Test
+   public void testEstimateUpdated()
+   {
+      LRUPageCacheMap caches = new LRUPageCacheMap(-1, 250);
+
+      FakePageCache first = new FakePageCache(1, 0);
+
+      caches.put(1, first);
+      caches.put(2, new FakePageCache(2, 100));
+
+      assertEquals(100, caches.getMemoryEstimate());
+
+      // the messages of the first page were read after it was cached
+      first.memoryEstimate = 200;
+      caches.update(1);
+
+      assertEquals(1, caches.size());
+      assertFalse(caches.containsKey(1));
+      assertEquals(100, caches.getMemoryEstimate());
+
+      caches.remove(2);
+
+      assertEquals(0, caches.getMemoryEstimate());
+   }
+
+   @Test
+   public void testHitsAndMisses()
+   {
+      LRUPageCacheMap caches = new LRUPageCacheMap(5, -1);
+
+      assertNull(caches.get(1));
+
+      caches.put(1, new FakePageCache(1, 100));
+
+      assertNotNull(caches.get(1));
+      assertNotNull(caches.get(1));
+
+      // peeking isn't a use of the cache
+      assertNotNull(caches.peek(1));
+
+      assertEquals(2, caches.getHits());
+      assertEquals(1, caches.getMisses());
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class FakePageCache implements PageCache
+   {
+      private final long pageId;
+
+      long memoryEstimate;
+
+      boolean live;
+
+      FakePageCache(final long pageId, final long memoryEstimate)
+      {
+         this.pageId = pageId;
+         this.memoryEstimate = memoryEstimate;
+      }
+
+      public long getPageId()
+      {
+         return pageId;
+      }
+
+      public int getNumberOfMessages()
+      {
+         return 0;
+      }
+
+      public void setMessages(final PagedMessage[] messages)
+      {
+      }
+
+      public PagedMessage[] getMessages()
+      {
+         return new PagedMessage[0];
+      }
+
+      public boolean isLive()
+      {
+         return live;
+      }
+
+      public long getMemoryEstimate()
+      {
+         return memoryEstimate;
+      }
+
+      public PageSummary getSummary()
+      {
+         return null;
+      }
+
+      public PagedMessage getMessage(final int messageNumber)
+      {
+         return null;
+      }
+
+      public void lock()
+      {
+      }
+
+      public void unlock()
+      {
+      }
+
+      public void close()
+      {
+      }
+   }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.core.paging.impl;
+
+import java.nio.ByteBuffer;
+
+import org.apache.activemq.api.core.SimpleString;
+import org.apache.activemq.core.filter.impl.FilterImpl;
+import org.apache.activemq.core.paging.impl.PageSummary;
+import org.apache.activemq.core.paging.impl.PagedMessageImpl;
+import org.apache.activemq.core.server.ServerMessage;
+import org.apache.activemq.core.server.impl.ServerMessageImpl;
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.junit.Test;
+
+public class PageSummaryTest extends UnitTestCase
+{
+   @Test
+   public void testRoutedTo() throws Exception
+   {
+      PageSummary summary = new PageSummary();
+
+      summary.add(new PagedMessageImpl(createMessage(1, 4, "red"), new long[]{10, 11}));
+      summary.add(new PagedMessageImpl(createMessage(2, 4, "red"), new long[]{11}));
+
+      assertTrue(summary.isRoutedTo(10));
+      assertTrue(summary.isRoutedTo(11));
+      assertFalse(summary.isRoutedTo(12));
+   }
+
+   @Test
+   public void testProperties() throws Exception
+   {
+      PageSummary summary = createSummary();
+
+      assertTrue(mayMatch(summary, "color = 'red'"));
+      assertTrue(mayMatch(summary, "'blue' = color"));
+      assertFalse(mayMatch(summary, "color = 'green'"));
+      assertFalse(mayMatch(summary, "shape = 'red'"));
+      assertTrue(mayMatch(summary, "color = 'green' OR color = 'blue'"));
+      assertFalse(mayMatch(summary, "color = 'green' AND count > 3"));
+      assertTrue(mayMatch(summary, "color <> 'green'"));
+      assertTrue(mayMatch(summary, "color LIKE 'gr%'"));
+
+      // a property that isn't a String could be converted
+      assertTrue(mayMatch(summary, "count = '5'"));
+   }
+
+   @Test
+   public void testPriorityAndTimestamp() throws Exception
+   {
+      PageSummary summary = createSummary();
+
+      assertTrue(mayMatch(summary, "HQPriority = 6"));
+      assertFalse(mayMatch(summary, "HQPriority = 7"));
+      assertTrue(mayMatch(summary, "HQPriority >= 6"));
+      assertFalse(mayMatch(summary, "HQPriority > 6"));
+      assertFalse(mayMatch(summary, "HQPriority < 4"));
+      assertFalse(mayMatch(summary, "3 >= HQPriority"));
+      assertFalse(mayMatch(summary, "HQPriority BETWEEN 7 AND 9"));
+
+      assertTrue(mayMatch(summary, "HQTimestamp <= 1000"));
+      assertFalse(mayMatch(summary, "HQTimestamp > 3000"));
+   }
+
+   @Test
+   public void testEncodeDecode() throws Exception
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(PageSummary.ENCODE_SIZE);
+
+      createSummary().encode(buffer);
+
+      assertEquals(0, buffer.remaining());
+
+      buffer.rewind();
+
+      PageSummary summary = PageSummary.decode(buffer);
+
+      assertTrue(summary.isRoutedTo(10));
+      assertTrue(mayMatch(summary, "color = 'blue' AND HQPriority > 5"));
+      assertFalse(mayMatch(summary, "color = 'green'"));
+      assertFalse(mayMatch(summary, "HQTimestamp < 1000"));
+   }
+
+   private PageSummary createSummary() throws Exception
+   {
+      PageSummary summary = new PageSummary();
+
+      summary.add(new PagedMessageImpl(createMessage(1000, 4, "red"), new long[]{10}));
+      summary.add(new PagedMessageImpl(createMessage(2000, 6, "blue"), new long[]{10}));
+
+      return summary;
+   }
+
+   private static boolean mayMatch(final PageSummary summary, final String filter) throws Exception
+   {
+      return summary.mayMatch(((FilterImpl) FilterImpl.createFilter(filter)).getBooleanExpression());
+   }
+
+   private static ServerMessage createMessage(final long timestamp, final int priority, final String color)
+   {
+      ServerMessage message = new ServerMessageImpl(timestamp, 100);
+      message.setTimestamp(timestamp);
+      message.setPriority((byte) priority);
+      message.putStringProperty(new SimpleString("color"), new SimpleString(color));
+      message.putIntProperty(new SimpleString("count"), 5);
+      return message;
+   }
+}
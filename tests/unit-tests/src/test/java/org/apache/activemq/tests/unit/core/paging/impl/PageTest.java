@@ -62,6 +62,79 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new NIOSequentialFileFactory(getTestDir()), 1000);
    }
 
+   @Test
+   public void testIndexWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      SequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory,
+                           factory.createSequentialFile("00010.page", 1), 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      ArrayList<ActiveMQBuffer> buffers = addPageElements(simpleDestination, impl, 100);
+
+      impl.close();
+
+      Assert.assertEquals(1, factory.listFiles("page").size());
+
+      Assert.assertEquals(1, factory.listFiles(Page.INDEX_EXTENSION).size());
+
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory,
+                      factory.createSequentialFile("00010.page", 1), 10);
+
+      impl.open();
+
+      int[] index = impl.readIndex();
+
+      Assert.assertNotNull(index);
+
+      Assert.assertEquals(101, index.length);
+
+      Assert.assertEquals(impl.getSize(), index[100]);
+
+      Assert.assertNotNull(impl.getSummary());
+
+      Assert.assertFalse(impl.getSummary().isRoutedTo(1));
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager(), index[40], index[50]);
+
+      Assert.assertEquals(10, msgs.size());
+
+      for (int i = 0; i < msgs.size(); i++)
+      {
+         UnitTestCase.assertEqualsByteArrays(buffers.get(40 + i).toByteBuffer().array(), msgs.get(i)
+            .getMessage()
+            .getBodyBuffer()
+            .toByteBuffer()
+            .array());
+      }
+
+      // the page is written again, its index doesn't match it any more
+      impl.read(new NullStorageManager());
+
+      addPageElements(simpleDestination, impl, 1);
+
+      Assert.assertNull(impl.readIndex());
+
+      impl.close();
+
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory,
+                      factory.createSequentialFile("00010.page", 1), 10);
+
+      impl.open();
+
+      Assert.assertEquals(102, impl.readIndex().length);
+
+      impl.delete(null);
+
+      Assert.assertEquals(0, factory.listFiles(Page.INDEX_EXTENSION).size());
+   }
+
    @Test
    public void testPageFakeWithoutCallbacks() throws Exception
    {
@@ -77,6 +150,75 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new FakeSequentialFileFactory(1, false), 100);
    }
 
+   @Test
+   public void testCompressedMessages() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      int uncompressedSize = 0;
+
+      for (int i = 0; i < 20; i++)
+      {
+         ServerMessage msg = new ServerMessageImpl(i, 100);
+
+         // every other message is too small to be compressed
+         int repeat = i % 2 == 0 ? 100 : 1;
+
+         for (int j = 0; j < repeat; j++)
+         {
+            msg.getBodyBuffer().writeBytes(("{\"id\":" + i + ",\"status\":\"ACTIVE\"}").getBytes());
+         }
+
+         msg.setAddress(simpleDestination);
+
+         msg.putIntProperty(new SimpleString("index"), i);
+
+         uncompressedSize += new PagedMessageImpl(msg, new long[]{i}).getEncodeSize();
+
+         impl.write(new PagedMessageImpl(msg, new long[]{i}, 0, true));
+      }
+
+      Assert.assertTrue(impl.getSize() < uncompressedSize / 2);
+
+      impl.sync();
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      Assert.assertEquals(20, msgs.size());
+
+      for (int i = 0; i < msgs.size(); i++)
+      {
+         ServerMessage msg = msgs.get(i).getMessage();
+
+         Assert.assertEquals(simpleDestination, msg.getAddress());
+         Assert.assertEquals(i, msg.getIntProperty(new SimpleString("index")).intValue());
+         Assert.assertEquals(i, msgs.get(i).getQueueIDs()[0]);
+
+         int repeat = i % 2 == 0 ? 100 : 1;
+
+         byte[] body = new byte[msg.getBodyBuffer().readableBytes()];
+         msg.getBodyBuffer().readBytes(body);
+
+         Assert.assertEquals(repeat * ("{\"id\":" + i + ",\"status\":\"ACTIVE\"}").length(), body.length);
+         Assert.assertTrue(new String(body).startsWith("{\"id\":" + i + ","));
+      }
+
+      impl.delete(null);
+   }
+
    /**
     * Validate if everything we add is recovered
     */
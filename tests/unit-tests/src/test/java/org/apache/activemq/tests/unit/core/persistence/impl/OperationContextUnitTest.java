@@ -104,6 +104,69 @@ public class OperationContextUnitTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testCompleteTasksInOrderWithConcurrentDone() throws Exception
+   {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      ExecutorService storage = Executors.newFixedThreadPool(4);
+      try
+      {
+         final OperationContextImpl impl = new OperationContextImpl(executor);
+
+         final int numberOfTasks = 10000;
+
+         final CountDownLatch latch = new CountDownLatch(numberOfTasks);
+
+         final AtomicInteger nextTask = new AtomicInteger(0);
+
+         final AtomicInteger failures = new AtomicInteger(0);
+
+         for (int i = 0; i < numberOfTasks; i++)
+         {
+            if (i % 3 != 0)
+            {
+               impl.storeLineUp();
+
+               storage.execute(new Runnable()
+               {
+                  public void run()
+                  {
+                     impl.done();
+                  }
+               });
+            }
+
+            final int task = i;
+
+            impl.executeOnCompletion(new IOAsyncTask()
+            {
+               public void onError(int errorCode, String errorMessage)
+               {
+                  failures.incrementAndGet();
+               }
+
+               public void done()
+               {
+                  if (nextTask.getAndIncrement() != task)
+                  {
+                     failures.incrementAndGet();
+                  }
+                  latch.countDown();
+               }
+            });
+         }
+
+         assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+         Assert.assertEquals(0, failures.get());
+      }
+      finally
+      {
+         storage.shutdown();
+         executor.shutdown();
+      }
+   }
+
    @Test
    public void testCaptureExceptionOnExecutor() throws Exception
    {
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.apache.activemq.utils.ConcurrentLongHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentLongHashMapTest extends UnitTestCase
+{
+   @Test
+   public void testPutGetRemove() throws Exception
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>(4);
+
+      Assert.assertTrue(map.isEmpty());
+      Assert.assertNull(map.put(1, "one"));
+      Assert.assertNull(map.put(-1, "minus one"));
+      Assert.assertNull(map.put(Long.MAX_VALUE, "max"));
+
+      Assert.assertEquals("one", map.get(1));
+      Assert.assertEquals("minus one", map.get(-1));
+      Assert.assertEquals("max", map.get(Long.MAX_VALUE));
+      Assert.assertNull(map.get(2));
+      Assert.assertEquals(3, map.size());
+
+      Assert.assertEquals("one", map.put(1, "uno"));
+      Assert.assertEquals("uno", map.putIfAbsent(1, "ein"));
+      Assert.assertEquals("uno", map.get(1));
+
+      Assert.assertEquals("uno", map.remove(1));
+      Assert.assertNull(map.remove(1));
+      Assert.assertFalse(map.containsKey(1));
+      Assert.assertEquals(2, map.size());
+
+      map.clear();
+      Assert.assertTrue(map.isEmpty());
+      Assert.assertNull(map.get(-1));
+   }
+
+   @Test
+   public void testNullValue() throws Exception
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>();
+
+      try
+      {
+         map.put(1, null);
+         Assert.fail("Exception expected");
+      }
+      catch (NullPointerException expected)
+      {
+      }
+   }
+
+   @Test
+   public void testRandomOperationsMatchHashMap() throws Exception
+   {
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(16, 4);
+      Map<Long, Long> reference = new HashMap<Long, Long>();
+
+      Random random = new Random(1);
+
+      for (long i = 0; i < 200000; i++)
+      {
+         // clustered keys force long probe chains and shifting on removal
+         long key = (long) random.nextInt(5000) << (i % 2 == 0 ? 0 : 20);
+
+         switch (random.nextInt(3))
+         {
+            case 0:
+               Assert.assertEquals(reference.put(key, i), map.put(key, i));
+               break;
+            case 1:
+               Assert.assertEquals(reference.remove(key), map.remove(key));
+               break;
+            default:
+               Assert.assertEquals(reference.get(key), map.get(key));
+         }
+      }
+
+      Assert.assertEquals(reference.size(), map.size());
+
+      long[] keys = map.keys();
+      Assert.assertEquals(reference.size(), keys.length);
+      for (long key : keys)
+      {
+         Assert.assertEquals(reference.get(key), map.get(key));
+      }
+
+      Assert.assertEquals(reference.size(), map.values().size());
+   }
+
+   @Test
+   public void testConcurrentPuts() throws Exception
+   {
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>();
+
+      final int THREADS = 8;
+
+      final int ELEMENTS = 10000;
+
+      final CountDownLatch latch = new CountDownLatch(THREADS);
+
+      Thread[] threads = new Thread[THREADS];
+
+      for (int i = 0; i < THREADS; i++)
+      {
+         final long base = i * ELEMENTS;
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               for (long j = base; j < base + ELEMENTS; j++)
+               {
+                  map.put(j, j);
+               }
+               latch.countDown();
+            }
+         };
+         threads[i].start();
+      }
+
+      Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+      Assert.assertEquals(THREADS * ELEMENTS, map.size());
+
+      for (long j = 0; j < THREADS * ELEMENTS; j++)
+      {
+         Assert.assertEquals(Long.valueOf(j), map.get(j));
+      }
+   }
+
+   @Test
+   public void testReadsWhileRemoving() throws Exception
+   {
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(16, 1);
+
+      final int STABLE = 1000;
+
+      // the keys that are never removed, they must always be found while their neighbours are moved around
+      for (long i = 0; i < STABLE; i++)
+      {
+         map.put(i, i);
+      }
+
+      final AtomicBoolean running = new AtomicBoolean(true);
+
+      final AtomicInteger failures = new AtomicInteger(0);
+
+      Thread writer = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            Random random = new Random(1);
+            while (running.get())
+            {
+               long key = STABLE + random.nextInt(STABLE * 4);
+               if (random.nextBoolean())
+               {
+                  map.put(key, key);
+               }
+               else
+               {
+                  map.remove(key);
+               }
+            }
+         }
+      };
+
+      Thread[] readers = new Thread[4];
+
+      for (int i = 0; i < readers.length; i++)
+      {
+         readers[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               while (running.get())
+               {
+                  for (long j = 0; j < STABLE; j++)
+                  {
+                     if (!Long.valueOf(j).equals(map.get(j)))
+                     {
+                        failures.incrementAndGet();
+                     }
+                  }
+               }
+            }
+         };
+      }
+
+      writer.start();
+      for (Thread reader : readers)
+      {
+         reader.start();
+      }
+
+      Thread.sleep(2000);
+
+      running.set(false);
+
+      writer.join();
+      for (Thread reader : readers)
+      {
+         reader.join();
+      }
+
+      Assert.assertEquals(0, failures.get());
+   }
+}
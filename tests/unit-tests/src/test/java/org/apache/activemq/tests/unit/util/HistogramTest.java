@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.util;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.apache.activemq.utils.Histogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest extends UnitTestCase
+{
+   @Test
+   public void testPercentiles() throws Exception
+   {
+      Histogram histogram = new Histogram();
+
+      Assert.assertEquals(0, histogram.getPercentile(99));
+
+      for (long i = 1; i <= 1000; i++)
+      {
+         histogram.record(i * 1000);
+      }
+
+      Assert.assertEquals(1000, histogram.getCount());
+      Assert.assertEquals(1000000, histogram.getMax());
+      Assert.assertEquals(500500, histogram.getMean(), 0.1);
+
+      assertWithinBucket(500000, histogram.getPercentile(50));
+      assertWithinBucket(990000, histogram.getPercentile(99));
+      Assert.assertEquals(1000000, histogram.getPercentile(100));
+      Assert.assertEquals(histogram.getPercentile(0), histogram.getPercentile(0.01));
+      assertWithinBucket(1000, histogram.getPercentile(0));
+
+      histogram.reset();
+
+      Assert.assertEquals(0, histogram.getCount());
+      Assert.assertEquals(0, histogram.getMax());
+      Assert.assertEquals(0, histogram.getPercentile(50));
+   }
+
+   @Test
+   public void testExtremeValues() throws Exception
+   {
+      Histogram histogram = new Histogram();
+
+      histogram.record(0);
+      histogram.record(7);
+      histogram.record(-5);
+
+      Assert.assertEquals(0, histogram.getPercentile(50));
+      Assert.assertEquals(7, histogram.getPercentile(100));
+
+      histogram.record(Long.MAX_VALUE);
+
+      Assert.assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+
+      try
+      {
+         histogram.getPercentile(101);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   @Test
+   public void testConcurrentRecords() throws Exception
+   {
+      final Histogram histogram = new Histogram();
+
+      final int threads = 4;
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Thread[] recorders = new Thread[threads];
+
+      for (int i = 0; i < threads; i++)
+      {
+         recorders[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+
+               for (long value = 0; value < 10000; value++)
+               {
+                  histogram.record(value);
+               }
+            }
+         };
+         recorders[i].start();
+      }
+
+      start.countDown();
+
+      for (Thread recorder : recorders)
+      {
+         recorder.join();
+      }
+
+      Assert.assertEquals(threads * 10000, histogram.getCount());
+      Assert.assertEquals(9999, histogram.getMax());
+   }
+
+   private static void assertWithinBucket(final long expected, final long actual)
+   {
+      // a sub-bucket is an eighth of its power of two
+      Assert.assertTrue("expected about " + expected + " but was " + actual,
+                        actual >= expected && actual <= expected + expected / 4);
+   }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.tests.unit.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.activemq.tests.util.UnitTestCase;
+import org.apache.activemq.utils.LZ4Util;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LZ4UtilTest extends UnitTestCase
+{
+   @Test
+   public void testCompressText() throws Exception
+   {
+      StringBuilder json = new StringBuilder();
+
+      for (int i = 0; i < 500; i++)
+      {
+         json.append("{\"id\":").append(i).append(",\"name\":\"customer-").append(i % 17)
+            .append("\",\"status\":\"ACTIVE\",\"amount\":").append(i * 37 % 1000).append("}");
+      }
+
+      byte[] data = json.toString().getBytes("UTF-8");
+
+      int compressedSize = assertRoundTrip(data, 0, data.length);
+
+      Assert.assertTrue("compressed to " + compressedSize, compressedSize < data.length / 3);
+   }
+
+   @Test
+   public void testRandomData() throws Exception
+   {
+      Random random = new Random(42);
+
+      for (int size : new int[]{0, 1, 12, 13, 100, 70000})
+      {
+         byte[] data = new byte[size];
+
+         random.nextBytes(data);
+
+         int compressedSize = assertRoundTrip(data, 0, data.length);
+
+         Assert.assertTrue(compressedSize <= LZ4Util.maxCompressedLength(size));
+      }
+   }
+
+   @Test
+   public void testRepeatedAndOffsetData() throws Exception
+   {
+      Random random = new Random(7);
+
+      byte[] data = new byte[100000];
+
+      for (int i = 0; i < data.length; i++)
+      {
+         // long runs, short periods and some noise exercise the overlapping and long matches
+         data[i] = (byte) (i < 30000 ? 'a' : i < 60000 ? i % 3 : random.nextInt(4));
+      }
+
+      assertRoundTrip(data, 0, data.length);
+
+      assertRoundTrip(data, 777, 50000);
+   }
+
+   @Test
+   public void testDamagedBlock() throws Exception
+   {
+      byte[] data = new byte[1000];
+
+      Arrays.fill(data, (byte) 'x');
+
+      byte[] compressed = new byte[LZ4Util.maxCompressedLength(data.length)];
+
+      int compressedSize = LZ4Util.compress(data, 0, data.length, compressed, 0);
+
+      byte[] restored = new byte[data.length];
+
+      try
+      {
+         LZ4Util.decompress(compressed, 0, compressedSize - 1, restored, 0, data.length);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      try
+      {
+         LZ4Util.decompress(compressed, 0, compressedSize, new byte[data.length + 1], 0, data.length + 1);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+   private static int assertRoundTrip(final byte[] data, final int offset, final int length)
+   {
+      byte[] compressed = new byte[LZ4Util.maxCompressedLength(length) + 5];
+
+      int compressedSize = LZ4Util.compress(data, offset, length, compressed, 5);
+
+      byte[] restored = new byte[length + 3];
+
+      LZ4Util.decompress(compressed, 5, compressedSize, restored, 3, length);
+
+      Assert.assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length),
+                               Arrays.copyOfRange(restored, 3, 3 + length));
+
+      return compressedSize;
+   }
+}